@@ -4,6 +4,8 @@ import paho.mqtt.client as mqtt
 import configparser
 import json
 import os
+import re
+import struct
 
 ################# Configuration #####################
 MBP_CLIENT_PROPERTIES_FILE = 'mbp.properties'
@@ -17,6 +19,14 @@ SECTION_COMPONENT_PROPERTY_COMPONENTID = 'componentId'
 
 TOPIC_SEND_MESSAGE_FORMAT = '{"component": "SENSOR", "id": "%s", "value": "%.2f"}'
 
+# Compact binary value message format (see README)
+BINARY_MESSAGE_MARKER = 0xB5
+BINARY_MESSAGE_VERSION = 1
+BINARY_FLAG_DEVICE_TIMESTAMP = 0x01
+BINARY_FLAG_RAW_ID = 0x02
+BINARY_COMPONENT_TYPE_SENSOR = 1
+OBJECT_ID_PATTERN = re.compile('^[0-9a-fA-F]{24}$')
+
 ACTION_LOG_FILE = 'actions.log'
 JSON_PROPERTY_ACTION = 'action'
 ACTION_NAME_STOP = 'stop'
@@ -43,10 +53,32 @@ class MBPclient(object):
         # This call also handles reconnecting to the broker.
         self.mqtt_client.loop_start()
 
-    def send_data(self, value):
-        mbp_message = TOPIC_SEND_MESSAGE_FORMAT % (self.component_id, value)
+    def send_data(self, value, timestamp_ms=None):
+        """Sends a sensor value to the MBP. Optionally, the time at which the value was recorded
+        (milliseconds since epoch, may be fractional) can be passed."""
+
+        if timestamp_ms is None:
+            mbp_message = TOPIC_SEND_MESSAGE_FORMAT % (self.component_id, value)
+        else:
+            mbp_message = json.dumps({'component': 'SENSOR', 'id': self.component_id, 'value': value,
+                                      'timestamp': timestamp_ms})
         self.mqtt_client.publish(topic=self.broker_topic, payload=mbp_message, qos=0, retain=False)
         print('[Sent message]:', mbp_message)
+
+    def send_data_batch(self, values, start_ms, interval_ms):
+        """Sends multiple sensor values within a single message to the MBP. The values are assumed to be
+        recorded at equidistant times, beginning at start_ms (milliseconds since epoch) with an interval of interval_ms."""
+
+        mbp_message = json.dumps({'component': 'SENSOR', 'id': self.component_id, 'values': list(values),
+                                  'start': int(start_ms), 'interval': interval_ms})
+        self.mqtt_client.publish(topic=self.broker_topic, payload=mbp_message, qos=0, retain=False)
+
+    def send_data_binary(self, value, timestamp_ms=None):
+        """Sends a sensor value to the MBP using the compact binary value message format.
+        Optionally, the time at which the value was recorded (milliseconds since epoch) can be passed."""
+
+        mbp_message = encode_binary_value_message(self.component_id, value, timestamp_ms)
+        self.mqtt_client.publish(topic=self.broker_topic, payload=mbp_message, qos=0, retain=False)
     
     def subscribe(self, topic):
         self.mqtt_client.subscribe(topic)
@@ -88,3 +120,28 @@ class MBPclient(object):
             print('[Exit]: Receive command to exit MBP client')
             self.finalize()
             os._exit(0)
+
+
+def encode_binary_value_message(component_id, value, timestamp_ms=None, component_type=BINARY_COMPONENT_TYPE_SENSOR):
+    """Encodes a value message in the compact binary format that is accepted by the MBP."""
+
+    flags = 0
+
+    # Object ids are transferred as 12 raw bytes instead of 24 characters
+    if OBJECT_ID_PATTERN.match(component_id):
+        id_bytes = bytes.fromhex(component_id)
+        flags |= BINARY_FLAG_RAW_ID
+    else:
+        id_bytes = component_id.encode('ascii')
+
+    if timestamp_ms is not None:
+        flags |= BINARY_FLAG_DEVICE_TIMESTAMP
+
+    message = struct.pack('>BBBBB', BINARY_MESSAGE_MARKER, BINARY_MESSAGE_VERSION, flags, component_type, len(id_bytes))
+    message += id_bytes
+    message += struct.pack('>d', float(value))
+
+    if timestamp_ms is not None:
+        message += struct.pack('>q', int(timestamp_ms))
+
+    return message
@@ -2,29 +2,40 @@ package org.citopt.connde;
 
 
 import okhttp3.OkHttpClient;
-import org.influxdb.BatchOptions;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Query;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
 
 import java.util.concurrent.TimeUnit;
 
 @Configuration
+@PropertySource(value = "classpath:application.properties")
 public class InfluxDBConfiguration {
     //General internal settings
     private static final String URL = "http://localhost:8086";
     public static final String DATABASE_NAME = "mbp";
 
-    //Measurements name for value logs
-    public static final String MEASUREMENT_NAME = "value_log";
+    //Measurements name for value logs (component id, component type and topic are tags)
+    public static final String MEASUREMENT_NAME = "value_logs";
 
-    //Retention policy
-    public static final String RETENTION_POLICY_NAME = "retentionPolicy";
+    //Measurement name for value logs of the former schema without tags, subject to migration
+    public static final String LEGACY_MEASUREMENT_NAME = "value_log";
+
+    //Measurement name for the progress of the value log migration
+    public static final String MIGRATION_MEASUREMENT_NAME = "value_log_migration";
+
+    //Measurement name for the progress of the backfill of the value log rollups
+    public static final String ROLLUP_MEASUREMENT_NAME = "value_log_rollups";
 
-    //Duration time
-    private static final String DURATION_TIME = "90d";
+    //Measurement name for the records of purged value logs of components
+    public static final String PURGE_MEASUREMENT_NAME = "value_log_purges";
+
+    //Retention policy of the value logs at full resolution
+    public static final String RETENTION_POLICY_NAME = "retentionPolicy";
 
     //Timeouts
     private static final long CONNECT_TIMEOUT_MINUTES = 1;
@@ -34,16 +45,16 @@ public class InfluxDBConfiguration {
     //Retry on connection loss
     private static final boolean RETRY_ON_CONNECTION_LOSS = true;
 
-    //Use GZIP
-    private static final boolean USE_GZIP = false;
-
     /**
      * Creates the InfluxDB bean.
      *
+     * @param useGzip   Whether requests to the database are supposed to be compressed with GZIP
+     * @param retention The duration for which value logs are kept at full resolution (InfluxQL duration)
      * @return The bean
      */
     @Bean
-    public InfluxDB influxDB() {
+    public InfluxDB influxDB(@Value("${influxdb.gzip:false}") boolean useGzip,
+                             @Value("${influxdb.retention.duration:90d}") String retention) {
         //Build HTTP client for InfluxDB
         OkHttpClient.Builder httpClient = new OkHttpClient().newBuilder()
                 .connectTimeout(CONNECT_TIMEOUT_MINUTES, TimeUnit.MINUTES)
@@ -55,7 +66,7 @@ public class InfluxDBConfiguration {
         InfluxDB influxDB = InfluxDBFactory.connect(URL, httpClient);
 
         //Enable GZIP if desired
-        if (USE_GZIP) {
+        if (useGzip) {
             influxDB.enableGzip();
         } else {
             influxDB.disableGzip();
@@ -65,13 +76,15 @@ public class InfluxDBConfiguration {
         influxDB.query(new Query("CREATE DATABASE " + DATABASE_NAME));
         influxDB.setDatabase(DATABASE_NAME);
 
-        //Create new retention policy
+        //Create new retention policy and apply the configured duration if it exists already
         influxDB.query(new Query("CREATE RETENTION POLICY " + RETENTION_POLICY_NAME + " ON " +
-                DATABASE_NAME + " DURATION " + DURATION_TIME + " REPLICATION 1 DEFAULT"));
+                DATABASE_NAME + " DURATION " + retention + " REPLICATION 1 DEFAULT"));
+        influxDB.query(new Query("ALTER RETENTION POLICY " + RETENTION_POLICY_NAME + " ON " +
+                DATABASE_NAME + " DURATION " + retention + " DEFAULT"));
         influxDB.setRetentionPolicy(RETENTION_POLICY_NAME);
 
-        //Enable batch processing
-        influxDB.enableBatch(BatchOptions.DEFAULTS);
+        //Batch processing of the client is not enabled, since value logs are batched by the write buffer of the
+        //value log repository
 
         return influxDB;
     }
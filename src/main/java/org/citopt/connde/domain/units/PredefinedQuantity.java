@@ -8,7 +8,9 @@ import javax.measure.quantity.*;
 import javax.measure.unit.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static javax.measure.unit.SI.*;
 
@@ -242,28 +244,15 @@ public enum PredefinedQuantity {
      * @return A list of predefined quantities holding predefined units
      */
     public static List<PredefinedQuantity> getCompatibleQuantities(String compatibleUnit) {
-        //Create new empty list for quantities
-        List<PredefinedQuantity> quantitiesList = new ArrayList<>();
-
         //Try to get unit object from given unit string
         Unit givenUnit = Unit.valueOf(compatibleUnit);
 
-        //Iterate over all quantities and filter the ones that are compatible
-        for (PredefinedQuantity quantity : PredefinedQuantity.values()) {
-            //Skip quantity if it has no units
-            if ((quantity.units == null) || (quantity.units.length < 1)) {
-                continue;
-            }
-
-            //Get first unit of this quantity
-            PredefinedUnit firstUnit = quantity.units[0];
-
-            //Check for compatibility
-            if (firstUnit.getUnit().isCompatible(givenUnit)) {
-                quantitiesList.add(quantity);
-            }
+        //Look up the quantities of the same dimension
+        List<PredefinedQuantity> quantitiesList = CompatibilityIndex.QUANTITIES.get(givenUnit.getDimension());
+        if (quantitiesList == null) {
+            return new ArrayList<>();
         }
-        return quantitiesList;
+        return new ArrayList<>(quantitiesList);
     }
 
     /**
@@ -301,4 +290,25 @@ public enum PredefinedQuantity {
     public void setUnits(PredefinedUnit[] units) {
         this.units = units;
     }
+
+    /**
+     * Index of the predefined quantities by the dimensions of their units, since units are compatible if and only
+     * if they have the same dimension. The index is built once when it is used for the first time.
+     */
+    private static class CompatibilityIndex {
+        private static final Map<Dimension, List<PredefinedQuantity>> QUANTITIES = new HashMap<>();
+
+        static {
+            //Iterate over all quantities and index the ones that have units by the dimension of their first unit
+            for (PredefinedQuantity quantity : PredefinedQuantity.values()) {
+                //Skip quantity if it has no units
+                if ((quantity.units == null) || (quantity.units.length < 1)) {
+                    continue;
+                }
+
+                Dimension dimension = quantity.units[0].getUnit().getDimension();
+                QUANTITIES.computeIfAbsent(dimension, d -> new ArrayList<>()).add(quantity);
+            }
+        }
+    }
 }
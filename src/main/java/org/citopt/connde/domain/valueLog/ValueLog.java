@@ -1,5 +1,6 @@
 package org.citopt.connde.domain.valueLog;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.concurrent.TimeUnit;
 
@@ -12,11 +13,13 @@ import org.influxdb.annotation.Measurement;import java.text.SimpleDateFormat;imp
 /**
  * Objects of this class represent value logs that were received by the MQTT broker and
  * are recorded by this application. Value logs are stored within an InfluxDB time series database.
+ * The component id, the component type and the topic are stored as tags, so that queries for the value logs
+ * of a certain component make use of the series index of the database.
  */
 @Measurement(name = InfluxDBConfiguration.MEASUREMENT_NAME,
         database = InfluxDBConfiguration.DATABASE_NAME,
         retentionPolicy = InfluxDBConfiguration.RETENTION_POLICY_NAME,
-        timeUnit = TimeUnit.SECONDS)
+        timeUnit = TimeUnit.NANOSECONDS)
 @ApiModel(description = "Model for value logs of components")
 public class ValueLog {
     //Format that is used for the date
@@ -30,18 +33,22 @@ public class ValueLog {
     @Column(name = "qos")
     @ApiModelProperty(notes = "MQTT Quality of Service", example = "0", accessMode = ApiModelProperty.AccessMode.READ_ONLY, readOnly = true)
     private Integer qos;
-    @Column(name = "topic")
+    @Column(name = "topic", tag = true)
     @ApiModelProperty(notes = "MQTT topic", example = "sensor/5c97dc2583aeb6078c5ab672", accessMode = ApiModelProperty.AccessMode.READ_ONLY, readOnly = true)
     private String topic;
     @Column(name = "message")
     @ApiModelProperty(notes = "Full received MQTT message", example = "{ \"component\": \"SENSOR\", \"id\": \"5d9dfeafb1c4d32a86e5b73d\", \"value\": \"434880.000000\"}", accessMode = ApiModelProperty.AccessMode.READ_ONLY, readOnly = true)
-    private String message;
+    private volatile String message;
+
+    //Raw payload of the received MQTT message, decoded to the message only when it is read; both fields are volatile,
+    //since the same value log is read by the lanes of several observers concurrently
+    private transient volatile byte[] messagePayload;
 
     //Fields parsed from the MQTT message
-    @Column(name = "idref")
+    @Column(name = "idref", tag = true)
     @ApiModelProperty(notes = "ID of the pertaining component", example = "5c97dc2583aeb6078c5ab672", accessMode = ApiModelProperty.AccessMode.READ_ONLY, readOnly = true)
     private String idref;
-    @Column(name = "component")
+    @Column(name = "component", tag = true)
     @ApiModelProperty(notes = "Type of the pertaining component", example = "SENSOR", accessMode = ApiModelProperty.AccessMode.READ_ONLY, readOnly = true)
     private String component; //Component type
     @Column(name = "value")
@@ -108,7 +115,21 @@ public class ValueLog {
      * @return The message
      */
     public String getMessage() {
-        return message;
+        String decoded = message;
+        if (decoded != null) {
+            return decoded;
+        }
+
+        //Decode raw payload on first access; concurrent readers may decode it twice, but with the same result
+        byte[] payload = messagePayload;
+        if (payload == null) {
+            //Payload is cleared only after the message was published, so read the message again
+            return message;
+        }
+        decoded = new String(payload, StandardCharsets.UTF_8);
+        message = decoded;
+        messagePayload = null;
+        return decoded;
     }
 
     /**
@@ -118,6 +139,19 @@ public class ValueLog {
      */
     public void setMessage(String message) {
         this.message = message;
+        this.messagePayload = null;
+    }
+
+    /**
+     * Sets the raw payload of the MQTT message that was originally received. The payload is decoded to the message
+     * only if the message is read, so that value logs whose message is never used do not cost a string each.
+     * The payload must not be modified afterwards.
+     *
+     * @param messagePayload The UTF-8 encoded payload to set
+     */
+    public void setMessagePayload(byte[] messagePayload) {
+        this.message = null;
+        this.messagePayload = messagePayload;
     }
 
     public String getIdref() {
@@ -0,0 +1,69 @@
+package org.citopt.connde.domain.valueLog;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Document class for the quantile sketch of the values of the value logs of a component that were recorded within
+ * a certain time bucket. The sketch is stored in its compact binary representation and is updated periodically
+ * with the value logs that arrived meanwhile. Bucket starts are stored as epoch milliseconds.
+ */
+@Document
+public class ValueLogSketch {
+
+    //Id of the document, composed of component id and bucket start
+    @Id
+    private String id;
+
+    //Id of the component
+    private String idref;
+
+    //Epoch milliseconds at which the time bucket starts
+    private long bucketStart;
+
+    //Serialized sketch
+    private byte[] sketch;
+
+    /**
+     * Creates the id of the document for a certain component and time bucket.
+     *
+     * @param idref       The id of the component
+     * @param bucketStart The epoch milliseconds at which the time bucket starts
+     * @return The id of the document
+     */
+    public static String createId(String idref, long bucketStart) {
+        return idref + ":" + bucketStart;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getIdref() {
+        return idref;
+    }
+
+    public void setIdref(String idref) {
+        this.idref = idref;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(long bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public byte[] getSketch() {
+        return sketch;
+    }
+
+    public void setSketch(byte[] sketch) {
+        this.sketch = sketch;
+    }
+}
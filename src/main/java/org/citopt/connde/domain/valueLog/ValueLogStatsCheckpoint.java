@@ -0,0 +1,231 @@
+package org.citopt.connde.domain.valueLog;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Document class for checkpoints of the running statistics of the value logs of a component. The statistics are
+ * extended periodically by the value logs that cannot change anymore and saved, so that they do not need to be
+ * computed from the whole history of the component again after a restart. Times are stored as epoch nanoseconds.
+ */
+@Document
+public class ValueLogStatsCheckpoint {
+
+    //Id of the component
+    @Id
+    private String id;
+
+    //Component type and topic of the most recent value log
+    private String component;
+    private String topic;
+
+    //Number of value logs, mean and sum of squared deviations from the mean
+    private long count;
+    private double mean;
+    private double squaredDeviations;
+
+    //Epoch nanoseconds before which all value logs are considered
+    private long coveredUntil;
+
+    //Times, values, qualities of service and messages of the remarkable value logs
+    private long firstTime;
+    private double firstValue;
+    private Integer firstQos;
+    private String firstMessage;
+    private long lastTime;
+    private double lastValue;
+    private Integer lastQos;
+    private String lastMessage;
+    private long minimumTime;
+    private double minimumValue;
+    private Integer minimumQos;
+    private String minimumMessage;
+    private long maximumTime;
+    private double maximumValue;
+    private Integer maximumQos;
+    private String maximumMessage;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getComponent() {
+        return component;
+    }
+
+    public void setComponent(String component) {
+        this.component = component;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public double getSquaredDeviations() {
+        return squaredDeviations;
+    }
+
+    public void setSquaredDeviations(double squaredDeviations) {
+        this.squaredDeviations = squaredDeviations;
+    }
+
+    public long getCoveredUntil() {
+        return coveredUntil;
+    }
+
+    public void setCoveredUntil(long coveredUntil) {
+        this.coveredUntil = coveredUntil;
+    }
+
+    public long getFirstTime() {
+        return firstTime;
+    }
+
+    public void setFirstTime(long firstTime) {
+        this.firstTime = firstTime;
+    }
+
+    public double getFirstValue() {
+        return firstValue;
+    }
+
+    public void setFirstValue(double firstValue) {
+        this.firstValue = firstValue;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public void setLastTime(long lastTime) {
+        this.lastTime = lastTime;
+    }
+
+    public double getLastValue() {
+        return lastValue;
+    }
+
+    public void setLastValue(double lastValue) {
+        this.lastValue = lastValue;
+    }
+
+    public long getMinimumTime() {
+        return minimumTime;
+    }
+
+    public void setMinimumTime(long minimumTime) {
+        this.minimumTime = minimumTime;
+    }
+
+    public double getMinimumValue() {
+        return minimumValue;
+    }
+
+    public void setMinimumValue(double minimumValue) {
+        this.minimumValue = minimumValue;
+    }
+
+    public long getMaximumTime() {
+        return maximumTime;
+    }
+
+    public void setMaximumTime(long maximumTime) {
+        this.maximumTime = maximumTime;
+    }
+
+    public double getMaximumValue() {
+        return maximumValue;
+    }
+
+    public void setMaximumValue(double maximumValue) {
+        this.maximumValue = maximumValue;
+    }
+
+    public Integer getFirstQos() {
+        return firstQos;
+    }
+
+    public void setFirstQos(Integer firstQos) {
+        this.firstQos = firstQos;
+    }
+
+    public String getFirstMessage() {
+        return firstMessage;
+    }
+
+    public void setFirstMessage(String firstMessage) {
+        this.firstMessage = firstMessage;
+    }
+
+    public Integer getLastQos() {
+        return lastQos;
+    }
+
+    public void setLastQos(Integer lastQos) {
+        this.lastQos = lastQos;
+    }
+
+    public String getLastMessage() {
+        return lastMessage;
+    }
+
+    public void setLastMessage(String lastMessage) {
+        this.lastMessage = lastMessage;
+    }
+
+    public Integer getMinimumQos() {
+        return minimumQos;
+    }
+
+    public void setMinimumQos(Integer minimumQos) {
+        this.minimumQos = minimumQos;
+    }
+
+    public String getMinimumMessage() {
+        return minimumMessage;
+    }
+
+    public void setMinimumMessage(String minimumMessage) {
+        this.minimumMessage = minimumMessage;
+    }
+
+    public Integer getMaximumQos() {
+        return maximumQos;
+    }
+
+    public void setMaximumQos(Integer maximumQos) {
+        this.maximumQos = maximumQos;
+    }
+
+    public String getMaximumMessage() {
+        return maximumMessage;
+    }
+
+    public void setMaximumMessage(String maximumMessage) {
+        this.maximumMessage = maximumMessage;
+    }
+}
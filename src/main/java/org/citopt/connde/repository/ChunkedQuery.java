@@ -0,0 +1,162 @@
+package org.citopt.connde.repository;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDB.Cancellable;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridge between the asynchronous chunked responses of InfluxDB and a consumer that pulls the chunks one by one.
+ * The chunks are handed over through a small bounded queue: as long as the consumer does not keep up, the thread
+ * that receives the response is blocked and stops reading from the connection. Hence, at most a few chunks of a
+ * query are held in memory, regardless of the total size of the result.
+ * Queries must be closed after use, so that a response that was not read to the end is cancelled and the
+ * connection is released instead of being drained.
+ */
+class ChunkedQuery implements Closeable {
+    //Error message with which the client signals the end of a chunked response
+    private static final String END_OF_RESPONSE = "DONE";
+
+    //Interval in which a blocked producer checks whether the query was closed
+    private static final long OFFER_INTERVAL_MILLIS = 100;
+
+    //Marker that is queued when the response is complete
+    private static final QueryResult COMPLETED = new QueryResult();
+
+    //Chunks that were received but not consumed yet
+    private final BlockingQueue<QueryResult> chunks;
+
+    //Maximum time to wait for the next chunk
+    private final long timeoutMillis;
+
+    //Handle of the underlying call, available as soon as the first chunk arrived
+    private volatile Cancellable call;
+
+    //Whether the response was read to the end
+    private boolean completed = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates and executes a new chunked query.
+     *
+     * @param influxDB      The InfluxDB bean to use
+     * @param query         The query to execute
+     * @param chunkSize     The number of points per chunk
+     * @param prefetch      The number of chunks that may be received ahead of the consumer
+     * @param timeoutMillis The maximum time to wait for the next chunk (in milliseconds)
+     */
+    ChunkedQuery(InfluxDB influxDB, Query query, int chunkSize, int prefetch, long timeoutMillis) {
+        //Sanity checks
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        } else if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be positive.");
+        } else if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("Timeout must be positive.");
+        }
+
+        //One additional slot for the completion marker
+        this.chunks = new ArrayBlockingQueue<>(prefetch + 1);
+        this.timeoutMillis = timeoutMillis;
+
+        influxDB.query(query, chunkSize, this::receive, () -> offer(COMPLETED));
+    }
+
+    /**
+     * Returns the next chunk of the response and blocks until it is available.
+     *
+     * @return The next chunk or null if the response is complete
+     * @throws IllegalStateException In case the query failed or the chunk did not arrive in time
+     */
+    QueryResult next() {
+        if (completed || closed) {
+            return null;
+        }
+
+        QueryResult chunk;
+        try {
+            chunk = chunks.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while waiting for query results.");
+        }
+
+        //Check for timeout, end of response and errors
+        if (chunk == null) {
+            close();
+            throw new IllegalStateException("Timed out while waiting for query results.");
+        } else if ((chunk == COMPLETED) || END_OF_RESPONSE.equals(chunk.getError())) {
+            completed = true;
+            return null;
+        } else if (chunk.getError() != null) {
+            close();
+            throw new IllegalStateException("Query failed: " + chunk.getError());
+        }
+        return chunk;
+    }
+
+    /**
+     * Closes the query and cancels the underlying call, unless the response was read to the end. Chunks that
+     * arrive afterwards are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        chunks.clear();
+        cancel();
+    }
+
+    /**
+     * Keeps the handle of the underlying call and hands the received chunk over to the consumer. If the query was
+     * closed before the first chunk arrived, the call is cancelled right away.
+     *
+     * @param cancellable The handle of the underlying call
+     * @param chunk       The received chunk
+     */
+    private void receive(Cancellable cancellable, QueryResult chunk) {
+        call = cancellable;
+        if (closed) {
+            cancel();
+            return;
+        }
+        offer(chunk);
+    }
+
+    /**
+     * Cancels the underlying call if it is known and still running.
+     */
+    private void cancel() {
+        Cancellable cancellable = call;
+        if ((cancellable == null) || completed || cancellable.isCanceled()) {
+            return;
+        }
+        try {
+            cancellable.cancel();
+        } catch (Exception e) {
+            System.err.println("Failed to cancel chunked query: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands a chunk over to the consumer and blocks while the queue is full, unless the query was closed.
+     *
+     * @param chunk The chunk to hand over
+     */
+    private void offer(QueryResult chunk) {
+        try {
+            while (!closed) {
+                if (chunks.offer(chunk, OFFER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
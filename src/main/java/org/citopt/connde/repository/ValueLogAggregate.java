@@ -0,0 +1,81 @@
+package org.citopt.connde.repository;
+
+/**
+ * Enumeration of the aggregate functions that may be applied to the values of value logs within time buckets.
+ */
+public enum ValueLogAggregate {
+    MEAN("MEAN", "SUM(\"sum\") / SUM(\"count\")", true), MIN("MIN", "MIN(\"min\")", true),
+    MAX("MAX", "MAX(\"max\")", true), COUNT("COUNT", "SUM(\"count\")", false), LAST("LAST", "LAST(\"last\")", true);
+
+    //Name of the corresponding InfluxQL function
+    private final String function;
+
+    //InfluxQL expression that combines the buckets of rollup tiers accordingly
+    private final String rollupExpression;
+
+    //Whether the aggregated values have the unit of the values
+    private final boolean unitPreserving;
+
+    /**
+     * Creates a new aggregate function as part of the enumeration.
+     *
+     * @param function         The name of the corresponding InfluxQL function
+     * @param rollupExpression The InfluxQL expression that combines the buckets of rollup tiers accordingly
+     * @param unitPreserving   Whether the aggregated values have the unit of the values
+     */
+    ValueLogAggregate(String function, String rollupExpression, boolean unitPreserving) {
+        this.function = function;
+        this.rollupExpression = rollupExpression;
+        this.unitPreserving = unitPreserving;
+    }
+
+    /**
+     * Returns the name of the corresponding InfluxQL function.
+     *
+     * @return The function name
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the InfluxQL expression that applies the aggregate function to the buckets of rollup tiers, which
+     * consist out of the fields sum, count, min, max and last.
+     *
+     * @return The expression
+     */
+    public String getRollupExpression() {
+        return rollupExpression;
+    }
+
+    /**
+     * Returns whether the aggregated values have the unit of the values and may thus be converted to other units.
+     * This is not the case for counts.
+     *
+     * @return True, if the aggregated values have the unit of the values; false otherwise
+     */
+    public boolean isUnitPreserving() {
+        return unitPreserving;
+    }
+
+    /**
+     * Returns the aggregate function that corresponds to a given name, ignoring the case.
+     *
+     * @param name The name of the aggregate function
+     * @return The aggregate function
+     * @throws IllegalArgumentException In case there is no aggregate function with this name
+     */
+    public static ValueLogAggregate fromName(String name) {
+        //Sanity check
+        if ((name == null) || name.isEmpty()) {
+            throw new IllegalArgumentException("Name must not be null or empty.");
+        }
+
+        for (ValueLogAggregate aggregate : values()) {
+            if (aggregate.name().equalsIgnoreCase(name)) {
+                return aggregate;
+            }
+        }
+        throw new IllegalArgumentException("Unknown aggregate function: " + name);
+    }
+}
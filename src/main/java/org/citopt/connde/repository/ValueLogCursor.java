@@ -0,0 +1,213 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Objects of this class describe a position within the value logs of a component, from which the next slice of
+ * value logs is supposed to be retrieved. Instead of skipping a number of value logs, a cursor restricts the time
+ * range of the query, so that retrieving a slice costs the same at any depth of the history. Since several value
+ * logs of a component may share a timestamp (e.g. if they were published on different topics), the position of the
+ * next slice is identified by the time of the last value log of a slice together with the number of value logs of
+ * that time which were returned already. The next slice then starts at this time inclusively and skips these value
+ * logs, relying on the database to return value logs of equal time in a stable order (by series).
+ * Cursors can be encoded to opaque continuation tokens that may be passed to clients.
+ */
+public final class ValueLogCursor {
+    //Prefix and separator of continuation tokens
+    private static final String TOKEN_VERSION = "2";
+    private static final String LEGACY_TOKEN_VERSION = "1";
+    private static final String TOKEN_SEPARATOR = ":";
+
+    //Order of the value logs
+    private final boolean descending;
+
+    //Time bounds in epoch nanoseconds (null if unbounded), exclusive unless value logs of the bound are skipped
+    private final Long afterNanos;
+    private final Long beforeNanos;
+
+    //Number of value logs per slice
+    private final int limit;
+
+    //Number of value logs to skip, either for requests by page number or, if the cursor continues a slice, the
+    //number of value logs at the time of its continued bound that were returned already
+    private final int offset;
+
+    /**
+     * Creates a new cursor.
+     *
+     * @param descending  True, if the value logs are supposed to be ordered from new to old; false otherwise
+     * @param afterNanos  Epoch nanoseconds after which the value logs must have been recorded (null if unbounded)
+     * @param beforeNanos Epoch nanoseconds before which the value logs must have been recorded (null if unbounded)
+     * @param limit       The maximum number of value logs per slice
+     * @param offset      The number of value logs to skip
+     */
+    private ValueLogCursor(boolean descending, Long afterNanos, Long beforeNanos, int limit, int offset) {
+        //Sanity checks
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive.");
+        } else if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative.");
+        }
+
+        this.descending = descending;
+        this.afterNanos = afterNanos;
+        this.beforeNanos = beforeNanos;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    /**
+     * Creates a cursor that points to the beginning of a time range.
+     *
+     * @param descending True, if the value logs are supposed to be ordered from new to old; false otherwise
+     * @param after      The time after which the value logs must have been recorded (null if unbounded)
+     * @param before     The time before which the value logs must have been recorded (null if unbounded)
+     * @param limit      The maximum number of value logs per slice
+     * @return The created cursor
+     */
+    public static ValueLogCursor of(boolean descending, Instant after, Instant before, int limit) {
+        return new ValueLogCursor(descending, toNanos(after), toNanos(before), limit, 0);
+    }
+
+    /**
+     * Creates a cursor that skips a certain number of value logs. This should only be used for requests by page
+     * number, since the database still needs to read all skipped value logs.
+     *
+     * @param descending True, if the value logs are supposed to be ordered from new to old; false otherwise
+     * @param limit      The maximum number of value logs per slice
+     * @param offset     The number of value logs to skip
+     * @return The created cursor
+     */
+    public static ValueLogCursor ofOffset(boolean descending, int limit, int offset) {
+        return new ValueLogCursor(descending, null, null, limit, offset);
+    }
+
+    /**
+     * Restores a cursor from a continuation token that was created by {@link #toToken()}.
+     *
+     * @param token The continuation token
+     * @param limit The maximum number of value logs per slice
+     * @return The restored cursor
+     * @throws IllegalArgumentException In case the token is invalid
+     */
+    public static ValueLogCursor fromToken(String token, int limit) {
+        //Sanity check
+        if ((token == null) || token.isEmpty()) {
+            throw new IllegalArgumentException("Continuation token must not be null or empty.");
+        }
+
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(TOKEN_SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token.");
+        }
+
+        //Tokens of the former version do not contain the number of value logs to skip
+        boolean legacy = (parts.length == 4) && parts[0].equals(LEGACY_TOKEN_VERSION);
+        if (!(legacy || ((parts.length == 5) && parts[0].equals(TOKEN_VERSION))) ||
+                !(parts[1].equals("a") || parts[1].equals("d"))) {
+            throw new IllegalArgumentException("Invalid continuation token.");
+        }
+
+        try {
+            return new ValueLogCursor(parts[1].equals("d"), parts[2].isEmpty() ? null : Long.valueOf(parts[2]),
+                    parts[3].isEmpty() ? null : Long.valueOf(parts[3]), limit,
+                    legacy ? 0 : Integer.parseInt(parts[4]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid continuation token.");
+        }
+    }
+
+    /**
+     * Encodes the cursor to an opaque continuation token. The limit is not part of the token.
+     *
+     * @return The continuation token
+     */
+    public String toToken() {
+        String token = TOKEN_VERSION + TOKEN_SEPARATOR + (descending ? "d" : "a") + TOKEN_SEPARATOR +
+                ((afterNanos == null) ? "" : afterNanos) + TOKEN_SEPARATOR +
+                ((beforeNanos == null) ? "" : beforeNanos) + TOKEN_SEPARATOR + offset;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the cursor that points to the value logs following the last value log of the current slice.
+     *
+     * @param valueLogs The value logs of the current slice
+     * @return The cursor of the next slice
+     */
+    ValueLogCursor next(List<ValueLog> valueLogs) {
+        //Sanity check
+        if ((valueLogs == null) || valueLogs.isEmpty()) {
+            throw new IllegalArgumentException("Value logs must not be null or empty.");
+        }
+
+        //Count the value logs of the slice that share the time of the last one
+        Long lastNanos = toNanos(valueLogs.get(valueLogs.size() - 1).getTime());
+        int tied = 0;
+        for (int i = valueLogs.size() - 1; (i >= 0) && lastNanos.equals(toNanos(valueLogs.get(i).getTime())); i--) {
+            tied++;
+        }
+
+        //If the whole slice shares the time of the continued bound, the value logs skipped before count as well
+        Long bound = descending ? beforeNanos : afterNanos;
+        if ((tied == valueLogs.size()) && lastNanos.equals(bound)) {
+            tied += offset;
+        }
+
+        if (descending) {
+            return new ValueLogCursor(true, afterNanos, lastNanos, limit, tied);
+        }
+        return new ValueLogCursor(false, lastNanos, beforeNanos, limit, tied);
+    }
+
+    /**
+     * Returns the InfluxQL conditions on the time that correspond to the cursor. The continued bound is inclusive
+     * if value logs of its time are skipped.
+     *
+     * @return The conditions, each of them preceded by "AND", or an empty string if the time is unbounded
+     */
+    String getTimeConditions() {
+        StringBuilder conditions = new StringBuilder();
+        if (afterNanos != null) {
+            conditions.append(((offset > 0) && !descending) ? " AND time >= " : " AND time > ").append(afterNanos);
+        }
+        if (beforeNanos != null) {
+            conditions.append(((offset > 0) && descending) ? " AND time <= " : " AND time < ").append(beforeNanos);
+        }
+        return conditions.toString();
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public Long getAfterNanos() {
+        return afterNanos;
+    }
+
+    public Long getBeforeNanos() {
+        return beforeNanos;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    private static Long toNanos(Instant instant) {
+        if (instant == null) {
+            return null;
+        }
+        return ValueLogLineProtocol.toEpochNanos(instant);
+    }
+}
@@ -0,0 +1,318 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory tier of the most recent value logs per component. For each component, the times and values of the
+ * most recently written value logs are kept in a fixed-size ring buffer of primitive arrays, ordered by time. A buffer
+ * contains all value logs of its component that were written by this application and that are more recent than the
+ * last value log it evicted, so that queries whose time window lies within this range can be answered without
+ * the database. Only the time and the value of each value log are kept; topic, component type and QoS are taken from
+ * the most recent value log of the component and messages are not available.
+ * The buffers grow on demand up to the configured depth. If the memory ceiling is reached, the buffer of the
+ * component that was written least recently is evicted.
+ */
+class ValueLogHotTier {
+    //Initial capacity of the buffers
+    private static final int INITIAL_CAPACITY = 16;
+
+    //Nanoseconds per second for time conversions
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    //Estimated memory consumption per entry and per buffer in bytes
+    private static final long BYTES_PER_ENTRY = Long.BYTES + Double.BYTES;
+    private static final long BYTES_PER_BUFFER = 128;
+
+    //Buffers per component id
+    private final Map<String, ComponentBuffer> buffers = new ConcurrentHashMap<>();
+
+    //Configuration
+    private final int depth;
+    private final int initialCapacity;
+    private final long maxBytes;
+
+    //Estimated memory consumption of all buffers
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * Creates a new hot tier.
+     *
+     * @param depth    The maximum number of value logs per component
+     * @param maxBytes The memory ceiling of all buffers in bytes
+     */
+    ValueLogHotTier(int depth, long maxBytes) {
+        //Sanity checks
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be positive.");
+        } else if (maxBytes < BYTES_PER_BUFFER + depth * BYTES_PER_ENTRY) {
+            throw new IllegalArgumentException("Memory ceiling must allow for at least one buffer.");
+        }
+
+        this.depth = depth;
+        this.initialCapacity = Math.min(INITIAL_CAPACITY, depth);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a value log to the buffer of its component.
+     *
+     * @param valueLog The value log to add
+     */
+    void add(ValueLog valueLog) {
+        String idref = valueLog.getIdref();
+        if ((idref == null) || (valueLog.getTime() == null)) {
+            return;
+        }
+
+        //Get or create buffer
+        ComponentBuffer buffer = buffers.get(idref);
+        if (buffer == null) {
+            reserve(BYTES_PER_BUFFER + initialCapacity * BYTES_PER_ENTRY);
+            ComponentBuffer newBuffer = new ComponentBuffer();
+            buffer = buffers.putIfAbsent(idref, newBuffer);
+            if (buffer == null) {
+                buffer = newBuffer;
+            } else {
+                //Created concurrently
+                newBuffer.release();
+            }
+        }
+        buffer.add(valueLog);
+    }
+
+    /**
+     * Tries to answer a query for a slice of value logs of a component from its buffer.
+     *
+     * @param idref  The id of the component
+     * @param cursor The cursor pointing to the desired slice
+     * @return The slice or null if the buffer does not contain all value logs of the requested window
+     */
+    ValueLogSlice findSlice(String idref, ValueLogCursor cursor) {
+        //Requests by page number and continuations that skip value logs of equal time are left to the database
+        if (cursor.getOffset() > 0) {
+            return null;
+        }
+
+        ComponentBuffer buffer = buffers.get(idref);
+        return (buffer == null) ? null : buffer.findSlice(idref, cursor);
+    }
+
+    /**
+     * Removes the buffer of a component.
+     *
+     * @param idref The id of the component
+     */
+    void remove(String idref) {
+        ComponentBuffer buffer = buffers.remove(idref);
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Reserves memory for a buffer, evicting the least recently written buffers as long as the ceiling is exceeded.
+     *
+     * @param bytes The number of bytes to reserve
+     */
+    private void reserve(long bytes) {
+        while ((usedBytes.addAndGet(bytes) > maxBytes) && !buffers.isEmpty()) {
+            usedBytes.addAndGet(-bytes);
+
+            //Find least recently written buffer
+            Map.Entry<String, ComponentBuffer> eldest = null;
+            for (Map.Entry<String, ComponentBuffer> entry : buffers.entrySet()) {
+                if ((eldest == null) || (entry.getValue().lastWrite < eldest.getValue().lastWrite)) {
+                    eldest = entry;
+                }
+            }
+            if ((eldest != null) && buffers.remove(eldest.getKey(), eldest.getValue())) {
+                eldest.getValue().release();
+            }
+        }
+    }
+
+    /**
+     * Ring buffer holding the most recent value logs of a single component, ordered by time.
+     */
+    private final class ComponentBuffer {
+        //Times (epoch nanoseconds) and values
+        private long[] times = new long[initialCapacity];
+        private double[] values = new double[initialCapacity];
+
+        //Index of the oldest entry and number of entries
+        private int head = 0;
+        private int size = 0;
+
+        //All value logs more recent than this time (epoch nanoseconds) are contained
+        private long completeAfter = Long.MAX_VALUE;
+
+        //Properties of the most recent value log
+        private String component;
+        private String topic;
+        private Integer qos;
+
+        //Time of the most recent write (for eviction)
+        private volatile long lastWrite = System.nanoTime();
+
+        //Estimated memory consumption and whether the buffer was evicted and its memory released
+        private final AtomicLong allocatedBytes =
+                new AtomicLong(BYTES_PER_BUFFER + initialCapacity * BYTES_PER_ENTRY);
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        synchronized void add(ValueLog valueLog) {
+            if (released.get()) {
+                return;
+            }
+
+            long time = ValueLogLineProtocol.toEpochNanos(valueLog.getTime());
+
+            //The buffer only covers value logs more recent than the first or last evicted one
+            if (completeAfter == Long.MAX_VALUE) {
+                completeAfter = time - 1;
+            } else if (time <= completeAfter) {
+                return;
+            }
+
+            //Make room by growing or evicting the oldest entry
+            if (size == times.length) {
+                if (times.length < depth) {
+                    grow();
+                    if (released.get()) {
+                        return;
+                    }
+                } else {
+                    completeAfter = Math.max(completeAfter, times[head]);
+                    head = (head + 1) % times.length;
+                    size--;
+                    if (time <= completeAfter) {
+                        return;
+                    }
+                }
+            }
+
+            //Insert ordered by time, usually at the end
+            int position = size;
+            while ((position > 0) && (times[index(position - 1)] > time)) {
+                times[index(position)] = times[index(position - 1)];
+                values[index(position)] = values[index(position - 1)];
+                position--;
+            }
+            times[index(position)] = time;
+            values[index(position)] = valueLog.getValue();
+            size++;
+
+            component = valueLog.getComponent();
+            topic = valueLog.getTopic();
+            qos = valueLog.getQos();
+            lastWrite = System.nanoTime();
+        }
+
+        synchronized ValueLogSlice findSlice(String idref, ValueLogCursor cursor) {
+            if (released.get() || (size == 0)) {
+                return null;
+            }
+
+            long lower = (cursor.getAfterNanos() == null) ? Long.MIN_VALUE : cursor.getAfterNanos();
+            long upper = (cursor.getBeforeNanos() == null) ? Long.MAX_VALUE : cursor.getBeforeNanos();
+            int limit = cursor.getLimit();
+            List<ValueLog> valueLogs = new ArrayList<>(Math.min(limit, size));
+
+            if (cursor.isDescending()) {
+                //Walk from new to old
+                int position = size - 1;
+                while ((position >= 0) && (times[index(position)] >= upper)) {
+                    position--;
+                }
+                while ((position >= 0) && (times[index(position)] > lower) && (valueLogs.size() <= limit)) {
+                    valueLogs.add(toValueLog(idref, position));
+                    position--;
+                }
+
+                //Without a full slice, the window must lie within the covered range
+                if ((valueLogs.size() <= limit) && (lower < completeAfter)) {
+                    return null;
+                }
+            } else {
+                //The window must start within the covered range
+                if (lower < completeAfter) {
+                    return null;
+                }
+
+                //Walk from old to new
+                int position = 0;
+                while ((position < size) && (times[index(position)] <= lower)) {
+                    position++;
+                }
+                while ((position < size) && (times[index(position)] < upper) && (valueLogs.size() <= limit)) {
+                    valueLogs.add(toValueLog(idref, position));
+                    position++;
+                }
+            }
+
+            //Check whether further value logs are available
+            if (valueLogs.size() <= limit) {
+                return new ValueLogSlice(valueLogs, null);
+            }
+            valueLogs.remove(limit);
+            return new ValueLogSlice(valueLogs, cursor.next(valueLogs).toToken());
+        }
+
+        /**
+         * Marks the buffer as evicted and releases its memory. This does not lock the buffer, since it may be called
+         * while another buffer is locked.
+         */
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                usedBytes.addAndGet(-allocatedBytes.getAndSet(0));
+            }
+        }
+
+        private ValueLog toValueLog(String idref, int position) {
+            long time = times[index(position)];
+            ValueLog valueLog = new ValueLog();
+            valueLog.setTime(Instant.ofEpochSecond(Math.floorDiv(time, NANOS_PER_SECOND),
+                    Math.floorMod(time, NANOS_PER_SECOND)));
+            valueLog.setValue(values[index(position)]);
+            valueLog.setIdref(idref);
+            valueLog.setComponent(component);
+            valueLog.setTopic(topic);
+            valueLog.setQos(qos);
+            return valueLog;
+        }
+
+        private void grow() {
+            int capacity = Math.min(depth, times.length * 2);
+            long additionalBytes = (capacity - times.length) * BYTES_PER_ENTRY;
+            reserve(additionalBytes);
+            allocatedBytes.addAndGet(additionalBytes);
+
+            //Check whether the buffer was evicted meanwhile
+            if (released.get()) {
+                usedBytes.addAndGet(-allocatedBytes.getAndSet(0));
+                return;
+            }
+
+            long[] newTimes = new long[capacity];
+            double[] newValues = new double[capacity];
+            for (int i = 0; i < size; i++) {
+                newTimes[i] = times[index(i)];
+                newValues[i] = values[index(i)];
+            }
+            times = newTimes;
+            values = newValues;
+            head = 0;
+        }
+
+        private int index(int position) {
+            return (head + position) % times.length;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.InfluxDBConfiguration;
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes value logs directly into the line protocol of InfluxDB, without the reflection-based mapping of the
+ * InfluxDB client. Points of the current measurement carry the component type, the component id and the topic as
+ * tags (in lexicographic order of their keys, as preferred by InfluxDB); points of the former measurement store all
+ * properties as fields. Times are written in nanoseconds. Messages are only written on request, since they are
+ * by far the biggest part of a point and are rarely used.
+ */
+final class ValueLogLineProtocol {
+    //Measurement names, escaped for the line protocol
+    private static final String MEASUREMENT = escapeKey(InfluxDBConfiguration.MEASUREMENT_NAME);
+    private static final String LEGACY_MEASUREMENT = escapeKey(InfluxDBConfiguration.LEGACY_MEASUREMENT_NAME);
+
+    private ValueLogLineProtocol() {
+
+    }
+
+    /**
+     * Checks whether a value log can be represented in line protocol, which does not support non-finite values.
+     *
+     * @param valueLog The value log to check
+     * @return True, if the value log can be encoded; false otherwise
+     */
+    static boolean isEncodable(ValueLog valueLog) {
+        return (valueLog.getTime() != null) && !Double.isNaN(valueLog.getValue())
+                && !Double.isInfinite(valueLog.getValue());
+    }
+
+    /**
+     * Appends the line of a value log for the current measurement.
+     *
+     * @param builder      The builder to append to
+     * @param valueLog     The value log to encode
+     * @param writeMessage Whether the message of the value log is supposed to be written
+     */
+    static void appendLine(StringBuilder builder, ValueLog valueLog, boolean writeMessage) {
+        builder.append(MEASUREMENT);
+        appendTag(builder, "component", valueLog.getComponent());
+        appendTag(builder, "idref", valueLog.getIdref());
+        appendTag(builder, "topic", valueLog.getTopic());
+
+        builder.append(" value=").append(valueLog.getValue());
+        if (valueLog.getQos() != null) {
+            builder.append(",qos=").append(valueLog.getQos()).append('i');
+        }
+        if (writeMessage) {
+            appendStringField(builder, "message", valueLog.getMessage());
+        }
+
+        appendTime(builder, valueLog.getTime());
+    }
+
+    /**
+     * Appends the line of a value log for the former measurement, in which all properties are fields.
+     *
+     * @param builder      The builder to append to
+     * @param valueLog     The value log to encode
+     * @param writeMessage Whether the message of the value log is supposed to be written
+     */
+    static void appendLegacyLine(StringBuilder builder, ValueLog valueLog, boolean writeMessage) {
+        builder.append(LEGACY_MEASUREMENT);
+
+        builder.append(" value=").append(valueLog.getValue());
+        if (valueLog.getQos() != null) {
+            builder.append(",qos=").append(valueLog.getQos()).append('i');
+        }
+        appendStringField(builder, "topic", valueLog.getTopic());
+        if (writeMessage) {
+            appendStringField(builder, "message", valueLog.getMessage());
+        }
+        appendStringField(builder, "idref", valueLog.getIdref());
+        appendStringField(builder, "component", valueLog.getComponent());
+
+        appendTime(builder, valueLog.getTime());
+    }
+
+    private static void appendTag(StringBuilder builder, String key, String value) {
+        //Empty tag values are not permitted
+        if ((value == null) || value.isEmpty()) {
+            return;
+        }
+        builder.append(',').append(key).append('=');
+        appendEscaped(builder, value, false);
+    }
+
+    private static void appendStringField(StringBuilder builder, String key, String value) {
+        if (value == null) {
+            return;
+        }
+        builder.append(',').append(key).append("=\"");
+        appendEscaped(builder, value, true);
+        builder.append('"');
+    }
+
+    /**
+     * Converts an instant to nanoseconds since epoch, as used for times in line protocol and InfluxQL.
+     *
+     * @param instant The instant to convert
+     * @return The nanoseconds since epoch
+     */
+    static long toEpochNanos(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
+
+    private static void appendTime(StringBuilder builder, Instant time) {
+        builder.append(' ').append(toEpochNanos(time)).append('\n');
+    }
+
+    /**
+     * Appends a string with the escaping that is required for tag values or string field values.
+     *
+     * @param builder     The builder to append to
+     * @param value       The string to append
+     * @param stringField True, if the string is the value of a string field; false if it is a tag value
+     */
+    private static void appendEscaped(StringBuilder builder, String value, boolean stringField) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n') {
+                //Line breaks would terminate the point
+                builder.append("\\n");
+                continue;
+            }
+            if (stringField ? ((c == '"') || (c == '\\')) : ((c == ',') || (c == '=') || (c == ' '))) {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+    }
+
+    private static String escapeKey(String key) {
+        return key.replace(",", "\\,").replace(" ", "\\ ");
+    }
+}
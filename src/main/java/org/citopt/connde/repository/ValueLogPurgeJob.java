@@ -0,0 +1,124 @@
+package org.citopt.connde.repository;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Objects of this class describe a job that purges all value logs of one or several components from the database.
+ * The jobs are executed asynchronously by the {@link ValueLogRepository}, which updates their state and progress.
+ * They can be used as DTOs in order to report the status of a purge to the client.
+ */
+public class ValueLogPurgeJob {
+    /**
+     * Enumeration of the states of a purge job.
+     */
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final List<String> idrefs;
+    private final Instant created;
+    private volatile State state = State.QUEUED;
+    private volatile int purged = 0;
+    private volatile Instant started;
+    private volatile Instant finished;
+    private volatile String error;
+
+    /**
+     * Creates a new purge job for the value logs of a list of components.
+     *
+     * @param idrefs The ids of the components whose value logs are supposed to be purged
+     */
+    ValueLogPurgeJob(List<String> idrefs) {
+        this.id = UUID.randomUUID().toString();
+        this.idrefs = Collections.unmodifiableList(idrefs);
+        this.created = Instant.now();
+    }
+
+    /**
+     * Marks the job as running.
+     */
+    void start() {
+        this.started = Instant.now();
+        this.state = State.RUNNING;
+    }
+
+    /**
+     * Records that the value logs of one more component have been purged.
+     */
+    void componentPurged() {
+        this.purged++;
+    }
+
+    /**
+     * Marks the job as completed.
+     */
+    void complete() {
+        this.finished = Instant.now();
+        this.state = State.COMPLETED;
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param error A message describing the failure
+     */
+    void fail(String error) {
+        this.error = error;
+        this.finished = Instant.now();
+        this.state = State.FAILED;
+    }
+
+    /**
+     * Returns whether the job has finished, either successfully or not.
+     *
+     * @return True, if the job has finished; false otherwise
+     */
+    public boolean isFinished() {
+        return (state == State.COMPLETED) || (state == State.FAILED);
+    }
+
+    /**
+     * Returns the progress of the job as fraction of the components whose value logs have been purged.
+     *
+     * @return The progress between 0 and 1
+     */
+    public double getProgress() {
+        return idrefs.isEmpty() ? 1 : purged / (double) idrefs.size();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<String> getIdrefs() {
+        return idrefs;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getPurged() {
+        return purged;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public Instant getStarted() {
+        return started;
+    }
+
+    public Instant getFinished() {
+        return finished;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
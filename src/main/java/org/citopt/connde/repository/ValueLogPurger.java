@@ -0,0 +1,228 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.InfluxDBConfiguration;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Executes jobs that purge the value logs of components from the database. Since the component id is a tag, all
+ * value logs of a component form series of their own, which are dropped as a whole, including the downsampled
+ * buckets of the rollup tiers. This removes the series from the index of the database as well, so that its
+ * cardinality does not grow with deleted components.
+ * The jobs are executed one after another by a background thread, each of them only after a delay that allows the
+ * value logs still waiting in the write buffer to be written before. The purges are recorded in the database, so
+ * that the schema migration does not copy value logs of the former measurement whose series were dropped meanwhile.
+ * Finished jobs are kept up to a certain number for status requests; jobs that did not finish before the application
+ * shuts down are discarded.
+ */
+class ValueLogPurger {
+    //Name of the purge thread
+    private static final String THREAD_NAME = "value-log-purge";
+
+    //Names of the tag and column of the purge measurement
+    private static final String IDREF_TAG = "idref";
+    private static final String JOB_COLUMN = "job";
+    private static final String TIME_COLUMN = "time";
+
+    //InfluxDB bean to use
+    private final InfluxDB influxDB;
+
+    //Called with the id of each component whose value logs were purged
+    private final Consumer<String> purgeListener;
+
+    //Configuration
+    private final long delayMillis;
+    private final int historySize;
+
+    //Executor of the jobs
+    private final ExecutorService executor;
+
+    //Jobs by id, in the order of their submission
+    private final Map<String, ValueLogPurgeJob> jobs = new LinkedHashMap<>();
+
+    /**
+     * Creates a new purger.
+     *
+     * @param influxDB      The InfluxDB bean to use
+     * @param purgeListener Called with the id of each component whose value logs were purged
+     * @param delayMillis   The time between the submission and the execution of a job (in milliseconds)
+     * @param historySize   The maximum number of finished jobs to keep
+     */
+    ValueLogPurger(InfluxDB influxDB, Consumer<String> purgeListener, long delayMillis, int historySize) {
+        //Sanity checks
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Delay must not be negative.");
+        } else if (historySize < 0) {
+            throw new IllegalArgumentException("History size must not be negative.");
+        }
+
+        this.influxDB = influxDB;
+        this.purgeListener = purgeListener;
+        this.delayMillis = delayMillis;
+        this.historySize = historySize;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a job that purges the value logs of a list of components.
+     *
+     * @param idrefs The ids of the components
+     * @return The submitted job
+     */
+    ValueLogPurgeJob submit(List<String> idrefs) {
+        ValueLogPurgeJob job = new ValueLogPurgeJob(new ArrayList<>(idrefs));
+
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+
+            //Forget the oldest finished jobs
+            int finishedCount = 0;
+            for (ValueLogPurgeJob existingJob : jobs.values()) {
+                if (existingJob.isFinished()) {
+                    finishedCount++;
+                }
+            }
+            Iterator<ValueLogPurgeJob> iterator = jobs.values().iterator();
+            while ((finishedCount > historySize) && iterator.hasNext()) {
+                if (iterator.next().isFinished()) {
+                    iterator.remove();
+                    finishedCount--;
+                }
+            }
+        }
+
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            job.fail("Application is shutting down.");
+        }
+        return job;
+    }
+
+    /**
+     * Returns the job with a certain id.
+     *
+     * @param id The id of the job
+     * @return The job or null if there is no such job
+     */
+    ValueLogPurgeJob getJob(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * Returns all jobs that are queued, running or were finished recently, in the order of their submission.
+     *
+     * @return The list of jobs
+     */
+    List<ValueLogPurgeJob> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * Returns the times at which the value logs of components were purged.
+     *
+     * @return The time of the most recent purge (epoch milliseconds) per component id
+     */
+    Map<String, Long> readPurgeTimes() {
+        Map<String, Long> purgeTimes = new HashMap<>();
+        Query query = new Query("SELECT \"" + JOB_COLUMN + "\" FROM " +
+                ValueLogRepository.getMeasurementReference(InfluxDBConfiguration.PURGE_MEASUREMENT_NAME) +
+                " GROUP BY \"" + IDREF_TAG + "\"", InfluxDBConfiguration.DATABASE_NAME);
+        QueryResult queryResult = influxDB.query(query, TimeUnit.MILLISECONDS);
+        if (queryResult.getResults() == null) {
+            return purgeTimes;
+        }
+
+        for (QueryResult.Result result : queryResult.getResults()) {
+            if (result.getSeries() == null) {
+                continue;
+            }
+            for (QueryResult.Series series : result.getSeries()) {
+                String idref = series.getTags().get(IDREF_TAG);
+                int timeColumn = series.getColumns().indexOf(TIME_COLUMN);
+                for (List<Object> row : series.getValues()) {
+                    purgeTimes.merge(idref, ((Number) row.get(timeColumn)).longValue(), Math::max);
+                }
+            }
+        }
+        return purgeTimes;
+    }
+
+    /**
+     * Stops the purge thread when the application shuts down. Queued jobs are discarded.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Executes a job.
+     *
+     * @param job The job to execute
+     */
+    private void run(ValueLogPurgeJob job) {
+        try {
+            //Wait for buffered value logs of the components to be written
+            long waitMillis = job.getCreated().toEpochMilli() + delayMillis - System.currentTimeMillis();
+            if (waitMillis > 0) {
+                Thread.sleep(waitMillis);
+            }
+
+            job.start();
+            for (String idref : job.getIdrefs()) {
+                purge(job, idref);
+                job.componentPurged();
+            }
+            job.complete();
+        } catch (InterruptedException e) {
+            job.fail("Purge was interrupted.");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            job.fail(e.getMessage());
+            System.err.println("Failed to purge value logs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Purges the value logs of a single component.
+     *
+     * @param job   The job that purges the value logs
+     * @param idref The id of the component
+     */
+    private void purge(ValueLogPurgeJob job, String idref) {
+        //Record the purge before, so that the migration stops copying value logs of the component
+        Point point = Point.measurement(InfluxDBConfiguration.PURGE_MEASUREMENT_NAME)
+                .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                .tag(IDREF_TAG, idref)
+                .addField(JOB_COLUMN, job.getId())
+                .build();
+        influxDB.write(InfluxDBConfiguration.DATABASE_NAME, InfluxDBConfiguration.RETENTION_POLICY_NAME, point);
+
+        //Drop the series of the component in all retention policies
+        QueryResult result = influxDB.query(new Query("DROP SERIES FROM \"" +
+                InfluxDBConfiguration.MEASUREMENT_NAME + "\" WHERE \"" + IDREF_TAG + "\"='" + idref + "'",
+                InfluxDBConfiguration.DATABASE_NAME));
+        if (result.hasError()) {
+            throw new IllegalStateException(result.getError());
+        }
+
+        purgeListener.accept(idref);
+    }
+}
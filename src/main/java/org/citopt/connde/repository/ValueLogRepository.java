@@ -4,42 +4,172 @@ import org.citopt.connde.InfluxDBConfiguration;
 import org.citopt.connde.domain.valueLog.ValueLog;
 import org.influxdb.InfluxDB;
 import org.influxdb.dto.Query;
-import org.influxdb.impl.InfluxDBMapper;
-import org.influxdb.querybuilder.SelectQueryImpl;
+import org.influxdb.dto.QueryResult;
+import org.influxdb.impl.InfluxDBResultMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.influxdb.querybuilder.BuiltQuery.QueryBuilder.*;
 
 /**
  * This component represents a repository for persisting and querying value logs, powered by a InfluxDB database.
+ * While the value logs of the former schema are migrated by the {@link ValueLogSchemaMigration}, the repository runs
+ * in legacy mode: value logs are written to both measurements and read from the former one, which is complete
+ * until the migration has finished.
+ * Value logs are written behind by a buffer that sends them to the database in batches, so that they become
+ * visible to queries after the next flush. Complete series of value logs are only available as streams that are
+ * retrieved in chunks, so that queries over long histories require a bounded amount of memory.
+ * Value logs of components are deleted by jobs that purge them asynchronously.
  */
 @Component
+@PropertySource(value = "classpath:application.properties")
 public class ValueLogRepository {
+    //Name of the value column
+    private static final String VALUE_COLUMN = "value";
+
+    //Selectors for the remarkable value logs of summaries and how to reduce their results of several series
+    private static final String[] SUMMARY_SELECTORS = {"FIRST", "LAST", "MIN", "MAX"};
+    private static final List<BinaryOperator<ValueLog>> SUMMARY_REDUCERS = Arrays.asList(
+            (a, b) -> b.getTime().isBefore(a.getTime()) ? b : a,
+            (a, b) -> b.getTime().isAfter(a.getTime()) ? b : a,
+            (a, b) -> ((b.getValue() < a.getValue()) ||
+                    ((b.getValue() == a.getValue()) && b.getTime().isBefore(a.getTime()))) ? b : a,
+            (a, b) -> ((b.getValue() > a.getValue()) ||
+                    ((b.getValue() == a.getValue()) && b.getTime().isBefore(a.getTime()))) ? b : a);
+
     //InfluxDB bean to use
     private InfluxDB influxDB;
 
-    //Derived mapper for mapping value log objects
-    private InfluxDBMapper influxDBMapper;
+    //Buffer for writing value logs
+    private ValueLogWriteBuffer writeBuffer;
+
+    //In-memory tier of the most recent value logs per component (may be null)
+    private ValueLogHotTier hotTier;
+
+    //Executor of the jobs that purge the value logs of components
+    private ValueLogPurger purger;
+
+    //Listeners that are notified about components whose value logs were purged
+    private final List<Consumer<String>> purgeListeners = new CopyOnWriteArrayList<>();
+
+    //Mapper for mapping query results to value log objects
+    private InfluxDBResultMapper resultMapper = new InfluxDBResultMapper();
+
+    //Configuration of chunked queries
+    private final int queryChunkSize;
+    private final int queryPrefetch;
+    private final long queryTimeoutMillis;
+    private final int maxBuckets;
+
+    //Whether the migration to the current schema is in progress
+    private volatile boolean legacyMode = false;
+
+    //Tiers of downsampled value logs, ordered from fine to coarse resolution
+    private volatile List<ValueLogRollupTier> rollupTiers = Collections.emptyList();
 
     /**
      * Instantiates the repository by passing a reference to the InfluxDB database bean
      * that is supposed to be used (auto-wired).
      *
-     * @param influxDB The InfluxDB database bean
+     * @param influxDB        The InfluxDB database bean
+     * @param bufferCapacity  The maximum number of value logs that may wait for being written
+     * @param batchSize       The number of buffered value logs that triggers a write
+     * @param flushIntervalMs The maximum time between two writes (in milliseconds)
+     * @param writeMessages   Whether the received messages are supposed to be stored with the value logs
+     * @param spoolEnabled    Whether value logs that cannot be written are supposed to be spooled to local disk
+     * @param spoolDirectory  The directory for the spool files
+     * @param segmentSize     The size of each spool file in bytes
+     * @param maxSegments     The maximum number of spool files
+     * @param replayRate      The maximum number of spooled value logs to replay per second
+     * @param queryChunkSize  The number of value logs per chunk of streaming queries
+     * @param queryPrefetch   The number of chunks that streaming queries may receive ahead of the consumer
+     * @param queryTimeoutMs  The maximum time to wait for the next chunk of a streaming query (in milliseconds)
+     * @param maxBuckets      The maximum number of time buckets of aggregation queries
+     * @param hotTierEnabled  Whether the most recent value logs per component are supposed to be kept in memory
+     * @param hotTierDepth    The maximum number of value logs per component to keep in memory
+     * @param hotTierMaxBytes The memory ceiling of the in-memory value logs in bytes
+     * @param purgeDelayMs    The time between the request and the execution of a purge (in milliseconds)
+     * @param purgeHistory    The maximum number of finished purge jobs to keep for status requests
      */
     @Autowired
-    private ValueLogRepository(InfluxDB influxDB) {
+    private ValueLogRepository(InfluxDB influxDB,
+                               @Value("${influxdb.write-buffer.capacity:100000}") int bufferCapacity,
+                               @Value("${influxdb.write-buffer.batch-size:5000}") int batchSize,
+                               @Value("${influxdb.write-buffer.flush-interval-ms:1000}") long flushIntervalMs,
+                               @Value("${influxdb.write-buffer.write-messages:false}") boolean writeMessages,
+                               @Value("${influxdb.spool.enabled:true}") boolean spoolEnabled,
+                               @Value("${influxdb.spool.directory:${java.io.tmpdir}/mbp/spool}") String spoolDirectory,
+                               @Value("${influxdb.spool.segment-size:67108864}") int segmentSize,
+                               @Value("${influxdb.spool.max-segments:16}") int maxSegments,
+                               @Value("${influxdb.spool.replay-rate:10000}") int replayRate,
+                               @Value("${influxdb.query.chunk-size:10000}") int queryChunkSize,
+                               @Value("${influxdb.query.prefetch:2}") int queryPrefetch,
+                               @Value("${influxdb.query.timeout-ms:60000}") long queryTimeoutMs,
+                               @Value("${influxdb.query.max-buckets:10000}") int maxBuckets,
+                               @Value("${influxdb.hot-tier.enabled:true}") boolean hotTierEnabled,
+                               @Value("${influxdb.hot-tier.depth:1024}") int hotTierDepth,
+                               @Value("${influxdb.hot-tier.max-bytes:67108864}") long hotTierMaxBytes,
+                               @Value("${influxdb.purge.delay-ms:2000}") long purgeDelayMs,
+                               @Value("${influxdb.purge.history-size:100}") int purgeHistory) {
+        //Sanity checks
+        if (queryChunkSize < 1) {
+            throw new IllegalArgumentException("Query chunk size must be positive.");
+        } else if (queryPrefetch < 1) {
+            throw new IllegalArgumentException("Query prefetch must be positive.");
+        } else if (queryTimeoutMs < 1) {
+            throw new IllegalArgumentException("Query timeout must be positive.");
+        } else if (maxBuckets < 1) {
+            throw new IllegalArgumentException("Maximum number of buckets must be positive.");
+        }
+
         this.influxDB = influxDB;
+        this.queryChunkSize = queryChunkSize;
+        this.queryPrefetch = queryPrefetch;
+        this.queryTimeoutMillis = queryTimeoutMs;
+        this.maxBuckets = maxBuckets;
+
+        //Create spool, continue without if not possible
+        ValueLogSpool spool = null;
+        if (spoolEnabled) {
+            try {
+                spool = new ValueLogSpool(influxDB, Paths.get(spoolDirectory), segmentSize, maxSegments, replayRate);
+            } catch (IOException e) {
+                System.err.println("Failed to open value log spool: " + e.getMessage());
+            }
+        }
+
+        //Create write buffer
+        this.writeBuffer = new ValueLogWriteBuffer(influxDB, () -> legacyMode, spool, bufferCapacity, batchSize,
+                flushIntervalMs, writeMessages);
+
+        //Create hot tier if desired
+        if (hotTierEnabled) {
+            this.hotTier = new ValueLogHotTier(hotTierDepth, hotTierMaxBytes);
+        }
 
-        //Create object mapper from influxDB instance
-        this.influxDBMapper = new InfluxDBMapper(influxDB);
+        //Create purger that also removes purged value logs from memory and notifies the listeners
+        this.purger = new ValueLogPurger(influxDB, idref -> {
+            if (hotTier != null) {
+                hotTier.remove(idref);
+            }
+            purgeListeners.forEach(listener -> listener.accept(idref));
+        }, purgeDelayMs, purgeHistory);
     }
 
     /**
@@ -48,117 +178,625 @@ public class ValueLogRepository {
      * @param valueLog The value log to write
      */
     public void write(ValueLog valueLog) {
-        //Just save the value log
-        influxDBMapper.save(valueLog);
+        //Pass the value log to the buffer and keep it in memory if accepted
+        if (writeBuffer.add(valueLog) && (hotTier != null)) {
+            hotTier.add(valueLog);
+        }
     }
 
     /**
-     * Finds and returns a list of value logs that match a certain id reference of a component.
+     * Writes a list of value logs into the repository.
+     *
+     * @param valueLogs The list of value logs to write
+     */
+    public void writeAll(List<ValueLog> valueLogs) {
+        //Sanity check
+        if (valueLogs == null) {
+            throw new IllegalArgumentException("Value logs must not be null.");
+        }
+
+        for (ValueLog valueLog : valueLogs) {
+            write(valueLog);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters and latency figures of the buffer that writes the value logs.
+     *
+     * @return The write metrics
+     */
+    public ValueLogWriteMetrics getWriteMetrics() {
+        return writeBuffer.getMetrics();
+    }
+
+    /**
+     * Writes the remaining buffered value logs when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        purger.shutdown();
+        writeBuffer.shutdown();
+    }
+
+    /**
+     * Streams all value logs that match a certain id reference of a component in chronological order. The value logs
+     * are retrieved from the database in chunks while the stream is consumed, so that only a few chunks are held in
+     * memory at a time. The stream must be closed after use.
      *
      * @param idref The idref to match
-     * @return The requested list of value logs
+     * @return The stream of value logs
      */
-    public List<ValueLog> findAllByIdRef(String idref) {
+    public Stream<ValueLog> streamAllByIdRef(String idref) {
+        return streamAllByIdRef(idref, null, null);
+    }
+
+    /**
+     * Streams all value logs that match a certain id reference of a component and that were recorded within a time
+     * range in chronological order. The value logs are retrieved from the database in chunks while the stream is
+     * consumed. The stream must be closed after use.
+     *
+     * @param idref The idref to match
+     * @param from  The begin of the time range (inclusive, null if unbounded)
+     * @param to    The end of the time range (exclusive, null if unbounded)
+     * @return The stream of value logs
+     */
+    public Stream<ValueLog> streamAllByIdRef(String idref, Instant from, Instant to) {
         //Sanity check
         if ((idref == null) || idref.isEmpty()) {
             throw new IllegalArgumentException("Idref must not be null or empty.");
         }
 
-        //Build query
-        Query query = select().all().from(InfluxDBConfiguration.DATABASE_NAME, getMeasurementReference())
-                .where("idref='" + idref + "'");
+        //Determine measurement to read from
+        String measurementName = getReadMeasurementName();
 
-        //Execute query and get list of value logs
-        List<ValueLog> valueLogs = influxDBMapper.query(query, ValueLog.class);
+        //Build and execute query
+        Query query = select().all().from(InfluxDBConfiguration.DATABASE_NAME, getMeasurementReference(measurementName))
+                .where("idref='" + idref + "'" + getTimeConditions(from, to));
+        ChunkedQuery chunkedQuery = openChunkedQuery(query);
 
-        return valueLogs;
+        //Map the chunks to value logs one after another
+        Iterator<ValueLog> iterator = new Iterator<ValueLog>() {
+            private Iterator<ValueLog> chunkIterator = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!chunkIterator.hasNext()) {
+                    QueryResult chunk = chunkedQuery.next();
+                    if (chunk == null) {
+                        return false;
+                    }
+                    chunkIterator = resultMapper.toPOJO(chunk, ValueLog.class, measurementName).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public ValueLog next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunkIterator.next();
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(chunkedQuery::close);
     }
 
     /**
-     * Finds and returns a page of value logs that match a certain id reference of a component.
+     * Streams the values of all value logs that match a certain id reference of a component in chronological order.
+     * Only the values are retrieved from the database, in chunks while the stream is consumed, and they are never
+     * boxed. The stream must be closed after use.
      *
-     * @param idref    The idref to match
-     * @param pageable The pageable describing the desired page of value logs
-     * @return The requested page of value logs
+     * @param idref The idref to match
+     * @return The stream of values
      */
-    public Page<ValueLog> findAllByIdRef(String idref, Pageable pageable) {
+    public DoubleStream streamValuesByIdRef(String idref) {
         //Sanity check
         if ((idref == null) || idref.isEmpty()) {
             throw new IllegalArgumentException("Idref must not be null or empty.");
         }
 
-        //Get limit and offset from pageable
-        int limit = pageable.getPageSize();
-        int offset = pageable.getOffset();
-
-        //Build query
-        SelectQueryImpl selectQuery = select().all().from(InfluxDBConfiguration.DATABASE_NAME, getMeasurementReference());
+        //Build and execute query
+        Query query = select(VALUE_COLUMN).from(InfluxDBConfiguration.DATABASE_NAME,
+                getMeasurementReference(getReadMeasurementName())).where("idref='" + idref + "'");
+        ChunkedQuery chunkedQuery = openChunkedQuery(query);
 
-        //Get desired sort option from pageable
-        Sort sort = pageable.getSort();
+        //Copy the values of each chunk into a reusable array
+        PrimitiveIterator.OfDouble iterator = new PrimitiveIterator.OfDouble() {
+            private double[] values = new double[0];
+            private int count = 0;
+            private int index = 0;
 
-        //Iterate over all specified sort properties
-        for (Sort.Order order : sort) {
-            String property = order.getProperty();
+            @Override
+            public boolean hasNext() {
+                while (index >= count) {
+                    QueryResult chunk = chunkedQuery.next();
+                    if (chunk == null) {
+                        return false;
+                    }
+                    readValues(chunk);
+                }
+                return true;
+            }
 
-            //Only sorting for time property is supported, thus ignore the other ones
-            if (!property.equals("time")) {
-                continue;
+            @Override
+            public double nextDouble() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return values[index++];
             }
 
-            //Extend query for ordering with the chosen direction
-            if (order.isAscending()) {
-                selectQuery = selectQuery.orderBy(asc());
-            } else {
-                selectQuery = selectQuery.orderBy(desc());
+            private void readValues(QueryResult chunk) {
+                count = 0;
+                index = 0;
+                for (QueryResult.Result result : chunk.getResults()) {
+                    if (result.getSeries() == null) {
+                        continue;
+                    }
+                    for (QueryResult.Series series : result.getSeries()) {
+                        int column = series.getColumns().indexOf(VALUE_COLUMN);
+                        for (List<Object> row : series.getValues()) {
+                            Object value = row.get(column);
+                            if (!(value instanceof Number)) {
+                                continue;
+                            }
+                            if (count == values.length) {
+                                values = Arrays.copyOf(values, Math.max(16, count * 2));
+                            }
+                            values[count++] = ((Number) value).doubleValue();
+                        }
+                    }
+                }
             }
+        };
+
+        return StreamSupport.doubleStream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(chunkedQuery::close);
+    }
 
-            //Only ordering for time is supported, so no need to consider other properties
-            break;
+    /**
+     * Finds and returns a slice of value logs that match a certain id reference of a component, starting at the
+     * position of a given cursor. Unless the cursor skips value logs, the time range of the query is restricted
+     * instead of skipping value logs, so that retrieving a slice costs the same at any depth of the history.
+     * Slices of recent value logs are answered from the hot tier without querying the database, as long as it
+     * contains all value logs of the requested window.
+     *
+     * @param idref  The idref to match
+     * @param cursor The cursor pointing to the desired slice
+     * @return The requested slice of value logs, including a continuation token for the next slice if available
+     */
+    public ValueLogSlice findSliceByIdRef(String idref, ValueLogCursor cursor) {
+        //Sanity checks
+        if ((idref == null) || idref.isEmpty()) {
+            throw new IllegalArgumentException("Idref must not be null or empty.");
+        } else if (cursor == null) {
+            throw new IllegalArgumentException("Cursor must not be null.");
         }
 
-        //Add limit and offset if meaningful
-        if ((offset > 0) && (limit > 0)) {
-            selectQuery = selectQuery.limit(limit, offset);
-        } else if (limit > 0) {
-            selectQuery = selectQuery.limit(limit);
+        //Answer from memory if the requested window is covered by the hot tier
+        if (hotTier != null) {
+            ValueLogSlice slice = hotTier.findSlice(idref, cursor);
+            if (slice != null) {
+                return slice;
+            }
         }
 
-        //Add where clause in order to filter for idref
-        Query query = selectQuery.where("idref='" + idref + "'");
+        //Determine measurement to read from
+        String measurementName = getReadMeasurementName();
+
+        //Build query, requesting one additional value log in order to find out whether further ones are available
+        StringBuilder queryBuilder = new StringBuilder("SELECT * FROM ").append(getMeasurementReference(measurementName))
+                .append(" WHERE idref='").append(idref).append("'").append(cursor.getTimeConditions())
+                .append(" ORDER BY time ").append(cursor.isDescending() ? "DESC" : "ASC")
+                .append(" LIMIT ").append(cursor.getLimit() + 1);
+        if (cursor.getOffset() > 0) {
+            queryBuilder.append(" OFFSET ").append(cursor.getOffset());
+        }
+        Query query = new Query(queryBuilder.toString(), InfluxDBConfiguration.DATABASE_NAME);
 
         //Execute query
-        List<ValueLog> valueLogs = influxDBMapper.query(query, ValueLog.class);
+        List<ValueLog> valueLogs = resultMapper.toPOJO(influxDB.query(query), ValueLog.class, measurementName);
 
-        //Return value logs as page
-        return new PageImpl<>(valueLogs, pageable, valueLogs.size());
+        //Check whether further value logs are available
+        if (valueLogs.size() <= cursor.getLimit()) {
+            return new ValueLogSlice(valueLogs, null);
+        }
+
+        //Remove additional value log and continue after the last one of the slice
+        valueLogs = valueLogs.subList(0, cursor.getLimit());
+        return new ValueLogSlice(new ArrayList<>(valueLogs), cursor.next(valueLogs).toToken());
     }
 
-    public void deleteByIdRef(String idref) {
-        //TODO Does not work
-        //Sanity check
+    /**
+     * Aggregates the values of the value logs that match a certain id reference of a component within a time range,
+     * grouped into time buckets of a fixed interval. The aggregation is performed by the database, so that only one
+     * value per bucket is transferred. Buckets without value logs are omitted. The returned value logs carry the start
+     * time of their bucket and the aggregated value.
+     * If a rollup tier covers the time range and the interval is a multiple of its resolution, the buckets of the
+     * coarsest such tier are combined instead of reading the value logs at full resolution. In this case, the time
+     * range is effectively rounded to the resolution of the tier. Since the tier only contains finished buckets,
+     * the buckets after the last finished one are aggregated from the value logs at full resolution.
+     *
+     * @param idref     The idref to match
+     * @param from      The begin of the time range (inclusive)
+     * @param to        The end of the time range (exclusive)
+     * @param interval  The interval of the time buckets
+     * @param aggregate The aggregate function to apply
+     * @return The list of aggregated value logs in chronological order
+     */
+    public List<ValueLog> findAggregatesByIdRef(String idref, Instant from, Instant to, Duration interval,
+                                                ValueLogAggregate aggregate) {
+        //Sanity checks
+        if ((idref == null) || idref.isEmpty()) {
+            throw new IllegalArgumentException("Idref must not be null or empty.");
+        } else if ((from == null) || (to == null) || !to.isAfter(from)) {
+            throw new IllegalArgumentException("Time range must be specified and must not be empty.");
+        } else if ((interval == null) || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        } else if (aggregate == null) {
+            throw new IllegalArgumentException("Aggregate function must not be null.");
+        }
+
+        //Limit the number of buckets
+        long fromNanos = ValueLogLineProtocol.toEpochNanos(from);
+        long toNanos = ValueLogLineProtocol.toEpochNanos(to);
+        long intervalNanos = interval.toNanos();
+        if ((toNanos - fromNanos) / intervalNanos >= maxBuckets) {
+            throw new IllegalArgumentException("Time range must not span more than " + maxBuckets + " intervals.");
+        }
+
+        //Use the coarsest rollup tier that is able to answer the query
+        ValueLogRollupTier tier = selectRollupTier(from.toEpochMilli(), to.toEpochMilli(), interval);
+
+        //Split the time range at a bucket boundary after which the tier has no finished buckets
+        long splitNanos = fromNanos;
+        if (tier != null) {
+            long finishedNanos = TimeUnit.MILLISECONDS.toNanos(tier.getFinishedUntil(System.currentTimeMillis()));
+            splitNanos = Math.max(fromNanos, Math.floorDiv(Math.min(toNanos, finishedNanos), intervalNanos) *
+                    intervalNanos);
+        }
+
+        List<ValueLog> valueLogs = new ArrayList<>();
+        if (splitNanos > fromNanos) {
+            //Combine the buckets of the tier, whose start times lie within the leading part of the time range
+            long resolutionNanos = tier.getResolution().toNanos();
+            Query query = new Query("SELECT " + aggregate.getRollupExpression() + " AS \"" + VALUE_COLUMN +
+                    "\" FROM " + getMeasurementReference(tier.getPolicyName(), InfluxDBConfiguration.MEASUREMENT_NAME) +
+                    " WHERE idref='" + idref + "' AND time >= " +
+                    Math.floorDiv(fromNanos, resolutionNanos) * resolutionNanos + " AND time < " + splitNanos +
+                    " GROUP BY time(" + intervalNanos + "ns) fill(none)", InfluxDBConfiguration.DATABASE_NAME);
+            valueLogs.addAll(resultMapper.toPOJO(influxDB.query(query), ValueLog.class,
+                    InfluxDBConfiguration.MEASUREMENT_NAME));
+        }
+        if (splitNanos < toNanos) {
+            //Aggregate the remaining value logs at full resolution
+            String measurementName = getReadMeasurementName();
+            Query query = new Query("SELECT " + aggregate.getFunction() + "(\"" + VALUE_COLUMN + "\") AS \"" +
+                    VALUE_COLUMN + "\" FROM " + getMeasurementReference(measurementName) + " WHERE idref='" + idref +
+                    "' AND time >= " + splitNanos + " AND time < " + toNanos + " GROUP BY time(" + intervalNanos +
+                    "ns) fill(none)", InfluxDBConfiguration.DATABASE_NAME);
+            valueLogs.addAll(resultMapper.toPOJO(influxDB.query(query), ValueLog.class, measurementName));
+        }
+
+        //Buckets of both parts are disjoint, since the split lies at a bucket boundary
+        for (ValueLog valueLog : valueLogs) {
+            valueLog.setIdref(idref);
+        }
+        return valueLogs;
+    }
+
+    /**
+     * Summarizes the values of the value logs that match a certain id reference of a component within a time range.
+     * The number, the mean, the standard deviation and the first, last, minimum and maximum value logs are computed
+     * by the database, so that no value logs need to be transferred besides the four remarkable ones.
+     *
+     * @param idref The idref to match
+     * @param from  The begin of the time range (inclusive, null if unbounded)
+     * @param to    The end of the time range (exclusive, null if unbounded)
+     * @return The summary or null if there are no value logs within the time range
+     */
+    public ValueLogSummary summarizeByIdRef(String idref, Instant from, Instant to) {
+        //Sanity checks
         if ((idref == null) || idref.isEmpty()) {
             throw new IllegalArgumentException("Idref must not be null or empty.");
+        } else if ((from != null) && (to != null) && !to.isAfter(from)) {
+            throw new IllegalArgumentException("Time range must not be empty.");
         }
 
-        //Create query
-        Query query = new Query("DELETE FROM " +
-                InfluxDBConfiguration.MEASUREMENT_NAME + " WHERE idref='" + idref + "'",
-                InfluxDBConfiguration.DATABASE_NAME);
+        return summarize(idref, from, to).get(idref);
+    }
+
+    /**
+     * Summarizes the values of the value logs of all components that were recorded within a time range, computed
+     * by the database per component. This requires the idref to be a tag and is thus not possible in legacy mode.
+     *
+     * @param from The begin of the time range (inclusive, null if unbounded)
+     * @param to   The end of the time range (exclusive, null if unbounded)
+     * @return The summaries per component id
+     * @throws IllegalStateException In case the repository runs in legacy mode
+     */
+    public Map<String, ValueLogSummary> summarizeAll(Instant from, Instant to) {
+        //Sanity checks
+        if ((from != null) && (to != null) && !to.isAfter(from)) {
+            throw new IllegalArgumentException("Time range must not be empty.");
+        } else if (legacyMode) {
+            throw new IllegalStateException("Value logs cannot be summarized per component in legacy mode.");
+        }
 
-        //Query query = new Query("DROP SERIES FROM \"value_log\" WHERE idref='5c97dc2583aeb6078c5ab672'");
-        influxDB.query(query);
+        return summarize(null, from, to);
+    }
+
+    /**
+     * Deletes all value logs that match a certain id reference of a component. The value logs are purged
+     * asynchronously by a job, whose status can be retrieved via {@link #getPurgeJob(String)}.
+     *
+     * @param idref The idref to match
+     * @return The job that purges the value logs
+     */
+    public ValueLogPurgeJob deleteByIdRef(String idref) {
+        return deleteAllByIdRefs(Collections.singletonList(idref));
+    }
+
+    /**
+     * Deletes all value logs that match one of several id references of components. The value logs are removed from
+     * memory immediately and purged from the database asynchronously by a single job, which drops the series of the
+     * components at all resolutions. Value logs of the former measurement, in which the idref is not a tag, cannot be
+     * purged this way; while the migration is in progress, they remain readable, but are not migrated anymore.
+     *
+     * @param idrefs The idrefs to match
+     * @return The job that purges the value logs
+     */
+    public ValueLogPurgeJob deleteAllByIdRefs(Collection<String> idrefs) {
+        //Sanity checks
+        if (idrefs == null) {
+            throw new IllegalArgumentException("Idrefs must not be null.");
+        }
+        for (String idref : idrefs) {
+            if ((idref == null) || idref.isEmpty()) {
+                throw new IllegalArgumentException("Idref must not be null or empty.");
+            }
+        }
+
+        //Remove value logs from memory
+        if (hotTier != null) {
+            idrefs.forEach(hotTier::remove);
+        }
+
+        return purger.submit(new ArrayList<>(idrefs));
+    }
+
+    /**
+     * Returns the job with a certain id that purges value logs.
+     *
+     * @param jobId The id of the job
+     * @return The job or null if there is no such job
+     */
+    public ValueLogPurgeJob getPurgeJob(String jobId) {
+        return purger.getJob(jobId);
+    }
+
+    /**
+     * Returns all jobs that purge value logs and that are queued, running or were finished recently.
+     *
+     * @return The list of jobs in the order of their submission
+     */
+    public List<ValueLogPurgeJob> getPurgeJobs() {
+        return purger.getJobs();
+    }
+
+    /**
+     * Registers a listener that is notified with the id of each component whose value logs were purged from the
+     * database, allowing derived data of the component to be discarded as well.
+     *
+     * @param listener The listener to register
+     */
+    public void addPurgeListener(Consumer<String> listener) {
+        //Sanity check
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null.");
+        }
+
+        purgeListeners.add(listener);
+    }
+
+    /**
+     * Returns the times at which the value logs of components were purged.
+     *
+     * @return The time of the most recent purge (epoch milliseconds) per component id
+     */
+    Map<String, Long> getPurgeTimes() {
+        return purger.readPurgeTimes();
+    }
+
+    /**
+     * Summarizes the values of value logs within a time range per component. All aggregates and selectors are
+     * requested from the database in a single query with several statements. Since the selectors are computed per
+     * series, their results are reduced per component afterwards.
+     *
+     * @param idref The idref to match (null for all components, requires the current schema)
+     * @param from  The begin of the time range (inclusive, null if unbounded)
+     * @param to    The end of the time range (exclusive, null if unbounded)
+     * @return The summaries per component id
+     */
+    private Map<String, ValueLogSummary> summarize(String idref, Instant from, Instant to) {
+        //Determine measurement to read from; in legacy mode, the idref is a field and can only be matched
+        boolean legacy = legacyMode;
+        String measurementName = getReadMeasurementName();
+
+        //Build conditions
+        String conditions = ((idref == null) ? "" : " AND idref='" + idref + "'") + getTimeConditions(from, to);
+        String fromClause = " FROM " + getMeasurementReference(measurementName) +
+                (conditions.isEmpty() ? "" : " WHERE" + conditions.substring(" AND".length()));
+
+        //Build statements for the aggregates and for each selector
+        StringBuilder queryBuilder = new StringBuilder("SELECT COUNT(\"").append(VALUE_COLUMN)
+                .append("\") AS \"count\", MEAN(\"").append(VALUE_COLUMN).append("\") AS \"mean\", STDDEV(\"")
+                .append(VALUE_COLUMN).append("\") AS \"stddev\"").append(fromClause)
+                .append(legacy ? "" : " GROUP BY \"idref\"");
+        for (String selector : SUMMARY_SELECTORS) {
+            queryBuilder.append("; SELECT ").append(selector).append("(\"").append(VALUE_COLUMN).append("\") AS \"")
+                    .append(VALUE_COLUMN).append("\", \"qos\", \"message\"")
+                    .append(legacy ? ", \"idref\", \"component\", \"topic\"" : "").append(fromClause)
+                    .append(legacy ? "" : " GROUP BY *");
+        }
+
+        //Execute query
+        QueryResult queryResult = influxDB.query(new Query(queryBuilder.toString(),
+                InfluxDBConfiguration.DATABASE_NAME));
+        List<QueryResult.Result> results = queryResult.getResults();
+        if (queryResult.hasError() || (results == null) || (results.size() != SUMMARY_SELECTORS.length + 1)) {
+            throw new IllegalStateException("Failed to summarize value logs: " + queryResult.getError());
+        }
+
+        //Reduce the remarkable value logs of each selector per component
+        List<Map<String, ValueLog>> selected = new ArrayList<>();
+        for (int i = 0; i < SUMMARY_SELECTORS.length; i++) {
+            QueryResult selectorResult = new QueryResult();
+            selectorResult.setResults(Collections.singletonList(results.get(i + 1)));
+            Map<String, ValueLog> valueLogs = new HashMap<>();
+            for (ValueLog valueLog : resultMapper.toPOJO(selectorResult, ValueLog.class, measurementName)) {
+                valueLogs.merge(valueLog.getIdref(), valueLog, SUMMARY_REDUCERS.get(i));
+            }
+            selected.add(valueLogs);
+        }
+
+        //Combine aggregates and remarkable value logs
+        Map<String, ValueLogSummary> summaries = new HashMap<>();
+        List<QueryResult.Series> seriesList = results.get(0).getSeries();
+        if (seriesList == null) {
+            return summaries;
+        }
+        for (QueryResult.Series series : seriesList) {
+            String seriesIdref = (series.getTags() == null) ? idref : series.getTags().get("idref");
+            List<String> columns = series.getColumns();
+            List<Object> row = series.getValues().get(0);
+            long count = ((Number) row.get(columns.indexOf("count"))).longValue();
+            if (count == 0) {
+                continue;
+            }
+            double mean = ((Number) row.get(columns.indexOf("mean"))).doubleValue();
+
+            //The database computes the sample standard deviation, which is undefined for single values
+            Object standardDeviation = row.get(columns.indexOf("stddev"));
+            double squaredDeviations = (standardDeviation instanceof Number) ?
+                    Math.pow(((Number) standardDeviation).doubleValue(), 2) * (count - 1) : 0;
+
+            summaries.put(seriesIdref, new ValueLogSummary(count, mean, squaredDeviations,
+                    selected.get(0).get(seriesIdref), selected.get(1).get(seriesIdref),
+                    selected.get(2).get(seriesIdref), selected.get(3).get(seriesIdref)));
+        }
+        return summaries;
+    }
+
+    /**
+     * Enables or disables the legacy mode of the repository that is used while the value logs of the former schema
+     * are migrated.
+     *
+     * @param legacyMode True, if the legacy mode is supposed to be enabled; false otherwise
+     */
+    void setLegacyMode(boolean legacyMode) {
+        this.legacyMode = legacyMode;
+    }
+
+    /**
+     * Executes a query whose response is supposed to be retrieved in chunks, using the configured chunk size,
+     * prefetch and timeout.
+     *
+     * @param query The query to execute
+     * @return The chunked query
+     */
+    ChunkedQuery openChunkedQuery(Query query) {
+        return new ChunkedQuery(influxDB, query, queryChunkSize, queryPrefetch, queryTimeoutMillis);
+    }
+
+    /**
+     * Returns whether the repository currently runs in legacy mode, i.e. whether the value logs of the former schema
+     * are still being migrated.
+     *
+     * @return True, if the legacy mode is enabled; false otherwise
+     */
+    public boolean isLegacyMode() {
+        return legacyMode;
+    }
+
+    /**
+     * Sets the tiers of downsampled value logs to which aggregation queries may be routed.
+     *
+     * @param rollupTiers The tiers, ordered from fine to coarse resolution
+     */
+    void setRollupTiers(List<ValueLogRollupTier> rollupTiers) {
+        this.rollupTiers = rollupTiers;
+    }
+
+    /**
+     * Selects the coarsest rollup tier that is able to answer an aggregation query.
+     *
+     * @param fromMillis The begin of the time range of the query (epoch milliseconds)
+     * @param toMillis   The end of the time range of the query (epoch milliseconds)
+     * @param interval   The bucket interval of the query
+     * @return The selected tier or null if none of the tiers is able to answer the query
+     */
+    private ValueLogRollupTier selectRollupTier(long fromMillis, long toMillis, Duration interval) {
+        List<ValueLogRollupTier> tiers = this.rollupTiers;
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            if (tiers.get(i).satisfies(fromMillis, toMillis, interval)) {
+                return tiers.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the InfluxQL conditions on the time that correspond to a time range.
+     *
+     * @param from The begin of the time range (inclusive, null if unbounded)
+     * @param to   The end of the time range (exclusive, null if unbounded)
+     * @return The conditions, each of them preceded by "AND", or an empty string if the time is unbounded
+     */
+    private static String getTimeConditions(Instant from, Instant to) {
+        StringBuilder conditions = new StringBuilder();
+        if (from != null) {
+            conditions.append(" AND time >= ").append(ValueLogLineProtocol.toEpochNanos(from));
+        }
+        if (to != null) {
+            conditions.append(" AND time < ").append(ValueLogLineProtocol.toEpochNanos(to));
+        }
+        return conditions.toString();
+    }
+
+    /**
+     * Returns the name of the measurement from which value logs are currently read.
+     *
+     * @return The measurement name
+     */
+    private String getReadMeasurementName() {
+        return legacyMode ? InfluxDBConfiguration.LEGACY_MEASUREMENT_NAME : InfluxDBConfiguration.MEASUREMENT_NAME;
     }
 
     /**
      * Returns a string that might be used for referencing measurements within queries to the InfluxDB database. It is
      * a fully qualified name consisting out of the database name, the retention policy name and the measurements name.
      *
+     * @param measurementName The name of the measurement to reference
+     * @return A string containing the measurement reference
+     */
+    static String getMeasurementReference(String measurementName) {
+        return getMeasurementReference(InfluxDBConfiguration.RETENTION_POLICY_NAME, measurementName);
+    }
+
+    /**
+     * Returns a string that might be used for referencing measurements of a certain retention policy within queries
+     * to the InfluxDB database.
+     *
+     * @param retentionPolicyName The name of the retention policy
+     * @param measurementName     The name of the measurement to reference
      * @return A string containing the measurement reference
      */
-    private static String getMeasurementReference() {
+    static String getMeasurementReference(String retentionPolicyName, String measurementName) {
         return "\"" + InfluxDBConfiguration.DATABASE_NAME + "\".\"" +
-                InfluxDBConfiguration.RETENTION_POLICY_NAME + "\".\"" +
-                InfluxDBConfiguration.MEASUREMENT_NAME + "\"";
+                retentionPolicyName + "\".\"" +
+                measurementName + "\"";
     }
 }
@@ -0,0 +1,184 @@
+package org.citopt.connde.repository;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Objects of this class describe a tier of downsampled value logs. Each tier aggregates the value logs at full
+ * resolution into buckets of a fixed resolution and keeps them in a retention policy of its own. Per bucket, the
+ * sum, the count, the minimum, the maximum and the last value are stored, so that buckets can be combined into
+ * coarser ones without loss of accuracy.
+ * Since a tier only covers the value logs that were aggregated so far, it keeps track of the time since which its
+ * buckets are complete.
+ */
+class ValueLogRollupTier {
+    //Prefix of the retention policy names of rollup tiers
+    private static final String POLICY_PREFIX = "rollup_";
+
+    //Keyword for unlimited retention
+    private static final String INFINITE = "INF";
+
+    //Pattern of InfluxQL durations
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d{1,9})(s|m|h|d|w)");
+
+    //Resolution of the tier, as InfluxQL duration and as duration object
+    private final String resolutionLiteral;
+    private final Duration resolution;
+
+    //Retention of the tier, as InfluxQL duration and as duration object (null if unlimited)
+    private final String retentionLiteral;
+    private final Duration retention;
+
+    //Epoch milliseconds since which the buckets are complete (Long.MIN_VALUE if complete at all times)
+    private volatile long coveredSince = Long.MAX_VALUE;
+
+    /**
+     * Creates a new rollup tier.
+     *
+     * @param resolutionLiteral The resolution of the tier as InfluxQL duration (e.g. 1m)
+     * @param retentionLiteral  The retention of the tier as InfluxQL duration (e.g. 90d) or INF for unlimited
+     */
+    ValueLogRollupTier(String resolutionLiteral, String retentionLiteral) {
+        this.resolutionLiteral = resolutionLiteral;
+        this.resolution = parseDuration(resolutionLiteral);
+        this.retentionLiteral = retentionLiteral.toUpperCase().equals(INFINITE) ? INFINITE : retentionLiteral;
+        this.retention = this.retentionLiteral.equals(INFINITE) ? null : parseDuration(retentionLiteral);
+
+        //Sanity check
+        if ((retention != null) && (retention.compareTo(resolution) < 0)) {
+            throw new IllegalArgumentException("Retention of a rollup tier must not be shorter than its resolution.");
+        }
+    }
+
+    /**
+     * Parses a list of rollup tiers, given in the format resolution:retention and separated by commas
+     * (e.g. 1m:365d,1h:INF).
+     *
+     * @param tiers The tiers to parse
+     * @return The parsed tiers, ordered from fine to coarse resolution
+     * @throws IllegalArgumentException In case the list is malformed
+     */
+    static ValueLogRollupTier[] parseTiers(String tiers) {
+        if ((tiers == null) || tiers.trim().isEmpty()) {
+            return new ValueLogRollupTier[0];
+        }
+
+        String[] entries = tiers.split(",");
+        ValueLogRollupTier[] result = new ValueLogRollupTier[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid rollup tier: " + entries[i]);
+            }
+            result[i] = new ValueLogRollupTier(parts[0].trim(), parts[1].trim());
+
+            //Tiers must become coarser
+            if ((i > 0) && (result[i].resolution.compareTo(result[i - 1].resolution) <= 0)) {
+                throw new IllegalArgumentException("Rollup tiers must be ordered by increasing resolution.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses an InfluxQL duration with a unit of seconds or longer.
+     *
+     * @param duration The duration to parse (e.g. 30s, 5m, 1h, 7d, 2w)
+     * @return The parsed duration
+     * @throws IllegalArgumentException In case the duration is invalid
+     */
+    static Duration parseDuration(String duration) {
+        //Sanity check
+        if (duration == null) {
+            throw new IllegalArgumentException("Duration must not be null.");
+        }
+
+        Matcher matcher = DURATION_PATTERN.matcher(duration);
+        if (!matcher.matches() || (Long.parseLong(matcher.group(1)) == 0)) {
+            throw new IllegalArgumentException("Invalid duration: " + duration);
+        }
+
+        long amount = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                return Duration.ofDays(amount * 7);
+        }
+    }
+
+    /**
+     * Checks whether the tier is able to answer an aggregation query for a given time range and bucket interval,
+     * at least for a leading part of the time range. This requires the interval to be a multiple of the resolution,
+     * the tier to cover the begin of the time range, the time range to lie within the retention of the tier and the
+     * tier to contain finished buckets after the begin of the time range. The bounds of the time range are
+     * effectively rounded to the resolution of the tier; the part of the time range after
+     * {@link #getFinishedUntil(long)} must be answered from the value logs at full resolution.
+     *
+     * @param fromMillis The begin of the time range (epoch milliseconds)
+     * @param toMillis   The end of the time range (epoch milliseconds)
+     * @param interval   The bucket interval of the query
+     * @return True, if the tier is able to answer the query; false otherwise
+     */
+    boolean satisfies(long fromMillis, long toMillis, Duration interval) {
+        if (interval.toNanos() % resolution.toNanos() != 0) {
+            return false;
+        } else if ((fromMillis < coveredSince) || (toMillis <= fromMillis)) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if ((retention != null) && (fromMillis < now - retention.toMillis())) {
+            return false;
+        }
+        return getFinishedUntil(now) > fromMillis;
+    }
+
+    /**
+     * Returns the end of the most recent bucket that is finished and thus written by the continuous query. Since
+     * the continuous query aggregates a bucket only after its end, and it takes a moment to do so, the bucket that
+     * ended most recently is not considered finished yet.
+     *
+     * @param nowMillis The current time (epoch milliseconds)
+     * @return The end of the most recent finished bucket (epoch milliseconds)
+     */
+    long getFinishedUntil(long nowMillis) {
+        long resolutionMillis = resolution.toMillis();
+        return (Math.floorDiv(nowMillis, resolutionMillis) - 1) * resolutionMillis;
+    }
+
+    /**
+     * Returns the name of the retention policy of the tier.
+     *
+     * @return The retention policy name
+     */
+    String getPolicyName() {
+        return POLICY_PREFIX + resolutionLiteral;
+    }
+
+    String getResolutionLiteral() {
+        return resolutionLiteral;
+    }
+
+    Duration getResolution() {
+        return resolution;
+    }
+
+    String getRetentionLiteral() {
+        return retentionLiteral;
+    }
+
+    long getCoveredSince() {
+        return coveredSince;
+    }
+
+    void setCoveredSince(long coveredSince) {
+        this.coveredSince = coveredSince;
+    }
+}
@@ -0,0 +1,274 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.InfluxDBConfiguration;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the tiers of downsampled value logs. For each configured tier, a retention policy and a continuous query
+ * are created, so that the database itself aggregates the value logs at full resolution into the buckets of the
+ * tier as they arrive. The continuous queries resample a window of recent buckets, so that value logs arriving late
+ * (e.g. replayed from the spool) are taken into account up to the length of this window.
+ * Value logs that were recorded before a tier was created are aggregated by a background job, chunk by chunk from
+ * new to old, until the retention of the value logs at full resolution is reached. The progress is recorded after
+ * each chunk, allowing the job to continue after a restart. Meanwhile, the {@link ValueLogRepository} only routes
+ * queries to a tier if the tier covers their whole time range.
+ */
+@Component
+@PropertySource(value = "classpath:application.properties")
+public class ValueLogRollups {
+    //Name of the backfill thread
+    private static final String THREAD_NAME = "value-log-rollups";
+
+    //Prefix of the continuous query names
+    private static final String CONTINUOUS_QUERY_PREFIX = "cq_value_logs_";
+
+    //Aggregates that are stored per bucket
+    private static final String AGGREGATES = "SUM(\"value\") AS \"sum\", COUNT(\"value\") AS \"count\", " +
+            "MIN(\"value\") AS \"min\", MAX(\"value\") AS \"max\", LAST(\"value\") AS \"last\"";
+
+    //Names of the tag and columns of the progress measurement
+    private static final String TIER_TAG = "tier";
+    private static final String COVERED_SINCE_COLUMN = "covered_since";
+    private static final String COMPLETED_COLUMN = "completed";
+
+    //Interval in which the backfill checks whether the schema migration has finished
+    private static final long MIGRATION_POLL_MILLIS = 10000;
+
+    //InfluxDB bean and repository to use
+    private final InfluxDB influxDB;
+    private final ValueLogRepository valueLogRepository;
+
+    //Configured tiers, ordered from fine to coarse resolution
+    private final ValueLogRollupTier[] tiers;
+
+    //Configuration of the backfill
+    private final long retentionMillis;
+    private final long chunkMillis;
+    private final long pauseMillis;
+
+    //Backfill thread
+    private Thread backfillThread;
+    private volatile boolean running = false;
+
+    /**
+     * Initializes the rollup tiers, creates their retention policies and continuous queries and starts the backfill
+     * in the background if required.
+     *
+     * @param influxDB           The InfluxDB bean to use
+     * @param valueLogRepository The value log repository
+     * @param enabled            Whether rollup tiers are supposed to be managed
+     * @param tiers              The tiers in the format resolution:retention, separated by commas
+     * @param retention          The duration for which value logs are kept at full resolution
+     * @param resampleWindow     The time span of recent buckets that are recomputed by the continuous queries
+     * @param chunkHours         The time span of the value logs to aggregate at once during the backfill (in hours)
+     * @param pauseMillis        The pause between two chunks of the backfill (in milliseconds)
+     */
+    @Autowired
+    public ValueLogRollups(InfluxDB influxDB, ValueLogRepository valueLogRepository,
+                           @Value("${influxdb.rollup.enabled:true}") boolean enabled,
+                           @Value("${influxdb.rollup.tiers:1m:365d,1h:INF}") String tiers,
+                           @Value("${influxdb.retention.duration:90d}") String retention,
+                           @Value("${influxdb.rollup.resample-window:15m}") String resampleWindow,
+                           @Value("${influxdb.rollup.backfill-chunk-hours:24}") long chunkHours,
+                           @Value("${influxdb.rollup.backfill-pause-ms:100}") long pauseMillis) {
+        //Sanity checks
+        if (chunkHours < 1) {
+            throw new IllegalArgumentException("Chunk duration must be positive.");
+        } else if (pauseMillis < 0) {
+            throw new IllegalArgumentException("Pause must not be negative.");
+        }
+
+        this.influxDB = influxDB;
+        this.valueLogRepository = valueLogRepository;
+        this.tiers = enabled ? ValueLogRollupTier.parseTiers(tiers) : new ValueLogRollupTier[0];
+        this.retentionMillis = ValueLogRollupTier.parseDuration(retention).toMillis();
+        this.chunkMillis = TimeUnit.HOURS.toMillis(chunkHours);
+        this.pauseMillis = pauseMillis;
+
+        if (this.tiers.length == 0) {
+            return;
+        }
+
+        //Create retention policies and continuous queries
+        long resampleSeconds = ValueLogRollupTier.parseDuration(resampleWindow).getSeconds();
+        boolean backfillRequired = false;
+        for (ValueLogRollupTier tier : this.tiers) {
+            createTier(tier, resampleSeconds);
+            backfillRequired |= loadProgress(tier);
+        }
+
+        //Let the repository route queries to the tiers
+        valueLogRepository.setRollupTiers(Arrays.asList(this.tiers));
+
+        //Start backfill thread if required
+        if (backfillRequired) {
+            running = true;
+            backfillThread = new Thread(this::backfill, THREAD_NAME);
+            backfillThread.setDaemon(true);
+            backfillThread.start();
+        }
+    }
+
+    /**
+     * Stops the backfill when the application shuts down. It continues at the recorded position on next startup.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (backfillThread != null) {
+            backfillThread.interrupt();
+        }
+    }
+
+    /**
+     * Creates or updates the retention policy and the continuous query of a tier.
+     *
+     * @param tier            The tier
+     * @param resampleSeconds The time span of recent buckets to recompute (in seconds)
+     */
+    private void createTier(ValueLogRollupTier tier, long resampleSeconds) {
+        String policy = "\"" + tier.getPolicyName() + "\"";
+        influxDB.query(new Query("CREATE RETENTION POLICY " + policy + " ON \"" + InfluxDBConfiguration.DATABASE_NAME +
+                "\" DURATION " + tier.getRetentionLiteral() + " REPLICATION 1", InfluxDBConfiguration.DATABASE_NAME));
+        influxDB.query(new Query("ALTER RETENTION POLICY " + policy + " ON \"" + InfluxDBConfiguration.DATABASE_NAME +
+                "\" DURATION " + tier.getRetentionLiteral(), InfluxDBConfiguration.DATABASE_NAME));
+
+        //Recompute at least the two most recent buckets
+        long forSeconds = Math.max(resampleSeconds, 2 * tier.getResolution().getSeconds());
+
+        //Replace continuous query, since its definition cannot be altered
+        String name = "\"" + CONTINUOUS_QUERY_PREFIX + tier.getResolutionLiteral() + "\"";
+        influxDB.query(new Query("DROP CONTINUOUS QUERY " + name + " ON \"" + InfluxDBConfiguration.DATABASE_NAME + "\"",
+                InfluxDBConfiguration.DATABASE_NAME));
+        influxDB.query(new Query("CREATE CONTINUOUS QUERY " + name + " ON \"" + InfluxDBConfiguration.DATABASE_NAME +
+                "\" RESAMPLE EVERY " + tier.getResolutionLiteral() + " FOR " + forSeconds + "s BEGIN " +
+                getAggregationQuery(tier) + " GROUP BY time(" + tier.getResolutionLiteral() + "), * END",
+                InfluxDBConfiguration.DATABASE_NAME));
+    }
+
+    /**
+     * Loads the recorded progress of the backfill of a tier. For new tiers, the current time is recorded as the
+     * time since which the tier is complete, as from then on the continuous query aggregates the value logs.
+     *
+     * @param tier The tier
+     * @return True, if the tier needs to be backfilled; false otherwise
+     */
+    private boolean loadProgress(ValueLogRollupTier tier) {
+        Query query = new Query("SELECT \"" + COVERED_SINCE_COLUMN + "\", \"" + COMPLETED_COLUMN + "\" FROM " +
+                ValueLogRepository.getMeasurementReference(InfluxDBConfiguration.ROLLUP_MEASUREMENT_NAME) +
+                " WHERE \"" + TIER_TAG + "\"='" + tier.getResolutionLiteral() + "' ORDER BY time DESC LIMIT 1",
+                InfluxDBConfiguration.DATABASE_NAME);
+        QueryResult queryResult = influxDB.query(query, TimeUnit.MILLISECONDS);
+        List<QueryResult.Series> seriesList = (queryResult.getResults() == null) ||
+                queryResult.getResults().isEmpty() ? null : queryResult.getResults().get(0).getSeries();
+
+        //Check for recorded progress
+        if ((seriesList == null) || seriesList.isEmpty() || seriesList.get(0).getValues().isEmpty()) {
+            long resolutionMillis = tier.getResolution().toMillis();
+            long now = System.currentTimeMillis();
+            tier.setCoveredSince(((now / resolutionMillis) + 1) * resolutionMillis);
+            writeProgress(tier, false);
+            return true;
+        }
+
+        //Continue at the recorded position and record it again, since the records are subject to retention
+        List<Object> row = seriesList.get(0).getValues().get(0);
+        boolean completed = Boolean.TRUE.equals(row.get(2));
+        tier.setCoveredSince(completed ? Long.MIN_VALUE : ((Number) row.get(1)).longValue());
+        writeProgress(tier, completed);
+        return !completed;
+    }
+
+    /**
+     * Aggregates the value logs that were recorded before the tiers were created, chunk by chunk from new to old.
+     */
+    private void backfill() {
+        try {
+            //The value logs at full resolution are incomplete until the schema migration has finished
+            while (running && valueLogRepository.isLegacyMode()) {
+                Thread.sleep(MIGRATION_POLL_MILLIS);
+            }
+
+            for (ValueLogRollupTier tier : tiers) {
+                if (tier.getCoveredSince() == Long.MIN_VALUE) {
+                    continue;
+                }
+
+                //Align chunks to the resolution of the tier
+                long resolutionMillis = tier.getResolution().toMillis();
+                long alignedChunkMillis = ((chunkMillis + resolutionMillis - 1) / resolutionMillis) * resolutionMillis;
+                long horizon = ((System.currentTimeMillis() - retentionMillis) / resolutionMillis) * resolutionMillis;
+
+                //Aggregate chunk by chunk until the oldest value logs at full resolution are reached
+                while (running && (tier.getCoveredSince() > horizon)) {
+                    long chunkEnd = tier.getCoveredSince();
+                    long chunkStart = Math.max(horizon, chunkEnd - alignedChunkMillis);
+                    influxDB.query(new Query(getAggregationQuery(tier) + " WHERE time >= " + chunkStart +
+                            "ms AND time < " + chunkEnd + "ms GROUP BY time(" + tier.getResolutionLiteral() + "), *",
+                            InfluxDBConfiguration.DATABASE_NAME));
+                    tier.setCoveredSince(chunkStart);
+                    writeProgress(tier, false);
+
+                    //Give way to regular queries
+                    Thread.sleep(pauseMillis);
+                }
+
+                //Check whether the backfill was stopped
+                if (!running) {
+                    return;
+                }
+
+                //The tier is complete now
+                tier.setCoveredSince(Long.MIN_VALUE);
+                writeProgress(tier, true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Value log rollup backfill failed: " + e.getMessage());
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Returns the query that aggregates value logs at full resolution into the buckets of a tier, without
+     * conditions and grouping.
+     *
+     * @param tier The tier
+     * @return The query
+     */
+    private static String getAggregationQuery(ValueLogRollupTier tier) {
+        return "SELECT " + AGGREGATES + " INTO \"" + InfluxDBConfiguration.DATABASE_NAME + "\".\"" +
+                tier.getPolicyName() + "\".\"" + InfluxDBConfiguration.MEASUREMENT_NAME + "\" FROM " +
+                ValueLogRepository.getMeasurementReference(InfluxDBConfiguration.MEASUREMENT_NAME);
+    }
+
+    /**
+     * Records the progress of the backfill of a tier.
+     *
+     * @param tier      The tier
+     * @param completed Whether the backfill of the tier is completed
+     */
+    private void writeProgress(ValueLogRollupTier tier, boolean completed) {
+        Point point = Point.measurement(InfluxDBConfiguration.ROLLUP_MEASUREMENT_NAME)
+                .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                .tag(TIER_TAG, tier.getResolutionLiteral())
+                .addField(COVERED_SINCE_COLUMN, completed ? 0 : tier.getCoveredSince())
+                .addField(COMPLETED_COLUMN, completed)
+                .build();
+        influxDB.write(InfluxDBConfiguration.DATABASE_NAME, InfluxDBConfiguration.RETENTION_POLICY_NAME, point);
+    }
+}
@@ -0,0 +1,395 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.InfluxDBConfiguration;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that migrates the value logs of the former schema, in which all properties are stored as fields,
+ * to the current schema, in which the component id, the component type and the topic are tags. The value logs are
+ * copied in time-bounded chunks, so that the load on the database remains limited and the application stays fully
+ * operational. Within a chunk, the value logs are streamed from the database and written in batches of limited
+ * size, so that a chunk is never held in memory as a whole. The progress is recorded after each chunk, allowing
+ * the migration to continue after a restart. If a chunk fails, e.g. because the database is temporarily not
+ * reachable, the migration is retried from the recorded progress with an exponential backoff.
+ * While the migration is in progress, the {@link ValueLogRepository} runs in legacy mode.
+ */
+@Component
+@PropertySource(value = "classpath:application.properties")
+public class ValueLogSchemaMigration {
+    //Name of the migration thread
+    private static final String THREAD_NAME = "value-log-migration";
+
+    //Columns of the former measurement that become tags
+    private static final Set<String> TAG_COLUMNS = new HashSet<>(Arrays.asList("idref", "component", "topic"));
+
+    //Column of the former measurement that holds the component id
+    private static final String IDREF_COLUMN = "idref";
+
+    //Columns of the former measurement that hold integer values
+    private static final Set<String> INTEGER_COLUMNS = new HashSet<>(Arrays.asList("qos"));
+
+    //Names of the columns of the progress measurement
+    private static final String TIME_COLUMN = "time";
+    private static final String POSITION_COLUMN = "position";
+    private static final String COMPLETED_COLUMN = "completed";
+
+    //InfluxDB bean and repository to use
+    private final InfluxDB influxDB;
+    private final ValueLogRepository valueLogRepository;
+
+    //Configuration of the migration
+    private final long chunkMillis;
+    private final long pauseMillis;
+    private final int batchSize;
+    private final long retryInitialMillis;
+    private final long retryMaxMillis;
+    private final boolean dropLegacy;
+
+    //Migration thread
+    private Thread migrationThread;
+    private volatile boolean running = false;
+
+    /**
+     * Initializes the migration and starts it in the background, if value logs of the former schema need to be
+     * migrated.
+     *
+     * @param influxDB           The InfluxDB bean to use
+     * @param valueLogRepository The value log repository
+     * @param enabled            Whether value logs of the former schema are supposed to be migrated
+     * @param chunkHours         The time span of the value logs to copy at once (in hours)
+     * @param pauseMillis        The pause between two chunks (in milliseconds)
+     * @param batchSize          The maximum number of value logs to write at once
+     * @param retryInitialMillis The delay before the first retry of a failed chunk (in milliseconds)
+     * @param retryMaxMillis     The maximum delay between two retries of a failed chunk (in milliseconds)
+     * @param dropLegacy         Whether the former measurement is supposed to be dropped after the migration
+     */
+    @Autowired
+    public ValueLogSchemaMigration(InfluxDB influxDB, ValueLogRepository valueLogRepository,
+                                   @Value("${influxdb.migration.enabled:true}") boolean enabled,
+                                   @Value("${influxdb.migration.chunk-hours:1}") long chunkHours,
+                                   @Value("${influxdb.migration.chunk-pause-ms:100}") long pauseMillis,
+                                   @Value("${influxdb.migration.batch-size:5000}") int batchSize,
+                                   @Value("${influxdb.migration.retry-initial-ms:1000}") long retryInitialMillis,
+                                   @Value("${influxdb.migration.retry-max-ms:300000}") long retryMaxMillis,
+                                   @Value("${influxdb.migration.drop-legacy:false}") boolean dropLegacy) {
+        //Sanity checks
+        if (chunkHours < 1) {
+            throw new IllegalArgumentException("Chunk duration must be positive.");
+        } else if (pauseMillis < 0) {
+            throw new IllegalArgumentException("Pause must not be negative.");
+        } else if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        } else if ((retryInitialMillis < 1) || (retryMaxMillis < retryInitialMillis)) {
+            throw new IllegalArgumentException("Retry delays must be positive and the maximum must not be smaller " +
+                    "than the initial delay.");
+        }
+
+        this.influxDB = influxDB;
+        this.valueLogRepository = valueLogRepository;
+        this.chunkMillis = TimeUnit.HOURS.toMillis(chunkHours);
+        this.pauseMillis = pauseMillis;
+        this.batchSize = batchSize;
+        this.retryInitialMillis = retryInitialMillis;
+        this.retryMaxMillis = retryMaxMillis;
+        this.dropLegacy = dropLegacy;
+
+        //Check whether a migration is required
+        if (!enabled) {
+            return;
+        }
+        List<Object> checkpoint = readCheckpoint();
+        if (((checkpoint != null) && Boolean.TRUE.equals(checkpoint.get(2))) || !hasLegacyValueLogs()) {
+            return;
+        }
+
+        //Write and read former measurement until the migration has finished
+        valueLogRepository.setLegacyMode(true);
+
+        //Continue at the recorded position if available
+        long startPosition = (checkpoint == null) ? -1 : ((Number) checkpoint.get(1)).longValue();
+
+        //Start migration thread
+        running = true;
+        migrationThread = new Thread(() -> migrate(startPosition), THREAD_NAME);
+        migrationThread.setDaemon(true);
+        migrationThread.start();
+    }
+
+    /**
+     * Returns whether the migration is currently in progress.
+     *
+     * @return True, if the migration is in progress; false otherwise
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the migration when the application shuts down. It continues at the recorded position on next startup.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (migrationThread != null) {
+            migrationThread.interrupt();
+        }
+    }
+
+    /**
+     * Copies the value logs of the former measurement chunk by chunk to the current measurement. Value logs that
+     * arrive after the migration was started are written to both measurements by the repository, so copying up to
+     * the start time is sufficient. Failed chunks are retried with an exponential backoff until the migration
+     * succeeds or is stopped.
+     *
+     * @param startPosition The position (epoch milliseconds) to start at or -1 to start at the first value log
+     */
+    private void migrate(long startPosition) {
+        long endPosition = System.currentTimeMillis();
+        long position = startPosition;
+        long retryDelay = retryInitialMillis;
+        try {
+            while (running) {
+                try {
+                    if (position < 0) {
+                        position = findFirstLegacyTime();
+                        if (position < 0) {
+                            position = endPosition;
+                        }
+                    }
+
+                    //Copy chunk by chunk, continuing at the recorded progress after failures
+                    while (running && (position < endPosition)) {
+                        long chunkEnd = Math.min(position + chunkMillis, endPosition);
+                        copyChunk(position, chunkEnd);
+                        writeCheckpoint(chunkEnd, false);
+                        position = chunkEnd;
+                        retryDelay = retryInitialMillis;
+
+                        //Give way to regular queries
+                        Thread.sleep(pauseMillis);
+                    }
+
+                    //Check whether the migration was stopped
+                    if (!running) {
+                        return;
+                    }
+
+                    //Finish migration and switch repository to the current measurement
+                    writeCheckpoint(endPosition, true);
+                    valueLogRepository.setLegacyMode(false);
+                    break;
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    System.err.println("Value log migration failed, retrying in " + retryDelay + " ms: " +
+                            e.getMessage());
+                    Thread.sleep(retryDelay);
+                    retryDelay = Math.min(retryDelay * 2, retryMaxMillis);
+                }
+            }
+
+            //Drop former measurement if desired
+            if (dropLegacy) {
+                try {
+                    influxDB.query(new Query("DROP MEASUREMENT \"" + InfluxDBConfiguration.LEGACY_MEASUREMENT_NAME +
+                            "\"", InfluxDBConfiguration.DATABASE_NAME));
+                } catch (Exception e) {
+                    System.err.println("Failed to drop legacy value logs: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Copies the value logs of the former measurement within a certain time span to the current measurement. The
+     * value logs are streamed from the database and written in batches of the configured size.
+     *
+     * @param start The begin of the time span (epoch milliseconds, inclusive)
+     * @param end   The end of the time span (epoch milliseconds, exclusive)
+     */
+    private void copyChunk(long start, long end) {
+        //Query value logs of the time span
+        Query query = new Query("SELECT * FROM " +
+                ValueLogRepository.getMeasurementReference(InfluxDBConfiguration.LEGACY_MEASUREMENT_NAME) +
+                " WHERE time >= " + start + "ms AND time < " + end + "ms", InfluxDBConfiguration.DATABASE_NAME);
+
+        //Value logs of components that were purged meanwhile must not be copied
+        Map<String, Long> purgeTimes = valueLogRepository.getPurgeTimes();
+
+        //Times are returned as RFC3339 strings, which preserve nanoseconds unlike numeric epoch times
+        try (ChunkedQuery chunkedQuery = valueLogRepository.openChunkedQuery(query)) {
+            BatchPoints batchPoints = createBatch();
+            QueryResult chunk;
+            while ((chunk = chunkedQuery.next()) != null) {
+                List<QueryResult.Series> seriesList = getSeries(chunk);
+                if (seriesList == null) {
+                    continue;
+                }
+                for (Point point : toPoints(seriesList, purgeTimes)) {
+                    batchPoints.point(point);
+                    if (batchPoints.getPoints().size() >= batchSize) {
+                        influxDB.write(batchPoints);
+                        batchPoints = createBatch();
+                    }
+                }
+            }
+            if (!batchPoints.getPoints().isEmpty()) {
+                influxDB.write(batchPoints);
+            }
+        }
+    }
+
+    /**
+     * Converts the rows of a chunk of the former measurement to points of the current measurement.
+     *
+     * @param seriesList The series of the chunk
+     * @param purgeTimes The times at which components were purged, per component id
+     * @return The points
+     */
+    private List<Point> toPoints(List<QueryResult.Series> seriesList, Map<String, Long> purgeTimes) {
+        List<Point> points = new ArrayList<>();
+
+        //Convert rows to points of the current measurement
+        for (QueryResult.Series series : seriesList) {
+            List<String> columns = series.getColumns();
+            int timeColumn = columns.indexOf(TIME_COLUMN);
+            int idrefColumn = columns.indexOf(IDREF_COLUMN);
+            for (List<Object> row : series.getValues()) {
+                //Skip value logs that were recorded before their component was purged
+                Long purgeTime = (idrefColumn < 0) ? null : purgeTimes.get(String.valueOf(row.get(idrefColumn)));
+                if ((purgeTime != null) &&
+                        (Instant.parse(row.get(timeColumn).toString()).toEpochMilli() < purgeTime)) {
+                    continue;
+                }
+
+                Point.Builder builder = Point.measurement(InfluxDBConfiguration.MEASUREMENT_NAME);
+                for (int i = 0; i < columns.size(); i++) {
+                    String column = columns.get(i);
+                    Object value = row.get(i);
+
+                    //Skip missing values
+                    if (value == null) {
+                        continue;
+                    }
+
+                    if (column.equals(TIME_COLUMN)) {
+                        Instant time = Instant.parse(value.toString());
+                        builder.time(TimeUnit.SECONDS.toNanos(time.getEpochSecond()) + time.getNano(),
+                                TimeUnit.NANOSECONDS);
+                    } else if (TAG_COLUMNS.contains(column)) {
+                        builder.tag(column, value.toString());
+                    } else if (INTEGER_COLUMNS.contains(column)) {
+                        builder.addField(column, ((Number) value).longValue());
+                    } else if (value instanceof Number) {
+                        builder.addField(column, ((Number) value).doubleValue());
+                    } else if (value instanceof Boolean) {
+                        builder.addField(column, (Boolean) value);
+                    } else {
+                        builder.addField(column, value.toString());
+                    }
+                }
+                points.add(builder.build());
+            }
+        }
+        return points;
+    }
+
+    private static BatchPoints createBatch() {
+        return BatchPoints.database(InfluxDBConfiguration.DATABASE_NAME)
+                .retentionPolicy(InfluxDBConfiguration.RETENTION_POLICY_NAME).build();
+    }
+
+    /**
+     * Returns the time of the first value log of the former measurement.
+     *
+     * @return The time (epoch milliseconds) or -1 if there are no value logs
+     */
+    private long findFirstLegacyTime() {
+        Query query = new Query("SELECT FIRST(\"value\") FROM " +
+                ValueLogRepository.getMeasurementReference(InfluxDBConfiguration.LEGACY_MEASUREMENT_NAME),
+                InfluxDBConfiguration.DATABASE_NAME);
+        List<QueryResult.Series> seriesList = getSeries(influxDB.query(query, TimeUnit.MILLISECONDS));
+        if ((seriesList == null) || seriesList.get(0).getValues().isEmpty()) {
+            return -1;
+        }
+        return ((Number) seriesList.get(0).getValues().get(0).get(0)).longValue();
+    }
+
+    /**
+     * Checks whether the former measurement exists.
+     *
+     * @return True, if the former measurement exists; false otherwise
+     */
+    private boolean hasLegacyValueLogs() {
+        Query query = new Query("SHOW MEASUREMENTS WITH MEASUREMENT = \"" +
+                InfluxDBConfiguration.LEGACY_MEASUREMENT_NAME + "\"", InfluxDBConfiguration.DATABASE_NAME);
+        return getSeries(influxDB.query(query)) != null;
+    }
+
+    /**
+     * Reads the most recent progress record of the migration.
+     *
+     * @return The record consisting out of time, position and completion flag or null if there is none
+     */
+    private List<Object> readCheckpoint() {
+        Query query = new Query("SELECT \"" + POSITION_COLUMN + "\", \"" + COMPLETED_COLUMN + "\" FROM " +
+                ValueLogRepository.getMeasurementReference(InfluxDBConfiguration.MIGRATION_MEASUREMENT_NAME) +
+                " ORDER BY time DESC LIMIT 1", InfluxDBConfiguration.DATABASE_NAME);
+        List<QueryResult.Series> seriesList = getSeries(influxDB.query(query, TimeUnit.MILLISECONDS));
+        if ((seriesList == null) || seriesList.get(0).getValues().isEmpty()) {
+            return null;
+        }
+        return seriesList.get(0).getValues().get(0);
+    }
+
+    /**
+     * Records the progress of the migration.
+     *
+     * @param position  The position (epoch milliseconds) up to which all value logs have been copied
+     * @param completed Whether the migration is completed
+     */
+    private void writeCheckpoint(long position, boolean completed) {
+        Point point = Point.measurement(InfluxDBConfiguration.MIGRATION_MEASUREMENT_NAME)
+                .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                .addField(POSITION_COLUMN, position)
+                .addField(COMPLETED_COLUMN, completed)
+                .build();
+        influxDB.write(InfluxDBConfiguration.DATABASE_NAME, InfluxDBConfiguration.RETENTION_POLICY_NAME, point);
+    }
+
+    /**
+     * Extracts the series of the first result of a query result.
+     *
+     * @param queryResult The query result
+     * @return The list of series or null if the result does not contain any
+     */
+    private static List<QueryResult.Series> getSeries(QueryResult queryResult) {
+        if ((queryResult.getResults() == null) || queryResult.getResults().isEmpty()) {
+            return null;
+        }
+        List<QueryResult.Series> seriesList = queryResult.getResults().get(0).getSeries();
+        return ((seriesList == null) || seriesList.isEmpty()) ? null : seriesList;
+    }
+}
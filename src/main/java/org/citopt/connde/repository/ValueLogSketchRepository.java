@@ -0,0 +1,20 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.domain.valueLog.ValueLogSketch;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.util.List;
+
+/**
+ * Repository for the quantile sketches of the value logs of components per time bucket.
+ */
+@RepositoryRestResource(exported = false)
+public interface ValueLogSketchRepository extends MongoRepository<ValueLogSketch, String> {
+
+    @Query("{ 'idref' : ?0, 'bucketStart' : { $gte : ?1, $lt : ?2 } }")
+    List<ValueLogSketch> findByIdrefAndBucketStartInRange(String idref, long from, long to);
+
+    Long deleteByIdref(String idref);
+}
@@ -0,0 +1,44 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+import java.util.List;
+
+/**
+ * Objects of this class represent slices of value logs that were retrieved by means of a {@link ValueLogCursor}.
+ * In addition to the value logs, they carry an opaque continuation token which allows to retrieve the next slice.
+ * They can be used as DTOs in order to retrieve the value logs to the client.
+ */
+public class ValueLogSlice {
+    private final List<ValueLog> content;
+    private final int size;
+    private final String continuation;
+
+    /**
+     * Creates a new slice.
+     *
+     * @param content      The value logs of the slice
+     * @param continuation The token for retrieving the next slice or null if there are no further value logs
+     */
+    public ValueLogSlice(List<ValueLog> content, String continuation) {
+        this.content = content;
+        this.size = content.size();
+        this.continuation = continuation;
+    }
+
+    public List<ValueLog> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public boolean isLast() {
+        return continuation == null;
+    }
+}
@@ -0,0 +1,562 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.InfluxDBConfiguration;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBException;
+import org.influxdb.InfluxDBIOException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Durable local spool for value logs that could not be written to InfluxDB, e.g. during database maintenance.
+ * Batches of points in line protocol are appended to memory-mapped segment files of fixed size; when a segment is
+ * full, a new one is started. As soon as the database is available again, a replay thread writes the spooled
+ * batches to the database at a limited rate and deletes segments that were replayed completely. The number of
+ * segments is bounded; if the limit is reached, the oldest segment is discarded.
+ * Each segment starts with a header holding the read position, followed by records that consist out of the length
+ * of the data, the number of points and the line protocol data itself. Since the length is written last, a record
+ * only becomes visible once it is complete, so that the spool survives restarts of the application.
+ * Records that are rejected by the database (e.g. because they are beyond the retention policy or conflict with the
+ * field types) cannot succeed on retry; they are moved to a dead letter file in the spool directory instead of
+ * blocking the replay of all subsequent records.
+ */
+class ValueLogSpool {
+    //Name of the replay thread
+    private static final String THREAD_NAME = "value-log-spool-replay";
+
+    //File names of the segments
+    private static final String SEGMENT_FILE_FORMAT = "spool-%020d.seg";
+    private static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile("spool-(\\d+)\\.seg");
+
+    //Layout of the segments
+    private static final int MAGIC = 0x4D425053;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int READ_POSITION_OFFSET = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    //Waiting times of the replay thread
+    private static final long IDLE_MILLIS = 1000;
+    private static final long PROBE_MILLIS = 5000;
+
+    //Name of the file holding rejected records
+    private static final String REJECTED_FILE_NAME = "rejected.lp";
+    private static final String REJECTED_ROLLED_FILE_NAME = "rejected.lp.1";
+
+    //Maximum number of attempts for replaying a record that failed for an unknown reason
+    private static final int MAX_REPLAY_ATTEMPTS = 10;
+
+    //InfluxDB bean to replay to
+    private final InfluxDB influxDB;
+
+    //Spool configuration
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int replayRate;
+
+    //Segments, ordered from oldest to newest, guarded by the spool itself
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence = 0;
+    private boolean dirty = false;
+
+    //Whether the database is considered to be available
+    private volatile boolean databaseAvailable = true;
+
+    //Replay thread
+    private final Thread replayer;
+    private volatile boolean running = true;
+
+    //Counters
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a new spool, loads the segments that remain from previous runs and starts the replay thread.
+     *
+     * @param influxDB    The InfluxDB bean to replay to
+     * @param directory   The directory for the segment files
+     * @param segmentSize The size of each segment file in bytes
+     * @param maxSegments The maximum number of segment files
+     * @param replayRate  The maximum number of points to replay per second
+     * @throws IOException In case the directory or the remaining segments could not be accessed
+     */
+    ValueLogSpool(InfluxDB influxDB, Path directory, int segmentSize, int maxSegments, int replayRate)
+            throws IOException {
+        //Sanity checks
+        if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size is too small.");
+        } else if (maxSegments < 1) {
+            throw new IllegalArgumentException("Maximum number of segments must be positive.");
+        } else if (replayRate < 1) {
+            throw new IllegalArgumentException("Replay rate must be positive.");
+        }
+
+        this.influxDB = influxDB;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.replayRate = replayRate;
+
+        //Load remaining segments
+        Files.createDirectories(directory);
+        loadSegments();
+
+        //Start replay thread
+        this.replayer = new Thread(this::runReplayer, THREAD_NAME);
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    /**
+     * Returns whether the database is currently considered to be available. If not, batches are supposed to be
+     * spooled directly instead of attempting to write them.
+     *
+     * @return True, if the database is available; false otherwise
+     */
+    boolean isDatabaseAvailable() {
+        return databaseAvailable;
+    }
+
+    /**
+     * Marks the database as unavailable after a write failed. The replay thread checks periodically whether it
+     * became available again.
+     */
+    void markDatabaseUnavailable() {
+        databaseAvailable = false;
+    }
+
+    /**
+     * Appends a batch of points in line protocol to the spool.
+     *
+     * @param lines      The points in line protocol, each terminated by a line break
+     * @param pointCount The number of points
+     * @return True, if the batch was spooled; false if it does not fit into a segment or could not be written
+     */
+    synchronized boolean append(CharSequence lines, int pointCount) {
+        byte[] data = lines.toString().getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + data.length;
+
+        //Check whether the batch fits into a segment at all
+        if (recordSize > segmentSize - SEGMENT_HEADER_SIZE) {
+            return false;
+        }
+
+        try {
+            //Start new segment if necessary
+            Segment segment = segments.peekLast();
+            if ((segment == null) || (segment.writePosition + recordSize > segment.buffer.capacity())) {
+                if (segments.size() >= maxSegments) {
+                    discardOldestSegment();
+                }
+                segment = createSegment();
+            }
+
+            //Write record, the length comes last and marks the record as complete
+            int position = segment.writePosition;
+            MappedByteBuffer buffer = segment.buffer;
+            buffer.putInt(position + 4, pointCount);
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + RECORD_HEADER_SIZE);
+            view.put(data);
+            buffer.putInt(position, data.length);
+            segment.writePosition += recordSize;
+        } catch (IOException e) {
+            System.err.println("Failed to spool value logs: " + e.getMessage());
+            return false;
+        }
+
+        spooled.add(pointCount);
+        dirty = true;
+        return true;
+    }
+
+    long getSpooled() {
+        return spooled.sum();
+    }
+
+    long getReplayed() {
+        return replayed.sum();
+    }
+
+    /**
+     * Returns the number of spooled points that were discarded due to the limit of segments.
+     *
+     * @return The number of discarded points
+     */
+    long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * Returns the number of spooled points that were rejected by the database and moved to the dead letter file.
+     *
+     * @return The number of rejected points
+     */
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Checks whether a failed write to the database may succeed if it is retried. Writes that were rejected due to
+     * the data itself (e.g. field type conflicts, points beyond the retention policy, unparsable lines) are
+     * permanent failures, whereas IO errors and server errors are transient.
+     *
+     * @param e The exception that was thrown by the write
+     * @return True, if the write may succeed on retry; false otherwise
+     */
+    static boolean isRetryable(RuntimeException e) {
+        if (e instanceof InfluxDBIOException) {
+            return true;
+        }
+        return !(e instanceof InfluxDBException) || ((InfluxDBException) e).isRetryWorth();
+    }
+
+    /**
+     * Returns the number of bytes of spooled data that still need to be replayed.
+     *
+     * @return The number of pending bytes
+     */
+    synchronized long getPendingBytes() {
+        long sum = 0;
+        for (Segment segment : segments) {
+            sum += segment.writePosition - segment.readPosition;
+        }
+        return sum;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Stops the replay thread and closes all segments. Segments that were not replayed completely are kept and
+     * replayed after the next start.
+     */
+    void shutdown() {
+        running = false;
+        replayer.interrupt();
+        try {
+            replayer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                closeQuietly(segment);
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * Main loop of the replay thread.
+     */
+    private void runReplayer() {
+        //Number of failed attempts for the current record
+        int attempts = 0;
+
+        while (running) {
+            try {
+                //Wait for the database to become available
+                if (!databaseAvailable) {
+                    try {
+                        influxDB.ping();
+                        databaseAvailable = true;
+                    } catch (RuntimeException e) {
+                        Thread.sleep(PROBE_MILLIS);
+                    }
+                    continue;
+                }
+
+                //Take the oldest record
+                Record record = nextRecord();
+                if (record == null) {
+                    forceIfDirty();
+                    Thread.sleep(IDLE_MILLIS);
+                    continue;
+                }
+
+                //Replay record
+                try {
+                    influxDB.write(InfluxDBConfiguration.DATABASE_NAME, InfluxDBConfiguration.RETENTION_POLICY_NAME,
+                            InfluxDB.ConsistencyLevel.ONE, TimeUnit.NANOSECONDS, record.lines);
+                } catch (InfluxDBIOException e) {
+                    //Database is not reachable, retry the record once it is available again
+                    markDatabaseUnavailable();
+                    continue;
+                } catch (RuntimeException e) {
+                    //Retry transient failures a limited number of times, reject the record otherwise
+                    if (isRetryable(e) && (++attempts < MAX_REPLAY_ATTEMPTS)) {
+                        markDatabaseUnavailable();
+                        continue;
+                    }
+                    System.err.println("Spooled value logs rejected by the database: " + e.getMessage());
+                    reject(record, e.getMessage());
+                    commit(record);
+                    rejected.add(record.pointCount);
+                    attempts = 0;
+                    continue;
+                }
+                commit(record);
+                replayed.add(record.pointCount);
+                attempts = 0;
+
+                //Limit replay rate
+                Thread.sleep(TimeUnit.SECONDS.toMillis(record.pointCount) / replayRate);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends a record that was rejected by the database to the dead letter file, preceded by a comment line that
+     * states the time and the reason, so that the file remains valid line protocol. If the file exceeds the segment
+     * size, it is rolled over and the previous file is replaced.
+     *
+     * @param record The rejected record
+     * @param reason The reason why the record was rejected
+     */
+    private void reject(Record record, String reason) {
+        Path file = directory.resolve(REJECTED_FILE_NAME);
+        try {
+            if (Files.exists(file) && (Files.size(file) > segmentSize)) {
+                Files.move(file, directory.resolve(REJECTED_ROLLED_FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write("# " + Instant.now() + " " + String.valueOf(reason).replace('\n', ' '));
+                writer.newLine();
+                writer.write(record.lines);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write rejected value logs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the oldest record that was not replayed yet. Segments that were replayed completely are deleted.
+     *
+     * @return The record or null if there is none
+     */
+    private synchronized Record nextRecord() {
+        Segment segment = segments.peekFirst();
+        while (segment != null) {
+            //Read record if available
+            if (segment.readPosition < segment.writePosition) {
+                MappedByteBuffer buffer = segment.buffer;
+                int position = segment.readPosition;
+                int length = buffer.getInt(position);
+                int pointCount = buffer.getInt(position + 4);
+                byte[] data = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(position + RECORD_HEADER_SIZE);
+                view.get(data);
+                return new Record(segment, position, RECORD_HEADER_SIZE + length, pointCount,
+                        new String(data, StandardCharsets.UTF_8));
+            }
+
+            //Keep the segment that is currently written
+            if (segment == segments.peekLast()) {
+                return null;
+            }
+
+            //Delete segment that was replayed completely
+            segments.removeFirst();
+            deleteSegment(segment);
+            segment = segments.peekFirst();
+        }
+        return null;
+    }
+
+    /**
+     * Marks a record as replayed by advancing the read position of its segment.
+     *
+     * @param record The replayed record
+     */
+    private synchronized void commit(Record record) {
+        //Ignore records of segments that were discarded in the meantime
+        if (!segments.contains(record.segment) || (record.segment.readPosition != record.position)) {
+            return;
+        }
+        record.segment.readPosition += record.size;
+        record.segment.buffer.putInt(READ_POSITION_OFFSET, record.segment.readPosition);
+        dirty = true;
+    }
+
+    private synchronized void forceIfDirty() {
+        if (dirty) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+            dirty = false;
+        }
+    }
+
+    /**
+     * Discards the oldest segment in order to make room for a new one. Its remaining points are counted.
+     */
+    private void discardOldestSegment() {
+        Segment segment = segments.removeFirst();
+
+        //Count points that were not replayed
+        int position = segment.readPosition;
+        while (position < segment.writePosition) {
+            discarded.add(segment.buffer.getInt(position + 4));
+            position += RECORD_HEADER_SIZE + segment.buffer.getInt(position);
+        }
+
+        deleteSegment(segment);
+    }
+
+    /**
+     * Creates a new, empty segment and appends it to the list of segments.
+     *
+     * @return The new segment
+     * @throws IOException In case the segment file could not be created
+     */
+    private Segment createSegment() throws IOException {
+        Path path = directory.resolve(String.format(SEGMENT_FILE_FORMAT, nextSequence++));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+        //Write header
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(READ_POSITION_OFFSET, SEGMENT_HEADER_SIZE);
+
+        Segment segment = new Segment(path, channel, buffer, SEGMENT_HEADER_SIZE, SEGMENT_HEADER_SIZE);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Loads the segments that remain from previous runs and restores their read and write positions.
+     *
+     * @throws IOException In case the directory could not be read
+     */
+    private void loadSegments() throws IOException {
+        //Collect segment files ordered by sequence number
+        Map<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Matcher matcher = SEGMENT_FILE_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), path);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> entry : files.entrySet()) {
+            nextSequence = entry.getKey() + 1;
+            Path path = entry.getValue();
+            try {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+                //Skip invalid files
+                int readPosition = (buffer.capacity() >= SEGMENT_HEADER_SIZE) ? buffer.getInt(READ_POSITION_OFFSET) : 0;
+                if ((buffer.capacity() < SEGMENT_HEADER_SIZE) || (buffer.getInt(0) != MAGIC)
+                        || (readPosition < SEGMENT_HEADER_SIZE) || (readPosition > buffer.capacity())) {
+                    channel.close();
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+
+                //Find end of the complete records
+                int writePosition = readPosition;
+                while (writePosition + RECORD_HEADER_SIZE <= buffer.capacity()) {
+                    int length = buffer.getInt(writePosition);
+                    if ((length <= 0) || (writePosition + RECORD_HEADER_SIZE + length > buffer.capacity())) {
+                        break;
+                    }
+                    writePosition += RECORD_HEADER_SIZE + length;
+                }
+
+                segments.addLast(new Segment(path, channel, buffer, readPosition, writePosition));
+            } catch (IOException e) {
+                System.err.println("Failed to load spool segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        closeQuietly(segment);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete spool segment " + segment.path + ": " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            //Segment is not needed anymore
+        }
+    }
+
+    /**
+     * Memory-mapped segment file together with its read and write positions.
+     */
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, int readPosition,
+                        int writePosition) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.readPosition = readPosition;
+            this.writePosition = writePosition;
+        }
+    }
+
+    /**
+     * Record that was read from a segment for being replayed.
+     */
+    private static class Record {
+        private final Segment segment;
+        private final int position;
+        private final int size;
+        private final int pointCount;
+        private final String lines;
+
+        private Record(Segment segment, int position, int size, int pointCount, String lines) {
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+            this.pointCount = pointCount;
+            this.lines = lines;
+        }
+    }
+}
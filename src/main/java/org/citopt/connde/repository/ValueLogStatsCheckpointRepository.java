@@ -0,0 +1,12 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.domain.valueLog.ValueLogStatsCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+/**
+ * Repository for the checkpoints of the running value log statistics of components.
+ */
+@RepositoryRestResource(exported = false)
+public interface ValueLogStatsCheckpointRepository extends MongoRepository<ValueLogStatsCheckpoint, String> {
+}
@@ -0,0 +1,68 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+/**
+ * Objects of this class hold descriptive figures of the values of a set of value logs of a component, as computed
+ * by the database. Besides the number of value logs and their mean, the sum of squared deviations from the mean is
+ * provided, which allows to merge summaries of disjoint sets of value logs exactly.
+ */
+public class ValueLogSummary {
+    private final long count;
+    private final double mean;
+    private final double squaredDeviations;
+    private final ValueLog firstLog;
+    private final ValueLog lastLog;
+    private final ValueLog minimumLog;
+    private final ValueLog maximumLog;
+
+    /**
+     * Creates a new summary.
+     *
+     * @param count             The number of value logs
+     * @param mean              The mean of the values
+     * @param squaredDeviations The sum of squared deviations of the values from their mean
+     * @param firstLog          The oldest value log
+     * @param lastLog           The most recent value log
+     * @param minimumLog        The value log with the smallest value
+     * @param maximumLog        The value log with the largest value
+     */
+    public ValueLogSummary(long count, double mean, double squaredDeviations, ValueLog firstLog, ValueLog lastLog,
+                           ValueLog minimumLog, ValueLog maximumLog) {
+        this.count = count;
+        this.mean = mean;
+        this.squaredDeviations = squaredDeviations;
+        this.firstLog = firstLog;
+        this.lastLog = lastLog;
+        this.minimumLog = minimumLog;
+        this.maximumLog = maximumLog;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getSquaredDeviations() {
+        return squaredDeviations;
+    }
+
+    public ValueLog getFirstLog() {
+        return firstLog;
+    }
+
+    public ValueLog getLastLog() {
+        return lastLog;
+    }
+
+    public ValueLog getMinimumLog() {
+        return minimumLog;
+    }
+
+    public ValueLog getMaximumLog() {
+        return maximumLog;
+    }
+}
@@ -0,0 +1,333 @@
+package org.citopt.connde.repository;
+
+import org.citopt.connde.InfluxDBConfiguration;
+import org.citopt.connde.domain.valueLog.ValueLog;
+import org.influxdb.InfluxDB;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Write-behind buffer for value logs. Value logs are put into a bounded queue and written to InfluxDB by a
+ * dedicated flush thread, either as soon as a full batch is available or when the flush interval elapsed. The flush
+ * deadlines follow a fixed rate and do not drift with the duration of the writes. Batches are encoded directly into
+ * line protocol, reusing a single buffer. If the queue is full, further value logs are dropped and counted, so that
+ * the memory consumption remains bounded and the callers are never blocked by the database.
+ * If a spool is available, value logs are not dropped but spooled to local disk instead, both when the queue is full
+ * and when the database cannot be written to. While the database is unavailable, batches are spooled directly.
+ * Value logs that do not fit into the queue are coalesced into batches before they are spooled. Batches that are
+ * rejected by the database (e.g. due to a field type conflict) are neither retried nor spooled.
+ */
+class ValueLogWriteBuffer {
+    //Name of the flush thread
+    private static final String THREAD_NAME = "value-log-writer";
+
+    //Initial capacity of the line protocol buffer per point
+    private static final int LINE_CAPACITY = 192;
+
+    //Nanoseconds per millisecond for latency conversions
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    //InfluxDB bean to write to
+    private final InfluxDB influxDB;
+
+    //Whether value logs need to be written to the former measurement as well
+    private final BooleanSupplier legacyMode;
+
+    //Spool for value logs that cannot be written (may be null)
+    private final ValueLogSpool spool;
+
+    //Queue of value logs waiting for being written
+    private final BlockingQueue<ValueLog> queue;
+    private final int capacity;
+
+    //Value logs that did not fit into the queue, coalesced into batches for the spool, guarded by the builder
+    private final StringBuilder overflowLines;
+    private int overflowCount = 0;
+
+    //Whether the messages of the value logs are supposed to be written
+    private final boolean writeMessages;
+
+    //Flush configuration
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    //Flush thread
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    //Counters and latency figures
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushLatencySumNanos = new LongAdder();
+    private final AtomicLong maxFlushLatencyNanos = new AtomicLong();
+    private volatile long lastFlushLatencyNanos = 0;
+    private volatile int lastBatchSize = 0;
+    private volatile int maxBatchSize = 0;
+
+    /**
+     * Creates and starts a new write buffer.
+     *
+     * @param influxDB        The InfluxDB bean to write to
+     * @param legacyMode      Supplier that indicates whether value logs need to be written to the former measurement
+     * @param spool           The spool for value logs that cannot be written or null if they are supposed to be dropped
+     * @param capacity        The maximum number of value logs that may wait for being written
+     * @param batchSize       The number of value logs that triggers a flush
+     * @param flushIntervalMs The maximum time between two flushes (in milliseconds)
+     * @param writeMessages   Whether the messages of the value logs are supposed to be written
+     */
+    ValueLogWriteBuffer(InfluxDB influxDB, BooleanSupplier legacyMode, ValueLogSpool spool, int capacity,
+                        int batchSize, long flushIntervalMs, boolean writeMessages) {
+        //Sanity checks
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        } else if ((batchSize < 1) || (batchSize > capacity)) {
+            throw new IllegalArgumentException("Batch size must be positive and must not exceed the capacity.");
+        } else if (flushIntervalMs < 1) {
+            throw new IllegalArgumentException("Flush interval must be positive.");
+        }
+
+        this.influxDB = influxDB;
+        this.legacyMode = legacyMode;
+        this.spool = spool;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.writeMessages = writeMessages;
+        this.overflowLines = new StringBuilder((spool == null) ? 0 : batchSize * LINE_CAPACITY);
+
+        //Start flush thread
+        this.flusher = new Thread(this::runFlusher, THREAD_NAME);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Adds a value log to the buffer. The value log is dropped if the buffer is full or if it cannot be
+     * represented in the database.
+     *
+     * @param valueLog The value log to add
+     * @return True, if the value log was accepted; false if it was dropped
+     */
+    boolean add(ValueLog valueLog) {
+        if (!ValueLogLineProtocol.isEncodable(valueLog)) {
+            dropped.increment();
+            return false;
+        } else if (!running || !queue.offer(valueLog)) {
+            //Spool value log if the buffer is full
+            if (spool != null) {
+                spoolOverflow(valueLog);
+                return true;
+            }
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a value log that did not fit into the queue to the current overflow batch and appends the batch to the
+     * spool as soon as it is full. Partial overflow batches are appended by the flush thread.
+     *
+     * @param valueLog The value log to spool
+     */
+    private void spoolOverflow(ValueLog valueLog) {
+        synchronized (overflowLines) {
+            encode(overflowLines, valueLog, legacyMode.getAsBoolean());
+            overflowCount++;
+            if (overflowCount >= batchSize) {
+                flushOverflow();
+            }
+        }
+    }
+
+    /**
+     * Appends the current overflow batch to the spool, if there is one.
+     */
+    private void flushOverflow() {
+        if (spool == null) {
+            return;
+        }
+        synchronized (overflowLines) {
+            if (overflowCount == 0) {
+                return;
+            }
+            if (!spool.append(overflowLines, overflowCount)) {
+                dropped.add(overflowCount);
+            }
+            overflowLines.setLength(0);
+            overflowCount = 0;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters and latency figures of the buffer.
+     *
+     * @return The metrics snapshot
+     */
+    ValueLogWriteMetrics getMetrics() {
+        long flushCount = flushes.sum();
+        double averageBatchSize = (flushCount == 0) ? 0 : (written.sum() + failed.sum()) / (double) flushCount;
+        double averageLatency = (flushCount == 0) ? 0 :
+                (flushLatencySumNanos.sum() / (double) flushCount) / NANOS_PER_MILLI;
+
+        return new ValueLogWriteMetrics(queue.size(), capacity, written.sum(), dropped.sum(), failed.sum(),
+                flushCount, lastBatchSize, maxBatchSize, averageBatchSize, lastFlushLatencyNanos / NANOS_PER_MILLI,
+                maxFlushLatencyNanos.get() / NANOS_PER_MILLI, averageLatency,
+                (spool == null) || spool.isDatabaseAvailable(), (spool == null) ? 0 : spool.getSpooled(),
+                (spool == null) ? 0 : spool.getReplayed(), (spool == null) ? 0 : spool.getDiscarded(),
+                (spool == null) ? 0 : spool.getRejected(),
+                (spool == null) ? 0 : spool.getSegmentCount(), (spool == null) ? 0 : spool.getPendingBytes());
+    }
+
+    /**
+     * Stops the flush thread after all buffered value logs have been written. The flush thread notices the request
+     * within one flush interval; it is not interrupted, since this would abort a running write.
+     */
+    void shutdown() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        //Close spool after the last batch was handled
+        if (spool != null) {
+            spool.shutdown();
+        }
+    }
+
+    /**
+     * Main loop of the flush thread.
+     */
+    private void runFlusher() {
+        List<ValueLog> batch = new ArrayList<>(batchSize);
+        StringBuilder lines = new StringBuilder(batchSize * LINE_CAPACITY);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+
+        while (running) {
+            //Collect value logs until the batch is full or the deadline is reached
+            long remaining = deadline - System.nanoTime();
+            try {
+                while ((batch.size() < batchSize) && (remaining > 0)) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                        ValueLog valueLog = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (valueLog != null) {
+                            batch.add(valueLog);
+                        }
+                    }
+                    remaining = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                //Remaining value logs are flushed below
+                break;
+            }
+
+            flush(batch, lines);
+            flushOverflow();
+
+            //Advance deadline at fixed rate if it was reached, skipping missed intervals
+            long now = System.nanoTime();
+            if (now - deadline >= 0) {
+                deadline += flushIntervalNanos * (1 + (now - deadline) / flushIntervalNanos);
+            }
+        }
+
+        //Write all remaining value logs
+        flush(batch, lines);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flush(batch, lines);
+        }
+        flushOverflow();
+    }
+
+    /**
+     * Writes a batch of value logs to the database and clears the batch afterwards.
+     *
+     * @param batch The batch to write
+     * @param lines Reusable buffer for the line protocol
+     */
+    private void flush(List<ValueLog> batch, StringBuilder lines) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+
+        //Encode batch
+        lines.setLength(0);
+        boolean writeLegacy = legacyMode.getAsBoolean();
+        for (ValueLog valueLog : batch) {
+            encode(lines, valueLog, writeLegacy);
+        }
+
+        //Write batch in a single request, unless the database is known to be unavailable
+        if ((spool == null) || spool.isDatabaseAvailable()) {
+            try {
+                influxDB.write(InfluxDBConfiguration.DATABASE_NAME, InfluxDBConfiguration.RETENTION_POLICY_NAME,
+                        InfluxDB.ConsistencyLevel.ONE, TimeUnit.NANOSECONDS, lines.toString());
+                written.add(batch.size());
+            } catch (RuntimeException e) {
+                System.err.println("Failed to write value logs: " + e.getMessage());
+                if (!ValueLogSpool.isRetryable(e)) {
+                    //Batch was rejected by the database, retrying or spooling it would not help
+                    failed.add(batch.size());
+                } else if (spool != null) {
+                    spool.markDatabaseUnavailable();
+                    spoolBatch(lines, batch.size());
+                } else {
+                    failed.add(batch.size());
+                }
+            }
+        } else {
+            spoolBatch(lines, batch.size());
+        }
+
+        //Record figures
+        long latency = System.nanoTime() - startTime;
+        lastFlushLatencyNanos = latency;
+        flushLatencySumNanos.add(latency);
+        maxFlushLatencyNanos.accumulateAndGet(latency, Math::max);
+        flushes.increment();
+        lastBatchSize = batch.size();
+        maxBatchSize = Math.max(maxBatchSize, batch.size());
+
+        batch.clear();
+    }
+
+    /**
+     * Appends a batch that could not be written to the spool.
+     *
+     * @param lines      The batch in line protocol
+     * @param pointCount The number of value logs of the batch
+     */
+    private void spoolBatch(StringBuilder lines, int pointCount) {
+        if (!spool.append(lines, pointCount)) {
+            failed.add(pointCount);
+        }
+    }
+
+    /**
+     * Encodes a value log to line protocol.
+     *
+     * @param lines       The builder to append to
+     * @param valueLog    The value log to encode
+     * @param writeLegacy Whether a line for the former measurement is required as well
+     */
+    private void encode(StringBuilder lines, ValueLog valueLog, boolean writeLegacy) {
+        ValueLogLineProtocol.appendLine(lines, valueLog, writeMessages);
+        if (writeLegacy) {
+            ValueLogLineProtocol.appendLegacyLine(lines, valueLog, writeMessages);
+        }
+    }
+}
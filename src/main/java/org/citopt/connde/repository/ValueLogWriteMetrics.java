@@ -0,0 +1,152 @@
+package org.citopt.connde.repository;
+
+/**
+ * Objects of this class are snapshots of the counters and latency figures of the write-behind buffer for value logs.
+ * They can be used as DTOs in order to retrieve the metrics to the client.
+ */
+public class ValueLogWriteMetrics {
+    private final int buffered;
+    private final int capacity;
+    private final long written;
+    private final long dropped;
+    private final long failed;
+    private final long flushes;
+    private final int lastBatchSize;
+    private final int maxBatchSize;
+    private final double averageBatchSize;
+    private final double lastFlushLatencyMillis;
+    private final double maxFlushLatencyMillis;
+    private final double averageFlushLatencyMillis;
+    private final boolean databaseAvailable;
+    private final long spooled;
+    private final long replayed;
+    private final long discarded;
+    private final long rejected;
+    private final int spoolSegments;
+    private final long spoolPendingBytes;
+
+    /**
+     * Creates a new metrics snapshot.
+     *
+     * @param buffered                  The number of value logs waiting for being written
+     * @param capacity                  The maximum number of value logs that may wait for being written
+     * @param written                   The number of value logs written to the database
+     * @param dropped                   The number of value logs dropped due to a full buffer or invalid values
+     * @param failed                    The number of value logs whose write request failed
+     * @param flushes                   The number of flushes so far
+     * @param lastBatchSize             The size of the most recent batch
+     * @param maxBatchSize              The largest batch size observed so far
+     * @param averageBatchSize          The average batch size
+     * @param lastFlushLatencyMillis    The duration of the most recent flush in milliseconds
+     * @param maxFlushLatencyMillis     The longest flush duration observed so far in milliseconds
+     * @param averageFlushLatencyMillis The average flush duration in milliseconds
+     * @param databaseAvailable         Whether the database is currently considered to be available
+     * @param spooled                   The number of value logs spooled to local disk
+     * @param replayed                  The number of spooled value logs that were replayed to the database
+     * @param discarded                 The number of spooled value logs discarded due to the limit of disk usage
+     * @param rejected                  The number of spooled value logs rejected by the database
+     * @param spoolSegments             The number of segment files of the spool
+     * @param spoolPendingBytes         The number of spooled bytes that still need to be replayed
+     */
+    ValueLogWriteMetrics(int buffered, int capacity, long written, long dropped, long failed, long flushes,
+                         int lastBatchSize, int maxBatchSize, double averageBatchSize, double lastFlushLatencyMillis,
+                         double maxFlushLatencyMillis, double averageFlushLatencyMillis, boolean databaseAvailable,
+                         long spooled, long replayed, long discarded, long rejected, int spoolSegments,
+                         long spoolPendingBytes) {
+        this.buffered = buffered;
+        this.capacity = capacity;
+        this.written = written;
+        this.dropped = dropped;
+        this.failed = failed;
+        this.flushes = flushes;
+        this.lastBatchSize = lastBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.averageBatchSize = averageBatchSize;
+        this.lastFlushLatencyMillis = lastFlushLatencyMillis;
+        this.maxFlushLatencyMillis = maxFlushLatencyMillis;
+        this.averageFlushLatencyMillis = averageFlushLatencyMillis;
+        this.databaseAvailable = databaseAvailable;
+        this.spooled = spooled;
+        this.replayed = replayed;
+        this.discarded = discarded;
+        this.rejected = rejected;
+        this.spoolSegments = spoolSegments;
+        this.spoolPendingBytes = spoolPendingBytes;
+    }
+
+    public int getBuffered() {
+        return buffered;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        return averageBatchSize;
+    }
+
+    public double getLastFlushLatencyMillis() {
+        return lastFlushLatencyMillis;
+    }
+
+    public double getMaxFlushLatencyMillis() {
+        return maxFlushLatencyMillis;
+    }
+
+    public double getAverageFlushLatencyMillis() {
+        return averageFlushLatencyMillis;
+    }
+
+    public boolean isDatabaseAvailable() {
+        return databaseAvailable;
+    }
+
+    public long getSpooled() {
+        return spooled;
+    }
+
+    public long getReplayed() {
+        return replayed;
+    }
+
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public int getSpoolSegments() {
+        return spoolSegments;
+    }
+
+    public long getSpoolPendingBytes() {
+        return spoolPendingBytes;
+    }
+}
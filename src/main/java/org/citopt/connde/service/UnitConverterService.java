@@ -4,9 +4,16 @@ import org.citopt.connde.domain.valueLog.ValueLog;
 import org.springframework.stereotype.Component;
 
 import javax.measure.converter.UnitConverter;
+import javax.measure.unit.Unit;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Service that provides means for converting values from one unit into another unit.
+ * Service that provides means for converting values from one unit into another unit. Parsed units and the
+ * converters between them are cached, since parsing unit strings and composing converters is expensive compared
+ * to the conversion itself.
  *
  * @author Jan
  */
@@ -15,6 +22,86 @@ public class UnitConverterService {
     //Number of decimal places to spare from rounding
     private static final int ROUNDING_DECIMAL_PLACES = 4;
 
+    //Rounding constant derived from the number of decimal places
+    private static final double ROUNDING_CONST = Math.pow(10, ROUNDING_DECIMAL_PLACES);
+
+    //Relative tolerance for checking whether a unit converter is affine
+    private static final double AFFINITY_TOLERANCE = 1e-9;
+
+    //Maximum number of entries per cache, since unit strings may be provided by users
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    //Caches of parsed units and of converters between them
+    private final Map<String, Unit> unitCache = new ConcurrentHashMap<>();
+    private final Map<ConversionKey, UnitConverter> converterCache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the unit that is represented by a given string. Parsed units are cached.
+     *
+     * @param unit The string specifying the unit
+     * @return The unit object
+     * @throws IllegalArgumentException In case the string does not represent a valid unit
+     */
+    public Unit getUnit(String unit) {
+        //Sanity check
+        if (unit == null) {
+            throw new IllegalArgumentException("Unit must not be null.");
+        }
+
+        Unit unitObject = unitCache.get(unit);
+        if (unitObject != null) {
+            return unitObject;
+        }
+
+        //Parse unit, parsing errors are not cached
+        unitObject = Unit.valueOf(unit);
+        if (unitCache.size() < MAX_CACHE_SIZE) {
+            unitCache.put(unit, unitObject);
+        }
+        return unitObject;
+    }
+
+    /**
+     * Returns the converter that converts values from a source unit into a target unit. Converters are cached
+     * per pair of units.
+     *
+     * @param sourceUnit The unit of the values
+     * @param targetUnit The unit to which the values are supposed to be converted
+     * @return The unit converter
+     * @throws javax.measure.converter.ConversionException In case the units are not compatible
+     */
+    public UnitConverter getConverter(Unit sourceUnit, Unit targetUnit) {
+        //Sanity check
+        if ((sourceUnit == null) || (targetUnit == null)) {
+            throw new IllegalArgumentException("Units must not be null.");
+        }
+
+        ConversionKey key = new ConversionKey(sourceUnit, targetUnit);
+        UnitConverter converter = converterCache.get(key);
+        if (converter != null) {
+            return converter;
+        }
+
+        converter = sourceUnit.getConverterTo(targetUnit);
+        if (converterCache.size() < MAX_CACHE_SIZE) {
+            converterCache.put(key, converter);
+        }
+        return converter;
+    }
+
+    /**
+     * Returns the converter that converts values from a source unit into a target unit, both given as strings.
+     *
+     * @param sourceUnit The string specifying the unit of the values
+     * @param targetUnit The string specifying the unit to which the values are supposed to be converted
+     * @return The unit converter
+     * @throws IllegalArgumentException In case a string does not represent a valid unit or the units are not
+     *                                  compatible
+     */
+    public UnitConverter getConverter(String sourceUnit, String targetUnit) {
+        return getConverter(getUnit(sourceUnit), getUnit(targetUnit));
+    }
+
     /**
      * Converts the value of a value log into a different unit by using a given unit converter.
      * Rounding to a certain number of decimal places (as specified in ROUNDING_DECIMAL_PLACES)
@@ -25,19 +112,103 @@ public class UnitConverterService {
      *                  desired target unit
      */
     public void convertValueLogValue(ValueLog valueLog, UnitConverter converter) {
-        //Get value of current log
-        double value = Double.valueOf(valueLog.getValue());
+        //Convert value and apply rounding
+        valueLog.setValue(round(converter.convert(valueLog.getValue())));
+    }
 
-        //Convert value
-        double convertedValue = converter.convert(value);
+    /**
+     * Converts the values of a list of value logs into a different unit by using a given unit converter.
+     * Rounding is applied as for single value logs.
+     *
+     * @param valueLogs The value logs whose values are supposed to be converted
+     * @param converter The unit converter which converts the values of the value logs into the
+     *                  desired target unit
+     */
+    public void convertValueLogValues(List<ValueLog> valueLogs, UnitConverter converter) {
+        //Collect values
+        double[] values = new double[valueLogs.size()];
+        int index = 0;
+        for (ValueLog valueLog : valueLogs) {
+            values[index++] = valueLog.getValue();
+        }
+
+        convertValues(values, converter);
+
+        //Write values back to the logs
+        index = 0;
+        for (ValueLog valueLog : valueLogs) {
+            valueLog.setValue(values[index++]);
+        }
+    }
+
+    /**
+     * Converts an array of values into a different unit by using a given unit converter, replacing the values
+     * of the array. Rounding is applied as for single value logs. For affine converters, which applies to almost
+     * all unit conversions, the values are scaled and shifted in a tight loop instead of invoking the converter
+     * per value.
+     *
+     * @param values    The values to convert
+     * @param converter The unit converter which converts the values into the desired target unit
+     */
+    public void convertValues(double[] values, UnitConverter converter) {
+        if (isAffine(converter)) {
+            double offset = converter.convert(0);
+            double scale = converter.convert(1) - offset;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.round((values[i] * scale + offset) * ROUNDING_CONST) / ROUNDING_CONST;
+            }
+        } else {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = round(converter.convert(values[i]));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a unit converter is affine, i.e. whether it converts values by scaling and shifting them.
+     * This applies to almost all unit conversions, except for logarithmic units.
+     *
+     * @param converter The unit converter to check
+     * @return True, if the converter is affine; false otherwise
+     */
+    public boolean isAffine(UnitConverter converter) {
+        double offset = converter.convert(0);
+        double scale = converter.convert(1) - offset;
+        double expected = offset + 1000 * scale;
+        return Math.abs(converter.convert(1000) - expected) <= AFFINITY_TOLERANCE * Math.max(1, Math.abs(expected));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * ROUNDING_CONST) / ROUNDING_CONST;
+    }
+
+    /**
+     * Key of a cached converter, consisting of source and target unit.
+     */
+    private static class ConversionKey {
+        private final Unit sourceUnit;
+        private final Unit targetUnit;
 
-        //Determine rounding constant
-        double roundingConst = Math.pow(10, ROUNDING_DECIMAL_PLACES);
+        private ConversionKey(Unit sourceUnit, Unit targetUnit) {
+            this.sourceUnit = sourceUnit;
+            this.targetUnit = targetUnit;
+        }
 
-        //Apply rounding
-        convertedValue = Math.round(convertedValue * roundingConst) / roundingConst;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if ((o == null) || (getClass() != o.getClass())) {
+                return false;
+            }
+            ConversionKey other = (ConversionKey) o;
+            return sourceUnit.equals(other.sourceUnit) && targetUnit.equals(other.targetUnit);
+        }
 
-        //Write value to log
-        valueLog.setValue(convertedValue);
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceUnit, targetUnit);
+        }
     }
 }
@@ -24,6 +24,9 @@ public class UserEntityService {
 
     private static final Sort DEFAULT_SORT = new Sort(Sort.Direction.ASC, "name");
 
+    //Permission that is required for retrieving user entities
+    private static final String READ_PERMISSION = "read";
+
     @Autowired
     private UserService userService;
 
@@ -67,7 +70,7 @@ public class UserEntityService {
         }
 
         //Return entity if user is permitted
-        if (entity.isReadable()) {
+        if (isUserPermitted(entity, READ_PERMISSION, user)) {
             return entity;
         }
 
@@ -114,8 +117,8 @@ public class UserEntityService {
 
         //Iterate over all entities in repository
         for (UserEntity entity : entities) {
-            //Check user permission
-            if (entity.isReadable()) {
+            //Check permission of the given user, without looking up the current user per entity
+            if (isUserPermitted(entity, READ_PERMISSION, user)) {
                 resultList.add(entity);
             }
         }
@@ -125,18 +128,50 @@ public class UserEntityService {
     }
 
     /**
-     * Returns the set of user entity roles that the current user holds for a given user entity.
+     * Returns the user entities with certain ids from a given repository that are owned by a given user or where the
+     * user is among the set of approved users. All entities are retrieved from the repository at once.
+     *
+     * @param repository The repository to retrieve the user entities from
+     * @param entityIds  The ids of the entities to retrieve
+     * @param user       The user for which the user entities are supposed to be retrieved
+     * @return List of the user entities that could be found and that the user has permission to access
+     */
+    @SuppressWarnings("unchecked")
+    public List<UserEntity> getUserEntitiesFromRepository(UserEntityRepository repository, Iterable<String> entityIds,
+                                                          User user) {
+        //Sanity checks
+        if (entityIds == null) {
+            throw new IllegalArgumentException("Entity ids must not be null.");
+        } else if (user == null) {
+            throw new IllegalArgumentException("User must not be null.");
+        }
+
+        //Create result list
+        List<UserEntity> resultList = new ArrayList<>();
+
+        //Iterate over all retrieved entities
+        for (Object entity : repository.findAll(entityIds)) {
+            //Check permission of the given user, without looking up the current user per entity
+            if (isUserPermitted((UserEntity) entity, READ_PERMISSION, user)) {
+                resultList.add((UserEntity) entity);
+            }
+        }
+
+        //Return result
+        return resultList;
+    }
+
+    /**
+     * Returns the set of user entity roles that a given user holds for a given user entity.
      *
-     * @param entity The user entity to check for
+     * @param entity      The user entity to check for
+     * @param currentUser The user for which the roles are supposed to be determined (null for anonymous)
      * @return The set of user entity roles
      */
-    private Set<UserEntityRole> getUserEntityRoles(UserEntity entity) {
+    private Set<UserEntityRole> getUserEntityRoles(UserEntity entity, User currentUser) {
         //Create set for all user matching entity roles
         Set<UserEntityRole> roles = new HashSet<>();
 
-        //Get current user
-        User currentUser = userService.getUserWithAuthorities();
-
         //Check for anonymous
         if (currentUser == null) {
             roles.add(ANONYMOUS);
@@ -172,6 +207,22 @@ public class UserEntityService {
      * @return True, if the user is permitted; false otherwise
      */
     public boolean isUserPermitted(UserEntity entity, String permission) {
+        //Get current user
+        User user = userService.getUserWithAuthorities();
+
+        return isUserPermitted(entity, permission, user);
+    }
+
+    /**
+     * Checks if a given user has a certain permission regarding a given user entity. This allows to check the
+     * permissions for several user entities without retrieving the user each time.
+     *
+     * @param entity     The pertained user entity
+     * @param permission The permission to check
+     * @param user       The user to check the permission for (null for anonymous)
+     * @return True, if the user is permitted; false otherwise
+     */
+    public boolean isUserPermitted(UserEntity entity, String permission, User user) {
         //Sanity checks
         if (entity == null) {
             throw new IllegalArgumentException("User entity must not be null.");
@@ -188,7 +239,7 @@ public class UserEntityService {
         }
 
         //Get roles of current user
-        Set<UserEntityRole> userRoles = getUserEntityRoles(entity);
+        Set<UserEntityRole> userRoles = getUserEntityRoles(entity, user);
 
         //Check policy
         return policy.isPermitted(permission, userRoles);
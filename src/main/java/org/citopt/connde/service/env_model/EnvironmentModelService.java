@@ -12,6 +12,7 @@ import org.citopt.connde.service.UserService;
 import org.citopt.connde.service.deploy.ComponentState;
 import org.citopt.connde.service.deploy.SSHDeployer;
 import org.citopt.connde.service.env_model.events.EnvironmentModelEventService;
+import org.citopt.connde.service.env_model.values.EnvironmentModelValueReceiver;
 import org.citopt.connde.service.env_model.events.types.EntityStateEvent;
 import org.citopt.connde.web.rest.response.ActionResponse;
 import org.json.JSONArray;
@@ -64,6 +65,9 @@ public class EnvironmentModelService {
     @Autowired
     private EnvironmentModelEventService eventService;
 
+    @Autowired
+    private EnvironmentModelValueReceiver valueReceiver;
+
     @Autowired
     private SSHDeployer sshDeployer;
 
@@ -154,6 +158,9 @@ public class EnvironmentModelService {
             throw new IllegalArgumentException("Model must not be null.");
         }
 
+        //Stop receiving values of the components of the model
+        valueReceiver.removeSubscriptions(model);
+
         //Get entities that are associated with the model
         Map<String, UserEntity> entities = model.getEntityMap();
 
@@ -278,6 +285,9 @@ public class EnvironmentModelService {
         model.setEntityMap(registeredEntities);
         environmentModelRepository.save(model);
 
+        //Receive values of the registered components
+        valueReceiver.updateSubscriptions(model);
+
         //Check if something was registered
         if (registeredEntities.isEmpty()) {
             return new ActionResponse(false, "There are no valid components to register.");
@@ -1,18 +1,27 @@
 package org.citopt.connde.service.env_model.values;
 
+import org.citopt.connde.domain.component.Actuator;
 import org.citopt.connde.domain.component.Component;
+import org.citopt.connde.domain.component.Sensor;
 import org.citopt.connde.domain.env_model.EnvironmentModel;
 import org.citopt.connde.domain.user_entity.UserEntity;
 import org.citopt.connde.domain.valueLog.ValueLog;
 import org.citopt.connde.repository.ActuatorRepository;
+import org.citopt.connde.repository.EnvironmentModelRepository;
 import org.citopt.connde.repository.SensorRepository;
 import org.citopt.connde.service.env_model.events.EnvironmentModelEventService;
 import org.citopt.connde.service.env_model.events.types.ComponentValueEvent;
+import org.citopt.connde.service.receiver.DeliveryMode;
 import org.citopt.connde.service.receiver.ValueLogReceiver;
 import org.citopt.connde.service.receiver.ValueLogReceiverObserver;
+import org.citopt.connde.service.receiver.ValueLogSubscription;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 @org.springframework.stereotype.Component
 public class EnvironmentModelValueReceiver implements ValueLogReceiverObserver {
@@ -28,13 +37,91 @@ public class EnvironmentModelValueReceiver implements ValueLogReceiverObserver {
 
     private ValueLogReceiver valueLogReceiver;
 
+    //Ids of the components whose value logs are subscribed (model id -> set of component ids)
+    private final Map<String, Set<String>> subscribedComponents = new HashMap<>();
+
     @Autowired
     public EnvironmentModelValueReceiver(ValueLogReceiver valueLogReceiver) {
         this.valueLogReceiver = valueLogReceiver;
 
-        //Observe incoming value logs
-        this.valueLogReceiver.registerObserver(this);
+        //Observe incoming value logs, but only of components that are part of an environment model
+        this.valueLogReceiver.registerObserver(this, DeliveryMode.ORDERED, Collections.emptyList());
+
+    }
+
+    /**
+     * Updates the value log subscriptions for the components of a given environment model, so that only the
+     * value logs of actuators and sensors that are currently registered for the model are received.
+     *
+     * @param model The model whose subscriptions are supposed to be updated
+     */
+    public synchronized void updateSubscriptions(EnvironmentModel model) {
+        //Sanity check
+        if (model == null) {
+            throw new IllegalArgumentException("Model must not be null.");
+        }
+
+        //Collect ids of the actuators and sensors of the model
+        Set<String> componentIds = new HashSet<>();
+        Map<String, UserEntity> entityMap = model.getEntityMap();
+        if (entityMap != null) {
+            for (UserEntity entity : entityMap.values()) {
+                if ((entity instanceof Actuator) || (entity instanceof Sensor)) {
+                    componentIds.add(((Component) entity).getId());
+                }
+            }
+        }
+
+        //Unsubscribe components that are not part of the model anymore
+        Set<String> previousIds = subscribedComponents.getOrDefault(model.getId(), Collections.emptySet());
+        for (String componentId : previousIds) {
+            if (!componentIds.contains(componentId)) {
+                valueLogReceiver.unsubscribe(this, ValueLogSubscription.forComponentId(componentId));
+            }
+        }
+
+        //Subscribe new components
+        for (String componentId : componentIds) {
+            if (!previousIds.contains(componentId)) {
+                valueLogReceiver.subscribe(this, ValueLogSubscription.forComponentId(componentId));
+            }
+        }
+
+        subscribedComponents.put(model.getId(), componentIds);
+    }
+
+    /**
+     * Removes the value log subscriptions for the components of a given environment model.
+     *
+     * @param model The model whose subscriptions are supposed to be removed
+     */
+    public synchronized void removeSubscriptions(EnvironmentModel model) {
+        //Sanity check
+        if (model == null) {
+            throw new IllegalArgumentException("Model must not be null.");
+        }
+
+        Set<String> componentIds = subscribedComponents.remove(model.getId());
+        if (componentIds == null) {
+            return;
+        }
+
+        for (String componentId : componentIds) {
+            valueLogReceiver.unsubscribe(this, ValueLogSubscription.forComponentId(componentId));
+        }
+    }
 
+    /**
+     * Subscribes the value logs of the components of all environment models that are currently stored
+     * in the repository (auto-wired).
+     *
+     * @param environmentModelRepository The environment model repository
+     */
+    @Autowired
+    private void subscribeRegisteredComponents(EnvironmentModelRepository environmentModelRepository) {
+        for (EnvironmentModel model : environmentModelRepository.findAll()) {
+            updateSubscriptions(model);
+        }
     }
 
     /**
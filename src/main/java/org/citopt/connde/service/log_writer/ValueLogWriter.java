@@ -2,16 +2,25 @@ package org.citopt.connde.service.log_writer;
 
 import org.citopt.connde.domain.valueLog.ValueLog;
 import org.citopt.connde.repository.ValueLogRepository;
+import org.citopt.connde.service.receiver.DeliveryMode;
+import org.citopt.connde.service.receiver.OverflowPolicy;
 import org.citopt.connde.service.receiver.ValueLogReceiver;
 import org.citopt.connde.service.receiver.ValueLogReceiverObserver;
+import org.citopt.connde.service.receiver.ValueLogSubscription;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Service that registers itself as observer at the ValueLogReceiver and writes all arrived value logs
  * into the InfluxDB time series database.
  */
 @Service
+@PropertySource(value = "classpath:application.properties")
 public class ValueLogWriter implements ValueLogReceiverObserver {
 
     //Repository component to use for storing value logs (autowired)
@@ -23,13 +32,17 @@ public class ValueLogWriter implements ValueLogReceiverObserver {
      *
      * @param valueLogReceiver   The instance of the value log receiver service
      * @param valueLogRepository The repository component to use
+     * @param overflowPolicy     The policy to apply in case the lane of the writer is full; BLOCK by default, so
+     *                           that value logs are not lost but the backpressure propagates to the pipeline
      */
     @Autowired
-    public ValueLogWriter(ValueLogReceiver valueLogReceiver, ValueLogRepository valueLogRepository) {
+    public ValueLogWriter(ValueLogReceiver valueLogReceiver, ValueLogRepository valueLogRepository,
+                          @Value("${ingestion.lanes.writer-overflow-policy:BLOCK}") OverflowPolicy overflowPolicy) {
         this.valueLogRepository = valueLogRepository;
 
-        //Register as observer at the ValueLogReceiver
-        valueLogReceiver.registerObserver(this);
+        //Register as observer at the ValueLogReceiver, the order of writes does not matter
+        valueLogReceiver.registerObserver(this, DeliveryMode.UNORDERED,
+                Collections.singleton(ValueLogSubscription.all()), overflowPolicy);
     }
 
     /**
@@ -48,4 +61,21 @@ public class ValueLogWriter implements ValueLogReceiverObserver {
         //Write value log into repository
         valueLogRepository.write(valueLog);
     }
+
+    /**
+     * Called in case a batch message containing multiple values arrives at the ValueLogReceiver. All value logs
+     * of the batch are handed over to the repository at once.
+     *
+     * @param valueLogs The list of value logs that arrived
+     */
+    @Override
+    public void onValuesReceived(List<ValueLog> valueLogs) {
+        //Sanity check
+        if (valueLogs == null) {
+            throw new IllegalArgumentException("Value logs must not be null.");
+        }
+
+        //Write all value logs into repository
+        valueLogRepository.writeAll(valueLogs);
+    }
 }
\ No newline at end of file
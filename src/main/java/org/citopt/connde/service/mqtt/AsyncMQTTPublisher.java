@@ -0,0 +1,384 @@
+package org.citopt.connde.service.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking publisher for MQTT messages, based on an asynchronous MQTT client with a dedicated connection.
+ * Messages are put into a bounded queue and returned to the caller as futures that complete as soon as the broker
+ * acknowledged the message. A sender thread takes bursts of queued messages and publishes them back to back, while
+ * the number of unacknowledged messages is limited by an in-flight window. Thus, callers are never blocked by the
+ * latency of the broker.
+ * Lost connections are re-established automatically by the client. While the publisher is not connected, the
+ * messages stay in the queue; the sender thread continues to publish them as soon as the connection is complete.
+ */
+class AsyncMQTTPublisher {
+    //Name of the sender thread
+    private static final String THREAD_NAME = "mqtt-publisher";
+
+    //Duration to wait for messages before checking whether the publisher is still running
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    //Nanoseconds per millisecond for latency conversions
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    //Queue of messages waiting for being published
+    private final BlockingQueue<PendingPublish> queue;
+
+    //Maximum number of messages to take from the queue at once
+    private final int batchSize;
+
+    //Window of messages that are published but not acknowledged yet
+    private final int maxInflight;
+    private final Semaphore inflightPermits;
+
+    //The client to publish with, replaced on reconnects
+    private volatile MqttAsyncClient client;
+
+    //Monitor on which the sender thread waits for the connection to be (re-)established
+    private final Object connectionMonitor = new Object();
+
+    //Prefix of the client ids and number of connections established so far
+    private final String clientIdPrefix;
+    private int connectionCounter = 0;
+
+    //Sender thread
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    //Counters and latency figures
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder latencySumNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile long lastLatencyNanos = 0;
+
+    /**
+     * Creates and starts a new publisher. The publisher is not connected until {@link #connect(String,
+     * MqttConnectOptions)} is called.
+     *
+     * @param clientIdPrefix The prefix of the client ids to use for the connections of the publisher
+     * @param queueSize   The maximum number of messages that may wait for being published
+     * @param maxInflight The maximum number of published messages that are not yet acknowledged by the broker
+     * @param batchSize   The maximum number of messages to publish in one burst
+     */
+    AsyncMQTTPublisher(String clientIdPrefix, int queueSize, int maxInflight, int batchSize) {
+        //Sanity checks
+        if ((clientIdPrefix == null) || clientIdPrefix.isEmpty()) {
+            throw new IllegalArgumentException("Client id prefix must not be null or empty.");
+        } else if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be positive.");
+        } else if (maxInflight < 1) {
+            throw new IllegalArgumentException("Maximum number of in-flight messages must be positive.");
+        } else if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+
+        this.clientIdPrefix = clientIdPrefix;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxInflight = maxInflight;
+        this.inflightPermits = new Semaphore(maxInflight);
+        this.batchSize = batchSize;
+
+        //Start sender thread
+        this.sender = new Thread(this::runSender, THREAD_NAME);
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * Connects the publisher to a broker. If the publisher is already connected, the new connection is established
+     * first and the old one is closed afterwards, so that publishing continues without interruption. Each connection
+     * uses its own client id, so that the old connection can still deliver its pending messages.
+     *
+     * @param brokerUrl      The URL of the broker
+     * @param connectOptions The connect options to take the credentials from (may be null)
+     * @throws MqttException In case the connection could not be established
+     */
+    synchronized void connect(String brokerUrl, MqttConnectOptions connectOptions) throws MqttException {
+        //Use a clean session, since the publisher does not subscribe anything, and limit the in-flight messages
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        options.setMaxInflight(maxInflight);
+        if ((connectOptions != null) && (connectOptions.getUserName() != null)) {
+            options.setUserName(connectOptions.getUserName());
+            options.setPassword(connectOptions.getPassword());
+        }
+
+        //Create new client and wait until it is connected
+        String clientId = clientIdPrefix + "-" + (connectionCounter++);
+        MqttAsyncClient newClient = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence());
+        newClient.setCallback(new PublisherCallback());
+        newClient.connect(options).waitForCompletion();
+
+        //Switch over to the new client and close the old one once its pending messages are delivered
+        MqttAsyncClient oldClient = client;
+        client = newClient;
+        signalConnection();
+        if (oldClient != null) {
+            try {
+                //Stop reconnecting the old client
+                oldClient.disconnect();
+            } catch (MqttException e) {
+                System.err.println("Failed to disconnect MQTT publisher: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Enqueues a message for being published. The message is rejected immediately if the queue of the
+     * publisher is full.
+     *
+     * @param topic   The topic to publish the message at
+     * @param payload The payload of the message
+     * @param qos     The quality of service to use
+     * @return A future that completes when the broker acknowledged the message or fails if it could not be published
+     */
+    CompletableFuture<Void> publish(String topic, byte[] payload, int qos) {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qos);
+
+        PendingPublish pendingPublish = new PendingPublish(topic, message);
+
+        //Reject message if publisher is overloaded or stopped
+        if (!running || !queue.offer(pendingPublish)) {
+            rejected.increment();
+            pendingPublish.future.completeExceptionally(new RejectedExecutionException("Publish queue is full."));
+        }
+
+        return pendingPublish.future;
+    }
+
+    /**
+     * Returns a snapshot of the counters and latency figures of the publisher.
+     *
+     * @return The metrics snapshot
+     */
+    MQTTPublishMetrics getMetrics() {
+        long publishedCount = published.sum();
+        double averageLatency = (publishedCount == 0) ? 0 :
+                (latencySumNanos.sum() / (double) publishedCount) / NANOS_PER_MILLI;
+
+        return new MQTTPublishMetrics(queue.size(), maxInflight - inflightPermits.availablePermits(), publishedCount,
+                failed.sum(), rejected.sum(), lastLatencyNanos / NANOS_PER_MILLI,
+                maxLatencyNanos.get() / NANOS_PER_MILLI, averageLatency);
+    }
+
+    /**
+     * Stops the sender thread after the queued messages have been handed over to the client.
+     */
+    void shutdown() {
+        running = false;
+        signalConnection();
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the sender thread that takes bursts of messages from the queue and publishes them.
+     */
+    private void runSender() {
+        List<PendingPublish> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            //Keep the messages queued while not connected
+            if (!isConnected()) {
+                if (!running) {
+                    break;
+                }
+                try {
+                    synchronized (connectionMonitor) {
+                        if (!isConnected()) {
+                            connectionMonitor.wait(POLL_TIMEOUT_MILLIS);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+
+            //Wait for the next message
+            PendingPublish first;
+            try {
+                first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+
+            //Take all further messages of the burst
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+
+            //Publish messages back to back, waiting only if the in-flight window is exhausted
+            for (PendingPublish pendingPublish : batch) {
+                try {
+                    inflightPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                send(pendingPublish);
+            }
+            batch.clear();
+        }
+
+        //Fail the messages that could not be published before the publisher was stopped
+        queue.drainTo(batch);
+        for (PendingPublish pendingPublish : batch) {
+            failed.increment();
+            pendingPublish.future.completeExceptionally(
+                    new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+        }
+    }
+
+    /**
+     * Returns whether the current client is connected.
+     *
+     * @return True, if the client is connected; false otherwise
+     */
+    private boolean isConnected() {
+        MqttAsyncClient currentClient = client;
+        return (currentClient != null) && currentClient.isConnected();
+    }
+
+    /**
+     * Wakes up the sender thread after the connection state changed.
+     */
+    private void signalConnection() {
+        synchronized (connectionMonitor) {
+            connectionMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Publishes a single message with the current client and completes its future once the broker
+     * acknowledged it. Requires a permit of the in-flight window, which is released on completion.
+     *
+     * @param pendingPublish The message to publish
+     */
+    private void send(PendingPublish pendingPublish) {
+        MqttAsyncClient currentClient = client;
+
+        //Check whether the client is available
+        if ((currentClient == null) || !currentClient.isConnected()) {
+            fail(pendingPublish, new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+            return;
+        }
+
+        try {
+            currentClient.publish(pendingPublish.topic, pendingPublish.message, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    complete(pendingPublish);
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable exception) {
+                    fail(pendingPublish, exception);
+                }
+            });
+        } catch (MqttException e) {
+            fail(pendingPublish, e);
+        }
+    }
+
+    /**
+     * Completes a message that was acknowledged by the broker and records its latency.
+     *
+     * @param pendingPublish The acknowledged message
+     */
+    private void complete(PendingPublish pendingPublish) {
+        inflightPermits.release();
+
+        //Record latency from enqueueing to acknowledgement
+        long latency = System.nanoTime() - pendingPublish.enqueueTime;
+        lastLatencyNanos = latency;
+        latencySumNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        published.increment();
+
+        pendingPublish.future.complete(null);
+    }
+
+    /**
+     * Completes a message that could not be published.
+     *
+     * @param pendingPublish The affected message
+     * @param cause          The cause of the failure
+     */
+    private void fail(PendingPublish pendingPublish, Throwable cause) {
+        inflightPermits.release();
+        failed.increment();
+        pendingPublish.future.completeExceptionally(cause);
+    }
+
+    /**
+     * Callback of the clients of the publisher, which reports lost connections and resumes the publishing of the
+     * queued messages as soon as a connection is re-established.
+     */
+    private class PublisherCallback implements MqttCallbackExtended {
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            signalConnection();
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            System.err.println("MQTT publisher lost connection: " + ((cause == null) ? "" : cause.getMessage()));
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            //Publisher does not subscribe anything
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            //Completion is handled per message
+        }
+    }
+
+    /**
+     * Message that waits for being published, together with its future.
+     */
+    private static class PendingPublish {
+        private final String topic;
+        private final MqttMessage message;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final long enqueueTime = System.nanoTime();
+
+        private PendingPublish(String topic, MqttMessage message) {
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.citopt.connde.service.mqtt;
+
+/**
+ * Objects of this class are snapshots of the counters and latency figures of the asynchronous MQTT publisher.
+ * They can be used as DTOs in order to retrieve the metrics to the client.
+ */
+public class MQTTPublishMetrics {
+    private final int queued;
+    private final int inflight;
+    private final long published;
+    private final long failed;
+    private final long rejected;
+    private final double lastLatencyMillis;
+    private final double maxLatencyMillis;
+    private final double averageLatencyMillis;
+
+    /**
+     * Creates a new metrics snapshot.
+     *
+     * @param queued               The number of messages waiting for being published
+     * @param inflight             The number of published messages that are not acknowledged yet
+     * @param published            The number of messages acknowledged by the broker
+     * @param failed               The number of messages that could not be published
+     * @param rejected             The number of messages rejected due to a full queue
+     * @param lastLatencyMillis    The latency of the most recent publish in milliseconds
+     * @param maxLatencyMillis     The largest latency observed so far in milliseconds
+     * @param averageLatencyMillis The average latency in milliseconds
+     */
+    MQTTPublishMetrics(int queued, int inflight, long published, long failed, long rejected, double lastLatencyMillis,
+                       double maxLatencyMillis, double averageLatencyMillis) {
+        this.queued = queued;
+        this.inflight = inflight;
+        this.published = published;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.lastLatencyMillis = lastLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.averageLatencyMillis = averageLatencyMillis;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getInflight() {
+        return inflight;
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public double getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public double getAverageLatencyMillis() {
+        return averageLatencyMillis;
+    }
+}
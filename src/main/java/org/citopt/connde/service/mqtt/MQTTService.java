@@ -2,14 +2,25 @@ package org.citopt.connde.service.mqtt;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.codec.binary.Base64;
 import org.citopt.connde.service.settings.SettingsService;
 import org.citopt.connde.service.settings.model.BrokerLocation;
 import org.citopt.connde.service.settings.model.Settings;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
@@ -34,7 +45,10 @@ import org.springframework.web.util.UriComponentsBuilder;
 /**
  * This services provides means and support for MQTT-related tasks. It allows to publish and receive MQTT messages at
  * various topics and uses the settings service in order to determine its configuration.
- * topics
+ * In order to scale the reception of messages beyond the throughput of a single connection, the service may open
+ * several connections to the broker and partition the subscribed topics among them, either by using shared
+ * subscriptions of the broker or by distributing the topic filters over the connections. Messages are published via
+ * the first connection.
  */
 @Service
 @PropertySource(value = "classpath:application.properties")
@@ -42,20 +56,59 @@ import org.springframework.web.util.UriComponentsBuilder;
 public class MQTTService {
     //URL frame of the broker to use (protocol and port, address will be filled in)
     private static final String BROKER_URL = "tcp://%s:1883";
-    //Client id that is assigned to the client instance with an unique suffix to avoid name collisions
-    private static final String CLIENT_ID = "mbp-client-" + getUniqueClientSuffix();
+    //Suffix frame for the client ids of additional connections
+    private static final String CLIENT_ID_SUFFIX = "-%d";
+    //Topic frame of shared subscriptions (group name and topic will be filled in)
+    private static final String SHARED_SUBSCRIPTION_TOPIC = "$share/%s/%s";
+    //Suffix for the client id of the connection of the asynchronous publisher
+    private static final String PUBLISHER_CLIENT_ID_SUFFIX = "-pub";
+    //Quality of service to use for asynchronously published messages
+    private static final int PUBLISH_QOS = 1;
+    //Delay between attempts to re-establish a lost connection
+    private static final long RECONNECT_DELAY_SECONDS = 5;
+    //Name of the thread that re-establishes lost connections
+    private static final String RECONNECT_THREAD_NAME = "mqtt-reconnect";
 
     //Autowired components
     private SettingsService settingsService;
 
+    //Client id of the main client; must be stable across restarts, so that the persistent sessions can be resumed
+    private final String clientId;
+
     //Stores the reference of the mqtt client
-    private MqttClient mqttClient = null;
+    private volatile MqttClient mqttClient = null;
+
+    //Stores the references of the mqtt clients of all connection slots, including the main one
+    private volatile List<MqttClient> mqttClients = new ArrayList<>();
+
+    //Generation of the current client of each connection slot; events of older generations are ignored
+    private final AtomicLongArray slotGenerations;
+    private long lastGeneration = 0;
+
+    //Broker URL and connect options of the current connections
+    private String brokerUrl;
+    private MqttConnectOptions connectOptions;
+
+    //Executor for re-establishing lost connections
+    private final ScheduledExecutorService reconnectExecutor;
 
     //Set of topics the MQTT service is supposed to subscribe
-    private Set<String> subscribedTopics = new HashSet<>();
+    private Set<String> subscribedTopics = new LinkedHashSet<>();
+
+    //Assignment of subscribed topics to the connection slots that subscribe them (topic -> slot)
+    private Map<String, Integer> topicAssignments = new HashMap<>();
+    private int nextAssignment = 0;
+
+    //Number of connections to use and how to partition the subscribed topics among them
+    private final int connectionCount;
+    private final TopicPartitioning topicPartitioning;
+    private final String sharedSubscriptionGroup;
+
+    //Publisher for non-blocking publishing of messages
+    private final AsyncMQTTPublisher publisher;
 
     //Callback object to use for incoming MQTT messages
-    private MqttCallback mqttCallback = null;
+    private volatile MqttCallback mqttCallback = null;
 
     @Value("${security.user.name}")
     private String httpUser;
@@ -77,20 +130,61 @@ public class MQTTService {
     /**
      * Initializes the value logger service.
      *
-     * @param settingsService Settings service that manages the application settings
+     * @param settingsService         Settings service that manages the application settings
+     * @param clientId                The client id of the main client, from which the ids of the further clients
+     *                                are derived (must be unique per application instance connected to the broker)
+     * @param connectionCount         The number of connections to use for receiving messages
+     * @param topicPartitioning       How to partition the subscribed topics among the connections
+     * @param sharedSubscriptionGroup The group name to use for shared subscriptions
+     * @param publishQueueSize        The maximum number of messages that may wait for being published asynchronously
+     * @param publishMaxInflight      The maximum number of asynchronously published messages that are not yet
+     *                                acknowledged by the broker
+     * @param publishBatchSize        The maximum number of messages to publish asynchronously in one burst
      */
     @Autowired
-    public MQTTService(SettingsService settingsService) {
+    public MQTTService(SettingsService settingsService,
+                       @Value("${mqtt.client-id:mbp-client}") String clientId,
+                       @Value("${mqtt.ingestion.connections:1}") int connectionCount,
+                       @Value("${mqtt.ingestion.partitioning:SHARED}") TopicPartitioning topicPartitioning,
+                       @Value("${mqtt.ingestion.shared-group:mbp-ingestion}") String sharedSubscriptionGroup,
+                       @Value("${mqtt.publish.queue-size:10000}") int publishQueueSize,
+                       @Value("${mqtt.publish.max-inflight:100}") int publishMaxInflight,
+                       @Value("${mqtt.publish.batch-size:100}") int publishBatchSize) {
+        //Sanity checks
+        if ((clientId == null) || clientId.isEmpty()) {
+            throw new IllegalArgumentException("Client id must not be null or empty.");
+        } else if (connectionCount < 1) {
+            throw new IllegalArgumentException("Number of connections must be positive.");
+        } else if ((sharedSubscriptionGroup == null) || sharedSubscriptionGroup.isEmpty()) {
+            throw new IllegalArgumentException("Shared subscription group must not be null or empty.");
+        }
+
         this.settingsService = settingsService;
+        this.clientId = clientId;
+        this.connectionCount = connectionCount;
+        this.topicPartitioning = topicPartitioning;
+        this.sharedSubscriptionGroup = sharedSubscriptionGroup;
+        this.publisher = new AsyncMQTTPublisher(clientId + PUBLISHER_CLIENT_ID_SUFFIX, publishQueueSize,
+                publishMaxInflight, publishBatchSize);
+        this.slotGenerations = new AtomicLongArray(connectionCount);
+
+        //Create executor for re-establishing lost connections
+        this.reconnectExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, RECONNECT_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
 
         //Setup and start the MQTT client if a local, normal broker is used. Otherwise: only setup MQTT client.
         try {
             String brokerAddress = "localhost";
-            MemoryPersistence persistence = new MemoryPersistence();
-            if (settingsService.getSettings().getBrokerLocation().equals(BrokerLocation.LOCAL_SECURE)) {
-                mqttClient = new MqttClient(String.format(BROKER_URL, brokerAddress), CLIENT_ID, persistence);
-            } else {
-                mqttClient = new MqttClient(String.format(BROKER_URL, brokerAddress), CLIENT_ID, persistence);
+            brokerUrl = String.format(BROKER_URL, brokerAddress);
+            for (int slot = 0; slot < connectionCount; slot++) {
+                mqttClients.add(new MqttClient(brokerUrl, getClientId(slot), new MemoryPersistence()));
+            }
+            mqttClient = mqttClients.get(0);
+
+            if (!settingsService.getSettings().getBrokerLocation().equals(BrokerLocation.LOCAL_SECURE)) {
                 initialize();
             }
         } catch (MqttException e) {
@@ -109,39 +203,67 @@ public class MQTTService {
      * @throws MqttException In case of an error during execution of mqtt operations
      * @throws IOException   In case of an I/O issue
      */
-    public void initialize() throws MqttException, IOException {
-        //Disconnect the old mqtt client if already connected
-        if ((mqttClient != null) && (mqttClient.isConnected())) {
-            mqttClient.disconnectForcibly();
+    public synchronized void initialize() throws MqttException, IOException {
+        //Disconnect the old mqtt clients if already connected
+        disconnectClients();
+
+        //Determine broker and connect options from the settings
+        updateConnectionSettings();
+
+        //Create new mqtt clients, connect them and subscribe to the topics
+        connectClients();
+    }
+
+
+    /**
+     * If a secured broker is used, the initialization is delayed for 60 seconds (because the authorization server is integrated and needs to startup as well).
+     * The OAuth2 access token for the MBP is only valid for 10 minutes, the scheduled task ensures to refresh this token every 10 minutes,
+     * if the {@link BrokerLocation} is LOCAL_SECURE or REMOTE_SECURE.
+     * The connections are rotated without interrupting the reception of messages: each new connection is established
+     * with the new token while the old one is still active and takes over its persistent session at the broker, which
+     * keeps the subscriptions and the messages that are pending for delivery.
+     */
+    @Scheduled(initialDelay = 60000, fixedDelay = 600000)
+    private synchronized void refreshOAuth2Token() throws MqttException, IOException {
+        //Determine from settings if a remote broker should be used instead
+        Settings settings = settingsService.getSettings();
+
+        if (settings.getBrokerLocation().equals(BrokerLocation.REMOTE_SECURE) || settings.getBrokerLocation().equals(BrokerLocation.LOCAL_SECURE)) {
+            //Request new token and update connect options
+            updateConnectionSettings();
+
+            //Replace the connections one after another, the old ones stay active until they are taken over
+            connectClients();
         }
+    }
 
+    /**
+     * Determines the URL of the broker and the connect options to use from the settings. If a secured broker is used,
+     * a new OAuth2 access token is requested.
+     */
+    private void updateConnectionSettings() {
         //Stores the address of the desired mqtt broker
         String brokerAddress = "localhost";
 
         //Determine from settings if a remote broker should be used instead
         Settings settings = settingsService.getSettings();
 
-        //Instantiate memory persistence
-        MemoryPersistence persistence = new MemoryPersistence();
-
-        MqttConnectOptions connectOptions = null;
+        //Use persistent sessions, so that the broker keeps messages while a connection is replaced or lost
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(false);
 
         switch(settings.getBrokerLocation()) {
             case LOCAL_SECURE:
                 requestOAuth2Token();
-                connectOptions = new MqttConnectOptions();
-                connectOptions.setCleanSession(true);
-                connectOptions.setUserName(accessToken);
-                connectOptions.setPassword("any".toCharArray());
+                options.setUserName(accessToken);
+                options.setPassword("any".toCharArray());
                 break;
             case REMOTE_SECURE:
                 //Retrieve IP address of external broker from settings
                 brokerAddress = settings.getBrokerIPAddress();
                 requestOAuth2Token();
-                connectOptions = new MqttConnectOptions();
-                connectOptions.setCleanSession(true);
-                connectOptions.setUserName(accessToken);
-                connectOptions.setPassword("any".toCharArray());
+                options.setUserName(accessToken);
+                options.setPassword("any".toCharArray());
                 break;
             case REMOTE:
                 //Retrieve IP address of external broker from settings
@@ -149,102 +271,222 @@ public class MQTTService {
                 break;
             default:
                 break;
+        }
+
+        brokerUrl = String.format(BROKER_URL, brokerAddress);
+        connectOptions = options;
+    }
 
+    /**
+     * Replaces the mqtt clients of all connection slots by new ones that are connected with the current broker URL and
+     * connect options and subscribe the topics of the topic set according to the topic partitioning. Afterwards, the
+     * asynchronous publisher is connected as well. The first client becomes the main client.
+     *
+     * @throws MqttException In case of an error during execution of mqtt operations
+     */
+    private void connectClients() throws MqttException {
+        for (int slot = 0; slot < connectionCount; slot++) {
+            replaceClient(slot);
         }
+
+        //Connect asynchronous publisher with its own connection
+        publisher.connect(brokerUrl, connectOptions);
+    }
+
+    /**
+     * Replaces the mqtt client of a connection slot by a new one. The new client uses the same client id and
+     * thus takes over the persistent session of the old client at the broker as soon as it is connected, so that
+     * the switch-over happens atomically and without losing messages. The new client belongs to a new connection
+     * generation, which causes the loss of the old connection to be ignored.
+     *
+     * @param slot The connection slot
+     * @throws MqttException In case the new client could not be connected or could not subscribe the topics
+     */
+    private void replaceClient(int slot) throws MqttException {
+        MqttClient oldClient = mqttClients.get(slot);
+
         //Create new mqtt client with the full broker URL
-        mqttClient = new MqttClient(String.format(BROKER_URL, brokerAddress), CLIENT_ID, persistence);
-        if (connectOptions != null) {
-            //Connect and subscribe to the topics
-            mqttClient.connect(connectOptions);
-        } else {
-            mqttClient.connect();
+        MqttClient newClient = new MqttClient(brokerUrl, getClientId(slot), new MemoryPersistence());
+
+        //Start new generation for the slot, so that the takeover of the old connection is not treated as failure
+        long previousGeneration = slotGenerations.get(slot);
+        long generation = ++lastGeneration;
+        slotGenerations.set(slot, generation);
+        newClient.setCallback(new ConnectionCallback(slot, generation));
+
+        //Connect and take over the session
+        try {
+            newClient.connect(connectOptions);
+        } catch (MqttException e) {
+            //Keep the old client
+            slotGenerations.set(slot, previousGeneration);
+            newClient.close();
+            throw e;
         }
 
-        //Subscribe all topics in the topic set
-        for (String topic : subscribedTopics) {
-            mqttClient.subscribe(topic);
+        //Make sure that the subscriptions are active, even if the broker did not keep the session
+        try {
+            for (String topicFilter : getTopicFilters(slot)) {
+                newClient.subscribe(topicFilter);
+            }
+        } catch (MqttException e) {
+            //Keep the old client, whose loss of connection is handled as failure again, and release the new one
+            slotGenerations.set(slot, previousGeneration);
+            closeClient(newClient);
+            throw e;
         }
 
-        //Set MQTT callback object if available
-        if (mqttCallback != null) {
-            mqttClient.setCallback(mqttCallback);
+        //Switch over to the new client
+        List<MqttClient> newClients = new ArrayList<>(mqttClients);
+        newClients.set(slot, newClient);
+        mqttClients = newClients;
+        if (slot == 0) {
+            mqttClient = newClient;
         }
-    }
 
+        //Release the old client
+        closeClient(oldClient);
+    }
 
     /**
-     * If a secured broker is used, the initialization is delayed for 60 seconds (because the authorization server is integrated and needs to startup as well).
-     * The OAuth2 access token for the MBP is only valid for 10 minutes, the scheduled task ensures to refresh this token every 10 minutes,
-     * if the {@link BrokerLocation} is LOCAL_SECURE or REMOTE_SECURE.
+     * Schedules an attempt to re-establish the connection of a certain slot after it was lost unexpectedly.
      *
+     * @param slot       The connection slot
+     * @param generation The generation of the connection that was lost
      */
-    @Scheduled(initialDelay = 60000, fixedDelay = 600000)
-    private void refreshOAuth2Token() throws MqttException, IOException {
-        //Determine from settings if a remote broker should be used instead
-        Settings settings = settingsService.getSettings();
+    private void scheduleReconnect(int slot, long generation) {
+        reconnectExecutor.schedule(() -> reconnect(slot, generation), RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
 
-        if (settings.getBrokerLocation().equals(BrokerLocation.REMOTE_SECURE) || settings.getBrokerLocation().equals(BrokerLocation.LOCAL_SECURE)) {
-            //Disconnect the old mqtt client if already connected
-            if ((mqttClient != null) && (mqttClient.isConnected())) {
-                mqttClient.disconnectForcibly();
-            }
+    /**
+     * Re-establishes the connection of a certain slot, unless the connection was replaced in the meantime.
+     * In case of failure, a further attempt is scheduled.
+     *
+     * @param slot       The connection slot
+     * @param generation The generation of the connection that was lost
+     */
+    private synchronized void reconnect(int slot, long generation) {
+        //Check whether the connection was already replaced
+        if (slotGenerations.get(slot) != generation) {
+            return;
+        }
 
-            //Stores the address of the desired mqtt broker
-            String brokerAddress = "localhost";
+        try {
+            replaceClient(slot);
+        } catch (MqttException e) {
+            System.err.println("Failed to reconnect MQTT client: " + e.getMessage());
+            scheduleReconnect(slot, generation);
+        }
+    }
 
-            //Instantiate memory persistence
-            MemoryPersistence persistence = new MemoryPersistence();
-
-            switch(settings.getBrokerLocation()) {
-                case LOCAL_SECURE:
-                    requestOAuth2Token();
-                    break;
-                case REMOTE_SECURE:
-                    //Retrieve IP address of external broker from settings
-                    brokerAddress = settings.getBrokerIPAddress();
-                    requestOAuth2Token();
-                    break;
-                default:
-                    break;
-            }
-            MqttConnectOptions connectOptions = new MqttConnectOptions();
-            connectOptions.setCleanSession(true);
-            connectOptions.setUserName(accessToken);
-            connectOptions.setPassword("any".toCharArray());
-
-            //Create new mqtt client with the full broker URL
-            mqttClient = new MqttClient(String.format(BROKER_URL, brokerAddress), CLIENT_ID, persistence);
-            mqttClient.connect(connectOptions);
-
-            //Subscribe all topics in the topic set
-            for (String topic : subscribedTopics) {
-                mqttClient.subscribe(topic);
+    /**
+     * Disconnects all mqtt clients that are currently connected.
+     *
+     * @throws MqttException In case of an error during execution of mqtt operations
+     */
+    private void disconnectClients() throws MqttException {
+        for (int slot = 0; slot < mqttClients.size(); slot++) {
+            MqttClient client = mqttClients.get(slot);
+            if (client.isConnected()) {
+                //Invalidate generation, so that the disconnect is not treated as failure
+                slotGenerations.set(slot, ++lastGeneration);
+                client.disconnectForcibly();
             }
+        }
+    }
 
-            //Set MQTT callback object if available
-            if (mqttCallback != null) {
-                mqttClient.setCallback(mqttCallback);
+    /**
+     * Disconnects and closes a mqtt client that is not used anymore. Failures are ignored, since the connection of
+     * the client has usually been taken over by the broker already.
+     *
+     * @param client The client to close
+     */
+    private void closeClient(MqttClient client) {
+        try {
+            if (client.isConnected()) {
+                client.disconnectForcibly();
             }
+            client.close();
+        } catch (MqttException e) {
+            //Client is not needed anymore
         }
     }
 
+    /**
+     * Returns the client id to use for a certain connection slot. The main client keeps the plain one.
+     *
+     * @param slot The connection slot
+     * @return The client id
+     */
+    private String getClientId(int slot) {
+        return (slot == 0) ? clientId : clientId + String.format(CLIENT_ID_SUFFIX, slot);
+    }
+
+    /**
+     * Returns whether the topics are subscribed as shared subscriptions. A single connection does not need to share
+     * its subscriptions, so that it also works with brokers that do not support shared subscriptions.
+     *
+     * @return True, if shared subscriptions are used; false otherwise
+     */
+    private boolean isShared() {
+        return (topicPartitioning == TopicPartitioning.SHARED) && (connectionCount > 1);
+    }
+
+    /**
+     * Returns the topic filters that need to be subscribed by the client of a certain connection slot according to
+     * the topic partitioning. Partitioning by topics assigns each topic filter to exactly one slot in round-robin
+     * fashion, preserving the order of messages per topic; since a wildcard filter is assigned as a whole, this only
+     * balances the load if there are several filters of similar traffic. With shared subscriptions, all clients
+     * subscribe to all topics as members of the same group and the broker distributes the messages among them.
+     *
+     * @param slot The connection slot
+     * @return The list of topic filters
+     */
+    private List<String> getTopicFilters(int slot) {
+        List<String> topicFilters = new ArrayList<>();
+        for (String topic : subscribedTopics) {
+            if (isShared()) {
+                topicFilters.add(String.format(SHARED_SUBSCRIPTION_TOPIC, sharedSubscriptionGroup, topic));
+            } else if (topicAssignments.get(topic) == slot) {
+                topicFilters.add(topic);
+            }
+        }
+        return topicFilters;
+    }
 
     /**
      * Lets the MQTT service subscribe a certain MQTT topic.
      *
      * @param topic The topic to subscribe
      */
-    public void subscribe(String topic) throws MqttException {
+    public synchronized void subscribe(String topic) throws MqttException {
         //Sanity check
         if ((topic == null) || topic.isEmpty()) {
             throw new IllegalArgumentException("Topic must not be null or empty.");
         }
 
-        //Add to topic
-        subscribedTopics.add(topic);
+        //Add to topic set, ignore topics that are already subscribed
+        if (!subscribedTopics.add(topic)) {
+            return;
+        }
+
+        //Subscribe at the responsible clients if connected, otherwise this is done when connecting
+        if (isShared()) {
+            for (MqttClient client : mqttClients) {
+                if (client.isConnected()) {
+                    client.subscribe(String.format(SHARED_SUBSCRIPTION_TOPIC, sharedSubscriptionGroup, topic));
+                }
+            }
+        } else {
+            //Assign topic to the next slot
+            int slot = (nextAssignment++) % connectionCount;
+            topicAssignments.put(topic, slot);
 
-        //Subscribe
-        mqttClient.subscribe(topic);
+            MqttClient client = mqttClients.get(slot);
+            if (client.isConnected()) {
+                client.subscribe(topic);
+            }
+        }
     }
 
     /**
@@ -252,17 +494,30 @@ public class MQTTService {
      *
      * @param topic The topic to unsubscribe
      */
-    public void unsubscribe(String topic) throws MqttException {
+    public synchronized void unsubscribe(String topic) throws MqttException {
         //Sanity check
         if ((topic == null) || topic.isEmpty()) {
             throw new IllegalArgumentException("Topic must not be null or empty.");
         }
 
-        //Remove from set
-        subscribedTopics.remove(topic);
+        //Remove from set, ignore topics that are not subscribed
+        if (!subscribedTopics.remove(topic)) {
+            return;
+        }
 
-        //Unsubscribe
-        mqttClient.unsubscribe(topic);
+        //Unsubscribe at the responsible clients
+        if (isShared()) {
+            for (MqttClient client : mqttClients) {
+                if (client.isConnected()) {
+                    client.unsubscribe(String.format(SHARED_SUBSCRIPTION_TOPIC, sharedSubscriptionGroup, topic));
+                }
+            }
+        } else {
+            MqttClient client = mqttClients.get(topicAssignments.remove(topic));
+            if (client.isConnected()) {
+                client.unsubscribe(topic);
+            }
+        }
     }
 
     /**
@@ -277,11 +532,8 @@ public class MQTTService {
             throw new IllegalArgumentException("MQTT callback object must not be null.");
         }
 
-        //Store reference to object
+        //Store reference to object, the callbacks of the clients forward to it
         this.mqttCallback = mqttCallback;
-
-        //Update client
-        this.mqttClient.setCallback(mqttCallback);
     }
 
     /**
@@ -311,12 +563,106 @@ public class MQTTService {
     }
 
     /**
-     * Creates an unique suffix that might be appended to a MQTT client ID in order to avoid name collisions.
+     * Publishes a MQTT message with a certain payload at a certain topic without blocking the caller. The message
+     * is queued and published in the background; the returned future completes as soon as the broker acknowledged
+     * the message. If the message could not be published, e.g. because the publish queue is full or the broker is
+     * not reachable, the future completes exceptionally.
      *
-     * @return The unique suffix
+     * @param topic   The topic to publish the message at
+     * @param payload The payload of the message (may be empty)
+     * @return The future of the publish
+     */
+    public CompletableFuture<Void> publishAsync(String topic, String payload) {
+        //Sanity check
+        if ((topic == null) || topic.isEmpty()) {
+            throw new IllegalArgumentException("Topic must not be null or empty.");
+        } else if (payload == null) {
+            throw new IllegalArgumentException("Payload must not be null.");
+        }
+
+        return publisher.publish(topic, payload.getBytes(StandardCharsets.UTF_8), PUBLISH_QOS);
+    }
+
+    /**
+     * Returns the counters and latency figures of the asynchronous publishing of messages.
+     *
+     * @return The publish metrics
+     */
+    public MQTTPublishMetrics getPublishMetrics() {
+        return publisher.getMetrics();
+    }
+
+    /**
+     * Stops the asynchronous publisher and disconnects all clients when the application shuts down. The topics are
+     * unsubscribed before, so that the broker does not keep collecting messages for the persistent sessions.
      */
-    private static String getUniqueClientSuffix() {
-        return UUID.randomUUID().toString().replace("-", "");
+    @PreDestroy
+    public synchronized void shutdown() {
+        reconnectExecutor.shutdownNow();
+        publisher.shutdown();
+
+        for (int slot = 0; slot < mqttClients.size(); slot++) {
+            MqttClient client = mqttClients.get(slot);
+            if (!client.isConnected()) {
+                continue;
+            }
+            try {
+                for (String topicFilter : getTopicFilters(slot)) {
+                    client.unsubscribe(topicFilter);
+                }
+                slotGenerations.set(slot, ++lastGeneration);
+                client.disconnect();
+            } catch (MqttException e) {
+                System.err.println("Failed to disconnect MQTT client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Callback of the client of a certain connection slot and generation. Incoming messages are forwarded to the
+     * MQTT callback object of the service. A lost connection is only reported and re-established if the client is
+     * still the current one of its slot; otherwise, the connection was deliberately replaced.
+     */
+    private class ConnectionCallback implements MqttCallback {
+        private final int slot;
+        private final long generation;
+
+        private ConnectionCallback(int slot, long generation) {
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        @Override
+        public void connectionLost(Throwable throwable) {
+            //Ignore connections that were replaced
+            if (slotGenerations.get(slot) != generation) {
+                return;
+            }
+
+            MqttCallback callback = mqttCallback;
+            if (callback != null) {
+                callback.connectionLost(throwable);
+            }
+
+            //Try to re-establish the connection
+            scheduleReconnect(slot, generation);
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+            MqttCallback callback = mqttCallback;
+            if (callback != null) {
+                callback.messageArrived(topic, mqttMessage);
+            }
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            MqttCallback callback = mqttCallback;
+            if (callback != null) {
+                callback.deliveryComplete(token);
+            }
+        }
     }
 
     /**
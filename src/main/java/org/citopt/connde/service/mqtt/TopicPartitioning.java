@@ -0,0 +1,13 @@
+package org.citopt.connde.service.mqtt;
+
+/**
+ * Enumeration of the strategies for partitioning the subscribed topics among several connections to the broker.
+ */
+public enum TopicPartitioning {
+    //Each topic filter is subscribed by exactly one connection, so that messages of a topic keep their order; only
+    //balances per filter, i.e. all messages matching a wildcard filter such as sensor/# go through one connection
+    TOPICS,
+    //All connections subscribe all topics as members of a shared subscription group of the broker, which distributes
+    //the messages among them; a single connection subscribes the topics without a group
+    SHARED
+}
@@ -0,0 +1,138 @@
+package org.citopt.connde.service.receiver;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Expands batch value messages into individual value logs. Batch messages allow high-frequency components
+ * to transfer many values within a single MQTT message. Besides the usual component type and id, they contain
+ * an array of values and either an array of per-value timestamps or a start time and an interval:
+ * <pre>
+ * {"component": "SENSOR", "id": "...", "values": [1.2, 1.3], "timestamps": [1570635657000, 1570635657010]}
+ * {"component": "SENSOR", "id": "...", "values": [1.2, 1.3], "start": 1570635657000, "interval": 10}
+ * </pre>
+ * All times are given in milliseconds since epoch; the interval may be fractional. If neither timestamps
+ * nor a start time are provided, the arrival time of the message is used as start time. Times supplied by the device
+ * are checked against the plausibility window around the arrival time of the message. The resulting value logs carry
+ * no message, since duplicating or rendering the message for each value would be too expensive.
+ */
+class BatchValueMessageExpander {
+    //JSON key names
+    private static final String JSON_KEY_COMPONENT_TYPE = "component";
+    private static final String JSON_COMPONENT_ID = "id";
+    private static final String JSON_KEY_VALUES = "values";
+    private static final String JSON_KEY_TIMESTAMPS = "timestamps";
+    private static final String JSON_KEY_START = "start";
+    private static final String JSON_KEY_INTERVAL = "interval";
+
+    //Nanoseconds per millisecond for interval calculations
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    //Upper bound for the number of values per batch message
+    private final int maxBatchSize;
+
+    //Window around the arrival time within which times supplied by the device are accepted
+    private final DeviceTimeWindow deviceTimeWindow;
+
+    /**
+     * Creates a new batch expander.
+     *
+     * @param maxBatchSize     The maximum number of values a batch message may contain
+     * @param deviceTimeWindow The window around the arrival time within which device times are accepted
+     */
+    BatchValueMessageExpander(int maxBatchSize, DeviceTimeWindow deviceTimeWindow) {
+        //Sanity checks
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be positive.");
+        } else if (deviceTimeWindow == null) {
+            throw new IllegalArgumentException("Device time window must not be null.");
+        }
+
+        this.maxBatchSize = maxBatchSize;
+        this.deviceTimeWindow = deviceTimeWindow;
+    }
+
+    /**
+     * Checks whether a parsed JSON message is a batch message.
+     *
+     * @param json The JSON message to check
+     * @return True, if the message is a batch message; false otherwise
+     */
+    static boolean isBatch(JSONObject json) {
+        return json.has(JSON_KEY_VALUES);
+    }
+
+    /**
+     * Expands a batch message into a list of value logs, one for each contained value.
+     *
+     * @param json    The parsed batch message
+     * @param message The raw message from which the batch was parsed
+     * @return The list of value logs in the order of the values within the batch
+     * @throws JSONException In case the batch message is malformed
+     */
+    List<ValueLog> expand(JSONObject json, IngestionMessage message) throws JSONException {
+        String componentType = json.getString(JSON_KEY_COMPONENT_TYPE);
+        String componentId = json.getString(JSON_COMPONENT_ID);
+        JSONArray values = json.getJSONArray(JSON_KEY_VALUES);
+        int count = values.length();
+
+        //Sanity checks
+        if (count == 0) {
+            throw new IllegalArgumentException("Batch message does not contain any values.");
+        } else if (count > maxBatchSize) {
+            throw new IllegalArgumentException("Batch message contains " + count + " values, but at most "
+                    + maxBatchSize + " are allowed.");
+        }
+
+        //Determine how the times of the values are specified
+        JSONArray timestamps = json.optJSONArray(JSON_KEY_TIMESTAMPS);
+        boolean deviceTime = (timestamps != null) || json.has(JSON_KEY_START);
+        long start = json.has(JSON_KEY_START) ? json.getLong(JSON_KEY_START) : message.getArrivalTime().toEpochMilli();
+        double interval = 0;
+        if (timestamps != null) {
+            if (timestamps.length() != count) {
+                throw new IllegalArgumentException("Number of timestamps does not match the number of values.");
+            }
+        } else {
+            interval = json.getDouble(JSON_KEY_INTERVAL);
+            if (interval < 0) {
+                throw new IllegalArgumentException("Interval must not be negative.");
+            }
+        }
+
+        //Create one value log per value
+        List<ValueLog> valueLogs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double value = values.getDouble(i);
+
+            //Calculate time of the value
+            Instant time;
+            if (timestamps != null) {
+                time = Instant.ofEpochMilli(timestamps.getLong(i));
+            } else {
+                time = Instant.ofEpochMilli(start).plusNanos(Math.round(i * interval * NANOS_PER_MILLI));
+            }
+            if (deviceTime) {
+                time = deviceTimeWindow.apply(time, message.getArrivalTime());
+            }
+
+            ValueLog valueLog = new ValueLog();
+            valueLog.setTopic(message.getTopic());
+            valueLog.setQos(message.getQos());
+            valueLog.setTime(time);
+            valueLog.setIdref(componentId);
+            valueLog.setComponent(componentType);
+            valueLog.setValue(value);
+
+            valueLogs.add(valueLog);
+        }
+
+        return valueLogs;
+    }
+}
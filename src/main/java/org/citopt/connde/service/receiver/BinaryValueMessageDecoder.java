@@ -0,0 +1,160 @@
+package org.citopt.connde.service.receiver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Decoder for the compact binary value message format, which is meant for constrained devices that send values
+ * at high frequencies. A binary message is recognized either by its leading marker byte or by the topic suffix
+ * <code>/bin</code> and is structured as follows (multi-byte numbers in big-endian order):
+ * <pre>
+ * offset  size  content
+ * 0       1     marker (0xB5)
+ * 1       1     format version (1)
+ * 2       1     flags (bit 0: device timestamp present, bit 1: id given as raw bytes instead of ASCII)
+ * 3       1     component type (0: DEVICE, 1: SENSOR, 2: ACTUATOR, 3: MONITORING)
+ * 4       1     length n of the component id
+ * 5       n     component id (ASCII, or raw bytes that are rendered as lowercase hex, e.g. a 12 byte object id)
+ * 5+n     8     value (IEEE 754 double)
+ * 13+n    8     device timestamp in milliseconds since epoch (only if flag bit 0 is set)
+ * </pre>
+ * Instances hold the results of the last decoding run and are therefore not thread-safe.
+ */
+final class BinaryValueMessageDecoder {
+    //Marker byte and version of the format
+    private static final byte MARKER = (byte) 0xB5;
+    private static final int VERSION = 1;
+
+    //Topic suffix that selects the binary format
+    private static final String TOPIC_SUFFIX = "/bin";
+
+    //Flags
+    private static final int FLAG_DEVICE_TIMESTAMP = 0x01;
+    private static final int FLAG_RAW_ID = 0x02;
+
+    //Component types by their codes
+    private static final String[] COMPONENT_TYPES = {"DEVICE", "SENSOR", "ACTUATOR", "MONITORING"};
+
+    //Size of the header (marker, version, flags, type, id length)
+    private static final int HEADER_SIZE = 5;
+
+    //Characters for hex encoding
+    private static final char[] HEX_CHARACTERS = "0123456789abcdef".toCharArray();
+
+    //Results of the last decoding run
+    private String componentType;
+    private String componentId;
+    private double value;
+    private Instant deviceTime;
+
+    /**
+     * Checks whether a message is supposed to be decoded as binary value message.
+     *
+     * @param topic   The topic under which the message was received
+     * @param payload The raw payload of the message
+     * @return True, if the message is a binary value message; false otherwise
+     */
+    static boolean isBinary(String topic, byte[] payload) {
+        return ((payload.length > 0) && (payload[0] == MARKER)) || ((topic != null) && topic.endsWith(TOPIC_SUFFIX));
+    }
+
+    /**
+     * Decodes a binary value message.
+     *
+     * @param payload The raw payload of the message
+     * @throws IllegalArgumentException In case the payload is not a valid binary value message
+     */
+    void decode(byte[] payload) {
+        //Check header
+        if (payload.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Binary value message is too short.");
+        } else if (payload[0] != MARKER) {
+            throw new IllegalArgumentException("Binary value message does not start with the marker byte.");
+        } else if (payload[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary value message version " + payload[1] + ".");
+        }
+
+        int flags = payload[2] & 0xFF;
+        int typeCode = payload[3] & 0xFF;
+        int idLength = payload[4] & 0xFF;
+        boolean hasDeviceTime = (flags & FLAG_DEVICE_TIMESTAMP) != 0;
+
+        //Check sizes and codes
+        int expectedLength = HEADER_SIZE + idLength + Double.BYTES + (hasDeviceTime ? Long.BYTES : 0);
+        if (payload.length != expectedLength) {
+            throw new IllegalArgumentException("Binary value message has length " + payload.length +
+                    " instead of " + expectedLength + ".");
+        } else if (typeCode >= COMPONENT_TYPES.length) {
+            throw new IllegalArgumentException("Unknown component type code " + typeCode + ".");
+        } else if (idLength == 0) {
+            throw new IllegalArgumentException("Component id must not be empty.");
+        }
+
+        //Extract fields
+        componentType = COMPONENT_TYPES[typeCode];
+        componentId = ((flags & FLAG_RAW_ID) != 0) ? toHex(payload, HEADER_SIZE, idLength) :
+                new String(payload, HEADER_SIZE, idLength, StandardCharsets.US_ASCII);
+        value = Double.longBitsToDouble(readLong(payload, HEADER_SIZE + idLength));
+        deviceTime = hasDeviceTime ? Instant.ofEpochMilli(readLong(payload, HEADER_SIZE + idLength + Double.BYTES)) : null;
+    }
+
+    /**
+     * Returns the component type of the most recently decoded message.
+     *
+     * @return The component type
+     */
+    String getComponentType() {
+        return componentType;
+    }
+
+    /**
+     * Returns the component id of the most recently decoded message.
+     *
+     * @return The component id
+     */
+    String getComponentId() {
+        return componentId;
+    }
+
+    /**
+     * Returns the value of the most recently decoded message.
+     *
+     * @return The value
+     */
+    double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the device timestamp of the most recently decoded message.
+     *
+     * @return The device timestamp or null if the message did not carry one
+     */
+    Instant getDeviceTime() {
+        return deviceTime;
+    }
+
+    /**
+     * Reads a big-endian long from a byte array.
+     */
+    private static long readLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            result = (result << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Renders a section of a byte array as lowercase hex string.
+     */
+    private static String toHex(byte[] bytes, int offset, int length) {
+        char[] characters = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xFF;
+            characters[2 * i] = HEX_CHARACTERS[b >>> 4];
+            characters[2 * i + 1] = HEX_CHARACTERS[b & 0x0F];
+        }
+        return new String(characters);
+    }
+}
@@ -0,0 +1,82 @@
+package org.citopt.connde.service.receiver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Objects of this class represent value messages that could not be processed by the ingestion pipeline and were
+ * therefore moved to the dead-letter store. They can be used as DTOs in order to retrieve the entries to the client.
+ */
+public class DeadLetterEntry {
+    private final long id;
+    private final String topic;
+    private final byte[] payload;
+    private final int qos;
+    private final Instant arrivalTime;
+    private final Instant failureTime;
+    private final String reason;
+
+    /**
+     * Creates a new dead-letter entry.
+     *
+     * @param id          The id of the entry within the store
+     * @param topic       The topic under which the message was received
+     * @param payload     The raw payload of the message
+     * @param qos         The quality of service of the message
+     * @param arrivalTime The time at which the message arrived
+     * @param failureTime The time at which the processing of the message failed
+     * @param reason      A description of the reason of the failure
+     */
+    DeadLetterEntry(long id, String topic, byte[] payload, int qos, Instant arrivalTime, Instant failureTime,
+                    String reason) {
+        this.id = id;
+        this.topic = topic;
+        this.payload = payload;
+        this.qos = qos;
+        this.arrivalTime = arrivalTime;
+        this.failureTime = failureTime;
+        this.reason = reason;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Returns the payload of the message as string.
+     *
+     * @return The payload
+     */
+    public String getPayload() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public Instant getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public Instant getFailureTime() {
+        return failureTime;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the raw payload of the message.
+     *
+     * @return The payload bytes
+     */
+    byte[] getRawPayload() {
+        return payload;
+    }
+}
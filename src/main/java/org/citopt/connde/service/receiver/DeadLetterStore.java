@@ -0,0 +1,325 @@
+package org.citopt.connde.service.receiver;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded store for value messages that could not be processed by the ingestion pipeline, e.g. because they were
+ * malformed or lacked required fields. The most recent entries are kept in memory and can be inspected and replayed,
+ * while all entries are additionally appended to a rolling file on disk. Furthermore, the store maintains error
+ * counters per topic.
+ * The file is written by a single background thread that takes the entries from a bounded queue, so that the parser
+ * threads of the ingestion pipeline never wait for the disk. If the queue is full, entries are only kept in memory.
+ */
+@Component
+@PropertySource(value = "classpath:application.properties")
+public class DeadLetterStore {
+    //Name of the dead-letter file
+    private static final String FILE_NAME = "dead-letters.log";
+
+    //Name of the file writer thread
+    private static final String THREAD_NAME = "dead-letter-writer";
+
+    //Maximum number of characters of a failure reason
+    private static final int MAX_REASON_LENGTH = 500;
+
+    //In-memory entries, oldest first
+    private final Deque<DeadLetterEntry> entries = new ArrayDeque<>();
+    private final int capacity;
+
+    //Error counters per topic
+    private final Map<String, LongAdder> topicErrorCounters = new ConcurrentHashMap<>();
+
+    //Sequence for entry ids
+    private final AtomicLong idSequence = new AtomicLong();
+
+    //Rolling file settings
+    private final File file;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private BufferedWriter writer = null;
+
+    //Entries waiting for being appended to the file
+    private final BlockingQueue<DeadLetterEntry> fileQueue;
+
+    //File writer thread
+    private final Thread fileWriter;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the dead-letter store.
+     *
+     * @param capacity    The maximum number of entries to keep in memory
+     * @param directory   The directory in which the dead-letter files are supposed to be stored
+     * @param maxFileSize The size in bytes at which the dead-letter file is rolled over
+     * @param maxFiles    The number of rolled over files to keep
+     * @param queueSize   The maximum number of entries that may wait for being appended to the file
+     */
+    @Autowired
+    public DeadLetterStore(@Value("${ingestion.dead-letter.capacity:1000}") int capacity,
+                           @Value("${ingestion.dead-letter.directory:${java.io.tmpdir}/mbp}") String directory,
+                           @Value("${ingestion.dead-letter.max-file-size:10485760}") long maxFileSize,
+                           @Value("${ingestion.dead-letter.max-files:5}") int maxFiles,
+                           @Value("${ingestion.dead-letter.file-queue-size:10000}") int queueSize) {
+        //Sanity check
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be positive.");
+        }
+
+        this.capacity = capacity;
+        this.file = new File(directory, FILE_NAME);
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.fileQueue = new ArrayBlockingQueue<>(queueSize);
+
+        //Start file writer thread
+        this.fileWriter = new Thread(this::runFileWriter, THREAD_NAME);
+        this.fileWriter.setDaemon(true);
+        this.fileWriter.start();
+    }
+
+    /**
+     * Adds a message that could not be processed to the store.
+     *
+     * @param topic       The topic under which the message was received
+     * @param payload     The raw payload of the message
+     * @param qos         The quality of service of the message
+     * @param arrivalTime The time at which the message arrived
+     * @param cause       The cause of the failure
+     */
+    public void add(String topic, byte[] payload, int qos, Instant arrivalTime, Throwable cause) {
+        //Sanitize
+        String safeTopic = (topic == null) ? "" : topic;
+        byte[] safePayload = (payload == null) ? new byte[0] : payload;
+
+        //Build a short reason from the cause
+        String reason = (cause == null) ? "Unknown" : cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        if (reason.length() > MAX_REASON_LENGTH) {
+            reason = reason.substring(0, MAX_REASON_LENGTH);
+        }
+
+        DeadLetterEntry entry = new DeadLetterEntry(idSequence.incrementAndGet(), safeTopic, safePayload, qos,
+                arrivalTime, Instant.now(), reason);
+
+        //Count error for the topic
+        topicErrorCounters.computeIfAbsent(safeTopic, t -> new LongAdder()).increment();
+
+        //Add to memory and evict the oldest entry if the capacity is exceeded
+        synchronized (entries) {
+            entries.addLast(entry);
+            while (entries.size() > capacity) {
+                entries.removeFirst();
+            }
+        }
+
+        //Hand over to the file writer, the entry is only kept in memory if the queue is full
+        fileQueue.offer(entry);
+    }
+
+    /**
+     * Returns all entries that are currently held in memory, oldest first.
+     *
+     * @return The list of entries
+     */
+    public List<DeadLetterEntry> getEntries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    /**
+     * Removes an entry with a certain id from the store and returns it.
+     *
+     * @param id The id of the entry
+     * @return The removed entry or null if no entry with this id is held in memory
+     */
+    public DeadLetterEntry remove(long id) {
+        synchronized (entries) {
+            Iterator<DeadLetterEntry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                DeadLetterEntry entry = iterator.next();
+                if (entry.getId() == id) {
+                    iterator.remove();
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes all entries from memory and returns them, oldest first.
+     *
+     * @return The list of removed entries
+     */
+    public List<DeadLetterEntry> removeAll() {
+        synchronized (entries) {
+            List<DeadLetterEntry> removed = new ArrayList<>(entries);
+            entries.clear();
+            return removed;
+        }
+    }
+
+    /**
+     * Returns the number of errors that occurred so far per topic.
+     *
+     * @return Map (topic -> number of errors)
+     */
+    public Map<String, Long> getTopicErrorCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        topicErrorCounters.forEach((topic, counter) -> counts.put(topic, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * Appends the remaining entries and closes the dead-letter file when the application shuts down.
+     */
+    @PreDestroy
+    public void close() {
+        running = false;
+        try {
+            fileWriter.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the file writer thread, which appends the queued entries to the file and flushes the file
+     * whenever the queue became empty.
+     */
+    private void runFileWriter() {
+        List<DeadLetterEntry> batch = new ArrayList<>();
+        while (running || !fileQueue.isEmpty()) {
+            try {
+                DeadLetterEntry entry = fileQueue.poll(1, TimeUnit.SECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                batch.add(entry);
+            } catch (InterruptedException e) {
+                //Write the remaining entries before terminating
+                running = false;
+            }
+
+            fileQueue.drainTo(batch);
+            for (DeadLetterEntry entry : batch) {
+                appendToFile(entry);
+            }
+            batch.clear();
+            flushWriter();
+        }
+        closeWriter();
+    }
+
+    /**
+     * Appends an entry as JSON line to the dead-letter file and rolls the file over if it became too large.
+     *
+     * @param entry The entry to append
+     */
+    private void appendToFile(DeadLetterEntry entry) {
+        try {
+            //Roll over if necessary
+            if (file.exists() && (file.length() >= maxFileSize)) {
+                closeWriter();
+                rollOver();
+            }
+
+            //Open writer if not open yet
+            if (writer == null) {
+                Files.createDirectories(file.getParentFile().toPath());
+                writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+
+            //Write entry as single JSON line
+            JSONObject json = new JSONObject();
+            json.put("id", entry.getId());
+            json.put("topic", entry.getTopic());
+            json.put("qos", entry.getQos());
+            json.put("arrivalTime", String.valueOf(entry.getArrivalTime()));
+            json.put("failureTime", String.valueOf(entry.getFailureTime()));
+            json.put("reason", entry.getReason());
+            json.put("payload", Base64.getEncoder().encodeToString(entry.getRawPayload()));
+            writer.write(json.toString());
+            writer.newLine();
+        } catch (IOException | JSONException e) {
+            System.err.println("Failed to write dead-letter file: " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    /**
+     * Shifts the existing dead-letter files by one index and discards the oldest one.
+     *
+     * @throws IOException In case of an I/O issue
+     */
+    private void rollOver() throws IOException {
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File source = new File(file.getPath() + "." + i);
+            if (source.exists()) {
+                Files.move(source.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Flushes the writer of the dead-letter file, if open.
+     */
+    private void flushWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to write dead-letter file: " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    /**
+     * Closes the writer of the dead-letter file, if open.
+     */
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+}
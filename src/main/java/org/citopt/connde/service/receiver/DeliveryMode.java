@@ -0,0 +1,11 @@
+package org.citopt.connde.service.receiver;
+
+/**
+ * Enumeration of the delivery modes an observer may choose on registration at the ValueLogReceiver.
+ */
+public enum DeliveryMode {
+    //Value logs are delivered one after another in the order in which they were dispatched
+    ORDERED,
+    //Value logs may be delivered concurrently and thus in arbitrary order
+    UNORDERED
+}
@@ -0,0 +1,12 @@
+package org.citopt.connde.service.receiver;
+
+/**
+ * Enumeration of the ways in which the value log ingestion pipeline handles value messages whose device time is
+ * outside of the plausibility window around their arrival time.
+ */
+public enum DeviceTimeFallback {
+    //Use the arrival time of the message instead of the device time
+    ARRIVAL_TIME,
+    //Move the message to the dead-letter store
+    REJECT
+}
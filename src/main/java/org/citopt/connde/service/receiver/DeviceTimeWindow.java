@@ -0,0 +1,69 @@
+package org.citopt.connde.service.receiver;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plausibility window around the arrival time of a value message within which the time supplied by the device is
+ * accepted. Device times outside of the window (e.g. due to devices with unsynchronized clocks) are replaced by the
+ * arrival time or cause the message to be rejected, depending on the configured fallback, so that devices cannot
+ * write value logs into arbitrary points in time.
+ */
+class DeviceTimeWindow {
+    //Maximum deviations of the device time from the arrival time
+    private final long maxPastNanos;
+    private final long maxFutureNanos;
+
+    //How to handle device times outside of the window
+    private final DeviceTimeFallback fallback;
+
+    /**
+     * Creates a new plausibility window.
+     *
+     * @param maxPastMillis   The maximum number of milliseconds a device time may lie before the arrival time
+     * @param maxFutureMillis The maximum number of milliseconds a device time may lie after the arrival time
+     * @param fallback        How to handle device times outside of the window
+     */
+    DeviceTimeWindow(long maxPastMillis, long maxFutureMillis, DeviceTimeFallback fallback) {
+        //Sanity checks
+        if ((maxPastMillis < 0) || (maxFutureMillis < 0)) {
+            throw new IllegalArgumentException("Bounds of the device time window must not be negative.");
+        } else if (fallback == null) {
+            throw new IllegalArgumentException("Device time fallback must not be null.");
+        }
+
+        this.maxPastNanos = TimeUnit.MILLISECONDS.toNanos(maxPastMillis);
+        this.maxFutureNanos = TimeUnit.MILLISECONDS.toNanos(maxFutureMillis);
+        this.fallback = fallback;
+    }
+
+    /**
+     * Checks a device time against the window around the arrival time of its message.
+     *
+     * @param deviceTime  The time supplied by the device
+     * @param arrivalTime The arrival time of the message
+     * @return The device time if it is within the window; the arrival time otherwise
+     * @throws IllegalArgumentException In case the device time is outside of the window and messages with such
+     *                                  times are supposed to be rejected
+     */
+    Instant apply(Instant deviceTime, Instant arrivalTime) {
+        if (isPlausible(deviceTime, arrivalTime)) {
+            return deviceTime;
+        } else if (fallback == DeviceTimeFallback.ARRIVAL_TIME) {
+            return arrivalTime;
+        }
+        throw new IllegalArgumentException("Device time " + deviceTime + " is outside of the plausible window " +
+                "around the arrival time " + arrivalTime + ".");
+    }
+
+    private boolean isPlausible(Instant deviceTime, Instant arrivalTime) {
+        long seconds = deviceTime.getEpochSecond() - arrivalTime.getEpochSecond();
+
+        //Skip the exact calculation for deviations that cannot be represented in nanoseconds
+        if (Math.abs(seconds) >= Long.MAX_VALUE / TimeUnit.SECONDS.toNanos(1) - 1) {
+            return false;
+        }
+        long deviation = TimeUnit.SECONDS.toNanos(seconds) + (deviceTime.getNano() - arrivalTime.getNano());
+        return (deviation >= -maxPastNanos) && (deviation <= maxFutureNanos);
+    }
+}
@@ -0,0 +1,79 @@
+package org.citopt.connde.service.receiver;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock with sub-millisecond resolution for recording the arrival times of value messages. The wall clock of the JVM
+ * only provides milliseconds, so the clock extrapolates from a calibration point by means of the monotonic nano
+ * time. As soon as the extrapolated time deviates from the wall clock by more than a tolerance, e.g. due to clock
+ * adjustments, the clock is calibrated again.
+ */
+final class IngestionClock {
+    //Maximum deviation from the wall clock before the clock is calibrated again
+    private static final long TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    //Current calibration point
+    private static volatile Calibration calibration = new Calibration(currentWallNanos(), System.nanoTime());
+
+    private IngestionClock() {
+
+    }
+
+    /**
+     * Returns the current time with sub-millisecond resolution.
+     *
+     * @return The current time
+     */
+    static Instant now() {
+        Calibration current = calibration;
+        long nanoTime = System.nanoTime();
+        long epochNanos = current.epochNanos + (nanoTime - current.nanoTime);
+
+        //Check deviation from wall clock
+        long wallNanos = currentWallNanos();
+        if (Math.abs(epochNanos - wallNanos) > TOLERANCE_NANOS) {
+            calibration = new Calibration(wallNanos, nanoTime);
+            epochNanos = wallNanos;
+        }
+
+        return toInstant(epochNanos);
+    }
+
+    /**
+     * Converts an instant to nanoseconds since epoch.
+     *
+     * @param instant The instant to convert
+     * @return The nanoseconds since epoch
+     */
+    static long toEpochNanos(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
+
+    /**
+     * Converts nanoseconds since epoch to an instant.
+     *
+     * @param epochNanos The nanoseconds since epoch
+     * @return The resulting instant
+     */
+    static Instant toInstant(long epochNanos) {
+        return Instant.ofEpochSecond(0, epochNanos);
+    }
+
+    private static long currentWallNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    /**
+     * Pair of wall clock time and nano time that were taken at the same moment.
+     */
+    private static class Calibration {
+        private final long epochNanos;
+        private final long nanoTime;
+
+        private Calibration(long epochNanos, long nanoTime) {
+            this.epochNanos = epochNanos;
+            this.nanoTime = nanoTime;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.citopt.connde.service.receiver;
+
+import java.time.Instant;
+
+/**
+ * Raw MQTT message as it is handed over from the MQTT callback thread to the value log ingestion pipeline.
+ * Parsing is deferred to the workers of the pipeline, so that the callback thread can return immediately.
+ */
+final class IngestionMessage {
+    private final String topic;
+    private final byte[] payload;
+    private final int qos;
+    private final Instant arrivalTime;
+
+    /**
+     * Creates a new ingestion message.
+     *
+     * @param topic       The topic under which the message was received
+     * @param payload     The raw payload of the message
+     * @param qos         The quality of service of the message
+     * @param arrivalTime The time at which the message arrived
+     */
+    IngestionMessage(String topic, byte[] payload, int qos, Instant arrivalTime) {
+        this.topic = topic;
+        this.payload = payload;
+        this.qos = qos;
+        this.arrivalTime = arrivalTime;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    byte[] getPayload() {
+        return payload;
+    }
+
+    int getQos() {
+        return qos;
+    }
+
+    Instant getArrivalTime() {
+        return arrivalTime;
+    }
+}
@@ -0,0 +1,129 @@
+package org.citopt.connde.service.receiver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, bounded multi-producer/multi-consumer ring buffer that is used for passing elements between the
+ * stages of the value log ingestion pipeline. Each slot carries a sequence number that tells producers and consumers
+ * whether the slot is currently free or occupied, so that neither side ever needs to acquire a lock.
+ *
+ * @param <E> The type of the elements to store
+ */
+final class IngestionRingBuffer<E> {
+    //Maximum supported capacity
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    //Slots and their sequence numbers
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    //Positions of the next slot to write and to read
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates a new ring buffer with a given minimum capacity. The actual capacity is the next power of two.
+     *
+     * @param requestedCapacity The minimum capacity of the ring buffer
+     */
+    IngestionRingBuffer(int requestedCapacity) {
+        //Sanity check
+        if ((requestedCapacity < 1) || (requestedCapacity > MAX_CAPACITY)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY + ".");
+        }
+
+        //Round up to the next power of two
+        int capacity = Integer.highestOneBit(requestedCapacity);
+        if (capacity < requestedCapacity) {
+            capacity <<= 1;
+        }
+
+        this.mask = capacity - 1;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+
+        //Initially, each slot is free for the producer position that maps onto it
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Tries to add an element to the ring buffer.
+     *
+     * @param element The element to add
+     * @return True, if the element was added; false if the ring buffer is full
+     */
+    boolean offer(E element) {
+        //Sanity check
+        if (element == null) {
+            throw new IllegalArgumentException("Element must not be null.");
+        }
+
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                //Slot is free, try to claim it
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                //Slot has not been consumed yet, thus the buffer is full
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Tries to remove the oldest element from the ring buffer.
+     *
+     * @return The removed element or null if the ring buffer is empty
+     */
+    E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                //Slot is occupied, try to claim it
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                //Slot has not been written yet, thus the buffer is empty
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate number of elements that are currently stored in the ring buffer.
+     *
+     * @return The number of elements
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Returns the capacity of the ring buffer.
+     *
+     * @return The capacity
+     */
+    int capacity() {
+        return mask + 1;
+    }
+}
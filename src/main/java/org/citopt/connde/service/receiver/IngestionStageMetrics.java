@@ -0,0 +1,88 @@
+package org.citopt.connde.service.receiver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Objects of this class hold the counters of a single stage of the value log ingestion pipeline. They can be
+ * used as DTOs in order to retrieve the counters to the client.
+ */
+public class IngestionStageMetrics {
+    //Name of the stage
+    private final String stageName;
+
+    //Counters
+    private final LongAdder received = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Creates a new metrics object for a stage with a given name.
+     *
+     * @param stageName The name of the stage
+     */
+    IngestionStageMetrics(String stageName) {
+        this.stageName = stageName;
+    }
+
+    void incrementReceived() {
+        received.increment();
+    }
+
+    void incrementProcessed() {
+        processed.increment();
+    }
+
+    void incrementDropped() {
+        dropped.increment();
+    }
+
+    void incrementFailed() {
+        failed.increment();
+    }
+
+    /**
+     * Returns the name of the stage.
+     *
+     * @return The name
+     */
+    public String getStageName() {
+        return stageName;
+    }
+
+    /**
+     * Returns the number of elements that were handed over to the stage.
+     *
+     * @return The number of received elements
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Returns the number of elements that were successfully processed by the stage.
+     *
+     * @return The number of processed elements
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Returns the number of elements that were discarded by the stage due to its overflow policy.
+     *
+     * @return The number of dropped elements
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of elements whose processing failed within the stage.
+     *
+     * @return The number of failed elements
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+}
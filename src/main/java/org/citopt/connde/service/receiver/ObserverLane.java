@@ -0,0 +1,270 @@
+package org.citopt.connde.service.receiver;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Isolated dispatch lane of a single observer of the ValueLogReceiver. Each lane owns an executor with a bounded
+ * queue, so that a slow or failing observer only fills up its own queue and never delays the other observers.
+ * Ordered lanes are served by a single thread, unordered lanes by a configurable number of threads.
+ * The exception is the BLOCK overflow policy: a full lane blocks the parser worker that submits to it until space
+ * becomes available, which stalls all other lanes fed by that worker as well. Hence, BLOCK is only meant for
+ * observers that must not lose value logs (e.g. the persistence) and trades the isolation of the lanes for it.
+ */
+class ObserverLane {
+    //Name frame of the lane threads
+    private static final String THREAD_NAME = "value-log-lane-%s-%d";
+
+    //Nanoseconds per millisecond for lag conversions
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    //The observer served by this lane
+    private final ValueLogReceiverObserver observer;
+    private final DeliveryMode deliveryMode;
+    private final OverflowPolicy overflowPolicy;
+
+    //Queue and executor of the lane
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+
+    //Counters and lag figures
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder lagSumNanos = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long lastLagNanos = 0;
+
+    /**
+     * Creates and starts a new dispatch lane for a given observer.
+     *
+     * @param observer         The observer to serve
+     * @param deliveryMode     The delivery mode requested by the observer
+     * @param queueSize        The capacity of the queue of the lane
+     * @param unorderedThreads The number of threads to use in case of unordered delivery
+     * @param overflowPolicy   The policy to apply in case the queue of the lane is full
+     */
+    ObserverLane(ValueLogReceiverObserver observer, DeliveryMode deliveryMode, int queueSize, int unorderedThreads,
+                 OverflowPolicy overflowPolicy) {
+        //Sanity checks
+        if (observer == null) {
+            throw new IllegalArgumentException("Observer must not be null.");
+        } else if (deliveryMode == null) {
+            throw new IllegalArgumentException("Delivery mode must not be null.");
+        } else if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null.");
+        }
+
+        this.observer = observer;
+        this.deliveryMode = deliveryMode;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        //Ordered delivery requires a single thread
+        int threads = (deliveryMode == DeliveryMode.ORDERED) ? 1 : Math.max(1, unorderedThreads);
+
+        //Create executor with daemon threads that are named after the observer
+        AtomicInteger threadCounter = new AtomicInteger();
+        String observerName = getObserverName();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, String.format(THREAD_NAME, observerName, threadCounter.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        }, this::handleOverflow);
+        this.executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Enqueues a value log for delivery to the observer of this lane.
+     *
+     * @param valueLog The value log to deliver
+     */
+    void submit(ValueLog valueLog) {
+        long enqueueTime = System.nanoTime();
+        try {
+            executor.execute(new DeliveryTask(() -> deliver(valueLog, enqueueTime), 1));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Enqueues a batch of value logs for delivery to the observer of this lane. The batch is delivered
+     * with a single call of the observer and occupies only one slot of the queue.
+     *
+     * @param valueLogs The value logs to deliver
+     */
+    void submitBatch(List<ValueLog> valueLogs) {
+        long enqueueTime = System.nanoTime();
+        try {
+            executor.execute(new DeliveryTask(() -> deliverBatch(valueLogs, enqueueTime), valueLogs.size()));
+        } catch (RejectedExecutionException e) {
+            dropped.add(valueLogs.size());
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters and lag figures of this lane.
+     *
+     * @return The metrics snapshot
+     */
+    ObserverLaneMetrics getMetrics() {
+        long deliveredCount = delivered.sum();
+        long failedCount = failed.sum();
+
+        //Lag is recorded for failed value logs as well
+        long handledCount = deliveredCount + failedCount;
+        double averageLag = (handledCount == 0) ? 0 : (lagSumNanos.sum() / (double) handledCount) / NANOS_PER_MILLI;
+
+        return new ObserverLaneMetrics(getObserverName(), deliveryMode, queue.size(), deliveredCount, dropped.sum(),
+                failedCount, lastLagNanos / NANOS_PER_MILLI, maxLagNanos.get() / NANOS_PER_MILLI, averageLag);
+    }
+
+    /**
+     * Stops the lane after the value logs that are still queued have been delivered.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits until the value logs that were still queued at shutdown have been delivered.
+     *
+     * @param timeoutMillis The maximum time to wait (in milliseconds)
+     * @return True, if the lane terminated; false if the timeout elapsed before
+     * @throws InterruptedException In case the thread was interrupted while waiting
+     */
+    boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Delivers a value log to the observer and updates the metrics. Exceptions of the observer are confined
+     * to this lane.
+     *
+     * @param valueLog    The value log to deliver
+     * @param enqueueTime The time at which the value log was enqueued (as returned by System.nanoTime())
+     */
+    private void deliver(ValueLog valueLog, long enqueueTime) {
+        //Record lag
+        long lag = System.nanoTime() - enqueueTime;
+        lastLagNanos = lag;
+        lagSumNanos.add(lag);
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+
+        try {
+            observer.onValueReceived(valueLog);
+            delivered.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            System.err.println("Observer " + getObserverName() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delivers a batch of value logs to the observer and updates the metrics. Exceptions of the observer are
+     * confined to this lane.
+     *
+     * @param valueLogs   The value logs to deliver
+     * @param enqueueTime The time at which the batch was enqueued (as returned by System.nanoTime())
+     */
+    private void deliverBatch(List<ValueLog> valueLogs, long enqueueTime) {
+        //Record lag, which applies to every value log of the batch
+        long lag = System.nanoTime() - enqueueTime;
+        lastLagNanos = lag;
+        lagSumNanos.add(lag * valueLogs.size());
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+
+        try {
+            observer.onValuesReceived(valueLogs);
+            delivered.add(valueLogs.size());
+        } catch (RuntimeException e) {
+            failed.add(valueLogs.size());
+            System.err.println("Observer " + getObserverName() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the overflow policy in case the queue of the lane is full. Dropped tasks are counted by the number
+     * of value logs they carry. With the BLOCK policy, the calling parser worker waits for space in the queue.
+     *
+     * @param task     The task that could not be enqueued
+     * @param executor The executor of the lane
+     */
+    private void handleOverflow(Runnable task, ThreadPoolExecutor executor) {
+        //Discard if lane was shut down already
+        if (executor.isShutdown()) {
+            dropped.add(sizeOf(task));
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(task);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.add(sizeOf(task));
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(task)) {
+                    Runnable oldest = queue.poll();
+                    if (oldest != null) {
+                        dropped.add(sizeOf(oldest));
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                dropped.add(sizeOf(task));
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of value logs carried by a task of the lane.
+     *
+     * @param task The task
+     * @return The number of value logs
+     */
+    private static int sizeOf(Runnable task) {
+        return (task instanceof DeliveryTask) ? ((DeliveryTask) task).size : 1;
+    }
+
+    /**
+     * Returns a human-readable name of the observer of this lane.
+     *
+     * @return The name
+     */
+    private String getObserverName() {
+        return observer.getClass().getSimpleName();
+    }
+
+    /**
+     * Task of the lane that delivers a certain number of value logs, so that dropped tasks can be counted exactly.
+     */
+    private static class DeliveryTask implements Runnable {
+        private final Runnable delivery;
+        private final int size;
+
+        private DeliveryTask(Runnable delivery, int size) {
+            this.delivery = delivery;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            delivery.run();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.citopt.connde.service.receiver;
+
+/**
+ * Objects of this class are snapshots of the counters and lag figures of the dispatch lane of a single observer.
+ * They can be used as DTOs in order to retrieve the metrics to the client.
+ */
+public class ObserverLaneMetrics {
+    private final String observerName;
+    private final DeliveryMode deliveryMode;
+    private final int queued;
+    private final long delivered;
+    private final long dropped;
+    private final long failed;
+    private final double lastLagMillis;
+    private final double maxLagMillis;
+    private final double averageLagMillis;
+
+    /**
+     * Creates a new metrics snapshot.
+     *
+     * @param observerName     The name of the observer
+     * @param deliveryMode     The delivery mode of the lane
+     * @param queued           The number of value logs waiting in the lane
+     * @param delivered        The number of value logs delivered to the observer
+     * @param dropped          The number of value logs discarded due to a full lane
+     * @param failed           The number of deliveries in which the observer threw an exception
+     * @param lastLagMillis    The queueing delay of the most recent delivery in milliseconds
+     * @param maxLagMillis     The largest queueing delay observed so far in milliseconds
+     * @param averageLagMillis The average queueing delay in milliseconds
+     */
+    ObserverLaneMetrics(String observerName, DeliveryMode deliveryMode, int queued, long delivered, long dropped,
+                        long failed, double lastLagMillis, double maxLagMillis, double averageLagMillis) {
+        this.observerName = observerName;
+        this.deliveryMode = deliveryMode;
+        this.queued = queued;
+        this.delivered = delivered;
+        this.dropped = dropped;
+        this.failed = failed;
+        this.lastLagMillis = lastLagMillis;
+        this.maxLagMillis = maxLagMillis;
+        this.averageLagMillis = averageLagMillis;
+    }
+
+    public String getObserverName() {
+        return observerName;
+    }
+
+    public DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public double getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public double getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public double getAverageLagMillis() {
+        return averageLagMillis;
+    }
+}
@@ -0,0 +1,14 @@
+package org.citopt.connde.service.receiver;
+
+/**
+ * Enumeration of policies that determine how a bounded stage of the value log ingestion pipeline behaves
+ * in case its queue is full and a further element is supposed to be added.
+ */
+public enum OverflowPolicy {
+    //Wait until space becomes available, which propagates backpressure to the producer
+    BLOCK,
+    //Discard the oldest queued element in favour of the new one
+    DROP_OLDEST,
+    //Discard the new element and keep the queue as it is
+    DROP_NEWEST
+}
@@ -0,0 +1,246 @@
+package org.citopt.connde.service.receiver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the subscriptions of the observer lanes that is used to route value logs only to the observers that are
+ * interested in them. Subscriptions by component id and component type are kept in hash maps, topic patterns in a
+ * trie with one node per topic level. Lookups operate on an immutable snapshot of the index and thus do not require
+ * any locking; the snapshot is rebuilt whenever the subscriptions change, which happens rarely compared to lookups.
+ */
+class SubscriptionIndex {
+    //Subscriptions of all lanes, guarded by the index itself
+    private final Map<ObserverLane, Set<ValueLogSubscription>> subscriptions = new LinkedHashMap<>();
+
+    //Current snapshot to use for lookups
+    private volatile Snapshot snapshot = new Snapshot();
+
+    /**
+     * Adds a subscription for a given lane.
+     *
+     * @param lane         The lane to add the subscription for
+     * @param subscription The subscription to add
+     */
+    synchronized void add(ObserverLane lane, ValueLogSubscription subscription) {
+        //Sanity checks
+        if (lane == null) {
+            throw new IllegalArgumentException("Lane must not be null.");
+        } else if (subscription == null) {
+            throw new IllegalArgumentException("Subscription must not be null.");
+        }
+
+        if (subscriptions.computeIfAbsent(lane, l -> new LinkedHashSet<>()).add(subscription)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes a subscription of a given lane.
+     *
+     * @param lane         The lane to remove the subscription from
+     * @param subscription The subscription to remove
+     */
+    synchronized void remove(ObserverLane lane, ValueLogSubscription subscription) {
+        Set<ValueLogSubscription> laneSubscriptions = subscriptions.get(lane);
+        if ((laneSubscriptions == null) || !laneSubscriptions.remove(subscription)) {
+            return;
+        }
+
+        //Forget lanes without subscriptions
+        if (laneSubscriptions.isEmpty()) {
+            subscriptions.remove(lane);
+        }
+        rebuild();
+    }
+
+    /**
+     * Removes all subscriptions of a given lane.
+     *
+     * @param lane The lane to remove
+     */
+    synchronized void removeAll(ObserverLane lane) {
+        if (subscriptions.remove(lane) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Returns the subscriptions of a given lane.
+     *
+     * @param lane The lane
+     * @return The set of subscriptions of the lane
+     */
+    synchronized Set<ValueLogSubscription> getSubscriptions(ObserverLane lane) {
+        Set<ValueLogSubscription> laneSubscriptions = subscriptions.get(lane);
+        return (laneSubscriptions == null) ? Collections.emptySet() : new LinkedHashSet<>(laneSubscriptions);
+    }
+
+    /**
+     * Determines the lanes that are interested in a value log with certain properties and adds them to a given
+     * list. Each matching lane is added only once, even if several of its subscriptions match.
+     *
+     * @param componentId   The id of the component of the value log
+     * @param componentType The type of the component of the value log
+     * @param topic         The topic of the value log
+     * @param result        The list to add the matching lanes to
+     */
+    void match(String componentId, String componentType, String topic, List<ObserverLane> result) {
+        Snapshot current = snapshot;
+
+        addAll(current.all, result);
+
+        if ((componentId != null) && !current.byComponentId.isEmpty()) {
+            addAll(current.byComponentId.get(componentId), result);
+        }
+
+        if ((componentType != null) && !current.byComponentType.isEmpty()) {
+            List<ObserverLane> lanes = current.byComponentType.get(componentType);
+            if (lanes == null) {
+                lanes = current.byComponentType.get(componentType.toUpperCase(Locale.ROOT));
+            }
+            addAll(lanes, result);
+        }
+
+        if ((topic != null) && current.hasTopicPatterns) {
+            matchTopic(current.topicRoot, topic, 0, result);
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot from the current subscriptions and publishes it.
+     */
+    private void rebuild() {
+        Snapshot newSnapshot = new Snapshot();
+
+        for (Map.Entry<ObserverLane, Set<ValueLogSubscription>> entry : subscriptions.entrySet()) {
+            ObserverLane lane = entry.getKey();
+            for (ValueLogSubscription subscription : entry.getValue()) {
+                switch (subscription.getType()) {
+                    case ALL:
+                        newSnapshot.all.add(lane);
+                        break;
+                    case COMPONENT_ID:
+                        newSnapshot.byComponentId.computeIfAbsent(subscription.getKey(), k -> new ArrayList<>()).add(lane);
+                        break;
+                    case COMPONENT_TYPE:
+                        newSnapshot.byComponentType.computeIfAbsent(subscription.getKey(), k -> new ArrayList<>()).add(lane);
+                        break;
+                    case TOPIC_PATTERN:
+                        newSnapshot.topicRoot.insert(subscription.getKey().split(ValueLogSubscription.TOPIC_LEVEL_SEPARATOR, -1), 0, lane);
+                        newSnapshot.hasTopicPatterns = true;
+                        break;
+                }
+            }
+        }
+
+        snapshot = newSnapshot;
+    }
+
+    /**
+     * Walks the topic trie along the levels of a topic and adds the lanes of all matching patterns to a list.
+     *
+     * @param node   The current node of the trie
+     * @param topic  The topic to match
+     * @param offset The offset of the current level within the topic; beyond the end if all levels were consumed
+     * @param result The list to add the matching lanes to
+     */
+    private void matchTopic(TopicNode node, String topic, int offset, List<ObserverLane> result) {
+        //Multi-level wildcards match the remaining levels, including none
+        addAll(node.multiLevelLanes, result);
+
+        //Check if all levels of the topic were consumed
+        if (offset > topic.length()) {
+            addAll(node.lanes, result);
+            return;
+        }
+
+        //Extract current level
+        int end = topic.indexOf(ValueLogSubscription.TOPIC_LEVEL_SEPARATOR, offset);
+        if (end < 0) {
+            end = topic.length();
+        }
+
+        //Follow exact and single-level wildcard branches
+        if (!node.children.isEmpty()) {
+            TopicNode child = node.children.get(topic.substring(offset, end));
+            if (child != null) {
+                matchTopic(child, topic, end + 1, result);
+            }
+        }
+        if (node.singleLevelChild != null) {
+            matchTopic(node.singleLevelChild, topic, end + 1, result);
+        }
+    }
+
+    /**
+     * Adds the lanes of a list to a result list, skipping lanes that are already contained.
+     */
+    private static void addAll(List<ObserverLane> lanes, List<ObserverLane> result) {
+        if (lanes == null) {
+            return;
+        }
+        for (ObserverLane lane : lanes) {
+            if (!result.contains(lane)) {
+                result.add(lane);
+            }
+        }
+    }
+
+    /**
+     * Immutable (after publication) view of all subscriptions, organized for fast lookups.
+     */
+    private static class Snapshot {
+        private final List<ObserverLane> all = new ArrayList<>();
+        private final Map<String, List<ObserverLane>> byComponentId = new HashMap<>();
+        private final Map<String, List<ObserverLane>> byComponentType = new HashMap<>();
+        private final TopicNode topicRoot = new TopicNode();
+        private boolean hasTopicPatterns = false;
+    }
+
+    /**
+     * Node of the topic trie, representing one level of the topic patterns.
+     */
+    private static class TopicNode {
+        //Children for concrete levels and for the single-level wildcard
+        private final Map<String, TopicNode> children = new HashMap<>();
+        private TopicNode singleLevelChild;
+
+        //Lanes whose pattern ends at this node or continues with a multi-level wildcard
+        private final List<ObserverLane> lanes = new ArrayList<>();
+        private final List<ObserverLane> multiLevelLanes = new ArrayList<>();
+
+        /**
+         * Inserts the remaining levels of a topic pattern below this node.
+         *
+         * @param levels The levels of the pattern
+         * @param index  The index of the next level to insert
+         * @param lane   The lane that subscribed the pattern
+         */
+        private void insert(String[] levels, int index, ObserverLane lane) {
+            if (index == levels.length) {
+                lanes.add(lane);
+                return;
+            }
+
+            String level = levels[index];
+            if (level.equals(ValueLogSubscription.MULTI_LEVEL_WILDCARD)) {
+                multiLevelLanes.add(lane);
+            } else if (level.equals(ValueLogSubscription.SINGLE_LEVEL_WILDCARD)) {
+                if (singleLevelChild == null) {
+                    singleLevelChild = new TopicNode();
+                }
+                singleLevelChild.insert(levels, index + 1, lane);
+            } else {
+                children.computeIfAbsent(level, l -> new TopicNode()).insert(levels, index + 1, lane);
+            }
+        }
+    }
+}
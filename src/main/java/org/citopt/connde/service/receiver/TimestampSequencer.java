@@ -0,0 +1,74 @@
+package org.citopt.connde.service.receiver;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the times of the value logs of each component strictly increasing, so that value logs that were recorded
+ * within the same clock tick do not overwrite each other in the database, where component and time identify a
+ * point. If the time of a value log does not exceed the latest time of its component by at least one tick, it is
+ * moved to one nanosecond after that time. Value logs that are older by more than a tick, e.g. replayed historic
+ * values, keep their time.
+ * Instances are thread-safe and shared by all parser workers: messages are partitioned by topic, but a component
+ * may publish on several topics (e.g. binary messages on a topic of its own), so that its value logs may be
+ * processed by different workers. The latest time of a component is updated atomically.
+ */
+final class TimestampSequencer {
+    //Resolution of the clocks of the MBP and of the devices
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    //Maximum number of components to remember
+    private static final int MAX_COMPONENTS = 100_000;
+
+    //Latest time (nanoseconds since epoch) per component id
+    private final ConcurrentMap<String, Long> latestTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Adjusts the times of a list of value logs in place.
+     *
+     * @param valueLogs The value logs to adjust, in processing order
+     */
+    void sequence(List<ValueLog> valueLogs) {
+        for (ValueLog valueLog : valueLogs) {
+            sequence(valueLog);
+        }
+    }
+
+    /**
+     * Adjusts the time of a single value log in place.
+     *
+     * @param valueLog The value log to adjust
+     */
+    void sequence(ValueLog valueLog) {
+        String componentId = valueLog.getIdref();
+        if ((componentId == null) || (valueLog.getTime() == null)) {
+            return;
+        }
+
+        long time = IngestionClock.toEpochNanos(valueLog.getTime());
+
+        //Forget all components if too many were seen, e.g. due to short-living ids
+        if ((latestTimes.size() >= MAX_COMPONENTS) && !latestTimes.containsKey(componentId)) {
+            latestTimes.clear();
+        }
+
+        //Determine the time and update the latest one atomically, since other workers may sequence the component
+        long[] sequenced = {time};
+        latestTimes.merge(componentId, time, (latest, current) -> {
+            //Move value logs of the same tick behind the latest one
+            if ((current <= latest) && (latest - current < TICK_NANOS)) {
+                sequenced[0] = latest + 1;
+                return latest + 1;
+            }
+            return Math.max(latest, current);
+        });
+
+        if (sequenced[0] != time) {
+            valueLog.setTime(IngestionClock.toInstant(sequenced[0]));
+        }
+    }
+}
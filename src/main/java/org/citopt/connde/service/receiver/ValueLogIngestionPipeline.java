@@ -0,0 +1,400 @@
+package org.citopt.connde.service.receiver;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Staged pipeline that decouples the arrival of MQTT value messages from their processing. Incoming raw messages
+ * are put into lock-free bounded ring buffers by the MQTT callback thread; a pool of parser workers takes them from
+ * there, transforms them to value logs and dispatches them to the isolated lanes of those observers of the
+ * ValueLogReceiver whose subscriptions match.
+ * Messages are partitioned by topic, so that values of the same component are always processed in arrival order.
+ * Messages may either be JSON documents, batch messages with multiple values or compact binary value messages.
+ * Messages that cannot be parsed are moved to the dead-letter store instead of affecting the MQTT connection.
+ * Value logs carry the arrival time of their message or, if enabled, the time supplied by the device, provided that
+ * it lies within a plausibility window around the arrival time; the times of each component are made strictly increasing, so that no value log overwrites another one in the database.
+ */
+class ValueLogIngestionPipeline {
+    //JSON key names
+    private static final String JSON_KEY_COMPONENT_TYPE = "component";
+    private static final String JSON_COMPONENT_ID = "id";
+    private static final String JSON_KEY_VALUE = "value";
+    private static final String JSON_KEY_TIMESTAMP = "timestamp";
+
+    //Nanoseconds per millisecond for timestamp conversions
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    //Name frame of the parser worker threads
+    private static final String WORKER_THREAD_NAME = "value-log-parser-%d";
+
+    //Number of empty polls a worker performs before it starts to yield and to wait for a signal
+    private static final int IDLE_SPIN_LIMIT = 100;
+    private static final int IDLE_YIELD_LIMIT = 200;
+
+    //Maximum time an idle worker waits for a signal, as safeguard only, and park duration for blocked producers
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    //Index of the subscriptions of the observer lanes
+    private final SubscriptionIndex subscriptionIndex;
+
+    //Policy to apply when a ring buffer is full
+    private final OverflowPolicy overflowPolicy;
+
+    //Store for messages that could not be processed
+    private final DeadLetterStore deadLetterStore;
+
+    //Expander for batch messages
+    private final BatchValueMessageExpander batchExpander;
+
+    //Whether times supplied by the devices are supposed to be used instead of the arrival times
+    private final boolean useDeviceTime;
+
+    //Window around the arrival times within which times supplied by the devices are accepted
+    private final DeviceTimeWindow deviceTimeWindow;
+
+    //Sequencer shared by all workers, since the value logs of a component may arrive on topics of several partitions
+    private final TimestampSequencer sequencer = new TimestampSequencer();
+
+    //One ring buffer per parser worker and flags telling whether the workers wait for a signal
+    private final List<IngestionRingBuffer<IngestionMessage>> partitions;
+    private final List<Thread> workers;
+    private final List<AtomicBoolean> idleFlags;
+
+    //Counters of the individual stages
+    private final IngestionStageMetrics arrivalMetrics = new IngestionStageMetrics("arrival");
+    private final IngestionStageMetrics parsingMetrics = new IngestionStageMetrics("parsing");
+    private final IngestionStageMetrics dispatchMetrics = new IngestionStageMetrics("dispatch");
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a new ingestion pipeline.
+     *
+     * @param subscriptionIndex The index of the observer lanes to dispatch parsed value logs to
+     * @param queueSize      The capacity of the ring buffer of each parser worker
+     * @param parserThreads  The number of parser workers
+     * @param overflowPolicy  The policy to apply when a ring buffer is full
+     * @param deadLetterStore The store to move messages to that could not be processed
+     * @param maxBatchSize    The maximum number of values a batch message may contain
+     * @param useDeviceTime   Whether times supplied by the devices are supposed to be used instead of arrival times
+     * @param deviceTimeWindow The window around the arrival times within which device times are accepted
+     */
+    ValueLogIngestionPipeline(SubscriptionIndex subscriptionIndex, int queueSize, int parserThreads,
+                              OverflowPolicy overflowPolicy, DeadLetterStore deadLetterStore, int maxBatchSize,
+                              boolean useDeviceTime, DeviceTimeWindow deviceTimeWindow) {
+        //Sanity checks
+        if (subscriptionIndex == null) {
+            throw new IllegalArgumentException("Subscription index must not be null.");
+        } else if (parserThreads < 1) {
+            throw new IllegalArgumentException("Number of parser threads must be positive.");
+        } else if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null.");
+        } else if (deadLetterStore == null) {
+            throw new IllegalArgumentException("Dead-letter store must not be null.");
+        } else if (deviceTimeWindow == null) {
+            throw new IllegalArgumentException("Device time window must not be null.");
+        }
+
+        this.subscriptionIndex = subscriptionIndex;
+        this.overflowPolicy = overflowPolicy;
+        this.deadLetterStore = deadLetterStore;
+        this.batchExpander = new BatchValueMessageExpander(maxBatchSize, deviceTimeWindow);
+        this.useDeviceTime = useDeviceTime;
+        this.deviceTimeWindow = deviceTimeWindow;
+        this.partitions = new ArrayList<>(parserThreads);
+        this.workers = new ArrayList<>(parserThreads);
+        this.idleFlags = new ArrayList<>(parserThreads);
+
+        //Create one ring buffer and one worker per partition
+        for (int i = 0; i < parserThreads; i++) {
+            IngestionRingBuffer<IngestionMessage> queue = new IngestionRingBuffer<>(queueSize);
+            partitions.add(queue);
+            AtomicBoolean idle = new AtomicBoolean(false);
+            idleFlags.add(idle);
+
+            Thread worker = new Thread(() -> runWorker(queue, idle), String.format(WORKER_THREAD_NAME, i));
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        //Start all workers
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Hands over a raw message to the pipeline. Depending on the overflow policy, this method may block
+     * until the responsible ring buffer has space available.
+     *
+     * @param message The message to submit
+     */
+    void submit(IngestionMessage message) {
+        //Sanity check
+        if (message == null) {
+            throw new IllegalArgumentException("Message must not be null.");
+        }
+
+        arrivalMetrics.incrementReceived();
+
+        //Select ring buffer by topic so that the order of messages per topic is preserved
+        int partition = (message.getTopic().hashCode() & Integer.MAX_VALUE) % partitions.size();
+        IngestionRingBuffer<IngestionMessage> queue = partitions.get(partition);
+
+        //Try to add the message according to the overflow policy
+        while (!queue.offer(message)) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    arrivalMetrics.incrementDropped();
+                    return;
+                case DROP_OLDEST:
+                    if (queue.poll() != null) {
+                        arrivalMetrics.incrementDropped();
+                    }
+                    break;
+                case BLOCK:
+                default:
+                    if (!running) {
+                        arrivalMetrics.incrementDropped();
+                        return;
+                    }
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    break;
+            }
+        }
+
+        //Wake up the worker if it waits for messages
+        if (idleFlags.get(partition).get()) {
+            LockSupport.unpark(workers.get(partition));
+        }
+
+        arrivalMetrics.incrementProcessed();
+    }
+
+    /**
+     * Moves a message that could not be processed to the dead-letter store.
+     *
+     * @param message The affected message
+     * @param cause   The cause of the failure
+     */
+    void reject(IngestionMessage message, Throwable cause) {
+        deadLetterStore.add(message.getTopic(), message.getPayload(), message.getQos(), message.getArrivalTime(), cause);
+    }
+
+    /**
+     * Returns the counters of all stages of the pipeline.
+     *
+     * @return The list of stage metrics
+     */
+    List<IngestionStageMetrics> getMetrics() {
+        return Arrays.asList(arrivalMetrics, parsingMetrics, dispatchMetrics);
+    }
+
+    /**
+     * Returns the number of messages that are currently waiting for being parsed.
+     *
+     * @return The number of queued messages
+     */
+    int getQueuedMessages() {
+        int sum = 0;
+        for (IngestionRingBuffer<IngestionMessage> queue : partitions) {
+            sum += queue.size();
+        }
+        return sum;
+    }
+
+    /**
+     * Stops all workers of the pipeline after they processed the messages that are still queued.
+     */
+    void shutdown() {
+        running = false;
+
+        //Wake up and wait for all workers
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Main loop of a parser worker that takes messages from its ring buffer, parses them and dispatches the
+     * resulting value logs to the observers. If no messages arrive for a while, the worker stops polling and waits
+     * until a producer signals a new message.
+     *
+     * @param queue The ring buffer of the worker
+     * @param idle  The flag telling producers whether the worker waits for a signal
+     */
+    private void runWorker(IngestionRingBuffer<IngestionMessage> queue, AtomicBoolean idle) {
+        //Each worker uses its own parser and decoder with reusable state
+        ValueMessageParser parser = new ValueMessageParser();
+        BinaryValueMessageDecoder decoder = new BinaryValueMessageDecoder();
+        List<ObserverLane> targetLanes = new ArrayList<>();
+        int idleCount = 0;
+
+        while (running || (queue.size() > 0)) {
+            IngestionMessage message = queue.poll();
+
+            //Back off step by step if no message is available
+            if (message == null) {
+                idleCount++;
+                if (idleCount > IDLE_YIELD_LIMIT) {
+                    //Announce the wait before checking the queue again, so that no signal gets lost
+                    idle.set(true);
+                    if (running && (queue.size() == 0)) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    idle.set(false);
+                } else if (idleCount > IDLE_SPIN_LIMIT) {
+                    Thread.yield();
+                }
+                continue;
+            }
+            idleCount = 0;
+
+            //Parse message
+            parsingMetrics.incrementReceived();
+            List<ValueLog> valueLogs;
+            try {
+                valueLogs = parse(message, parser, decoder);
+            } catch (JSONException | RuntimeException e) {
+                parsingMetrics.incrementFailed();
+                reject(message, e);
+                continue;
+            }
+            parsingMetrics.incrementProcessed();
+
+            //Prevent value logs of the same component from sharing their time
+            sequencer.sequence(valueLogs);
+
+            //Pass value logs to the observers
+            dispatch(valueLogs, targetLanes);
+        }
+    }
+
+    /**
+     * Parses a raw message to value logs. Binary messages are handled by the binary decoder; since their payload
+     * is not readable, the resulting value logs carry no message. For JSON messages,
+     * the streaming parser of the worker is tried first; batch messages and unusual payloads are handled by the
+     * full JSON parser.
+     *
+     * @param message The message to parse
+     * @param parser  The streaming parser of the worker
+     * @param decoder The binary decoder of the worker
+     * @return The resulting list of value logs; contains exactly one value log unless the message was a batch
+     * @throws JSONException In case the message could not be parsed
+     */
+    private List<ValueLog> parse(IngestionMessage message, ValueMessageParser parser, BinaryValueMessageDecoder decoder)
+            throws JSONException {
+        byte[] payload = message.getPayload();
+
+        //Create value log and set the fields that do not depend on the payload
+        ValueLog valueLog = new ValueLog();
+        valueLog.setTopic(message.getTopic());
+        valueLog.setQos(message.getQos());
+        valueLog.setTime(message.getArrivalTime());
+
+        //Check for binary format
+        if (BinaryValueMessageDecoder.isBinary(message.getTopic(), payload)) {
+            decoder.decode(payload);
+            valueLog.setIdref(decoder.getComponentId());
+            valueLog.setValue(decoder.getValue());
+            valueLog.setComponent(decoder.getComponentType());
+
+            //Use the time at which the device recorded the value if desired
+            if (useDeviceTime && (decoder.getDeviceTime() != null)) {
+                valueLog.setTime(deviceTimeWindow.apply(decoder.getDeviceTime(), message.getArrivalTime()));
+            }
+            return Collections.singletonList(valueLog);
+        }
+
+        //Keep the raw payload, it is only decoded if the message is read
+        valueLog.setMessagePayload(payload);
+
+        //Try streaming parser first
+        if (parser.parse(payload)) {
+            valueLog.setIdref(parser.getComponentId());
+            valueLog.setValue(parser.getValue());
+            valueLog.setComponent(parser.getComponentType());
+            if (useDeviceTime && parser.hasTimestamp()) {
+                valueLog.setTime(deviceTimeWindow.apply(fromEpochMillis(parser.getTimestamp()),
+                        message.getArrivalTime()));
+            }
+            return Collections.singletonList(valueLog);
+        }
+
+        //Fall back to full parser, which also reports the errors of malformed messages
+        JSONObject json = new JSONObject(valueLog.getMessage());
+
+        //Check for batch message
+        if (BatchValueMessageExpander.isBatch(json)) {
+            return batchExpander.expand(json, message);
+        }
+
+        valueLog.setIdref(json.getString(JSON_COMPONENT_ID));
+        valueLog.setValue(json.getDouble(JSON_KEY_VALUE));
+        valueLog.setComponent(json.getString(JSON_KEY_COMPONENT_TYPE));
+        if (useDeviceTime && json.has(JSON_KEY_TIMESTAMP)) {
+            valueLog.setTime(deviceTimeWindow.apply(fromEpochMillis(json.getDouble(JSON_KEY_TIMESTAMP)),
+                    message.getArrivalTime()));
+        }
+
+        return Collections.singletonList(valueLog);
+    }
+
+    /**
+     * Converts a timestamp in milliseconds since epoch, which may have a fractional part, to an instant.
+     *
+     * @param epochMillis The timestamp to convert
+     * @return The resulting instant
+     */
+    private static Instant fromEpochMillis(double epochMillis) {
+        //Sanity check
+        if (Double.isNaN(epochMillis) || Double.isInfinite(epochMillis) || (epochMillis < 0)) {
+            throw new IllegalArgumentException("Timestamp must be a non-negative number of milliseconds.");
+        }
+
+        return IngestionClock.toInstant(Math.round(epochMillis * NANOS_PER_MILLI));
+    }
+
+    /**
+     * Hands over the value logs of a message to the lanes of all observers that subscribed to them. Delivery,
+     * failure handling and backpressure are then taken care of by each lane independently. The value logs of a
+     * batch message are passed to the lanes as a whole.
+     *
+     * @param valueLogs   The value logs to dispatch
+     * @param targetLanes Reusable list to collect the matching lanes in
+     */
+    private void dispatch(List<ValueLog> valueLogs, List<ObserverLane> targetLanes) {
+        dispatchMetrics.incrementReceived();
+
+        //Look up interested lanes; all value logs of a message share component and topic
+        ValueLog first = valueLogs.get(0);
+        targetLanes.clear();
+        subscriptionIndex.match(first.getIdref(), first.getComponent(), first.getTopic(), targetLanes);
+
+        //Iterate over the matching observer lanes and enqueue the value logs
+        for (ObserverLane lane : targetLanes) {
+            if (valueLogs.size() == 1) {
+                lane.submit(valueLogs.get(0));
+            } else {
+                lane.submitBatch(valueLogs);
+            }
+        }
+
+        dispatchMetrics.incrementProcessed();
+    }
+}
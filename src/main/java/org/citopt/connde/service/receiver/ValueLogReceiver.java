@@ -1,41 +1,118 @@
-
 package org.citopt.connde.service.receiver;
 
-import java.util.HashSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
 
 import org.citopt.connde.service.mqtt.MQTTService;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Service;
 
 /**
  * Background service that receives incoming MQTT value log messages that comply to certain topics. The service
  * implements the observer pattern which allows other components to register themselves to the ValueLogReceiver
- * and get notified in case a new value message arrives.
+ * and get notified in case a new value message arrives. Incoming messages are processed by a staged ingestion
+ * pipeline, so that the MQTT callback thread is never blocked by the observers. Each observer is served by its own
+ * dispatch lane with a bounded queue, which isolates the observers from each other's failures and latencies.
+ * Observers may subscribe to the value logs of certain components, component types or topic patterns only; value
+ * logs are then routed through an index, so that observers are not bothered with value logs they are not
+ * interested in.
  */
 @Service
+@DependsOn("valueLogRepository")
 @EnableScheduling
+@PropertySource(value = "classpath:application.properties")
 public class ValueLogReceiver {
     //Set of MQTT topics to subscribe to
     private static final String[] SUBSCRIBE_TOPICS = {"device/#", "sensor/#", "actuator/#", "monitoring/#"};
 
-    //Set ob observers which want to be notified about incoming value logs
-    private Set<ValueLogReceiverObserver> observerSet;
+    //Dispatch lanes of the observers which want to be notified about incoming value logs
+    private final Map<ValueLogReceiverObserver, ObserverLane> observerLanes;
+
+    //Index of the subscriptions of the observer lanes
+    private final SubscriptionIndex subscriptionIndex;
     private final MQTTService mqttService;
 
+    //Configuration of the observer lanes
+    private final int laneQueueSize;
+    private final int laneUnorderedThreads;
+    private final OverflowPolicy laneOverflowPolicy;
+    private final long laneShutdownTimeoutMillis;
+
+    //Pipeline that parses and dispatches incoming messages
+    private final ValueLogIngestionPipeline pipeline;
+
     /**
      * Initializes the value logger service.
+     *
+     * @param mqttService          The MQTT service to use (autowired)
+     * @param queueSize            The capacity of the queue of each parser worker
+     * @param parserThreads        The number of parser workers
+     * @param overflowPolicy       The policy to apply in case a queue of the parser workers is full
+     * @param maxBatchSize         The maximum number of values a batch message may contain
+     * @param useDeviceTime        Whether times supplied by the devices are supposed to be used instead of the
+     *                             arrival times of the messages
+     * @param deviceTimeMaxPast    The maximum number of milliseconds a device time may lie before the arrival time
+     * @param deviceTimeMaxFuture  The maximum number of milliseconds a device time may lie after the arrival time
+     * @param deviceTimeFallback   How to handle messages whose device time is outside of this window
+     * @param laneQueueSize        The capacity of the queue of each observer lane
+     * @param laneUnorderedThreads The number of threads of observer lanes with unordered delivery
+     * @param laneOverflowPolicy   The policy to apply in case the queue of an observer lane is full, unless the
+     *                             observer was registered with a policy of its own
+     * @param laneShutdownTimeout  The maximum time to wait at shutdown for the lanes to deliver the value logs that
+     *                             are still queued (in milliseconds)
+     * @param deadLetterStore      The store for messages that could not be processed (autowired)
      */
     @Autowired
-    public ValueLogReceiver(MQTTService mqttService) {
+    public ValueLogReceiver(MQTTService mqttService,
+                            @Value("${ingestion.pipeline.queue-size:16384}") int queueSize,
+                            @Value("${ingestion.pipeline.parser-threads:4}") int parserThreads,
+                            @Value("${ingestion.pipeline.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                            @Value("${ingestion.pipeline.max-batch-size:10000}") int maxBatchSize,
+                            @Value("${ingestion.pipeline.device-time:false}") boolean useDeviceTime,
+                            @Value("${ingestion.pipeline.device-time-max-past-ms:86400000}") long deviceTimeMaxPast,
+                            @Value("${ingestion.pipeline.device-time-max-future-ms:60000}") long deviceTimeMaxFuture,
+                            @Value("${ingestion.pipeline.device-time-fallback:ARRIVAL_TIME}")
+                                    DeviceTimeFallback deviceTimeFallback,
+                            @Value("${ingestion.lanes.queue-size:8192}") int laneQueueSize,
+                            @Value("${ingestion.lanes.unordered-threads:4}") int laneUnorderedThreads,
+                            @Value("${ingestion.lanes.overflow-policy:DROP_OLDEST}") OverflowPolicy laneOverflowPolicy,
+                            @Value("${ingestion.lanes.shutdown-timeout-ms:10000}") long laneShutdownTimeout,
+                            DeadLetterStore deadLetterStore) {
+        //Sanity check
+        if (laneShutdownTimeout < 0) {
+            throw new IllegalArgumentException("Shutdown timeout of the lanes must not be negative.");
+        }
+
         this.mqttService = mqttService;
-        //Initialize set of observers
-        observerSet = new HashSet<>();
+        this.laneShutdownTimeoutMillis = laneShutdownTimeout;
+        this.laneQueueSize = laneQueueSize;
+        this.laneUnorderedThreads = laneUnorderedThreads;
+        this.laneOverflowPolicy = laneOverflowPolicy;
+
+        //Initialize map of observer lanes
+        observerLanes = new ConcurrentHashMap<>();
+        subscriptionIndex = new SubscriptionIndex();
+
+        //Create and start the ingestion pipeline
+        pipeline = new ValueLogIngestionPipeline(subscriptionIndex, queueSize, parserThreads, overflowPolicy,
+                deadLetterStore, maxBatchSize, useDeviceTime,
+                new DeviceTimeWindow(deviceTimeMaxPast, deviceTimeMaxFuture, deviceTimeFallback));
 
         //Create MQTT callback handler
-        ValueLogReceiverArrivalHandler handler = new ValueLogReceiverArrivalHandler(observerSet);
+        ValueLogReceiverArrivalHandler handler = new ValueLogReceiverArrivalHandler(pipeline);
 
         //Register callback handler at MQTT service
         mqttService.setMqttCallback(handler);
@@ -52,18 +129,110 @@ public class ValueLogReceiver {
     }
 
     /**
-     * Registers an observer at the ValueLogReceiver which then will be notified about incoming value logs.
+     * Registers an observer at the ValueLogReceiver which then will be notified about all incoming value logs
+     * in the order in which they were received.
      *
      * @param observer The observer to register
      */
     public void registerObserver(ValueLogReceiverObserver observer) {
+        registerObserver(observer, DeliveryMode.ORDERED);
+    }
+
+    /**
+     * Registers an observer at the ValueLogReceiver which then will be notified about all incoming value logs.
+     * The observer gets its own dispatch lane that delivers the value logs according to the given delivery mode.
+     *
+     * @param observer     The observer to register
+     * @param deliveryMode The delivery mode to use for the observer
+     */
+    public void registerObserver(ValueLogReceiverObserver observer, DeliveryMode deliveryMode) {
+        registerObserver(observer, deliveryMode, Collections.singleton(ValueLogSubscription.all()));
+    }
+
+    /**
+     * Registers an observer at the ValueLogReceiver which then will be notified about those incoming value logs
+     * that match at least one of the given subscriptions. The observer gets its own dispatch lane that delivers
+     * the value logs according to the given delivery mode. If no subscriptions are passed, the observer does not
+     * receive any value logs until it subscribes to some via {@link #subscribe(ValueLogReceiverObserver,
+     * ValueLogSubscription)}.
+     *
+     * @param observer      The observer to register
+     * @param deliveryMode  The delivery mode to use for the observer
+     * @param subscriptions The subscriptions of the observer
+     */
+    public void registerObserver(ValueLogReceiverObserver observer, DeliveryMode deliveryMode,
+                                 Collection<ValueLogSubscription> subscriptions) {
+        registerObserver(observer, deliveryMode, subscriptions, laneOverflowPolicy);
+    }
+
+    /**
+     * Registers an observer at the ValueLogReceiver which then will be notified about those incoming value logs
+     * that match at least one of the given subscriptions. In contrast to the configured default, the dispatch lane
+     * of the observer applies the given overflow policy, e.g. BLOCK for observers that must not lose value logs.
+     * Note that a full lane with BLOCK policy stalls the parser workers and thus all other observers as well.
+     *
+     * @param observer       The observer to register
+     * @param deliveryMode   The delivery mode to use for the observer
+     * @param subscriptions  The subscriptions of the observer
+     * @param overflowPolicy The policy to apply in case the queue of the lane of the observer is full
+     */
+    public void registerObserver(ValueLogReceiverObserver observer, DeliveryMode deliveryMode,
+                                 Collection<ValueLogSubscription> subscriptions, OverflowPolicy overflowPolicy) {
         //Sanity check
         if (observer == null) {
             throw new IllegalArgumentException("Observer must not be null.");
+        } else if (deliveryMode == null) {
+            throw new IllegalArgumentException("Delivery mode must not be null.");
+        } else if (subscriptions == null) {
+            throw new IllegalArgumentException("Subscriptions must not be null.");
+        } else if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null.");
         }
 
-        //Add observer to set
-        observerSet.add(observer);
+        //Create lane for the observer unless it is already registered
+        ObserverLane lane = observerLanes.computeIfAbsent(observer, o -> new ObserverLane(o, deliveryMode,
+                laneQueueSize, laneUnorderedThreads, overflowPolicy));
+
+        //Add subscriptions to the index
+        for (ValueLogSubscription subscription : subscriptions) {
+            subscriptionIndex.add(lane, subscription);
+        }
+    }
+
+    /**
+     * Adds a subscription to an already registered observer, which then will be notified about the value logs
+     * that match the subscription as well.
+     *
+     * @param observer     The observer to add the subscription to
+     * @param subscription The subscription to add
+     */
+    public void subscribe(ValueLogReceiverObserver observer, ValueLogSubscription subscription) {
+        subscriptionIndex.add(getLane(observer), subscription);
+    }
+
+    /**
+     * Removes a subscription from a registered observer.
+     *
+     * @param observer     The observer to remove the subscription from
+     * @param subscription The subscription to remove
+     */
+    public void unsubscribe(ValueLogReceiverObserver observer, ValueLogSubscription subscription) {
+        //Sanity check
+        if (subscription == null) {
+            throw new IllegalArgumentException("Subscription must not be null.");
+        }
+
+        subscriptionIndex.remove(getLane(observer), subscription);
+    }
+
+    /**
+     * Returns the subscriptions of a registered observer.
+     *
+     * @param observer The observer
+     * @return The set of subscriptions of the observer
+     */
+    public Set<ValueLogSubscription> getSubscriptions(ValueLogReceiverObserver observer) {
+        return subscriptionIndex.getSubscriptions(getLane(observer));
     }
 
     /**
@@ -78,14 +247,127 @@ public class ValueLogReceiver {
             throw new IllegalArgumentException("Observer must not be null.");
         }
 
-        //Remove observer from set
-        observerSet.remove(observer);
+        //Remove lane of the observer and its subscriptions and stop it
+        ObserverLane lane = observerLanes.remove(observer);
+        if (lane != null) {
+            subscriptionIndex.removeAll(lane);
+            lane.shutdown();
+        }
     }
 
     /**
      * Unregisters all observers.
      */
     public void clearObservers() {
-        observerSet.clear();
+        for (ValueLogReceiverObserver observer : new ArrayList<>(observerLanes.keySet())) {
+            unregisterObserver(observer);
+        }
+    }
+
+    /**
+     * Submits a raw value message to the ingestion pipeline as if it had just been received via MQTT.
+     *
+     * @param topic       The topic of the message
+     * @param payload     The raw payload of the message
+     * @param qos         The quality of service of the message
+     * @param arrivalTime The time at which the message originally arrived
+     */
+    private void resubmit(String topic, byte[] payload, int qos, Instant arrivalTime) {
+        //Sanity check
+        if ((topic == null) || (payload == null) || (arrivalTime == null)) {
+            throw new IllegalArgumentException("Topic, payload and arrival time must not be null.");
+        }
+
+        pipeline.submit(new IngestionMessage(topic, payload, qos, arrivalTime));
+    }
+
+    /**
+     * Replays a dead-letter entry by submitting its message to the ingestion pipeline again.
+     *
+     * @param entry The dead-letter entry to replay
+     */
+    public void replay(DeadLetterEntry entry) {
+        //Sanity check
+        if (entry == null) {
+            throw new IllegalArgumentException("Dead-letter entry must not be null.");
+        }
+
+        resubmit(entry.getTopic(), entry.getRawPayload(), entry.getQos(), entry.getArrivalTime());
+    }
+
+    /**
+     * Returns the counters of all stages of the ingestion pipeline.
+     *
+     * @return The list of stage metrics
+     */
+    public List<IngestionStageMetrics> getIngestionMetrics() {
+        return pipeline.getMetrics();
+    }
+
+    /**
+     * Returns the counters and lag figures of the dispatch lanes of all registered observers.
+     *
+     * @return The list of lane metrics
+     */
+    public List<ObserverLaneMetrics> getObserverLaneMetrics() {
+        List<ObserverLaneMetrics> metrics = new ArrayList<>();
+        for (ObserverLane lane : observerLanes.values()) {
+            metrics.add(lane.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the number of received messages that are currently waiting for being parsed.
+     *
+     * @return The number of queued messages
+     */
+    public int getQueuedMessages() {
+        return pipeline.getQueuedMessages();
+    }
+
+    /**
+     * Returns the dispatch lane of a registered observer.
+     *
+     * @param observer The observer
+     * @return The lane of the observer
+     */
+    private ObserverLane getLane(ValueLogReceiverObserver observer) {
+        //Sanity check
+        if (observer == null) {
+            throw new IllegalArgumentException("Observer must not be null.");
+        }
+
+        ObserverLane lane = observerLanes.get(observer);
+        if (lane == null) {
+            throw new IllegalArgumentException("Observer is not registered.");
+        }
+        return lane;
+    }
+
+    /**
+     * Stops the ingestion pipeline and all observer lanes when the application shuts down and waits for the lanes
+     * to deliver the value logs that are still queued. Since the receiver depends on the value log repository, this
+     * happens before the repository flushes its buffered value logs.
+     */
+    @PreDestroy
+    public void shutdown() {
+        pipeline.shutdown();
+
+        //Stop all lanes at once, so that they drain concurrently
+        List<ObserverLane> lanes = new ArrayList<>(observerLanes.values());
+        clearObservers();
+
+        long deadline = System.currentTimeMillis() + laneShutdownTimeoutMillis;
+        try {
+            for (ObserverLane lane : lanes) {
+                if (!lane.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()))) {
+                    System.err.println("Observer lane " + lane.getMetrics().getObserverName() +
+                            " did not terminate in time; value logs still queued are lost.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
-}
\ No newline at end of file
+}
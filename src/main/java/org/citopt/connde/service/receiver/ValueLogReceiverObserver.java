@@ -2,6 +2,8 @@ package org.citopt.connde.service.receiver;
 
 import org.citopt.connde.domain.valueLog.ValueLog;
 
+import java.util.List;
+
 /**
  * Interface for components that observe the ValueReceiver and want to get notified in case
  * a new value message arrives.
@@ -14,4 +16,18 @@ public interface ValueLogReceiverObserver {
      * @param valueLog The corresponding value log that arrived
      */
     void onValueReceived(ValueLog valueLog);
-}
\ No newline at end of file
+
+    /**
+     * Called in case a batch message containing multiple values arrives at the ValueLogReceiver. The values
+     * of the batch are passed as list of value logs, ordered by their time. Observers that are able to process
+     * several value logs at once more efficiently may override this method; by default, each value log of the
+     * batch is passed to {@link #onValueReceived(ValueLog)} individually.
+     *
+     * @param valueLogs The list of value logs that arrived
+     */
+    default void onValuesReceived(List<ValueLog> valueLogs) {
+        for (ValueLog valueLog : valueLogs) {
+            onValueReceived(valueLog);
+        }
+    }
+}
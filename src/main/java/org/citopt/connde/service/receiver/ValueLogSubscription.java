@@ -0,0 +1,152 @@
+package org.citopt.connde.service.receiver;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Objects of this class describe in which value logs an observer of the ValueLogReceiver is interested. An observer
+ * may hold several subscriptions and is notified about a value log if at least one of them matches. Subscriptions
+ * may refer to a certain component id, a certain component type or a MQTT topic pattern that may contain the
+ * usual wildcards "+" (exactly one level) and "#" (any number of remaining levels).
+ */
+public final class ValueLogSubscription {
+    //Wildcards for topic patterns
+    static final String SINGLE_LEVEL_WILDCARD = "+";
+    static final String MULTI_LEVEL_WILDCARD = "#";
+    static final String TOPIC_LEVEL_SEPARATOR = "/";
+
+    /**
+     * Enumeration of the criteria a subscription may be based on.
+     */
+    public enum Type {
+        //Matches all value logs
+        ALL,
+        //Matches value logs of a certain component
+        COMPONENT_ID,
+        //Matches value logs of a certain component type
+        COMPONENT_TYPE,
+        //Matches value logs whose topic matches a certain pattern
+        TOPIC_PATTERN
+    }
+
+    //Subscription matching all value logs
+    private static final ValueLogSubscription ALL = new ValueLogSubscription(Type.ALL, "");
+
+    private final Type type;
+    private final String key;
+
+    /**
+     * Creates a new subscription.
+     *
+     * @param type The type of the subscription
+     * @param key  The key to match, depending on the type
+     */
+    private ValueLogSubscription(Type type, String key) {
+        this.type = type;
+        this.key = key;
+    }
+
+    /**
+     * Returns a subscription that matches all value logs.
+     *
+     * @return The subscription
+     */
+    public static ValueLogSubscription all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a subscription that matches the value logs of a certain component.
+     *
+     * @param componentId The id of the component
+     * @return The subscription
+     */
+    public static ValueLogSubscription forComponentId(String componentId) {
+        //Sanity check
+        if ((componentId == null) || componentId.isEmpty()) {
+            throw new IllegalArgumentException("Component id must not be null or empty.");
+        }
+
+        return new ValueLogSubscription(Type.COMPONENT_ID, componentId);
+    }
+
+    /**
+     * Returns a subscription that matches the value logs of all components of a certain type,
+     * e.g. "SENSOR". The type is matched case-insensitively.
+     *
+     * @param componentType The type of the components
+     * @return The subscription
+     */
+    public static ValueLogSubscription forComponentType(String componentType) {
+        //Sanity check
+        if ((componentType == null) || componentType.isEmpty()) {
+            throw new IllegalArgumentException("Component type must not be null or empty.");
+        }
+
+        return new ValueLogSubscription(Type.COMPONENT_TYPE, componentType.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns a subscription that matches the value logs whose MQTT topic matches a certain pattern,
+     * e.g. "sensor/+" or "device/#".
+     *
+     * @param topicPattern The topic pattern to match
+     * @return The subscription
+     */
+    public static ValueLogSubscription forTopicPattern(String topicPattern) {
+        //Sanity check
+        if ((topicPattern == null) || topicPattern.isEmpty()) {
+            throw new IllegalArgumentException("Topic pattern must not be null or empty.");
+        }
+
+        //Check placement of wildcards
+        String[] levels = topicPattern.split(TOPIC_LEVEL_SEPARATOR, -1);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.equals(MULTI_LEVEL_WILDCARD) && (i < levels.length - 1)) {
+                throw new IllegalArgumentException("Multi-level wildcard must be the last level of the pattern.");
+            } else if ((level.contains(MULTI_LEVEL_WILDCARD) || level.contains(SINGLE_LEVEL_WILDCARD))
+                    && (level.length() > 1)) {
+                throw new IllegalArgumentException("Wildcards must occupy an entire level of the pattern.");
+            }
+        }
+
+        return new ValueLogSubscription(Type.TOPIC_PATTERN, topicPattern);
+    }
+
+    /**
+     * Returns the type of the subscription.
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the key of the subscription, i.e. the component id, the component type or the topic pattern.
+     *
+     * @return The key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if ((o == null) || (getClass() != o.getClass())) return false;
+        ValueLogSubscription that = (ValueLogSubscription) o;
+        return (type == that.type) && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, key);
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + key;
+    }
+}
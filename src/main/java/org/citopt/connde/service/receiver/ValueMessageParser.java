@@ -0,0 +1,487 @@
+package org.citopt.connde.service.receiver;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-light streaming parser for value messages of the form
+ * <code>{"component": "SENSOR", "id": "5c97dc2583aeb6078c5ab672", "value": 27.5}</code>, optionally extended by
+ * a <code>"timestamp"</code> at which the device recorded the value (milliseconds since epoch, possibly with
+ * fractional part). The parser reads the
+ * required fields directly from the raw payload bytes without building a JSON DOM. Component types are mapped onto
+ * shared constants and component ids are looked up in a small cache, so that recurring messages do not cause any
+ * string allocations for these fields.
+ * <p>
+ * The parser only handles the common case of a flat object with plain ASCII strings. For anything unusual
+ * (escape sequences, nested objects or arrays, duplicate or missing keys, exotic number formats) it reports
+ * failure, so that the caller can fall back to the full JSON parser, which then also determines the error message.
+ * Instances hold reusable state and are therefore not thread-safe; each worker is supposed to use its own instance.
+ */
+final class ValueMessageParser {
+    //Key names
+    private static final byte[] KEY_COMPONENT_TYPE = "component".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_COMPONENT_ID = "id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_VALUE = "value".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_TIMESTAMP = "timestamp".getBytes(StandardCharsets.US_ASCII);
+
+    //Component types that are mapped onto shared string constants
+    private static final String[] KNOWN_COMPONENT_TYPES = {"SENSOR", "ACTUATOR", "DEVICE", "MONITORING",
+            "sensor", "actuator", "device", "monitoring"};
+
+    //Size of the component id cache (power of two)
+    private static final int ID_CACHE_SIZE = 1024;
+
+    //Largest mantissa and powers of ten for which a double can be computed exactly (fast path)
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    //Maximum number of significant digits that fit into a long mantissa
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    //Cache of recently seen component ids
+    private final String[] idCache = new String[ID_CACHE_SIZE];
+
+    //State of the current parsing run
+    private byte[] data;
+    private int position;
+    private int tokenStart;
+    private int tokenEnd;
+
+    //Results of the current parsing run
+    private String componentType;
+    private String componentId;
+    private double value;
+    private boolean hasValue;
+    private double timestamp;
+    private boolean hasTimestamp;
+
+    //Most recently read number
+    private double number;
+
+    /**
+     * Tries to parse a value message from the given payload.
+     *
+     * @param payload The raw payload of the message
+     * @return True, if the message could be parsed and contains all required fields; false if the payload needs to
+     * be handled by the full JSON parser
+     */
+    boolean parse(byte[] payload) {
+        //Reset state
+        data = payload;
+        position = 0;
+        componentType = null;
+        componentId = null;
+        hasValue = false;
+        hasTimestamp = false;
+
+        try {
+            return parseObject() && (componentType != null) && (componentId != null) && hasValue;
+        } finally {
+            data = null;
+        }
+    }
+
+    /**
+     * Returns the component type of the most recently parsed message.
+     *
+     * @return The component type
+     */
+    String getComponentType() {
+        return componentType;
+    }
+
+    /**
+     * Returns the component id of the most recently parsed message.
+     *
+     * @return The component id
+     */
+    String getComponentId() {
+        return componentId;
+    }
+
+    /**
+     * Returns the value of the most recently parsed message.
+     *
+     * @return The value
+     */
+    double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns whether the most recently parsed message contains a timestamp.
+     *
+     * @return True, if a timestamp is available; false otherwise
+     */
+    boolean hasTimestamp() {
+        return hasTimestamp;
+    }
+
+    /**
+     * Returns the timestamp of the most recently parsed message in milliseconds since epoch.
+     *
+     * @return The timestamp
+     */
+    double getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Parses a flat JSON object and extracts the fields of interest.
+     *
+     * @return True, if successful; false otherwise
+     */
+    private boolean parseObject() {
+        if (!skipWhitespaceAndExpect('{')) {
+            return false;
+        }
+
+        //Handle empty object
+        skipWhitespace();
+        if (peek() == '}') {
+            return false;
+        }
+
+        while (true) {
+            //Read key
+            if (!skipWhitespaceAndExpect('"') || !readStringToken()) {
+                return false;
+            }
+            int keyStart = tokenStart;
+            int keyLength = tokenEnd - tokenStart;
+
+            if (!skipWhitespaceAndExpect(':')) {
+                return false;
+            }
+            skipWhitespace();
+
+            //Read value depending on the key
+            if (tokenEquals(keyStart, keyLength, KEY_COMPONENT_TYPE)) {
+                if ((componentType != null) || !expect('"') || !readStringToken()) {
+                    return false;
+                }
+                componentType = resolveComponentType();
+            } else if (tokenEquals(keyStart, keyLength, KEY_COMPONENT_ID)) {
+                if ((componentId != null) || !expect('"') || !readStringToken()) {
+                    return false;
+                }
+                componentId = resolveComponentId();
+            } else if (tokenEquals(keyStart, keyLength, KEY_VALUE)) {
+                if (hasValue || !readNumber()) {
+                    return false;
+                }
+                value = number;
+                hasValue = true;
+            } else if (tokenEquals(keyStart, keyLength, KEY_TIMESTAMP)) {
+                if (hasTimestamp || !readNumber()) {
+                    return false;
+                }
+                timestamp = number;
+                hasTimestamp = true;
+            } else if (!skipPrimitive()) {
+                return false;
+            }
+
+            //Continue with next member or finish
+            skipWhitespace();
+            int next = read();
+            if (next == '}') {
+                break;
+            } else if (next != ',') {
+                return false;
+            }
+        }
+
+        //Only whitespace may follow the object
+        skipWhitespace();
+        return position == data.length;
+    }
+
+    /**
+     * Reads a string token whose opening quote was already consumed. The bounds of the content are stored in
+     * tokenStart and tokenEnd.
+     *
+     * @return True, if the string is plain ASCII without escape sequences; false otherwise
+     */
+    private boolean readStringToken() {
+        tokenStart = position;
+        while (position < data.length) {
+            byte b = data[position];
+            if (b == '"') {
+                tokenEnd = position;
+                position++;
+                return true;
+            } else if ((b == '\\') || (b < 0x20)) {
+                //Escape sequences, control characters and non-ASCII bytes are left to the full parser
+                return false;
+            }
+            position++;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a number, which may either be given as plain JSON number or as quoted string.
+     *
+     * @return True, if a number could be read; false otherwise
+     */
+    private boolean readNumber() {
+        int start;
+        int end;
+
+        if (peek() == '"') {
+            position++;
+            if (!readStringToken()) {
+                return false;
+            }
+            start = tokenStart;
+            end = tokenEnd;
+        } else {
+            start = position;
+            while ((position < data.length) && isNumberCharacter(data[position])) {
+                position++;
+            }
+            end = position;
+        }
+
+        return parseDouble(start, end);
+    }
+
+    /**
+     * Parses a decimal number within the given bounds of the payload and stores it as most recently read number.
+     *
+     * @param start The index of the first character
+     * @param end   The index after the last character
+     * @return True, if the number could be parsed; false otherwise
+     */
+    private boolean parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if ((i < end) && (data[i] == '-')) {
+            negative = true;
+            i++;
+        }
+
+        //Integer part, leading zeros are not permitted
+        int integerStart = i;
+        long mantissa = 0;
+        int significantDigits = 0;
+        boolean truncated = false;
+        while ((i < end) && isDigit(data[i])) {
+            if (significantDigits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + (data[i] - '0');
+                if (mantissa > 0) {
+                    significantDigits++;
+                }
+            } else {
+                truncated = true;
+            }
+            i++;
+        }
+        int integerDigits = i - integerStart;
+        if ((integerDigits == 0) || ((integerDigits > 1) && (data[integerStart] == '0'))) {
+            return false;
+        }
+
+        //Fraction part
+        int fractionDigits = 0;
+        if ((i < end) && (data[i] == '.')) {
+            i++;
+            int fractionStart = i;
+            while ((i < end) && isDigit(data[i])) {
+                if (significantDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (data[i] - '0');
+                    fractionDigits++;
+                    if (mantissa > 0) {
+                        significantDigits++;
+                    }
+                } else {
+                    truncated = true;
+                }
+                i++;
+            }
+            if (i == fractionStart) {
+                return false;
+            }
+        }
+
+        //Exponent part
+        int exponent = 0;
+        if ((i < end) && ((data[i] == 'e') || (data[i] == 'E'))) {
+            i++;
+            boolean negativeExponent = false;
+            if ((i < end) && ((data[i] == '+') || (data[i] == '-'))) {
+                negativeExponent = data[i] == '-';
+                i++;
+            }
+            int exponentStart = i;
+            while ((i < end) && isDigit(data[i])) {
+                if (exponent < 10000) {
+                    exponent = exponent * 10 + (data[i] - '0');
+                }
+                i++;
+            }
+            if (i == exponentStart) {
+                return false;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+
+        //Number must cover the whole token
+        if (i != end) {
+            return false;
+        }
+
+        //Fast path: exact computation with a single multiplication or division
+        int scale = exponent - fractionDigits;
+        if (!truncated && (mantissa <= MAX_EXACT_MANTISSA) && (Math.abs(scale) < POWERS_OF_TEN.length)) {
+            double result = (scale >= 0) ? mantissa * POWERS_OF_TEN[scale] : mantissa / POWERS_OF_TEN[-scale];
+            number = negative ? -result : result;
+            return true;
+        }
+
+        //Slow path for numbers with many digits or large exponents
+        number = Double.parseDouble(new String(data, start, end - start, StandardCharsets.US_ASCII));
+        return true;
+    }
+
+    /**
+     * Skips a primitive JSON value (string, number, true, false or null) of a member that is not of interest.
+     *
+     * @return True, if a primitive value was skipped; false if the value is an object or array
+     */
+    private boolean skipPrimitive() {
+        int first = peek();
+        if (first == '"') {
+            position++;
+            return readStringToken();
+        } else if ((first == '{') || (first == '[') || (first < 0)) {
+            return false;
+        }
+
+        //Skip literal or number
+        int start = position;
+        while ((position < data.length) && (isNumberCharacter(data[position]) || isLetter(data[position]))) {
+            position++;
+        }
+        return position > start;
+    }
+
+    /**
+     * Maps the current string token onto a shared component type constant if possible.
+     *
+     * @return The component type
+     */
+    private String resolveComponentType() {
+        int length = tokenEnd - tokenStart;
+        for (String knownType : KNOWN_COMPONENT_TYPES) {
+            if (tokenEquals(knownType, length)) {
+                return knownType;
+            }
+        }
+        return new String(data, tokenStart, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Looks up the current string token in the component id cache and creates a new string only on a cache miss.
+     *
+     * @return The component id
+     */
+    private String resolveComponentId() {
+        int length = tokenEnd - tokenStart;
+
+        //Hash token bytes
+        int hash = 1;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (ID_CACHE_SIZE - 1);
+
+        //Check cache
+        String cached = idCache[slot];
+        if ((cached != null) && tokenEquals(cached, length)) {
+            return cached;
+        }
+
+        //Cache miss, create and remember string
+        String id = new String(data, tokenStart, length, StandardCharsets.US_ASCII);
+        idCache[slot] = id;
+        return id;
+    }
+
+    /**
+     * Checks whether the given bounds of the payload equal a given sequence of bytes.
+     */
+    private boolean tokenEquals(int start, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the current string token equals a given string.
+     */
+    private boolean tokenEquals(String expected, int length) {
+        if (expected.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[tokenStart + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while ((position < data.length) && isWhitespace(data[position])) {
+            position++;
+        }
+    }
+
+    private boolean skipWhitespaceAndExpect(char expected) {
+        skipWhitespace();
+        return expect(expected);
+    }
+
+    private boolean expect(char expected) {
+        if ((position < data.length) && (data[position] == expected)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private int peek() {
+        return (position < data.length) ? data[position] : -1;
+    }
+
+    private int read() {
+        return (position < data.length) ? data[position++] : -1;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t');
+    }
+
+    private static boolean isDigit(byte b) {
+        return (b >= '0') && (b <= '9');
+    }
+
+    private static boolean isLetter(byte b) {
+        return ((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z'));
+    }
+
+    private static boolean isNumberCharacter(byte b) {
+        return isDigit(b) || (b == '-') || (b == '+') || (b == '.') || (b == 'e') || (b == 'E');
+    }
+}
@@ -7,7 +7,6 @@ import org.citopt.connde.repository.ActuatorRepository;
 import org.citopt.connde.service.cep.engine.core.output.CEPOutput;
 import org.citopt.connde.service.mqtt.MQTTService;
 import org.citopt.connde.service.rules.execution.RuleActionExecutor;
-import org.eclipse.paho.client.mqttv3.MqttException;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +14,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.validation.Errors;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Executor for actuator actions.
@@ -158,14 +158,19 @@ public class ActuatorActionExecutor implements RuleActionExecutor {
         //Get string from JSON object
         String message = messageObject.toString();
 
-        //Publish JSON object as sting
-        try {
-            mqttService.publish(topic, message);
-        } catch (MqttException e) {
-            return false;
-        }
+        //Publish JSON object as string without waiting for the broker
+        CompletableFuture<Void> publishFuture = mqttService.publishAsync(topic, message);
+
+        //Report failures that occur after the publish was accepted
+        publishFuture.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                System.err.println("Failed to publish action message for actuator " + actuatorId + ": "
+                        + throwable.getMessage());
+            }
+        });
 
-        return true;
+        //Fail if the message was rejected immediately
+        return !publishFuture.isCompletedExceptionally();
     }
 
     /**
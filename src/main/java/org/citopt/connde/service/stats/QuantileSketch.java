@@ -0,0 +1,434 @@
+package org.citopt.connde.service.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Mergeable sketch of the distribution of a set of values that allows to estimate quantiles with a bounded relative
+ * error, following the DDSketch approach: Values are counted in logarithmically sized bins, so that every value
+ * within a bin is approximated by the bin's representative with a relative error of at most the relative accuracy.
+ * Positive values and the magnitudes of negative values are counted in separate stores, values close to zero in a
+ * dedicated counter. Sketches with the same relative accuracy can be merged without further loss of accuracy.
+ * <p>
+ * The number of bins per store is limited; if the values span a wider range, the bins of the smallest magnitudes are
+ * collapsed, so that only the quantiles of these values lose accuracy. Since bins are only allocated for the range of
+ * the values that actually occurred, a sketch of sensor values typically requires well below one KB.
+ * <p>
+ * Sketches are not thread-safe.
+ */
+public class QuantileSketch {
+    //Version of the serialization format
+    private static final byte SERIALIZATION_VERSION = 1;
+
+    //Initial number of bins of a store
+    private static final int INITIAL_BINS = 32;
+
+    //Configuration of the sketch
+    private final double relativeAccuracy;
+    private final int maxBins;
+
+    //Base of the logarithmic bins and derived figures
+    private final double gamma;
+    private final double multiplier;
+    private final double minIndexableValue;
+
+    //Stores for positive values and for the magnitudes of negative values
+    private final Store positiveStore;
+    private final Store negativeStore;
+
+    //Number of values close to zero
+    private long zeroCount = 0;
+
+    //Exact extremes of the values
+    private double minimum = Double.POSITIVE_INFINITY;
+    private double maximum = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a new and empty sketch.
+     *
+     * @param relativeAccuracy The relative accuracy of the quantiles (between 0 and 1, exclusive)
+     * @param maxBins          The maximum number of bins per store
+     */
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        //Sanity checks
+        if ((relativeAccuracy <= 0) || (relativeAccuracy >= 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1.");
+        } else if (maxBins < 1) {
+            throw new IllegalArgumentException("Maximum number of bins must be positive.");
+        }
+
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.multiplier = 1 / Math.log(gamma);
+        this.minIndexableValue = Double.MIN_NORMAL * gamma;
+        this.positiveStore = new Store(maxBins);
+        this.negativeStore = new Store(maxBins);
+    }
+
+    /**
+     * Adds a value to the sketch. Values that are not finite are ignored.
+     *
+     * @param value The value to add
+     */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+
+        if (value > minIndexableValue) {
+            positiveStore.add(index(value), 1);
+        } else if (value < -minIndexableValue) {
+            negativeStore.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+
+        minimum = Math.min(minimum, value);
+        maximum = Math.max(maximum, value);
+    }
+
+    /**
+     * Merges another sketch into this sketch. The other sketch remains unchanged.
+     *
+     * @param other The sketch to merge
+     */
+    public void merge(QuantileSketch other) {
+        //Sanity check
+        if (other == null) {
+            throw new IllegalArgumentException("Sketch must not be null.");
+        } else if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Sketches with different relative accuracies cannot be merged.");
+        }
+
+        positiveStore.merge(other.positiveStore);
+        negativeStore.merge(other.negativeStore);
+        zeroCount += other.zeroCount;
+        minimum = Math.min(minimum, other.minimum);
+        maximum = Math.max(maximum, other.maximum);
+    }
+
+    /**
+     * Creates an independent copy of the sketch.
+     *
+     * @return The copy
+     */
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy, maxBins);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Returns the number of values that were added to the sketch.
+     *
+     * @return The number of values
+     */
+    public long getCount() {
+        return negativeStore.total + zeroCount + positiveStore.total;
+    }
+
+    /**
+     * Returns whether no values were added to the sketch so far.
+     *
+     * @return True, if the sketch is empty; false otherwise
+     */
+    public boolean isEmpty() {
+        return getCount() == 0;
+    }
+
+    /**
+     * Returns the smallest value that was added to the sketch.
+     *
+     * @return The smallest value or NaN if the sketch is empty
+     */
+    public double getMinimum() {
+        return isEmpty() ? Double.NaN : minimum;
+    }
+
+    /**
+     * Returns the largest value that was added to the sketch.
+     *
+     * @return The largest value or NaN if the sketch is empty
+     */
+    public double getMaximum() {
+        return isEmpty() ? Double.NaN : maximum;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Estimates the value at a certain quantile of the values that were added to the sketch.
+     *
+     * @param quantile The quantile (between 0 and 1, inclusive)
+     * @return The estimated value or NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        //Sanity check
+        if ((quantile < 0) || (quantile > 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+        }
+
+        long count = getCount();
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        //Rank of the value, counted from the smallest value
+        long rank = (long) (quantile * (count - 1));
+
+        double value;
+        if (rank < negativeStore.total) {
+            //Negative values are stored by magnitude, so the smallest value has the largest index
+            value = -value(negativeStore.indexAtRank(negativeStore.total - 1 - rank));
+        } else if (rank < negativeStore.total + zeroCount) {
+            value = 0;
+        } else {
+            value = value(positiveStore.indexAtRank(rank - negativeStore.total - zeroCount));
+        }
+
+        //The estimate must not exceed the exact extremes
+        return Math.max(minimum, Math.min(maximum, value));
+    }
+
+    /**
+     * Estimates a histogram of the values that were added to the sketch, consisting of bins of equal width between
+     * the smallest and the largest value. The values of a bin of the sketch are attributed to the histogram bin
+     * that contains their representative.
+     *
+     * @param bins The number of histogram bins
+     * @return The estimated number of values per histogram bin
+     */
+    public long[] getHistogram(int bins) {
+        //Sanity check
+        if (bins < 1) {
+            throw new IllegalArgumentException("Number of bins must be positive.");
+        }
+
+        long[] histogram = new long[bins];
+        if (isEmpty()) {
+            return histogram;
+        }
+
+        double width = (maximum - minimum) / bins;
+        for (int i = negativeStore.minIndex; (negativeStore.total > 0) && (i <= negativeStore.maxIndex); i++) {
+            addToHistogram(histogram, -value(i), negativeStore.get(i), width);
+        }
+        addToHistogram(histogram, 0, zeroCount, width);
+        for (int i = positiveStore.minIndex; (positiveStore.total > 0) && (i <= positiveStore.maxIndex); i++) {
+            addToHistogram(histogram, value(i), positiveStore.get(i), width);
+        }
+        return histogram;
+    }
+
+    /**
+     * Serializes the sketch into a compact binary representation, storing only the occupied range of bins with
+     * variable-length counts.
+     *
+     * @return The serialized sketch
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(SERIALIZATION_VERSION);
+            output.writeDouble(relativeAccuracy);
+            output.writeInt(maxBins);
+            output.writeDouble(minimum);
+            output.writeDouble(maximum);
+            writeVarLong(output, zeroCount);
+            positiveStore.write(output);
+            negativeStore.write(output);
+        } catch (IOException e) {
+            //Cannot happen for in-memory streams
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores a sketch from its binary representation.
+     *
+     * @param bytes The serialized sketch
+     * @return The restored sketch
+     * @throws IllegalArgumentException In case the bytes do not represent a valid sketch
+     */
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        //Sanity check
+        if ((bytes == null) || (bytes.length == 0)) {
+            throw new IllegalArgumentException("Bytes must not be null or empty.");
+        }
+
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (input.readByte() != SERIALIZATION_VERSION) {
+                throw new IllegalArgumentException("Unsupported serialization version.");
+            }
+            QuantileSketch sketch = new QuantileSketch(input.readDouble(), input.readInt());
+            sketch.minimum = input.readDouble();
+            sketch.maximum = input.readDouble();
+            sketch.zeroCount = readVarLong(input);
+            sketch.positiveStore.read(input);
+            sketch.negativeStore.read(input);
+            return sketch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid serialized sketch.", e);
+        }
+    }
+
+    private void addToHistogram(long[] histogram, double value, long count, double width) {
+        if (count == 0) {
+            return;
+        }
+
+        //Representatives may slightly exceed the exact extremes
+        int bin = (width > 0) ? (int) ((value - minimum) / width) : 0;
+        histogram[Math.max(0, Math.min(histogram.length - 1, bin))] += count;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) * multiplier);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (1 + gamma);
+    }
+
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length number.");
+    }
+
+    /**
+     * Dense store of the counts of contiguous bins, allocated for the occupied range of bins only. If the range
+     * exceeds the maximum number of bins, the lowest bins are collapsed into the lowest remaining bin.
+     */
+    private static class Store {
+        private final int maxBins;
+
+        //Counts of the bins, starting at the bin with index offset
+        private long[] counts = null;
+        private int offset = 0;
+
+        //Occupied range of bins and total count
+        private int minIndex = 0;
+        private int maxIndex = 0;
+        private long total = 0;
+
+        private Store(int maxBins) {
+            this.maxBins = maxBins;
+        }
+
+        private void add(int index, long count) {
+            if (count == 0) {
+                return;
+            }
+
+            if (total == 0) {
+                counts = new long[Math.min(INITIAL_BINS, maxBins)];
+                offset = index - (counts.length / 2);
+                minIndex = maxIndex = index;
+            } else {
+                int newMinIndex = Math.min(minIndex, index);
+                int newMaxIndex = Math.max(maxIndex, index);
+
+                //Collapse the lowest bins if the range gets too wide
+                if (newMaxIndex - newMinIndex + 1 > maxBins) {
+                    newMinIndex = newMaxIndex - maxBins + 1;
+                    index = Math.max(index, newMinIndex);
+                }
+
+                if ((newMinIndex < offset) || (newMaxIndex >= offset + counts.length) || (newMinIndex > minIndex)) {
+                    relocate(newMinIndex, newMaxIndex);
+                }
+                minIndex = newMinIndex;
+                maxIndex = newMaxIndex;
+            }
+
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        private long get(int index) {
+            return ((index < offset) || (index >= offset + counts.length)) ? 0 : counts[index - offset];
+        }
+
+        private void merge(Store other) {
+            if (other.total == 0) {
+                return;
+            }
+            for (int i = other.minIndex; i <= other.maxIndex; i++) {
+                add(i, other.get(i));
+            }
+        }
+
+        private int indexAtRank(long rank) {
+            long cumulative = 0;
+            for (int i = minIndex; i <= maxIndex; i++) {
+                cumulative += get(i);
+                if (cumulative > rank) {
+                    return i;
+                }
+            }
+            return maxIndex;
+        }
+
+        /**
+         * Moves the counts into an array that covers the given range of bins, folding the counts of bins below the
+         * range into its lowest bin.
+         */
+        private void relocate(int newMinIndex, int newMaxIndex) {
+            int range = newMaxIndex - newMinIndex + 1;
+            int length = Math.min(maxBins, Math.max(2 * range, INITIAL_BINS));
+            int newOffset = newMinIndex - ((length - range) / 2);
+
+            long[] newCounts = new long[length];
+            for (int i = minIndex; i <= maxIndex; i++) {
+                newCounts[Math.max(i, newMinIndex) - newOffset] += get(i);
+            }
+            counts = newCounts;
+            offset = newOffset;
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            if (total == 0) {
+                output.writeInt(0);
+                return;
+            }
+            output.writeInt(maxIndex - minIndex + 1);
+            output.writeInt(minIndex);
+            for (int i = minIndex; i <= maxIndex; i++) {
+                writeVarLong(output, get(i));
+            }
+        }
+
+        private void read(DataInputStream input) throws IOException {
+            int bins = input.readInt();
+            if (bins < 0) {
+                throw new IOException("Invalid number of bins.");
+            }
+            int index = (bins > 0) ? input.readInt() : 0;
+            for (int i = 0; i < bins; i++) {
+                add(index + i, readVarLong(input));
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.citopt.connde.service.stats;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+import org.citopt.connde.domain.valueLog.ValueLogStatsCheckpoint;
+import org.citopt.connde.repository.ValueLogSummary;
+
+import java.time.Instant;
+
+/**
+ * Running statistics of the value logs of a single component, extended step by step by the summaries of disjoint
+ * sets of value logs. The mean and the sum of squared deviations from the mean are combined according to Chan et al.,
+ * so that statistics of disjoint sets of value logs can be merged exactly. The remarkable value logs are kept
+ * including their quality of service and message; component type and topic are taken from the most recent value log.
+ */
+class RunningValueLogStats {
+    //Nanoseconds per second for time conversions
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    //Number of value logs, mean and sum of squared deviations from the mean
+    private long count = 0;
+    private double mean = 0;
+    private double squaredDeviations = 0;
+
+    //Epoch nanoseconds before which all value logs are considered
+    private long coveredUntil = Long.MIN_VALUE;
+
+    //Remarkable value logs
+    private ValueLog firstLog;
+    private ValueLog lastLog;
+    private ValueLog minimumLog;
+    private ValueLog maximumLog;
+
+    //Whether the statistics changed since the last checkpoint
+    private boolean dirty = false;
+
+    /**
+     * Merges the summary of a disjoint set of value logs into the statistics.
+     *
+     * @param summary      The summary to merge
+     * @param coveredUntil The epoch nanoseconds before which the statistics consider all value logs afterwards
+     */
+    synchronized void merge(ValueLogSummary summary, long coveredUntil) {
+        if (summary.getCount() > 0) {
+            merge(summary.getCount(), summary.getMean(), summary.getSquaredDeviations(), summary.getFirstLog(),
+                    summary.getLastLog(), summary.getMinimumLog(), summary.getMaximumLog());
+        }
+        this.coveredUntil = Math.max(this.coveredUntil, coveredUntil);
+        dirty = true;
+    }
+
+    /**
+     * Returns the statistics as summary, extended by the summary of the value logs that were recorded afterwards.
+     * The remarkable value logs are copied, so that they may be modified by the caller.
+     *
+     * @param idref  The id of the component
+     * @param recent The summary of the value logs recorded after the covered time (may be null)
+     * @return The summary or null if there are no value logs at all
+     */
+    ValueLogSummary toSummary(String idref, ValueLogSummary recent) {
+        RunningValueLogStats combined = new RunningValueLogStats();
+        synchronized (this) {
+            if (count > 0) {
+                combined.merge(count, mean, squaredDeviations, firstLog, lastLog, minimumLog, maximumLog);
+            }
+        }
+        if ((recent != null) && (recent.getCount() > 0)) {
+            combined.merge(recent.getCount(), recent.getMean(), recent.getSquaredDeviations(), recent.getFirstLog(),
+                    recent.getLastLog(), recent.getMinimumLog(), recent.getMaximumLog());
+        }
+        if (combined.count == 0) {
+            return null;
+        }
+        return new ValueLogSummary(combined.count, combined.mean, combined.squaredDeviations,
+                copy(idref, combined.firstLog), copy(idref, combined.lastLog), copy(idref, combined.minimumLog),
+                copy(idref, combined.maximumLog));
+    }
+
+    /**
+     * Returns whether the statistics changed since the last checkpoint.
+     *
+     * @return True, if the statistics changed; false otherwise
+     */
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks the statistics as changed, e.g. because a checkpoint could not be saved.
+     */
+    synchronized void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Creates a checkpoint of the statistics and marks them as saved.
+     *
+     * @param idref The id of the component
+     * @return The checkpoint
+     */
+    synchronized ValueLogStatsCheckpoint toCheckpoint(String idref) {
+        ValueLogStatsCheckpoint checkpoint = new ValueLogStatsCheckpoint();
+        checkpoint.setId(idref);
+        checkpoint.setCount(count);
+        checkpoint.setMean(mean);
+        checkpoint.setSquaredDeviations(squaredDeviations);
+        checkpoint.setCoveredUntil(coveredUntil);
+        if (count > 0) {
+            checkpoint.setComponent(lastLog.getComponent());
+            checkpoint.setTopic(lastLog.getTopic());
+            checkpoint.setFirstTime(toNanos(firstLog.getTime()));
+            checkpoint.setFirstValue(firstLog.getValue());
+            checkpoint.setFirstQos(firstLog.getQos());
+            checkpoint.setFirstMessage(firstLog.getMessage());
+            checkpoint.setLastTime(toNanos(lastLog.getTime()));
+            checkpoint.setLastValue(lastLog.getValue());
+            checkpoint.setLastQos(lastLog.getQos());
+            checkpoint.setLastMessage(lastLog.getMessage());
+            checkpoint.setMinimumTime(toNanos(minimumLog.getTime()));
+            checkpoint.setMinimumValue(minimumLog.getValue());
+            checkpoint.setMinimumQos(minimumLog.getQos());
+            checkpoint.setMinimumMessage(minimumLog.getMessage());
+            checkpoint.setMaximumTime(toNanos(maximumLog.getTime()));
+            checkpoint.setMaximumValue(maximumLog.getValue());
+            checkpoint.setMaximumQos(maximumLog.getQos());
+            checkpoint.setMaximumMessage(maximumLog.getMessage());
+        }
+        dirty = false;
+        return checkpoint;
+    }
+
+    /**
+     * Restores statistics from a checkpoint.
+     *
+     * @param checkpoint The checkpoint
+     * @return The restored statistics
+     */
+    static RunningValueLogStats fromCheckpoint(ValueLogStatsCheckpoint checkpoint) {
+        RunningValueLogStats stats = new RunningValueLogStats();
+        if (checkpoint.getCount() > 0) {
+            String component = checkpoint.getComponent();
+            String topic = checkpoint.getTopic();
+            stats.merge(checkpoint.getCount(), checkpoint.getMean(), checkpoint.getSquaredDeviations(),
+                    toValueLog(checkpoint.getFirstTime(), checkpoint.getFirstValue(), checkpoint.getFirstQos(),
+                            checkpoint.getFirstMessage(), component, topic),
+                    toValueLog(checkpoint.getLastTime(), checkpoint.getLastValue(), checkpoint.getLastQos(),
+                            checkpoint.getLastMessage(), component, topic),
+                    toValueLog(checkpoint.getMinimumTime(), checkpoint.getMinimumValue(),
+                            checkpoint.getMinimumQos(), checkpoint.getMinimumMessage(), component, topic),
+                    toValueLog(checkpoint.getMaximumTime(), checkpoint.getMaximumValue(),
+                            checkpoint.getMaximumQos(), checkpoint.getMaximumMessage(), component, topic));
+        }
+        stats.coveredUntil = checkpoint.getCoveredUntil();
+        return stats;
+    }
+
+    /**
+     * Returns the epoch nanoseconds before which all value logs are considered.
+     *
+     * @return The epoch nanoseconds or Long.MIN_VALUE if no value logs were considered so far
+     */
+    synchronized long getCoveredUntil() {
+        return coveredUntil;
+    }
+
+    /**
+     * Merges the figures of a disjoint set of value logs into the statistics (Chan et al.). Must be called while
+     * holding the lock.
+     */
+    private void merge(long otherCount, double otherMean, double otherSquaredDeviations, ValueLog otherFirstLog,
+                       ValueLog otherLastLog, ValueLog otherMinimumLog, ValueLog otherMaximumLog) {
+        if (otherCount == 0) {
+            return;
+        }
+
+        //Take over the figures if no value logs were considered so far
+        if (count == 0) {
+            count = otherCount;
+            mean = otherMean;
+            squaredDeviations = otherSquaredDeviations;
+            firstLog = otherFirstLog;
+            lastLog = otherLastLog;
+            minimumLog = otherMinimumLog;
+            maximumLog = otherMaximumLog;
+            return;
+        }
+
+        //Combine mean and squared deviations
+        long totalCount = count + otherCount;
+        double delta = otherMean - mean;
+        mean += delta * otherCount / totalCount;
+        squaredDeviations += otherSquaredDeviations + delta * delta * count * otherCount / totalCount;
+        count = totalCount;
+
+        //Combine remarkable value logs
+        if (otherFirstLog.getTime().isBefore(firstLog.getTime())) {
+            firstLog = otherFirstLog;
+        }
+        if (otherLastLog.getTime().isAfter(lastLog.getTime())) {
+            lastLog = otherLastLog;
+        }
+        if ((otherMinimumLog.getValue() < minimumLog.getValue()) ||
+                ((otherMinimumLog.getValue() == minimumLog.getValue()) &&
+                        otherMinimumLog.getTime().isBefore(minimumLog.getTime()))) {
+            minimumLog = otherMinimumLog;
+        }
+        if ((otherMaximumLog.getValue() > maximumLog.getValue()) ||
+                ((otherMaximumLog.getValue() == maximumLog.getValue()) &&
+                        otherMaximumLog.getTime().isBefore(maximumLog.getTime()))) {
+            maximumLog = otherMaximumLog;
+        }
+    }
+
+    private static ValueLog copy(String idref, ValueLog source) {
+        ValueLog valueLog = new ValueLog();
+        valueLog.setTime(source.getTime());
+        valueLog.setValue(source.getValue());
+        valueLog.setQos(source.getQos());
+        valueLog.setMessage(source.getMessage());
+        valueLog.setIdref(idref);
+        valueLog.setComponent(source.getComponent());
+        valueLog.setTopic(source.getTopic());
+        return valueLog;
+    }
+
+    private static ValueLog toValueLog(long time, double value, Integer qos, String message, String component,
+                                       String topic) {
+        ValueLog valueLog = new ValueLog();
+        valueLog.setTime(Instant.ofEpochSecond(Math.floorDiv(time, NANOS_PER_SECOND),
+                Math.floorMod(time, NANOS_PER_SECOND)));
+        valueLog.setValue(value);
+        valueLog.setQos(qos);
+        valueLog.setMessage(message);
+        valueLog.setComponent(component);
+        valueLog.setTopic(topic);
+        return valueLog;
+    }
+
+    private static long toNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+    }
+}
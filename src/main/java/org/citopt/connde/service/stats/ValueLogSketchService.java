@@ -0,0 +1,303 @@
+package org.citopt.connde.service.stats;
+
+import org.citopt.connde.domain.valueLog.ValueLog;
+import org.citopt.connde.domain.valueLog.ValueLogSketch;
+import org.citopt.connde.repository.ValueLogRepository;
+import org.citopt.connde.repository.ValueLogSketchRepository;
+import org.citopt.connde.service.receiver.DeliveryMode;
+import org.citopt.connde.service.receiver.ValueLogReceiver;
+import org.citopt.connde.service.receiver.ValueLogReceiverObserver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service that registers itself as observer at the ValueLogReceiver and maintains quantile sketches of the values
+ * of the value logs per component and time bucket while they arrive. The sketches of the value logs that arrived
+ * since the last flush are kept in memory and merged periodically into the sketches of the document database, so
+ * that typically only one small sketch per active component is held in memory. Distributions are answered by merging
+ * the sketches of all time buckets that overlap a requested time window. Only value logs that arrived while the
+ * sketches were enabled are considered.
+ */
+@Service
+@PropertySource(value = "classpath:application.properties")
+public class ValueLogSketchService implements ValueLogReceiverObserver {
+    //Repository to use
+    private final ValueLogSketchRepository sketchRepository;
+
+    //Configuration of the sketches
+    private final boolean enabled;
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final long bucketMillis;
+
+    //Sketches of the value logs that arrived since the last flush per component and time bucket
+    private final Map<BucketKey, QuantileSketch> pendingSketches = new ConcurrentHashMap<>();
+
+    //Lock for keeping the document database and the pending sketches consistent
+    private final Object flushLock = new Object();
+
+    /**
+     * Creates and starts the service by passing references to the value log receiver service and the repositories
+     * that are supposed to be used (auto-wired).
+     *
+     * @param valueLogReceiver   The instance of the value log receiver service
+     * @param valueLogRepository The value log repository
+     * @param sketchRepository   The repository for the sketches
+     * @param enabled            Whether sketches are supposed to be maintained
+     * @param relativeAccuracy   The relative accuracy of the quantiles
+     * @param maxBins            The maximum number of bins per sketch store
+     * @param bucketMillis       The duration of the time buckets in milliseconds
+     */
+    @Autowired
+    public ValueLogSketchService(ValueLogReceiver valueLogReceiver, ValueLogRepository valueLogRepository,
+                                 ValueLogSketchRepository sketchRepository,
+                                 @Value("${stats.sketch.enabled:true}") boolean enabled,
+                                 @Value("${stats.sketch.relative-accuracy:0.01}") double relativeAccuracy,
+                                 @Value("${stats.sketch.max-bins:512}") int maxBins,
+                                 @Value("${stats.sketch.bucket-ms:3600000}") long bucketMillis) {
+        //Sanity checks
+        if ((relativeAccuracy <= 0) || (relativeAccuracy >= 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1.");
+        } else if (maxBins < 1) {
+            throw new IllegalArgumentException("Maximum number of bins must be positive.");
+        } else if (bucketMillis < 1) {
+            throw new IllegalArgumentException("Bucket duration must be positive.");
+        }
+
+        this.sketchRepository = sketchRepository;
+        this.enabled = enabled;
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.bucketMillis = bucketMillis;
+
+        if (!enabled) {
+            return;
+        }
+
+        //Register as observer at the ValueLogReceiver, the order of updates does not matter
+        valueLogReceiver.registerObserver(this, DeliveryMode.UNORDERED);
+
+        //Discard sketches of purged components
+        valueLogRepository.addPurgeListener(this::remove);
+    }
+
+    /**
+     * Called in case a new value message arrives at the ValueLogReceiver. The transformed message is passed
+     * as value log.
+     *
+     * @param valueLog The corresponding value log that arrived
+     */
+    @Override
+    public void onValueReceived(ValueLog valueLog) {
+        //Sanity check
+        if (valueLog == null) {
+            throw new IllegalArgumentException("Value log must not be null.");
+        }
+
+        //Skip value logs that do not belong to a component
+        if ((valueLog.getIdref() == null) || (valueLog.getTime() == null)) {
+            return;
+        }
+
+        //Add value to the pending sketch of the bucket, atomically with respect to flushes
+        BucketKey key = new BucketKey(valueLog.getIdref(), getBucketStart(valueLog.getTime().toEpochMilli()));
+        double value = valueLog.getValue();
+        pendingSketches.compute(key, (k, sketch) -> {
+            if (sketch == null) {
+                sketch = new QuantileSketch(relativeAccuracy, maxBins);
+            }
+            sketch.add(value);
+            return sketch;
+        });
+    }
+
+    /**
+     * Returns whether sketches are maintained.
+     *
+     * @return True, if sketches are maintained; false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the duration of the time buckets of the sketches.
+     *
+     * @return The duration in milliseconds
+     */
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * Returns the epoch milliseconds at which the time bucket starts that contains a given time.
+     *
+     * @param epochMillis The time in epoch milliseconds
+     * @return The start of the time bucket in epoch milliseconds
+     */
+    public long getBucketStart(long epochMillis) {
+        return Math.floorDiv(epochMillis, bucketMillis) * bucketMillis;
+    }
+
+    /**
+     * Returns the merged sketch of the value logs of a component that were recorded within the time buckets that
+     * overlap a given time window.
+     *
+     * @param idref The id of the component
+     * @param from  The begin of the time window (inclusive, null if unbounded)
+     * @param to    The end of the time window (exclusive, null if unbounded)
+     * @return The merged sketch, which is empty if no value logs were recorded
+     * @throws IllegalStateException In case sketches are not maintained
+     */
+    public QuantileSketch getSketch(String idref, Instant from, Instant to) {
+        //Sanity checks
+        if ((idref == null) || idref.isEmpty()) {
+            throw new IllegalArgumentException("Idref must not be null or empty.");
+        } else if (!enabled) {
+            throw new IllegalStateException("Value log sketches are not enabled.");
+        }
+
+        //Determine range of overlapping buckets
+        long fromBucket = (from == null) ? Long.MIN_VALUE : getBucketStart(from.toEpochMilli());
+        long toBucket = (to == null) ? Long.MAX_VALUE : getBucketStart(to.toEpochMilli() - 1) + 1;
+
+        QuantileSketch result = new QuantileSketch(relativeAccuracy, maxBins);
+        synchronized (flushLock) {
+            //Merge persisted sketches
+            for (ValueLogSketch document : sketchRepository.findByIdrefAndBucketStartInRange(idref, fromBucket,
+                    toBucket)) {
+                mergeInto(result, document);
+            }
+
+            //Merge pending sketches
+            for (BucketKey key : pendingSketches.keySet()) {
+                if (key.idref.equals(idref) && (key.bucketStart >= fromBucket) && (key.bucketStart < toBucket)) {
+                    pendingSketches.computeIfPresent(key, (k, sketch) -> {
+                        result.merge(sketch);
+                        return sketch;
+                    });
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges the pending sketches into the sketches of the document database.
+     */
+    @Scheduled(initialDelayString = "${stats.sketch.flush-interval-ms:60000}",
+            fixedDelayString = "${stats.sketch.flush-interval-ms:60000}")
+    public void flush() {
+        for (BucketKey key : new ArrayList<>(pendingSketches.keySet())) {
+            synchronized (flushLock) {
+                QuantileSketch pending = pendingSketches.remove(key);
+                if (pending == null) {
+                    continue;
+                }
+
+                try {
+                    //Merge with the persisted sketch of the bucket
+                    String id = ValueLogSketch.createId(key.idref, key.bucketStart);
+                    ValueLogSketch document = sketchRepository.findOne(id);
+                    if (document == null) {
+                        document = new ValueLogSketch();
+                        document.setId(id);
+                        document.setIdref(key.idref);
+                        document.setBucketStart(key.bucketStart);
+                    } else {
+                        mergeInto(pending, document);
+                    }
+                    document.setSketch(pending.toBytes());
+                    sketchRepository.save(document);
+                } catch (Exception e) {
+                    System.err.println("Failed to save value log sketch: " + e.getMessage());
+
+                    //Retry with the next flush
+                    pendingSketches.merge(key, pending, (current, failed) -> {
+                        current.merge(failed);
+                        return current;
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the pending sketches when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Discards the sketches of a component whose value logs were purged.
+     *
+     * @param idref The id of the component
+     */
+    private void remove(String idref) {
+        synchronized (flushLock) {
+            pendingSketches.keySet().removeIf(key -> key.idref.equals(idref));
+            try {
+                sketchRepository.deleteByIdref(idref);
+            } catch (Exception e) {
+                System.err.println("Failed to delete value log sketches: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Merges a persisted sketch into another sketch. Persisted sketches that cannot be restored or that were
+     * created with a different relative accuracy are skipped.
+     */
+    private void mergeInto(QuantileSketch sketch, ValueLogSketch document) {
+        try {
+            QuantileSketch persisted = QuantileSketch.fromBytes(document.getSketch());
+            if (persisted.getRelativeAccuracy() == sketch.getRelativeAccuracy()) {
+                sketch.merge(persisted);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping invalid value log sketch " + document.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Key of a sketch, consisting of the component id and the start of the time bucket.
+     */
+    private static class BucketKey {
+        private final String idref;
+        private final long bucketStart;
+
+        private BucketKey(String idref, long bucketStart) {
+            this.idref = idref;
+            this.bucketStart = bucketStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if ((o == null) || (getClass() != o.getClass())) {
+                return false;
+            }
+            BucketKey other = (BucketKey) o;
+            return (bucketStart == other.bucketStart) && idref.equals(other.idref);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(idref, bucketStart);
+        }
+    }
+}
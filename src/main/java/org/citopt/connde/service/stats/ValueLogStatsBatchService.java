@@ -0,0 +1,293 @@
+package org.citopt.connde.service.stats;
+
+import org.citopt.connde.domain.component.Component;
+import org.citopt.connde.service.stats.model.ValueLogStats;
+import org.citopt.connde.service.stats.model.ValueLogStatsResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import javax.measure.unit.Unit;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service that calculates the value log stats of a batch of components concurrently on a bounded pool of threads
+ * and streams the results to the client as server-sent events in the order in which they complete. Each result is
+ * sent as "stats" event; after all results were sent, a final "done" event holding the number of results is sent
+ * and the stream is completed. Each request only keeps a limited number of calculations in the pool at a time and
+ * submits the next one whenever one of them finished, so that a large batch cannot occupy the whole queue and
+ * concurrent requests are served alongside.
+ */
+@Service
+@PropertySource(value = "classpath:application.properties")
+public class ValueLogStatsBatchService {
+    //Names of the events
+    private static final String STATS_EVENT_NAME = "stats";
+    private static final String DONE_EVENT_NAME = "done";
+
+    //Name prefix of the pool threads
+    private static final String THREAD_NAME_PREFIX = "value-log-stats-batch-";
+
+    //Service to use for calculating the stats
+    private final ValueLogStatsService valueLogStatsService;
+
+    //Bounded pool for calculating the stats
+    private final ThreadPoolExecutor executor;
+
+    //Maximum number of calculations of a single request that may be queued or running at a time
+    private final int maxInFlight;
+
+    //Timeout of the event streams
+    private final long timeoutMillis;
+
+    /**
+     * Creates the service by passing a reference to the value log stats service (auto-wired) and the configuration
+     * of the pool.
+     *
+     * @param valueLogStatsService The value log stats service
+     * @param threads              The number of threads that calculate stats concurrently
+     * @param queueSize            The maximum number of stats calculations that may wait for a thread
+     * @param maxInFlight          The maximum number of stats calculations of a single request that may be queued
+     *                             or running at a time
+     * @param timeoutMillis        The timeout of the event streams in milliseconds
+     */
+    @Autowired
+    public ValueLogStatsBatchService(ValueLogStatsService valueLogStatsService,
+                                     @Value("${stats.batch.threads:4}") int threads,
+                                     @Value("${stats.batch.queue-size:1000}") int queueSize,
+                                     @Value("${stats.batch.max-in-flight:8}") int maxInFlight,
+                                     @Value("${stats.batch.timeout-ms:120000}") long timeoutMillis) {
+        //Sanity checks
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive.");
+        } else if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be positive.");
+        } else if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of calculations in flight must be positive.");
+        }
+
+        this.valueLogStatsService = valueLogStatsService;
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Calculates the value log stats of a batch of components concurrently and streams the results. Results of
+     * components that are not available (e.g. because they could not be found) may be passed in order to send
+     * them as part of the stream. At most the configured number of calculations of the batch are queued or running
+     * at a time; calculations that cannot be queued nevertheless since the pool is exhausted are answered with
+     * status 503.
+     *
+     * @param components  The components whose value log stats are supposed to be calculated
+     * @param unavailable The results of components that are not available
+     * @param unit        The unit to which the values are supposed to be converted (null for default)
+     * @param from        The begin of the time window (inclusive, null if unbounded)
+     * @param to          The end of the time window (exclusive, null if unbounded)
+     * @return The emitter that streams the results
+     */
+    public SseEmitter calculateValueLogStats(List<? extends Component> components,
+                                             List<ValueLogStatsResult> unavailable, Unit unit, Instant from,
+                                             Instant to) {
+        //Sanity checks
+        if (components == null) {
+            throw new IllegalArgumentException("Components must not be null.");
+        } else if (unavailable == null) {
+            throw new IllegalArgumentException("Results must not be null.");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+
+        //Stop calculating once the stream was closed
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        emitter.onCompletion(() -> cancelled.set(true));
+        emitter.onTimeout(() -> cancelled.set(true));
+
+        //Number of results that are still to be sent
+        int total = components.size() + unavailable.size();
+        AtomicInteger remaining = new AtomicInteger(total);
+
+        //Send results of unavailable components right away
+        for (ValueLogStatsResult result : unavailable) {
+            send(emitter, result, remaining, total, cancelled);
+        }
+
+        //Calculate the stats of the available components concurrently, a limited number at a time
+        Batch batch = new Batch(components.iterator(), emitter, remaining, total, cancelled, unit, from, to);
+        for (int i = 0; i < maxInFlight; i++) {
+            submitNext(batch);
+        }
+
+        //Complete stream if there were no components at all
+        if (total == 0) {
+            finish(emitter, total, cancelled);
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Stops the pool when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits the calculation of the next pending component of a batch to the pool. Once the calculation finished,
+     * the next one is submitted in turn. Components whose calculation is rejected by the pool are answered with
+     * status 503 and the following component is tried instead.
+     *
+     * @param batch The batch
+     */
+    private void submitNext(Batch batch) {
+        Component component;
+        while ((component = batch.poll()) != null) {
+            Component current = component;
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (!batch.cancelled.get()) {
+                            send(batch.emitter, calculate(current, batch.unit, batch.from, batch.to),
+                                    batch.remaining, batch.total, batch.cancelled);
+                        }
+                    } finally {
+                        submitNext(batch);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                send(batch.emitter, createResult(current, HttpStatus.SERVICE_UNAVAILABLE, null), batch.remaining,
+                        batch.total, batch.cancelled);
+            }
+        }
+    }
+
+    /**
+     * Calculates the value log stats of a single component.
+     *
+     * @param component The component
+     * @param unit      The unit to which the values are supposed to be converted (null for default)
+     * @param from      The begin of the time window (inclusive, null if unbounded)
+     * @param to        The end of the time window (exclusive, null if unbounded)
+     * @return The result
+     */
+    private ValueLogStatsResult calculate(Component component, Unit unit, Instant from, Instant to) {
+        try {
+            ValueLogStats stats = valueLogStatsService.calculateValueLogStats(component, unit, from, to);
+            return createResult(component, HttpStatus.OK, stats);
+        } catch (Exception e) {
+            System.err.println("Failed to calculate value log stats of " + component.getId() + ": " +
+                    e.getMessage());
+            return createResult(component, HttpStatus.INTERNAL_SERVER_ERROR, null);
+        }
+    }
+
+    /**
+     * Sends a result and completes the stream once all results were sent.
+     */
+    private void send(SseEmitter emitter, ValueLogStatsResult result, AtomicInteger remaining, int total,
+                      AtomicBoolean cancelled) {
+        if (!cancelled.get()) {
+            try {
+                //Results are sent from several threads
+                synchronized (emitter) {
+                    emitter.send(SseEmitter.event().name(STATS_EVENT_NAME).data(result, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                //Client is gone
+                cancelled.set(true);
+            }
+        }
+
+        if (remaining.decrementAndGet() == 0) {
+            finish(emitter, total, cancelled);
+        }
+    }
+
+    /**
+     * Sends the final event and completes the stream.
+     */
+    private void finish(SseEmitter emitter, int total, AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            return;
+        }
+        try {
+            synchronized (emitter) {
+                emitter.send(SseEmitter.event().name(DONE_EVENT_NAME).data(total));
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            cancelled.set(true);
+        }
+    }
+
+    private static ValueLogStatsResult createResult(Component component, HttpStatus status, ValueLogStats stats) {
+        return new ValueLogStatsResult(component.getComponentTypeName(), component.getId(), status.value(), stats);
+    }
+
+    /**
+     * State of a single request whose components are calculated one after another.
+     */
+    private static class Batch {
+        //Components whose calculation was not submitted yet, guarded by the batch
+        private final Iterator<? extends Component> pending;
+
+        //Stream and its progress
+        private final SseEmitter emitter;
+        private final AtomicInteger remaining;
+        private final int total;
+        private final AtomicBoolean cancelled;
+
+        //Parameters of the calculations
+        private final Unit unit;
+        private final Instant from;
+        private final Instant to;
+
+        private Batch(Iterator<? extends Component> pending, SseEmitter emitter, AtomicInteger remaining, int total,
+                      AtomicBoolean cancelled, Unit unit, Instant from, Instant to) {
+            this.pending = pending;
+            this.emitter = emitter;
+            this.remaining = remaining;
+            this.total = total;
+            this.cancelled = cancelled;
+            this.unit = unit;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Returns the next pending component, unless the stream was closed.
+         *
+         * @return The component or null if there are no further components to calculate
+         */
+        private synchronized Component poll() {
+            if (cancelled.get() || !pending.hasNext()) {
+                return null;
+            }
+            return pending.next();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package org.citopt.connde.service.stats;
+
+import org.citopt.connde.domain.valueLog.ValueLogStatsCheckpoint;
+import org.citopt.connde.repository.ValueLogRepository;
+import org.citopt.connde.repository.ValueLogStatsCheckpointRepository;
+import org.citopt.connde.repository.ValueLogSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service that maintains running statistics of the value logs per component, so that the statistics of the whole
+ * history of a component do not need to be computed from all of its value logs again and again.
+ * Since value logs may carry times supplied by their devices and may arrive late (e.g. as part of batch messages),
+ * the statistics are not updated by arriving value logs, but cover all value logs recorded before a horizon that
+ * trails the current time by the plausibility window of device times plus a safety margin. Value logs before the
+ * horizon cannot change anymore, so that the statistics are extended periodically by a single summary of the value
+ * logs between the previous and the new horizon, computed by the time series database for all components at once.
+ * Requested statistics consist out of the running statistics and the summary of the value logs after the horizon.
+ * Hence, a request is not answered in constant time: the summary after the horizon is computed by the time series
+ * database on every request and covers at least the plausibility window of device times (by default more than a
+ * day of value logs). Only the history before the horizon is answered from memory.
+ * The statistics are checkpointed to the document database together with their horizon, so that they can be
+ * restored exactly after a restart, even if value logs arrived after the last checkpoint. If there are no checkpoints
+ * yet, the statistics are built from the time series database as a whole; since this requires the current schema,
+ * the build waits for the schema migration to finish. Once built, the statistics also cover value logs that have
+ * exceeded the retention of the time series database. If the restore fails, e.g. because the document database is
+ * not reachable, it is retried with each scheduled checkpoint until it succeeds.
+ */
+@Service
+@PropertySource(value = "classpath:application.properties")
+public class ValueLogStatsCollector {
+    //Name of the recovery thread
+    private static final String THREAD_NAME = "value-log-stats";
+
+    //Interval in which the recovery checks whether the schema migration has finished
+    private static final long MIGRATION_POLL_MILLIS = 10000;
+
+    //Nanoseconds per second for time conversions
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    //Repositories to use
+    private final ValueLogRepository valueLogRepository;
+    private final ValueLogStatsCheckpointRepository checkpointRepository;
+
+    //Milliseconds by which the horizon trails the current time
+    private final long horizonDelayMillis;
+
+    //Running statistics per component id
+    private final Map<String, RunningValueLogStats> statistics = new ConcurrentHashMap<>();
+
+    //Epoch nanoseconds before which all value logs are covered by the statistics, guarded by the collector
+    private long horizon = Long.MIN_VALUE;
+
+    //Whether the statistics have been restored and were built up to a horizon
+    private volatile boolean ready = false;
+    private volatile boolean recovered = false;
+
+    //Recovery thread and whether the statistics are supposed to be rebuilt on recovery
+    private Thread recoveryThread;
+    private volatile boolean running = false;
+    private boolean rebuild;
+
+    /**
+     * Creates and starts the service by passing references to the repositories that are supposed to be used
+     * (auto-wired). The statistics are restored in the background.
+     *
+     * @param valueLogRepository   The value log repository
+     * @param checkpointRepository The repository for the checkpoints of the statistics
+     * @param enabled              Whether running statistics are supposed to be maintained
+     * @param rebuild              Whether the statistics are supposed to be rebuilt instead of restored
+     * @param deviceTimeMaxPast    The maximum number of milliseconds a device time may lie before the arrival time
+     * @param horizonMargin        The number of milliseconds by which the horizon additionally trails the window of
+     *                             device times, accounting for the latency of writing value logs
+     */
+    @Autowired
+    public ValueLogStatsCollector(ValueLogRepository valueLogRepository,
+                                  ValueLogStatsCheckpointRepository checkpointRepository,
+                                  @Value("${stats.running.enabled:true}") boolean enabled,
+                                  @Value("${stats.running.rebuild:false}") boolean rebuild,
+                                  @Value("${ingestion.pipeline.device-time-max-past-ms:86400000}")
+                                          long deviceTimeMaxPast,
+                                  @Value("${stats.running.horizon-margin-ms:300000}") long horizonMargin) {
+        //Sanity check
+        if ((deviceTimeMaxPast < 0) || (horizonMargin < 0)) {
+            throw new IllegalArgumentException("Delay of the horizon must not be negative.");
+        }
+
+        this.valueLogRepository = valueLogRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.horizonDelayMillis = deviceTimeMaxPast + horizonMargin;
+
+        if (!enabled) {
+            return;
+        }
+
+        //Discard statistics of purged components
+        valueLogRepository.addPurgeListener(this::remove);
+
+        //Start recovery thread
+        this.rebuild = rebuild;
+        running = true;
+        startRecovery();
+    }
+
+    /**
+     * Returns whether the statistics have been restored and are thus available.
+     *
+     * @return True, if the statistics are available; false otherwise
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the statistics of all value logs of a certain component as summary, consisting out of the running
+     * statistics and the summary of the value logs that were recorded after the horizon. The latter is computed by
+     * the time series database on each call, so that the costs grow with the number of value logs after the horizon.
+     *
+     * @param idref The id of the component
+     * @return The summary or null if no value logs of the component were recorded
+     * @throws IllegalStateException In case the statistics have not been restored yet
+     */
+    public ValueLogSummary getSummary(String idref) {
+        //Sanity checks
+        if ((idref == null) || idref.isEmpty()) {
+            throw new IllegalArgumentException("Idref must not be null or empty.");
+        } else if (!ready) {
+            throw new IllegalStateException("Statistics have not been restored yet.");
+        }
+
+        //Take the running statistics together with the horizon they were built up to
+        RunningValueLogStats stats = new RunningValueLogStats();
+        long coveredUntil;
+        synchronized (this) {
+            RunningValueLogStats current = statistics.get(idref);
+            ValueLogSummary settled = (current == null) ? null : current.toSummary(idref, null);
+            if (settled != null) {
+                stats.merge(settled, horizon);
+            }
+            coveredUntil = horizon;
+        }
+
+        //Complete them by the value logs after the horizon
+        Instant from = (coveredUntil == Long.MIN_VALUE) ? null : toInstant(coveredUntil);
+        return stats.toSummary(idref, valueLogRepository.summarizeByIdRef(idref, from, null));
+    }
+
+    /**
+     * Advances the horizon of the statistics and saves checkpoints of all statistics that changed.
+     */
+    @Scheduled(initialDelayString = "${stats.running.checkpoint-interval-ms:60000}",
+            fixedDelayString = "${stats.running.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+        //Checkpoints must not be overwritten before the statistics were recovered; retry a failed recovery
+        if (!recovered) {
+            startRecovery();
+            return;
+        }
+
+        //Save pending checkpoints first, so that the checkpoints never lag behind by more than one step
+        if (save()) {
+            advance();
+            save();
+        }
+    }
+
+    /**
+     * Stops the recovery and saves the checkpoints when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (recoveryThread != null) {
+            recoveryThread.interrupt();
+        }
+        if (recovered) {
+            save();
+        }
+    }
+
+    /**
+     * Extends the statistics by the value logs between the current horizon and the new one, which trails the
+     * current time by the delay of the horizon. The horizon is not advanced while spooled value logs are waiting
+     * for being written, since these may have been recorded before the new horizon.
+     */
+    private void advance() {
+        //Summaries per component require the current schema
+        if (valueLogRepository.isLegacyMode() || (valueLogRepository.getWriteMetrics().getSpoolPendingBytes() > 0)) {
+            return;
+        }
+
+        long target = toNanos(Instant.now().minusMillis(horizonDelayMillis));
+        long current;
+        synchronized (this) {
+            current = horizon;
+        }
+        if (target <= current) {
+            return;
+        }
+
+        Map<String, ValueLogSummary> summaries;
+        try {
+            summaries = valueLogRepository.summarizeAll((current == Long.MIN_VALUE) ? null : toInstant(current),
+                    toInstant(target));
+        } catch (Exception e) {
+            System.err.println("Failed to summarize value logs for the stats: " + e.getMessage());
+            return;
+        }
+
+        //Merge summaries and advance the horizon atomically with respect to requests
+        synchronized (this) {
+            for (Map.Entry<String, ValueLogSummary> entry : summaries.entrySet()) {
+                statistics.computeIfAbsent(entry.getKey(), idref -> new RunningValueLogStats())
+                        .merge(entry.getValue(), target);
+            }
+            horizon = target;
+        }
+    }
+
+    /**
+     * Saves checkpoints of all statistics that changed since the last checkpoint.
+     *
+     * @return True, if all checkpoints were saved; false otherwise
+     */
+    private boolean save() {
+        //Collect checkpoints of changed statistics
+        List<ValueLogStatsCheckpoint> checkpoints = new ArrayList<>();
+        for (Map.Entry<String, RunningValueLogStats> entry : statistics.entrySet()) {
+            if (entry.getValue().isDirty()) {
+                checkpoints.add(entry.getValue().toCheckpoint(entry.getKey()));
+            }
+        }
+        if (checkpoints.isEmpty()) {
+            return true;
+        }
+
+        try {
+            checkpointRepository.save(checkpoints);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to save value log stats checkpoints: " + e.getMessage());
+
+            //Retry with the next checkpoint
+            for (ValueLogStatsCheckpoint checkpoint : checkpoints) {
+                RunningValueLogStats stats = statistics.get(checkpoint.getId());
+                if (stats != null) {
+                    stats.markDirty();
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Discards the statistics of a component whose value logs were purged.
+     *
+     * @param idref The id of the component
+     */
+    private void remove(String idref) {
+        statistics.remove(idref);
+        try {
+            checkpointRepository.delete(idref);
+        } catch (Exception e) {
+            System.err.println("Failed to delete value log stats checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the recovery in the background, unless it is disabled, still in progress or completed already.
+     */
+    private synchronized void startRecovery() {
+        if (!running || recovered || ((recoveryThread != null) && recoveryThread.isAlive())) {
+            return;
+        }
+        recoveryThread = new Thread(() -> recover(rebuild), THREAD_NAME);
+        recoveryThread.setDaemon(true);
+        recoveryThread.start();
+    }
+
+    /**
+     * Restores the statistics from the checkpoints or discards them for a rebuild and builds the statistics up to
+     * the current horizon. Statistics of a previous attempt that failed are discarded first.
+     *
+     * @param rebuild Whether the statistics are supposed to be rebuilt instead of restored
+     */
+    private void recover(boolean rebuild) {
+        try {
+            //Skip the restore if a previous attempt restored the statistics already and failed later on
+            if (!ready) {
+                statistics.clear();
+                synchronized (this) {
+                    horizon = Long.MIN_VALUE;
+                }
+                if (rebuild) {
+                    checkpointRepository.deleteAll();
+                } else {
+                    restore();
+                }
+            }
+
+            //Statistics are complete as soon as they are restored, since the rest is summarized on request
+            ready = true;
+
+            //Summaries of all components require the current schema
+            while (running && valueLogRepository.isLegacyMode()) {
+                Thread.sleep(MIGRATION_POLL_MILLIS);
+            }
+            if (!running) {
+                return;
+            }
+
+            advance();
+            save();
+            recovered = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Failed to restore value log stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restores the statistics and their horizon from the checkpoints. Since all statistics are extended at once,
+     * the horizon is given by the most recent checkpoint; statistics with older checkpoints did not change since.
+     */
+    private void restore() {
+        long restoredHorizon = Long.MIN_VALUE;
+        for (ValueLogStatsCheckpoint checkpoint : checkpointRepository.findAll()) {
+            statistics.put(checkpoint.getId(), RunningValueLogStats.fromCheckpoint(checkpoint));
+            restoredHorizon = Math.max(restoredHorizon, checkpoint.getCoveredUntil());
+        }
+        synchronized (this) {
+            horizon = restoredHorizon;
+        }
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    private static Instant toInstant(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+}
@@ -3,14 +3,22 @@ package org.citopt.connde.service.stats;
 import org.citopt.connde.domain.component.Component;
 import org.citopt.connde.domain.valueLog.ValueLog;
 import org.citopt.connde.repository.ValueLogRepository;
+import org.citopt.connde.repository.ValueLogSummary;
 import org.citopt.connde.service.UnitConverterService;
+import org.citopt.connde.service.stats.model.ValueLogDistribution;
 import org.citopt.connde.service.stats.model.ValueLogStats;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.measure.converter.UnitConverter;
 import javax.measure.unit.Unit;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Service that provides means for calculating descriptive statistical information from a set of value logs
@@ -29,117 +37,331 @@ public class ValueLogStatsService {
     @Autowired
     private ValueLogRepository valueLogRepository;
 
+    @Autowired
+    private ValueLogStatsCollector valueLogStatsCollector;
+
+    @Autowired
+    private ValueLogSketchService valueLogSketchService;
+
     /**
      * Calculates statistical information from the value logs that are stored in the repository
      * for a certain component and returns them all as a ValueLogStats object. Additionally,
-     * the returned values can be converted to a given unit.
+     * the returned values can be converted to a given unit. The statistics are taken from the running
+     * statistics that are maintained while the value logs arrive; as long as these are not available
+     * after a restart, the statistics are computed by the database.
      *
      * @param component The component whose value logs should be used to calculate the data
      * @param unit      The unit to which the values are supposed to be converted (null for default)
      * @return ValueLogStats object that holds the calculated data
      */
     public ValueLogStats calculateValueLogStats(Component component, Unit unit) {
+        return calculateValueLogStats(component, unit, null, null);
+    }
+
+    /**
+     * Calculates statistical information from the value logs that are stored in the repository
+     * for a certain component and that were recorded within a given time window. Additionally, the returned
+     * values can be converted to a given unit. For time windows, the count, mean, standard deviation and the
+     * remarkable value logs are computed by the database, so that only the results are transferred; the unit
+     * conversion is then applied to these aggregates.
+     *
+     * @param component The component whose value logs should be used to calculate the data
+     * @param unit      The unit to which the values are supposed to be converted (null for default)
+     * @param from      The begin of the time window (inclusive, null if unbounded)
+     * @param to        The end of the time window (exclusive, null if unbounded)
+     * @return ValueLogStats object that holds the calculated data
+     */
+    public ValueLogStats calculateValueLogStats(Component component, Unit unit, Instant from, Instant to) {
+        //Get converter if value conversion is desired and possible
+        UnitConverter converter = getConverter(component, unit);
+
+        //Aggregates cannot be converted by non-affine converters, so that the values need to be converted one by one
+        if ((converter != null) && !unitConverterService.isAffine(converter)) {
+            return streamValueLogStats(component, converter, from, to);
+        }
+
+        //Get summary of the value logs, from the running statistics if the whole history is requested
+        ValueLogSummary summary;
+        if ((from == null) && (to == null) && valueLogStatsCollector.isReady()) {
+            summary = valueLogStatsCollector.getSummary(component.getId());
+        } else {
+            summary = valueLogRepository.summarizeByIdRef(component.getId(), from, to);
+        }
+
+        return createStats(summary, converter);
+    }
+
+    /**
+     * Estimates quantiles and a histogram of the values of the value logs of a certain component that were recorded
+     * within a given time window and returns them as a ValueLogDistribution object. The figures are estimated from
+     * the quantile sketches that are maintained per time bucket while the value logs arrive, so that the time window
+     * is extended to the bounds of the overlapping time buckets. Additionally, the returned values can be converted
+     * to a given unit.
+     *
+     * @param component The component whose value logs should be used to estimate the distribution
+     * @param unit      The unit to which the values are supposed to be converted (null for default)
+     * @param from      The begin of the time window (inclusive, null if unbounded)
+     * @param to        The end of the time window (exclusive, null if unbounded)
+     * @param quantiles The quantiles to estimate (between 0 and 1, inclusive)
+     * @param bins      The number of histogram bins
+     * @return ValueLogDistribution object that holds the estimated data
+     * @throws IllegalStateException In case the sketches are not maintained
+     */
+    public ValueLogDistribution calculateValueLogDistribution(Component component, Unit unit, Instant from,
+                                                              Instant to, double[] quantiles, int bins) {
+        //Get converter if value conversion is desired and possible
+        UnitConverter converter = getConverter(component, unit);
+
+        //Get merged sketch of the time buckets within the time window
+        QuantileSketch sketch = valueLogSketchService.getSketch(component.getId(), from, to);
+
+        //Create distribution object for the time window, aligned to the time buckets
+        long bucketMillis = valueLogSketchService.getBucketMillis();
+        ValueLogDistribution distribution = new ValueLogDistribution();
+        distribution.setNumberLogs(sketch.getCount());
+        distribution.setRelativeAccuracy(sketch.getRelativeAccuracy());
+        if (from != null) {
+            distribution.setFrom(Instant.ofEpochMilli(valueLogSketchService.getBucketStart(from.toEpochMilli())));
+        }
+        if (to != null) {
+            distribution.setTo(Instant.ofEpochMilli(
+                    valueLogSketchService.getBucketStart(to.toEpochMilli() - 1) + bucketMillis));
+        }
+
+        //Return object with default values if no logs are available
+        if (sketch.isEmpty()) {
+            return distribution;
+        }
+
+        //Unit conversions are monotonic, but may reverse the order of the values
+        boolean reversed = (converter != null) && (converter.convert(1) < converter.convert(0));
+
+        //Set extremes
+        double minimum = convert(sketch.getMinimum(), converter);
+        double maximum = convert(sketch.getMaximum(), converter);
+        distribution.setMinimum(round(reversed ? maximum : minimum));
+        distribution.setMaximum(round(reversed ? minimum : maximum));
+
+        //Estimate quantiles
+        Map<Double, Double> quantileValues = new LinkedHashMap<>();
+        for (double quantile : quantiles) {
+            double value = sketch.getQuantile(reversed ? 1 - quantile : quantile);
+            quantileValues.put(quantile, round(convert(value, converter)));
+        }
+        distribution.setQuantiles(quantileValues);
+
+        //Estimate histogram with bins of equal width in the unit of the adapter
+        long[] counts = sketch.getHistogram(bins);
+        double width = (sketch.getMaximum() - sketch.getMinimum()) / bins;
+        List<ValueLogDistribution.HistogramBin> histogram = new ArrayList<>(bins);
+        for (int i = 0; i < bins; i++) {
+            int bin = reversed ? bins - 1 - i : i;
+            double lowerBound = convert(sketch.getMinimum() + bin * width, converter);
+            double upperBound = convert((bin == bins - 1) ? sketch.getMaximum() :
+                    sketch.getMinimum() + (bin + 1) * width, converter);
+            histogram.add(new ValueLogDistribution.HistogramBin(round(reversed ? upperBound : lowerBound),
+                    round(reversed ? lowerBound : upperBound), counts[bin]));
+        }
+        distribution.setHistogram(histogram);
+
+        return distribution;
+    }
+
+    /**
+     * Creates a stats object from a summary of value logs, converting the figures to a different unit by using
+     * a given affine unit converter. Since the converter is affine, the mean and the remarkable value logs can be
+     * converted directly, while the variance only needs to be scaled.
+     *
+     * @param summary   The summary of the value logs (null if there are no value logs)
+     * @param converter The affine unit converter to apply (null for none)
+     * @return ValueLogStats object that holds the data
+     */
+    private ValueLogStats createStats(ValueLogSummary summary, UnitConverter converter) {
         //Create empty stats object
         ValueLogStats stats = new ValueLogStats();
 
-        //Retrieve a list of value logs from the repository
-        String componentId = component.getId();
-        List<ValueLog> valueLogList = valueLogRepository.findAllByIdRef(componentId);
-
         //Return object with default values if no logs are available
-        if (valueLogList.isEmpty()) {
+        if ((summary == null) || (summary.getCount() == 0)) {
             return stats;
         }
 
+        //Get figures of the summary
+        double mean = summary.getMean();
+        double variance = summary.getSquaredDeviations() / summary.getCount();
+        ValueLog minLog = summary.getMinimumLog();
+        ValueLog maxLog = summary.getMaximumLog();
 
-        //Get adapter unit object
-        Unit adapterUnit = component.getAdapter().getUnitObject();
-
-        //Check if value conversion is desired and possible
-        if ((unit != null) && adapterUnit.isCompatible(unit)) {
-            //Get converter
-            UnitConverter converter = adapterUnit.getConverterTo(unit);
+        //Convert figures if desired
+        if (converter != null) {
+            double scale = converter.convert(1) - converter.convert(0);
+            mean = converter.convert(mean);
+            variance *= scale * scale;
+            unitConverterService.convertValueLogValue(summary.getFirstLog(), converter);
+            unitConverterService.convertValueLogValue(summary.getLastLog(), converter);
+            unitConverterService.convertValueLogValue(minLog, converter);
+            unitConverterService.convertValueLogValue(maxLog, converter);
 
-            //Iterate over all value logs and convert them
-            for (ValueLog valueLog : valueLogList) {
-                //Convert
-                unitConverterService.convertValueLogValue(valueLog, converter);
+            //Decreasing converters swap minimum and maximum
+            if (scale < 0) {
+                ValueLog swapLog = minLog;
+                minLog = maxLog;
+                maxLog = swapLog;
             }
         }
 
-        /*
-        Extract data that can be directly derived from the value log list
-        */
-        stats.setNumberLogs(valueLogList.size());
-        stats.setFirstLog(valueLogList.get(0));
-        stats.setLastLog(valueLogList.get(valueLogList.size() - 1));
+        //Set remarkable logs
+        stats.setNumberLogs((int) Math.min(summary.getCount(), Integer.MAX_VALUE));
+        stats.setFirstLog(summary.getFirstLog());
+        stats.setLastLog(summary.getLastLog());
+        stats.setMinimumLog(minLog);
+        stats.setMaximumLog(maxLog);
+
+        setDescriptiveStats(stats, mean, variance);
+        return stats;
+    }
 
-        /*
-        Find min log, max log and calculate average
-        */
+    /**
+     * Calculates statistical information by streaming all value logs of a component from the repository and
+     * converting their values one by one. The value logs are processed in a single pass, so that they never need
+     * to be held in memory at once.
+     *
+     * @param component The component whose value logs should be used to calculate the data
+     * @param converter The unit converter to apply
+     * @param from      The begin of the time window (inclusive, null if unbounded)
+     * @param to        The end of the time window (exclusive, null if unbounded)
+     * @return ValueLogStats object that holds the calculated data
+     */
+    private ValueLogStats streamValueLogStats(Component component, UnitConverter converter, Instant from,
+                                              Instant to) {
+        //Create empty stats object
+        ValueLogStats stats = new ValueLogStats();
 
-        //Constant for rounding
-        double roundingConst = Math.pow(10, ROUNDING_DECIMAL_PLACES);
+        //Number of logs processed so far
+        int numberLogs = 0;
 
-        //Variables that hold the logs with the smallest/biggest known values
-        ValueLog minLog = valueLogList.get(0);
-        ValueLog maxLog = valueLogList.get(0);
+        //Remarkable logs
+        ValueLog firstLog = null;
+        ValueLog lastLog = null;
+        ValueLog minLog = null;
+        ValueLog maxLog = null;
 
-        //Accumulator for calculating the average
-        double averageAccumulator = 0;
+        //Running mean and sum of squared deviations from the mean (Welford)
+        double mean = 0;
+        double squaredDeviations = 0;
 
-        //Iterate over all value logs in the list
-        for (ValueLog log : valueLogList) {
-            //Get value of the current log
-            double logValue = log.getValue();
+        //Stream value logs of the component from the repository
+        try (Stream<ValueLog> valueLogStream = valueLogRepository.streamAllByIdRef(component.getId(), from, to)) {
+            Iterator<ValueLog> iterator = valueLogStream.iterator();
+            while (iterator.hasNext()) {
+                ValueLog log = iterator.next();
 
-            //Update min log if necessary
-            if (logValue < minLog.getValue()) {
-                minLog = log;
-            }
+                //Convert value
+                unitConverterService.convertValueLogValue(log, converter);
+
+                //Get value of the current log
+                double logValue = log.getValue();
 
-            //Update max log if necessary
-            if (logValue > maxLog.getValue()) {
-                maxLog = log;
+                //Update remarkable logs
+                if (firstLog == null) {
+                    firstLog = log;
+                    minLog = log;
+                    maxLog = log;
+                } else if (logValue < minLog.getValue()) {
+                    minLog = log;
+                } else if (logValue > maxLog.getValue()) {
+                    maxLog = log;
+                }
+                lastLog = log;
+
+                //Update mean and squared deviations
+                numberLogs++;
+                double delta = logValue - mean;
+                mean += delta / numberLogs;
+                squaredDeviations += delta * (logValue - mean);
             }
+        }
 
-            //Increase accumulator
-            averageAccumulator += logValue;
+        //Return object with default values if no logs are available
+        if (numberLogs == 0) {
+            return stats;
         }
 
-        //Finally set min and max log
+        //Set remarkable logs
+        stats.setNumberLogs(numberLogs);
+        stats.setFirstLog(firstLog);
+        stats.setLastLog(lastLog);
         stats.setMinimumLog(minLog);
         stats.setMaximumLog(maxLog);
 
-        //Calculate and set the average
-        double average = averageAccumulator / ((double) valueLogList.size());
-        stats.setAverage(Math.round(average * roundingConst) / roundingConst);
-
-        /*
-         Calculate the variance and standard deviation
-        */
-
-        //Accumulator for calculating the variance
-        double varianceAccumulator = 0;
+        setDescriptiveStats(stats, mean, squaredDeviations / numberLogs);
+        return stats;
+    }
 
-        //Iterate over all value logs in the list
-        for (ValueLog log : valueLogList) {
-            //Get current value
-            double logValue = log.getValue();
+    /**
+     * Sets the rounded average, variance and standard deviation of a stats object.
+     *
+     * @param stats    The stats object
+     * @param mean     The mean of the values
+     * @param variance The variance of the values
+     */
+    private void setDescriptiveStats(ValueLogStats stats, double mean, double variance) {
+        //Constant for rounding
+        double roundingConst = Math.pow(10, ROUNDING_DECIMAL_PLACES);
 
-            //Increase accumulator with respect to the value
-            varianceAccumulator += Math.pow(logValue - average, 2);
-        }
+        //Set the average
+        stats.setAverage(Math.round(mean * roundingConst) / roundingConst);
 
-        //Calculate the variance
-        double variance = varianceAccumulator / ((double) valueLogList.size());
+        //Set the variance
         stats.setVariance(Math.round(variance * roundingConst) / roundingConst);
 
         //Derive the standard deviation from the variance
         double standardDeviation = Math.sqrt(variance);
         stats.setStandardDeviation(Math.round(standardDeviation * roundingConst) / roundingConst);
+    }
 
-        //Return the final stats object
-        return stats;
+    /**
+     * Converts a value by using a given unit converter.
+     *
+     * @param value     The value to convert
+     * @param converter The unit converter to apply (null for none)
+     * @return The converted value
+     */
+    private static double convert(double value, UnitConverter converter) {
+        return (converter == null) ? value : converter.convert(value);
+    }
+
+    /**
+     * Rounds a value to the number of decimal places that are spared from rounding.
+     *
+     * @param value The value to round
+     * @return The rounded value
+     */
+    private static double round(double value) {
+        double roundingConst = Math.pow(10, ROUNDING_DECIMAL_PLACES);
+        return Math.round(value * roundingConst) / roundingConst;
+    }
+
+    /**
+     * Returns the converter that converts the values of a certain component into a given unit, as far as the unit
+     * is compatible to the unit of the component's adapter.
+     *
+     * @param component The component whose values are supposed to be converted
+     * @param unit      The unit to which the values are supposed to be converted (null for default)
+     * @return The unit converter or null if no conversion is desired or possible
+     */
+    private UnitConverter getConverter(Component component, Unit unit) {
+        //Check if value conversion is desired
+        if (unit == null) {
+            return null;
+        }
+
+        //Get adapter unit object
+        Unit adapterUnit = unitConverterService.getUnit(component.getAdapter().getUnit());
+
+        //Check if value conversion is possible
+        if (!adapterUnit.isCompatible(unit)) {
+            return null;
+        }
+        return unitConverterService.getConverter(adapterUnit, unit);
     }
 }
@@ -0,0 +1,219 @@
+package org.citopt.connde.service.stats.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Objects of this class are models that hold estimated quantiles and a histogram of the values of a set of value logs
+ * of a certain component. The figures are estimated from quantile sketches, such that each quantile deviates from the
+ * actual value by at most the relative accuracy. They can be used as DTOs in order to retrieve the distribution to
+ * the client.
+ */
+public class ValueLogDistribution {
+    //Number of logs
+    private long numberLogs = 0;
+
+    //Time window covered by the sketches, aligned to their time buckets (null if unbounded)
+    private Instant from = null;
+    private Instant to = null;
+
+    //Relative accuracy of the quantiles
+    private double relativeAccuracy = 0;
+
+    //Extremes of the values
+    private double minimum = 0;
+    private double maximum = 0;
+
+    //Estimated values per quantile
+    private Map<Double, Double> quantiles = new LinkedHashMap<>();
+
+    //Estimated histogram
+    private List<HistogramBin> histogram = new ArrayList<>();
+
+    /**
+     * Creates a new and empty distribution object.
+     */
+    public ValueLogDistribution() {
+    }
+
+    /**
+     * Returns the total number of logs considered in this distribution object.
+     *
+     * @return The number of logs
+     */
+    public long getNumberLogs() {
+        return numberLogs;
+    }
+
+    /**
+     * Sets the number of logs considered in this distribution object.
+     *
+     * @param numberLogs The number of logs
+     */
+    public void setNumberLogs(long numberLogs) {
+        this.numberLogs = numberLogs;
+    }
+
+    /**
+     * Returns the begin of the covered time window.
+     *
+     * @return The begin of the time window or null if unbounded
+     */
+    public Instant getFrom() {
+        return from;
+    }
+
+    /**
+     * Sets the begin of the covered time window.
+     *
+     * @param from The begin of the time window or null if unbounded
+     */
+    public void setFrom(Instant from) {
+        this.from = from;
+    }
+
+    /**
+     * Returns the end of the covered time window.
+     *
+     * @return The end of the time window or null if unbounded
+     */
+    public Instant getTo() {
+        return to;
+    }
+
+    /**
+     * Sets the end of the covered time window.
+     *
+     * @param to The end of the time window or null if unbounded
+     */
+    public void setTo(Instant to) {
+        this.to = to;
+    }
+
+    /**
+     * Returns the relative accuracy of the estimated quantiles.
+     *
+     * @return The relative accuracy
+     */
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Sets the relative accuracy of the estimated quantiles.
+     *
+     * @param relativeAccuracy The relative accuracy
+     */
+    public void setRelativeAccuracy(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    /**
+     * Returns the smallest value of all logs.
+     *
+     * @return The smallest value
+     */
+    public double getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * Sets the smallest value of all logs.
+     *
+     * @param minimum The smallest value
+     */
+    public void setMinimum(double minimum) {
+        this.minimum = minimum;
+    }
+
+    /**
+     * Returns the biggest value of all logs.
+     *
+     * @return The biggest value
+     */
+    public double getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Sets the biggest value of all logs.
+     *
+     * @param maximum The biggest value
+     */
+    public void setMaximum(double maximum) {
+        this.maximum = maximum;
+    }
+
+    /**
+     * Returns the estimated values per quantile.
+     *
+     * @return The map of quantiles to values
+     */
+    public Map<Double, Double> getQuantiles() {
+        return quantiles;
+    }
+
+    /**
+     * Sets the estimated values per quantile.
+     *
+     * @param quantiles The map of quantiles to values
+     */
+    public void setQuantiles(Map<Double, Double> quantiles) {
+        this.quantiles = quantiles;
+    }
+
+    /**
+     * Returns the estimated histogram, consisting of bins of equal width between the smallest and the biggest value.
+     *
+     * @return The list of histogram bins
+     */
+    public List<HistogramBin> getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Sets the estimated histogram.
+     *
+     * @param histogram The list of histogram bins
+     */
+    public void setHistogram(List<HistogramBin> histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * Bin of a histogram, holding the estimated number of logs whose values are within its bounds.
+     */
+    public static class HistogramBin {
+        private final double lowerBound;
+        private final double upperBound;
+        private final long numberLogs;
+
+        /**
+         * Creates a new histogram bin.
+         *
+         * @param lowerBound The lower bound of the bin
+         * @param upperBound The upper bound of the bin
+         * @param numberLogs The estimated number of logs within the bin
+         */
+        public HistogramBin(double lowerBound, double upperBound, long numberLogs) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.numberLogs = numberLogs;
+        }
+
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        public long getNumberLogs() {
+            return numberLogs;
+        }
+    }
+}
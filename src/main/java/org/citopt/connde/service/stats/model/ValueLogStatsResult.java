@@ -0,0 +1,69 @@
+package org.citopt.connde.service.stats.model;
+
+/**
+ * Objects of this class hold the value log stats of a single component as part of a batch of components. Besides
+ * the stats, they state the type and id of the component and an HTTP status code, which indicates whether the
+ * stats could be calculated. They can be used as DTOs in order to retrieve the stats to the client.
+ */
+public class ValueLogStatsResult {
+    //Type and id of the component
+    private final String type;
+    private final String id;
+
+    //HTTP status code of the result
+    private final int status;
+
+    //Stats of the component (null if not available)
+    private final ValueLogStats stats;
+
+    /**
+     * Creates a new result.
+     *
+     * @param type   The type of the component
+     * @param id     The id of the component
+     * @param status The HTTP status code of the result
+     * @param stats  The stats of the component or null if not available
+     */
+    public ValueLogStatsResult(String type, String id, int status, ValueLogStats stats) {
+        this.type = type;
+        this.id = id;
+        this.status = status;
+        this.stats = stats;
+    }
+
+    /**
+     * Returns the type of the component.
+     *
+     * @return The type (sensor, actuator or monitoring)
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the id of the component.
+     *
+     * @return The id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the HTTP status code of the result.
+     *
+     * @return The status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the stats of the component.
+     *
+     * @return The stats or null if not available
+     */
+    public ValueLogStats getStats() {
+        return stats;
+    }
+}
@@ -12,8 +12,10 @@ import org.citopt.connde.domain.testing.TestDetails;
 import org.citopt.connde.domain.testing.Testing;
 import org.citopt.connde.domain.valueLog.ValueLog;
 import org.citopt.connde.repository.*;
+import org.citopt.connde.service.receiver.DeliveryMode;
 import org.citopt.connde.service.receiver.ValueLogReceiver;
 import org.citopt.connde.service.receiver.ValueLogReceiverObserver;
+import org.citopt.connde.service.receiver.ValueLogSubscription;
 import org.citopt.connde.web.rest.RestDeploymentController;
 import org.citopt.connde.web.rest.RestRuleController;
 import org.citopt.connde.web.rest.response.ActionResponse;
@@ -31,6 +33,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class TestEngine implements ValueLogReceiverObserver {
@@ -62,9 +65,12 @@ public class TestEngine implements ValueLogReceiverObserver {
     private RestRuleController restRuleController;
 
 
-    // List of all active Tests/testValues
-    Map<String, TestDetails> activeTests = new HashMap<>();
-    Map<String, List<Double>> testValues = new HashMap<>();
+    // List of all active Tests/testValues, the lists of values are synchronized since they are filled by the lane
+    final Map<String, TestDetails> activeTests = new ConcurrentHashMap<>();
+    final Map<String, List<Double>> testValues = new ConcurrentHashMap<>();
+
+    //Number of running tests per sensor id, guarded by itself
+    private final Map<String, Integer> sensorUsages = new HashMap<>();
 
 
     /**
@@ -82,7 +88,11 @@ public class TestEngine implements ValueLogReceiverObserver {
      * @param activeTests active/running tests
      */
     public void setActiveTests(Map<String, TestDetails> activeTests) {
-        this.activeTests = activeTests;
+        if (activeTests == this.activeTests) {
+            return;
+        }
+        this.activeTests.clear();
+        this.activeTests.putAll(activeTests);
     }
 
     /**
@@ -100,17 +110,24 @@ public class TestEngine implements ValueLogReceiverObserver {
      * @param testValues list of test values
      */
     public void setTestValues(Map<String, List<Double>> testValues) {
-        this.testValues = testValues;
+        if (testValues == this.testValues) {
+            return;
+        }
+        this.testValues.clear();
+        for (Map.Entry<String, List<Double>> entry : testValues.entrySet()) {
+            this.testValues.put(entry.getKey(), Collections.synchronizedList(new ArrayList<>(entry.getValue())));
+        }
     }
 
     /**
-     * Registers the TestEngine as an Observer to the ValueLogReceiver which then will be notified about incoming value logs.
+     * Registers the TestEngine as an Observer to the ValueLogReceiver. Initially, the TestEngine is not subscribed
+     * to any value logs; it subscribes to the value logs of the sensors of a test while the test is executed.
      *
      * @param valueLogReceiver The value log receiver instance to use
      */
     @Autowired
     private TestEngine(ValueLogReceiver valueLogReceiver) {
-        valueLogReceiver.registerObserver(this);
+        valueLogReceiver.registerObserver(this, DeliveryMode.ORDERED, Collections.emptyList());
     }
 
     /**
@@ -123,14 +140,8 @@ public class TestEngine implements ValueLogReceiverObserver {
         if (!activeTests.containsKey(valueLog.getIdref())) {
             return;
         }
-        if (!testValues.containsKey(valueLog.getIdref())) {
-            List<Double> newList = new ArrayList<>();
-            newList.add(valueLog.getValue());
-            testValues.put(valueLog.getIdref(), newList);
-        } else {
-            List<Double> oldList = testValues.get(valueLog.getIdref());
-            oldList.add(valueLog.getValue());
-        }
+        testValues.computeIfAbsent(valueLog.getIdref(), id -> Collections.synchronizedList(new ArrayList<>()))
+                .add(valueLog.getValue());
     }
 
     /**
@@ -369,6 +380,72 @@ public class TestEngine implements ValueLogReceiverObserver {
         return rulesbefore;
     }
 
+    /**
+     * Marks a sensor as used by a running test. The value logs of the sensor are subscribed as soon as the first
+     * test uses the sensor, so that concurrent tests on the same sensor share a single subscription; the values
+     * collected for the sensor are reset at this point. Tests that join later only consider the values received
+     * after their start.
+     *
+     * @param sensorId The id of the sensor
+     * @param test     The test that uses the sensor
+     * @return The number of values of the sensor that were received before the test started
+     */
+    private int acquireSensor(String sensorId, TestDetails test) {
+        synchronized (sensorUsages) {
+            int usages = sensorUsages.getOrDefault(sensorId, 0);
+            sensorUsages.put(sensorId, usages + 1);
+            if (usages > 0) {
+                List<Double> values = testValues.get(sensorId);
+                return (values == null) ? 0 : values.size();
+            }
+            testValues.put(sensorId, Collections.synchronizedList(new ArrayList<>()));
+            activeTests.put(sensorId, test);
+            valueLogReceiver.subscribe(this, ValueLogSubscription.forComponentId(sensorId));
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a copy of the values of a sensor that were received since a test started.
+     *
+     * @param sensorId The id of the sensor
+     * @param offset   The number of values that were received before the test started
+     * @return The copied values or null if no values were received at all
+     */
+    private List<Double> copyValues(String sensorId, int offset) {
+        List<Double> values = testValues.get(sensorId);
+        if (values == null) {
+            return null;
+        }
+
+        //The lane keeps appending values, so copy them under the lock of the list
+        synchronized (values) {
+            return new ArrayList<>(values.subList(Math.min(offset, values.size()), values.size()));
+        }
+    }
+
+    /**
+     * Releases a sensor that was used by a test. The value logs of the sensor are unsubscribed and its received
+     * values are discarded as soon as no running test uses the sensor anymore.
+     *
+     * @param sensorId The id of the sensor
+     */
+    private void releaseSensor(String sensorId) {
+        synchronized (sensorUsages) {
+            Integer usages = sensorUsages.get(sensorId);
+            if (usages == null) {
+                return;
+            } else if (usages > 1) {
+                sensorUsages.put(sensorId, usages - 1);
+                return;
+            }
+            sensorUsages.remove(sensorId);
+            valueLogReceiver.unsubscribe(this, ValueLogSubscription.forComponentId(sensorId));
+            activeTests.remove(sensorId);
+            testValues.remove(sensorId);
+        }
+    }
+
     /**
      * Starts the test and saves all values form the sensor.
      *
@@ -376,27 +453,27 @@ public class TestEngine implements ValueLogReceiverObserver {
      */
     public Map<String, List<Double>> executeTest(TestDetails test) {
 
-        Map<String, TestDetails> activeTests = testEngine.getActiveTests();
-        Map<String, List<Double>> list = testEngine.getTestValues();
+        //Receive the values of the sensors while the test is running
+        Map<String, Integer> offsets = new HashMap<>();
         for (Sensor sensor : test.getSensor()) {
-            activeTests.put(sensor.getId(), test);
-            list.remove(sensor.getId());
+            offsets.put(sensor.getId(), acquireSensor(sensor.getId(), test));
         }
-        testEngine.setActiveTests(activeTests);
-        testEngine.setTestValues(list);
         testEngine.startTest(testDetailsRepository.findById(test.getId()));
 
-        Map<String, List<Double>> valueList;
         Map<String, List<Double>> valueListTest = new HashMap<>();
 
-        // Get List of all simulated Values
-        valueList = testEngine.isFinished(test.getId());
+        // Wait until all values were simulated
+        testEngine.isFinished(test.getId());
+
+        //Copy the values, since concurrent tests on the same sensors may still be receiving values
         TestDetails testDetails2 = testDetailsRepository.findOne(test.getId());
         for (Sensor sensor : test.getSensor()) {
-            List<Double> temp = valueList.get(sensor.getId());
-            valueList.put(sensor.getName(), temp);
-            valueListTest.put(sensor.getName(), temp);
-            list.remove(sensor.getId());
+            valueListTest.put(sensor.getName(), copyValues(sensor.getId(), offsets.get(sensor.getId())));
+        }
+
+        //Stop receiving the values of the sensors
+        for (Sensor sensor : test.getSensor()) {
+            releaseSensor(sensor.getId());
         }
 
         // save list of sensor values to database
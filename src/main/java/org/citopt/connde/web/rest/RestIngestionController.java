@@ -0,0 +1,186 @@
+package org.citopt.connde.web.rest;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.citopt.connde.RestConfiguration;
+import org.citopt.connde.constants.Constants;
+import org.citopt.connde.repository.ValueLogRepository;
+import org.citopt.connde.repository.ValueLogWriteMetrics;
+import org.citopt.connde.service.mqtt.MQTTPublishMetrics;
+import org.citopt.connde.service.mqtt.MQTTService;
+import org.citopt.connde.service.receiver.DeadLetterEntry;
+import org.citopt.connde.service.receiver.DeadLetterStore;
+import org.citopt.connde.service.receiver.IngestionStageMetrics;
+import org.citopt.connde.service.receiver.ObserverLaneMetrics;
+import org.citopt.connde.service.receiver.ValueLogReceiver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST Controller for requests related to the ingestion of value messages.
+ */
+@RestController
+@RequestMapping(RestConfiguration.BASE_PATH)
+@Api(tags = {"Ingestion"}, description = "Monitoring of the value message ingestion and management of dead letters")
+public class RestIngestionController {
+
+    @Autowired
+    private ValueLogReceiver valueLogReceiver;
+
+    @Autowired
+    private DeadLetterStore deadLetterStore;
+
+    @Autowired
+    private MQTTService mqttService;
+
+    @Autowired
+    private ValueLogRepository valueLogRepository;
+
+    /**
+     * Responds with the counters of all stages of the value log ingestion pipeline.
+     *
+     * @return The list of stage metrics
+     */
+    @GetMapping("/ingestion/metrics")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves the counters of all stages of the value log ingestion pipeline", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the ingestion metrics")})
+    public ResponseEntity<List<IngestionStageMetrics>> getIngestionMetrics() {
+        return new ResponseEntity<>(valueLogReceiver.getIngestionMetrics(), HttpStatus.OK);
+    }
+
+    /**
+     * Responds with the counters and lag figures of the dispatch lanes of all observers of the value log receiver.
+     *
+     * @return The list of lane metrics
+     */
+    @GetMapping("/ingestion/lanes")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves the counters and lag figures of the dispatch lanes of all value log observers", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the ingestion metrics")})
+    public ResponseEntity<List<ObserverLaneMetrics>> getObserverLaneMetrics() {
+        return new ResponseEntity<>(valueLogReceiver.getObserverLaneMetrics(), HttpStatus.OK);
+    }
+
+    /**
+     * Responds with the counters and latency figures of the asynchronous publishing of MQTT messages.
+     *
+     * @return The publish metrics
+     */
+    @GetMapping("/ingestion/publisher")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves the counters and latency figures of the asynchronous MQTT publisher", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the publisher metrics")})
+    public ResponseEntity<MQTTPublishMetrics> getPublishMetrics() {
+        return new ResponseEntity<>(mqttService.getPublishMetrics(), HttpStatus.OK);
+    }
+
+    /**
+     * Responds with the counters and latency figures of the buffer that writes value logs to the database.
+     *
+     * @return The write metrics
+     */
+    @GetMapping("/ingestion/writer")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves the counters and latency figures of the value log write buffer", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the writer metrics")})
+    public ResponseEntity<ValueLogWriteMetrics> getWriteMetrics() {
+        return new ResponseEntity<>(valueLogRepository.getWriteMetrics(), HttpStatus.OK);
+    }
+
+    /**
+     * Responds with all value messages that are currently held in the dead-letter store.
+     *
+     * @return The list of dead-letter entries
+     */
+    @GetMapping("/ingestion/dead-letters")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves the value messages that could not be processed and were moved to the dead-letter store", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the dead letters")})
+    public ResponseEntity<List<DeadLetterEntry>> getDeadLetters() {
+        return new ResponseEntity<>(deadLetterStore.getEntries(), HttpStatus.OK);
+    }
+
+    /**
+     * Responds with the number of value messages per topic that could not be processed.
+     *
+     * @return Map (topic -> number of errors)
+     */
+    @GetMapping("/ingestion/dead-letters/counts")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves the number of value messages per topic that could not be processed", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the dead letters")})
+    public ResponseEntity<Map<String, Long>> getDeadLetterCounts() {
+        return new ResponseEntity<>(deadLetterStore.getTopicErrorCounts(), HttpStatus.OK);
+    }
+
+    /**
+     * Replays all value messages of the dead-letter store by passing them to the ingestion pipeline again.
+     * Messages that fail again are moved back to the store.
+     *
+     * @return The number of replayed messages
+     */
+    @PostMapping("/ingestion/dead-letters/replay")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Replays all value messages of the dead-letter store", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to replay dead letters")})
+    public ResponseEntity<Integer> replayDeadLetters() {
+        //Take all entries from the store and replay them
+        List<DeadLetterEntry> entries = deadLetterStore.removeAll();
+        for (DeadLetterEntry entry : entries) {
+            valueLogReceiver.replay(entry);
+        }
+
+        return new ResponseEntity<>(entries.size(), HttpStatus.OK);
+    }
+
+    /**
+     * Replays a certain value message of the dead-letter store by passing it to the ingestion pipeline again.
+     *
+     * @param entryId The id of the dead-letter entry to replay
+     * @return A response entity that may be returned to the client
+     */
+    @PostMapping("/ingestion/dead-letters/{id}/replay")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Replays a certain value message of the dead-letter store", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to replay dead letters"), @ApiResponse(code = 404, message = "Dead-letter entry not found")})
+    public ResponseEntity replayDeadLetter(@PathVariable(value = "id") long entryId) {
+        //Take entry from the store
+        DeadLetterEntry entry = deadLetterStore.remove(entryId);
+
+        //Validity check
+        if (entry == null) {
+            return new ResponseEntity(HttpStatus.NOT_FOUND);
+        }
+
+        valueLogReceiver.replay(entry);
+        return new ResponseEntity(HttpStatus.OK);
+    }
+
+    /**
+     * Discards all value messages that are currently held in the dead-letter store.
+     *
+     * @return A response entity that may be returned to the client
+     */
+    @DeleteMapping("/ingestion/dead-letters")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Discards all value messages of the dead-letter store", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to discard dead letters")})
+    public ResponseEntity deleteDeadLetters() {
+        deadLetterStore.removeAll();
+        return new ResponseEntity(HttpStatus.OK);
+    }
+}
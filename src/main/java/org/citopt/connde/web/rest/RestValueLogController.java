@@ -2,6 +2,7 @@ package org.citopt.connde.web.rest;
 
 import io.swagger.annotations.*;
 import org.citopt.connde.RestConfiguration;
+import org.citopt.connde.constants.Constants;
 import org.citopt.connde.domain.component.Actuator;
 import org.citopt.connde.domain.component.Component;
 import org.citopt.connde.domain.component.Sensor;
@@ -11,25 +12,40 @@ import org.citopt.connde.repository.*;
 import org.citopt.connde.service.UnitConverterService;
 import org.citopt.connde.service.UserEntityService;
 import org.citopt.connde.web.rest.helper.MonitoringHelper;
+import org.citopt.connde.web.rest.util.DurationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
-import springfox.documentation.annotations.ApiIgnore;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.measure.converter.UnitConverter;
 import javax.measure.unit.Unit;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
- * REST Controller for retrieving value logs for certain components. Furthermore, it provides
+ * REST Controller for retrieving and exporting value logs for certain components. Furthermore, it provides
  * features for converting the value log values to desired units.
  */
 @RestController
 @RequestMapping(RestConfiguration.BASE_PATH)
 @Api(tags = {"Value logs"}, description = "Retrieval of recorded value logs")
 public class RestValueLogController {
+    //Content type of value log exports
+    private static final String CSV_CONTENT_TYPE = "text/csv";
 
     @Autowired
     private ActuatorRepository actuatorRepository;
@@ -51,19 +67,26 @@ public class RestValueLogController {
 
 
     /**
-     * Replies with a pageable list of value logs of a certain actuator.
+     * Replies with a slice of value logs of a certain actuator. Subsequent slices can be retrieved by passing the
+     * continuation token of the response.
      *
-     * @param actuatorId The id of the actuator for which the value logs should be retrieved
-     * @param unit       A string specifying the unit of the value log values
-     * @param pageable   Pageable parameters that specify the value logs to retrieve
-     * @return A pageable list of value logs
+     * @param actuatorId   The id of the actuator for which the value logs should be retrieved
+     * @param unit         A string specifying the unit of the value log values
+     * @param after        The time after which the value logs must have been recorded (ISO-8601)
+     * @param before       The time before which the value logs must have been recorded (ISO-8601)
+     * @param continuation The continuation token of a previous response
+     * @param pageable     Pageable parameters that specify the number and order of the value logs to retrieve
+     * @return A slice of value logs
      */
     @GetMapping("/actuators/{id}/valueLogs")
-    @ApiOperation(value = "Retrieves a list of recorded actuator value logs in a certain unit which fit onto a given page", produces = "application/hal+json")
-    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
-    public ResponseEntity<Page<ValueLog>> getActuatorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId,
-                                                               @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the actuator values", example = "°C", required = false) String unit,
-                                                               @ApiParam(value = "The page configuration", required = true) Pageable pageable) {
+    @ApiOperation(value = "Retrieves a slice of recorded actuator value logs in a certain unit, optionally continuing a previous one", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit, time or continuation token"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
+    public ResponseEntity<ValueLogSlice> getActuatorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId,
+                                                              @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the actuator values", example = "°C", required = false) String unit,
+                                                              @RequestParam(value = "after", required = false) @ApiParam(value = "Only value logs recorded after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String after,
+                                                              @RequestParam(value = "before", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String before,
+                                                              @RequestParam(value = "continuation", required = false) @ApiParam(value = "Continuation token of a previous response for retrieving the next value logs", required = false) String continuation,
+                                                              @ApiParam(value = "The page configuration", required = true) Pageable pageable) {
         //Get actuator
         Actuator actuator = (Actuator) userEntityService.getUserEntityFromRepository(actuatorRepository, actuatorId);
 
@@ -78,23 +101,30 @@ public class RestValueLogController {
         }
 
         //Retrieve value logs
-        return getValueLogs(actuator, unit, pageable);
+        return getValueLogs(actuator, unit, after, before, continuation, pageable);
     }
 
     /**
-     * Replies with a pageable list of value logs of a certain sensor.
+     * Replies with a slice of value logs of a certain sensor. Subsequent slices can be retrieved by passing the
+     * continuation token of the response.
      *
-     * @param sensorId The id of the sensor for which the value logs should be retrieved
-     * @param unit     A string specifying the unit of the value log values
-     * @param pageable Pageable parameters that specify the value logs to retrieve
-     * @return A pageable list of value logs
+     * @param sensorId     The id of the sensor for which the value logs should be retrieved
+     * @param unit         A string specifying the unit of the value log values
+     * @param after        The time after which the value logs must have been recorded (ISO-8601)
+     * @param before       The time before which the value logs must have been recorded (ISO-8601)
+     * @param continuation The continuation token of a previous response
+     * @param pageable     Pageable parameters that specify the number and order of the value logs to retrieve
+     * @return A slice of value logs
      */
     @GetMapping("/sensors/{id}/valueLogs")
-    @ApiOperation(value = "Retrieves a list of recorded sensor value log in a certain unit which fit onto a given page", produces = "application/hal+json")
-    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
-    public ResponseEntity<Page<ValueLog>> getSensorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId,
-                                                             @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the sensor values", example = "°C", required = false) String unit,
-                                                             @ApiParam(value = "The page configuration", required = true) Pageable pageable) {
+    @ApiOperation(value = "Retrieves a slice of recorded sensor value logs in a certain unit, optionally continuing a previous one", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit, time or continuation token"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
+    public ResponseEntity<ValueLogSlice> getSensorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId,
+                                                            @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the sensor values", example = "°C", required = false) String unit,
+                                                            @RequestParam(value = "after", required = false) @ApiParam(value = "Only value logs recorded after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String after,
+                                                            @RequestParam(value = "before", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String before,
+                                                            @RequestParam(value = "continuation", required = false) @ApiParam(value = "Continuation token of a previous response for retrieving the next value logs", required = false) String continuation,
+                                                            @ApiParam(value = "The page configuration", required = true) Pageable pageable) {
         //Get sensor object
         Sensor sensor = (Sensor) userEntityService.getUserEntityFromRepository(sensorRepository, sensorId);
 
@@ -109,25 +139,32 @@ public class RestValueLogController {
         }
 
         //Retrieve value logs
-        return getValueLogs(sensor, unit, pageable);
+        return getValueLogs(sensor, unit, after, before, continuation, pageable);
     }
 
     /**
-     * Replies with a pageable list of value logs of a certain monitoring component.
+     * Replies with a slice of value logs of a certain monitoring component. Subsequent slices can be retrieved by
+     * passing the continuation token of the response.
      *
      * @param deviceId            The id of the device for which monitoring data is supposed to be retrieved
      * @param monitoringAdapterId The id of the monitoring adapter for which monitoring data is supposed to be retrieved
      * @param unit                A string specifying the unit of the value log values
-     * @param pageable            Pageable parameters that specify the value logs to retrieve
-     * @return A pageable list of value logs
+     * @param after               The time after which the value logs must have been recorded (ISO-8601)
+     * @param before              The time before which the value logs must have been recorded (ISO-8601)
+     * @param continuation        The continuation token of a previous response
+     * @param pageable            Pageable parameters that specify the number and order of the value logs to retrieve
+     * @return A slice of value logs
      */
     @GetMapping("/monitoring/{deviceId}/valueLogs")
-    @ApiOperation(value = "Retrieves a list of recorded monitoring value logs in a certain unit which fit onto a given page", produces = "application/hal+json")
-    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them")})
-    public ResponseEntity<Page<ValueLog>> getMonitoringValueLogs(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
-                                                                 @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId,
-                                                                 @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring value logs", example = "°C", required = false) String unit,
-                                                                 @ApiParam(value = "The page configuration", required = true) Pageable pageable) {
+    @ApiOperation(value = "Retrieves a slice of recorded monitoring value logs in a certain unit, optionally continuing a previous one", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit, time or continuation token"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them")})
+    public ResponseEntity<ValueLogSlice> getMonitoringValueLogs(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
+                                                                @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to retrieve value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId,
+                                                                @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring value logs", example = "°C", required = false) String unit,
+                                                                @RequestParam(value = "after", required = false) @ApiParam(value = "Only value logs recorded after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String after,
+                                                                @RequestParam(value = "before", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String before,
+                                                                @RequestParam(value = "continuation", required = false) @ApiParam(value = "Continuation token of a previous response for retrieving the next value logs", required = false) String continuation,
+                                                                @ApiParam(value = "The page configuration", required = true) Pageable pageable) {
         //Create new monitoring component from parameters
         MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(deviceId, monitoringAdapterId);
 
@@ -142,18 +179,225 @@ public class RestValueLogController {
         }
 
         //Retrieve value logs
-        return getValueLogs(monitoringComponent, unit, pageable);
+        return getValueLogs(monitoringComponent, unit, after, before, continuation, pageable);
     }
 
     /**
-     * Deletes all recorded +value logs of a certain actuator.
+     * Replies with the aggregated values of the value logs of a certain actuator within a time range, grouped into
+     * time buckets.
+     *
+     * @param actuatorId   The id of the actuator for which the value logs should be aggregated
+     * @param from         The begin of the time range (ISO-8601, inclusive)
+     * @param to           The end of the time range (ISO-8601, exclusive) or null for now
+     * @param interval     The interval of the time buckets
+     * @param fn           The name of the aggregate function
+     * @param unit         A string specifying the unit of the aggregated values
+     * @return The list of aggregated value logs
+     */
+    @GetMapping("/actuators/{id}/valueLogs/aggregates")
+    @ApiOperation(value = "Retrieves the aggregated values of recorded actuator value logs per time bucket in a certain unit", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid time range, interval, aggregate function or unit"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
+    public ResponseEntity<List<ValueLog>> getActuatorValueLogAggregates(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to aggregate value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId,
+                                                                        @RequestParam(value = "from") @ApiParam(value = "Begin of the time range (ISO-8601, inclusive)", example = "2019-06-01T00:00:00Z", required = true) String from,
+                                                                        @RequestParam(value = "to", required = false) @ApiParam(value = "End of the time range (ISO-8601, exclusive), defaults to now", example = "2019-06-02T00:00:00Z", required = false) String to,
+                                                                        @RequestParam(value = "interval") @ApiParam(value = "Interval of the time buckets (e.g. 30s, 5m, 1h, 1d)", example = "5m", required = true) String interval,
+                                                                        @RequestParam(value = "fn", required = false, defaultValue = "mean") @ApiParam(value = "Aggregate function (mean, min, max, count or last)", example = "mean", required = false) String fn,
+                                                                        @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the actuator values", example = "°C", required = false) String unit) {
+        //Get actuator
+        Actuator actuator = (Actuator) userEntityService.getUserEntityFromRepository(actuatorRepository, actuatorId);
+
+        //Validity check
+        if (actuator == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(actuator, "deploy")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Retrieve aggregated value logs
+        return getAggregatedValueLogs(actuator, from, to, interval, fn, unit);
+    }
+
+    /**
+     * Replies with the aggregated values of the value logs of a certain sensor within a time range, grouped into
+     * time buckets.
+     *
+     * @param sensorId     The id of the sensor for which the value logs should be aggregated
+     * @param from         The begin of the time range (ISO-8601, inclusive)
+     * @param to           The end of the time range (ISO-8601, exclusive) or null for now
+     * @param interval     The interval of the time buckets
+     * @param fn           The name of the aggregate function
+     * @param unit         A string specifying the unit of the aggregated values
+     * @return The list of aggregated value logs
+     */
+    @GetMapping("/sensors/{id}/valueLogs/aggregates")
+    @ApiOperation(value = "Retrieves the aggregated values of recorded sensor value logs per time bucket in a certain unit", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid time range, interval, aggregate function or unit"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
+    public ResponseEntity<List<ValueLog>> getSensorValueLogAggregates(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to aggregate value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId,
+                                                                      @RequestParam(value = "from") @ApiParam(value = "Begin of the time range (ISO-8601, inclusive)", example = "2019-06-01T00:00:00Z", required = true) String from,
+                                                                      @RequestParam(value = "to", required = false) @ApiParam(value = "End of the time range (ISO-8601, exclusive), defaults to now", example = "2019-06-02T00:00:00Z", required = false) String to,
+                                                                      @RequestParam(value = "interval") @ApiParam(value = "Interval of the time buckets (e.g. 30s, 5m, 1h, 1d)", example = "5m", required = true) String interval,
+                                                                      @RequestParam(value = "fn", required = false, defaultValue = "mean") @ApiParam(value = "Aggregate function (mean, min, max, count or last)", example = "mean", required = false) String fn,
+                                                                      @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the sensor values", example = "°C", required = false) String unit) {
+        //Get sensor object
+        Sensor sensor = (Sensor) userEntityService.getUserEntityFromRepository(sensorRepository, sensorId);
+
+        //Validity check
+        if (sensor == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(sensor, "deploy")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Retrieve aggregated value logs
+        return getAggregatedValueLogs(sensor, from, to, interval, fn, unit);
+    }
+
+    /**
+     * Replies with the aggregated values of the value logs of a certain monitoring component within a time range,
+     * grouped into time buckets.
+     *
+     * @param deviceId            The id of the device for which monitoring data is supposed to be aggregated
+     * @param monitoringAdapterId The id of the monitoring adapter for which monitoring data is supposed to be aggregated
+     * @param from                The begin of the time range (ISO-8601, inclusive)
+     * @param to                  The end of the time range (ISO-8601, exclusive) or null for now
+     * @param interval            The interval of the time buckets
+     * @param fn                  The name of the aggregate function
+     * @param unit                A string specifying the unit of the aggregated values
+     * @return The list of aggregated value logs
+     */
+    @GetMapping("/monitoring/{deviceId}/valueLogs/aggregates")
+    @ApiOperation(value = "Retrieves the aggregated values of recorded monitoring value logs per time bucket in a certain unit", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid time range, interval, aggregate function or unit"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them")})
+    public ResponseEntity<List<ValueLog>> getMonitoringValueLogAggregates(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to aggregate value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
+                                                                          @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to aggregate value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId,
+                                                                          @RequestParam(value = "from") @ApiParam(value = "Begin of the time range (ISO-8601, inclusive)", example = "2019-06-01T00:00:00Z", required = true) String from,
+                                                                          @RequestParam(value = "to", required = false) @ApiParam(value = "End of the time range (ISO-8601, exclusive), defaults to now", example = "2019-06-02T00:00:00Z", required = false) String to,
+                                                                          @RequestParam(value = "interval") @ApiParam(value = "Interval of the time buckets (e.g. 30s, 5m, 1h, 1d)", example = "5m", required = true) String interval,
+                                                                          @RequestParam(value = "fn", required = false, defaultValue = "mean") @ApiParam(value = "Aggregate function (mean, min, max, count or last)", example = "mean", required = false) String fn,
+                                                                          @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring values", example = "°C", required = false) String unit) {
+        //Create new monitoring component from parameters
+        MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(deviceId, monitoringAdapterId);
+
+        //Validity check
+        if (monitoringComponent == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(monitoringComponent.getDevice(), "monitor")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Retrieve aggregated value logs
+        return getAggregatedValueLogs(monitoringComponent, from, to, interval, fn, unit);
+    }
+
+    /**
+     * Exports all value logs of a certain actuator as CSV.
+     *
+     * @param actuatorId The id of the actuator whose value logs should be exported
+     * @param unit       A string specifying the unit of the value log values
+     * @return The value logs as CSV, streamed to the client
+     */
+    @GetMapping(value = "/actuators/{id}/valueLogs/export", produces = CSV_CONTENT_TYPE)
+    @ApiOperation(value = "Exports all recorded actuator value logs in a certain unit as CSV", produces = CSV_CONTENT_TYPE)
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
+    public ResponseEntity<StreamingResponseBody> exportActuatorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to export value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId,
+                                                                         @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the actuator values", example = "°C", required = false) String unit) {
+        //Get actuator
+        Actuator actuator = (Actuator) userEntityService.getUserEntityFromRepository(actuatorRepository, actuatorId);
+
+        //Validity check
+        if (actuator == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(actuator, "deploy")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Export value logs
+        return exportValueLogs(actuator, unit);
+    }
+
+    /**
+     * Exports all value logs of a certain sensor as CSV.
+     *
+     * @param sensorId The id of the sensor whose value logs should be exported
+     * @param unit     A string specifying the unit of the value log values
+     * @return The value logs as CSV, streamed to the client
+     */
+    @GetMapping(value = "/sensors/{id}/valueLogs/export", produces = CSV_CONTENT_TYPE)
+    @ApiOperation(value = "Exports all recorded sensor value logs in a certain unit as CSV", produces = CSV_CONTENT_TYPE)
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
+    public ResponseEntity<StreamingResponseBody> exportSensorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to export value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId,
+                                                                       @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the sensor values", example = "°C", required = false) String unit) {
+        //Get sensor object
+        Sensor sensor = (Sensor) userEntityService.getUserEntityFromRepository(sensorRepository, sensorId);
+
+        //Validity check
+        if (sensor == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(sensor, "deploy")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Export value logs
+        return exportValueLogs(sensor, unit);
+    }
+
+    /**
+     * Exports all value logs of a certain monitoring component as CSV.
+     *
+     * @param deviceId            The id of the device for which monitoring data is supposed to be exported
+     * @param monitoringAdapterId The id of the monitoring adapter for which monitoring data is supposed to be exported
+     * @param unit                A string specifying the unit of the value log values
+     * @return The value logs as CSV, streamed to the client
+     */
+    @GetMapping(value = "/monitoring/{deviceId}/valueLogs/export", produces = CSV_CONTENT_TYPE)
+    @ApiOperation(value = "Exports all recorded monitoring value logs in a certain unit as CSV", produces = CSV_CONTENT_TYPE)
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit"), @ApiResponse(code = 403, message = "Not authorized to access value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them")})
+    public ResponseEntity<StreamingResponseBody> exportMonitoringValueLogs(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to export value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
+                                                                           @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to export value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId,
+                                                                           @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring value logs", example = "°C", required = false) String unit) {
+        //Create new monitoring component from parameters
+        MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(deviceId, monitoringAdapterId);
+
+        //Validity check
+        if (monitoringComponent == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(monitoringComponent.getDevice(), "monitor")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Export value logs
+        return exportValueLogs(monitoringComponent, unit);
+    }
+
+    /**
+     * Deletes all recorded value logs of a certain actuator. The value logs are purged asynchronously by a job whose
+     * status is returned.
      *
      * @param actuatorId The id of the actuator whose data is supposed to be deleted
-     * @return A response entity that may be returned to the client
+     * @return The job that purges the value logs
      */
     @DeleteMapping("/actuators/{id}/valueLogs")
-    @ApiIgnore("Currently not working")
-    public ResponseEntity deleteActuatorValueLogs(@PathVariable(value = "id") String actuatorId) {
+    @ApiOperation(value = "Deletes all recorded actuator value logs asynchronously and returns the purge job", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 202, message = "Purge accepted"), @ApiResponse(code = 403, message = "Not authorized to delete value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
+    public ResponseEntity<ValueLogPurgeJob> deleteActuatorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to delete value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId) {
         //Get actuator
         Actuator actuator = (Actuator) userEntityService.getUserEntityFromRepository(actuatorRepository, actuatorId);
 
@@ -172,14 +416,16 @@ public class RestValueLogController {
     }
 
     /**
-     * Deletes all recorded +value logs of a certain sensor.
+     * Deletes all recorded value logs of a certain sensor. The value logs are purged asynchronously by a job whose
+     * status is returned.
      *
      * @param sensorId The id of the sensor whose data is supposed to be deleted
-     * @return A response entity that may be returned to the client
+     * @return The job that purges the value logs
      */
     @DeleteMapping("/sensors/{id}/valueLogs")
-    @ApiIgnore("Currently not working")
-    public ResponseEntity deleteSensorValueLogs(@PathVariable(value = "id") String sensorId) {
+    @ApiOperation(value = "Deletes all recorded sensor value logs asynchronously and returns the purge job", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 202, message = "Purge accepted"), @ApiResponse(code = 403, message = "Not authorized to delete value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
+    public ResponseEntity<ValueLogPurgeJob> deleteSensorValueLogs(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to delete value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId) {
         //Get sensor
         Sensor sensor = (Sensor) userEntityService.getUserEntityFromRepository(sensorRepository, sensorId);
 
@@ -198,16 +444,18 @@ public class RestValueLogController {
     }
 
     /**
-     * Deletes all recorded +value logs of a certain monitoring component.
+     * Deletes all recorded value logs of a certain monitoring component. The value logs are purged asynchronously
+     * by a job whose status is returned.
      *
      * @param deviceId            The id of the device whose data is supposed to be deleted
-     * @param monitoringAdapterId The id of the device whose data is supposed to be deleted
-     * @return A response entity that may be returned to the client
+     * @param monitoringAdapterId The id of the monitoring adapter whose data is supposed to be deleted
+     * @return The job that purges the value logs
      */
     @DeleteMapping("/monitoring/{deviceId}/valueLogs")
-    @ApiIgnore("Currently not working")
-    public ResponseEntity deleteMonitoringValueLogs(@PathVariable(value = "deviceId") String deviceId,
-                                                    @RequestParam("adapter") String monitoringAdapterId) {
+    @ApiOperation(value = "Deletes all recorded monitoring value logs asynchronously and returns the purge job", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 202, message = "Purge accepted"), @ApiResponse(code = 403, message = "Not authorized to delete value logs of this device"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access the device")})
+    public ResponseEntity<ValueLogPurgeJob> deleteMonitoringValueLogs(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to delete monitoring value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
+                                                                      @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to delete value logs for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId) {
 
         //Create new monitoring component from parameters
         MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(deviceId, monitoringAdapterId);
@@ -227,56 +475,232 @@ public class RestValueLogController {
     }
 
     /**
-     * Returns a response entity that contains a pageable list of value logs of a certain component.
+     * Replies with the status and progress of a job that purges value logs. Since the ids of the jobs are random,
+     * they are only known to the users who requested the purges.
      *
-     * @param component The component for which the value logs should be retrieved
-     * @param unit      A string specifying the unit of the value log values
-     * @param pageable  Pageable parameters that specify the value logs to retrieve
-     * @return A pageable list of value logs
+     * @param jobId The id of the job
+     * @return The purge job
+     */
+    @GetMapping("/valueLogs/purges/{jobId}")
+    @ApiOperation(value = "Retrieves the status and progress of a job that purges value logs", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 404, message = "Purge job not found")})
+    public ResponseEntity<ValueLogPurgeJob> getPurgeJob(@PathVariable(value = "jobId") @ApiParam(value = "ID of the purge job", example = "4a8e9a3c-8c1f-4a7e-b9e3-2b1f0f6d5c11", required = true) String jobId) {
+        ValueLogPurgeJob job = valueLogRepository.getPurgeJob(jobId);
+
+        //Validity check
+        if (job == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        return new ResponseEntity<>(job, HttpStatus.OK);
+    }
+
+    /**
+     * Replies with all jobs that purge value logs and that are queued, running or were finished recently.
+     *
+     * @return The list of purge jobs
+     */
+    @GetMapping("/valueLogs/purges")
+    @Secured({Constants.ADMIN})
+    @ApiOperation(value = "Retrieves all queued, running and recently finished jobs that purge value logs", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access the purge jobs")})
+    public ResponseEntity<List<ValueLogPurgeJob>> getPurgeJobs() {
+        return new ResponseEntity<>(valueLogRepository.getPurgeJobs(), HttpStatus.OK);
+    }
+
+    /**
+     * Returns a response entity that contains a slice of value logs of a certain component. If a continuation token
+     * is provided, the slice continues the one the token was issued for. Otherwise, it starts at the given time bounds
+     * or, for requests by page number, at the corresponding offset.
+     *
+     * @param component    The component for which the value logs should be retrieved
+     * @param unit         A string specifying the unit of the value log values
+     * @param after        The time after which the value logs must have been recorded (ISO-8601)
+     * @param before       The time before which the value logs must have been recorded (ISO-8601)
+     * @param continuation The continuation token of a previous response
+     * @param pageable     Pageable parameters that specify the number and order of the value logs to retrieve
+     * @return A slice of value logs
      */
-    private ResponseEntity<Page<ValueLog>> getValueLogs(Component component, String unit, Pageable pageable) {
+    private ResponseEntity<ValueLogSlice> getValueLogs(Component component, String unit, String after, String before,
+                                                       String continuation, Pageable pageable) {
+        //Determine the desired order from the pageable, only sorting for time is supported
+        boolean descending = false;
+        for (Sort.Order order : pageable.getSort()) {
+            if (order.getProperty().equals("time")) {
+                descending = order.isDescending();
+                break;
+            }
+        }
+
+        //Create cursor from the parameters
+        ValueLogCursor cursor;
+        try {
+            if ((continuation != null) && !continuation.isEmpty()) {
+                cursor = ValueLogCursor.fromToken(continuation, pageable.getPageSize());
+            } else if ((after != null) || (before != null)) {
+                cursor = ValueLogCursor.of(descending, (after == null) ? null : Instant.parse(after),
+                        (before == null) ? null : Instant.parse(before), pageable.getPageSize());
+            } else {
+                cursor = ValueLogCursor.ofOffset(descending, pageable.getPageSize(), pageable.getOffset());
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
         //Get value logs for this component
-        Page<ValueLog> page = valueLogRepository.findAllByIdRef(component.getId(), pageable);
+        ValueLogSlice slice = valueLogRepository.findSliceByIdRef(component.getId(), cursor);
 
         //Check if a valid unit was provided, otherwise return the result already
         if ((unit == null) || unit.isEmpty()) {
-            return new ResponseEntity<>(page, HttpStatus.OK);
+            return new ResponseEntity<>(slice, HttpStatus.OK);
         }
 
         //Try to get unit object from string
         Unit targetUnit;
         try {
-            targetUnit = Unit.valueOf(unit);
+            targetUnit = unitConverterService.getUnit(unit);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
         //Get unit object from adapter
-        Unit startUnit = component.getAdapter().getUnitObject();
+        Unit startUnit = unitConverterService.getUnit(component.getAdapter().getUnit());
 
         //Get corresponding unit converter
-        UnitConverter converter = startUnit.getConverterTo(targetUnit);
+        UnitConverter converter = unitConverterService.getConverter(startUnit, targetUnit);
 
-        //Iterate over all value logs of this
-        for (ValueLog valueLog : page) {
-            //Convert value
-            unitConverterService.convertValueLogValue(valueLog, converter);
-        }
+        //Convert the values of all value logs at once
+        unitConverterService.convertValueLogValues(slice.getContent(), converter);
 
         //All values converted, now return
-        return new ResponseEntity<>(page, HttpStatus.OK);
+        return new ResponseEntity<>(slice, HttpStatus.OK);
+    }
+
+    /**
+     * Returns a response entity that contains the aggregated values of the value logs of a certain component within
+     * a time range, grouped into time buckets. The aggregation is performed by the database and the unit conversion
+     * is applied to the aggregated values, which is valid since the unit converters are linear or affine.
+     *
+     * @param component The component for which the value logs should be aggregated
+     * @param from      The begin of the time range (ISO-8601, inclusive)
+     * @param to        The end of the time range (ISO-8601, exclusive) or null for now
+     * @param interval  The interval of the time buckets
+     * @param fn        The name of the aggregate function
+     * @param unit      A string specifying the unit of the aggregated values
+     * @return The list of aggregated value logs
+     */
+    private ResponseEntity<List<ValueLog>> getAggregatedValueLogs(Component component, String from, String to,
+                                                                  String interval, String fn, String unit) {
+        //Parse parameters
+        Instant fromTime;
+        Instant toTime;
+        Duration intervalDuration;
+        ValueLogAggregate aggregate;
+        try {
+            fromTime = Instant.parse(from);
+            toTime = ((to == null) || to.isEmpty()) ? Instant.now() : Instant.parse(to);
+            intervalDuration = DurationUtil.parse(interval);
+            aggregate = ValueLogAggregate.fromName(fn);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        //Get converter if a unit was provided
+        UnitConverter converter = null;
+        if ((unit != null) && !unit.isEmpty()) {
+            //Try to get unit object from string
+            Unit targetUnit;
+            try {
+                targetUnit = unitConverterService.getUnit(unit);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+
+            //Get unit object from adapter and corresponding unit converter
+            Unit startUnit = unitConverterService.getUnit(component.getAdapter().getUnit());
+            converter = unitConverterService.getConverter(startUnit, targetUnit);
+        }
+
+        //Let the database aggregate the value logs
+        List<ValueLog> valueLogs;
+        try {
+            valueLogs = valueLogRepository.findAggregatesByIdRef(component.getId(), fromTime, toTime,
+                    intervalDuration, aggregate);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        //Convert aggregated values if they have the unit of the values
+        if ((converter != null) && aggregate.isUnitPreserving()) {
+            unitConverterService.convertValueLogValues(valueLogs, converter);
+        }
+
+        return new ResponseEntity<>(valueLogs, HttpStatus.OK);
+    }
+
+    /**
+     * Returns a response entity that streams all value logs of a certain component as CSV. The value logs are
+     * retrieved from the repository in chunks while they are written to the client, so that the memory consumption
+     * does not depend on the number of value logs.
+     *
+     * @param component The component whose value logs should be exported
+     * @param unit      A string specifying the unit of the value log values
+     * @return A response entity that streams the value logs
+     */
+    private ResponseEntity<StreamingResponseBody> exportValueLogs(Component component, String unit) {
+        //Get converter if a unit was provided
+        UnitConverter converter = null;
+        if ((unit != null) && !unit.isEmpty()) {
+            //Try to get unit object from string
+            Unit targetUnit;
+            try {
+                targetUnit = unitConverterService.getUnit(unit);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+
+            //Get unit object from adapter and corresponding unit converter
+            Unit startUnit = unitConverterService.getUnit(component.getAdapter().getUnit());
+            converter = unitConverterService.getConverter(startUnit, targetUnit);
+        }
+
+        //Write value logs as they are streamed from the repository
+        UnitConverter valueConverter = converter;
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writer.write("time,value\n");
+            try (Stream<ValueLog> valueLogStream = valueLogRepository.streamAllByIdRef(component.getId())) {
+                Iterator<ValueLog> iterator = valueLogStream.iterator();
+                while (iterator.hasNext()) {
+                    ValueLog valueLog = iterator.next();
+
+                    //Convert value if desired
+                    if (valueConverter != null) {
+                        unitConverterService.convertValueLogValue(valueLog, valueConverter);
+                    }
+
+                    writer.write(valueLog.getTime().toString());
+                    writer.write(',');
+                    writer.write(Double.toString(valueLog.getValue()));
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(CSV_CONTENT_TYPE)).body(body);
     }
 
     /**
-     * Deletes all recorded +value logs of a certain component.
+     * Deletes all recorded value logs of a certain component by submitting a purge job.
      *
      * @param component The component whose data is supposed to be deleted
-     * @return A response entity that may be returned to the client
+     * @return A response entity containing the purge job
      */
-    private ResponseEntity deleteValueLogs(Component component) {
-        valueLogRepository.deleteByIdRef(component.getId());
+    private ResponseEntity<ValueLogPurgeJob> deleteValueLogs(Component component) {
+        ValueLogPurgeJob job = valueLogRepository.deleteByIdRef(component.getId());
 
-        //Return success response
-        return new ResponseEntity(HttpStatus.OK);
+        //Return accepted response
+        return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
     }
 }
@@ -8,16 +8,22 @@ import org.citopt.connde.domain.component.Sensor;
 import org.citopt.connde.domain.monitoring.MonitoringComponent;
 import org.citopt.connde.repository.ActuatorRepository;
 import org.citopt.connde.repository.SensorRepository;
+import org.citopt.connde.service.UnitConverterService;
 import org.citopt.connde.service.UserEntityService;
 import org.citopt.connde.service.stats.ValueLogStatsService;
+import org.citopt.connde.service.stats.ValueLogSketchService;
+import org.citopt.connde.service.stats.model.ValueLogDistribution;
 import org.citopt.connde.service.stats.model.ValueLogStats;
 import org.citopt.connde.web.rest.helper.MonitoringHelper;
+import org.citopt.connde.web.rest.util.TimeWindow;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.measure.unit.Unit;
+import java.util.*;
 
 /**
  * REST Controller for requests related to the value log stats of components.
@@ -26,6 +32,14 @@ import javax.measure.unit.Unit;
 @RequestMapping(RestConfiguration.BASE_PATH)
 @Api(tags = {"Value logs statistics"}, description = "Retrieval of statistics for recorded value logs")
 public class RestValueLogStatsController {
+    //Maximum number of histogram bins of value log distributions
+    private static final int MAX_HISTOGRAM_BINS = 1000;
+
+    //Maximum number of components per batch of value log stats
+    private static final int MAX_BATCH_COMPONENTS = 1000;
+
+    //Separator of adapter id and device id in the ids of monitoring components
+    private static final String MONITORING_ID_SEPARATOR = "@";
 
     @Autowired
     private ActuatorRepository actuatorRepository;
@@ -33,12 +47,30 @@ public class RestValueLogStatsController {
     @Autowired
     private SensorRepository sensorRepository;
 
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private MonitoringAdapterRepository monitoringAdapterRepository;
+
     @Autowired
     private ValueLogStatsService valueLogStatsService;
 
+    @Autowired
+    private ValueLogSketchService valueLogSketchService;
+
+    @Autowired
+    private UnitConverterService unitConverterService;
+
+    @Autowired
+    private ValueLogStatsBatchService valueLogStatsBatchService;
+
     @Autowired
     private UserEntityService userEntityService;
 
+    @Autowired
+    private UserService userService;
+
     @Autowired
     private MonitoringHelper monitoringHelper;
 
@@ -47,13 +79,19 @@ public class RestValueLogStatsController {
      *
      * @param actuatorId The id of the actuator whose value log stats are supposed to be retrieved
      * @param unit       A string specifying the desired unit of the value log stats
+     * @param from       The begin of the time window (ISO-8601, inclusive)
+     * @param to         The end of the time window (ISO-8601, exclusive)
+     * @param last       The duration of the time window before its end
      * @return The value log stats of the actuator
      */
     @GetMapping("/actuators/{id}/stats")
-    @ApiOperation(value = "Retrieves a list of statistics for recorded actuator value logs in a certain unit", produces = "application/hal+json")
-    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
+    @ApiOperation(value = "Retrieves a list of statistics for recorded actuator value logs in a certain unit, optionally within a time window", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit or time window"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator")})
     public ResponseEntity<ValueLogStats> getActuatorValueLogStats(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to retrieve value log statistics for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId,
-                                                                  @RequestParam(value = "unit", required = false) String unit) {
+                                                                  @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the actuator value log statistics", example = "°C", required = false) String unit,
+                                                                  @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                                  @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                                  @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last) {
         //Get actuator
         Actuator actuator = (Actuator) userEntityService.getUserEntityFromRepository(actuatorRepository, actuatorId);
 
@@ -68,7 +106,7 @@ public class RestValueLogStatsController {
         }
 
         //Retrieve value log statistics
-        return calculateValueLogStats(actuator, unit);
+        return calculateValueLogStats(actuator, unit, from, to, last);
     }
 
     /**
@@ -76,13 +114,19 @@ public class RestValueLogStatsController {
      *
      * @param sensorId The id of the sensor whose value log stats are supposed to be retrieved
      * @param unit     A string specifying the desired unit of the value log stats
+     * @param from     The begin of the time window (ISO-8601, inclusive)
+     * @param to       The end of the time window (ISO-8601, exclusive)
+     * @param last     The duration of the time window before its end
      * @return The value log stats of the sensor
      */
     @GetMapping("/sensors/{id}/stats")
-    @ApiOperation(value = "Retrieves a list of statistics for recorded sensor value logs in a certain unit", produces = "application/hal+json")
-    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
+    @ApiOperation(value = "Retrieves a list of statistics for recorded sensor value logs in a certain unit, optionally within a time window", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit or time window"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor")})
     public ResponseEntity<ValueLogStats> getSensorValueLogStats(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to retrieve value log statistics for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId,
-                                                                @RequestParam(value = "unit", required = false) String unit) {
+                                                                @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the sensor value log statistics", example = "°C", required = false) String unit,
+                                                                @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                                @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                                @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last) {
         //Get sensor object
         Sensor sensor = (Sensor) userEntityService.getUserEntityFromRepository(sensorRepository, sensorId);
 
@@ -97,7 +141,7 @@ public class RestValueLogStatsController {
         }
 
         //Retrieve value log statistics
-        return calculateValueLogStats(sensor, unit);
+        return calculateValueLogStats(sensor, unit, from, to, last);
     }
 
     /**
@@ -106,14 +150,20 @@ public class RestValueLogStatsController {
      * @param deviceId            The id of the device for which the stats are supposed to be retrieved
      * @param monitoringAdapterId The id of the monitoring adapter for which the stats are supposed to be retrieved
      * @param unit                A string specifying the desired unit of the value log stats
-     * @return The value log stats of the sensor
+     * @param from                The begin of the time window (ISO-8601, inclusive)
+     * @param to                  The end of the time window (ISO-8601, exclusive)
+     * @param last                The duration of the time window before its end
+     * @return The value log stats of the monitoring component
      */
     @GetMapping("/monitoring/{deviceId}/stats")
-    @ApiOperation(value = "Retrieves a list of statistics for recorded monitoring value logs in a certain unit", produces = "application/hal+json")
-    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them")})
+    @ApiOperation(value = "Retrieves a list of statistics for recorded monitoring value logs in a certain unit, optionally within a time window", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit or time window"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them")})
     public ResponseEntity<ValueLogStats> getMonitoringValueLogStats(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to retrieve value log statistics for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
                                                                     @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to retrieve value log statistics for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId,
-                                                                    @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring value log statistics", example = "°C", required = false) String unit) {
+                                                                    @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring value log statistics", example = "°C", required = false) String unit,
+                                                                    @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                                    @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                                    @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last) {
         //Create new monitoring component from parameters
         MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(deviceId, monitoringAdapterId);
 
@@ -128,31 +178,422 @@ public class RestValueLogStatsController {
         }
 
         //Retrieve value log statistics
-        return calculateValueLogStats(monitoringComponent, unit);
+        return calculateValueLogStats(monitoringComponent, unit, from, to, last);
+    }
+
+    /**
+     * Responds with the value log stats of a batch of sensors, actuators and monitoring components. The stats are
+     * calculated concurrently and streamed as server-sent events in the order in which they complete. Each event
+     * named "stats" holds the result for one component, including a status code that indicates whether the
+     * component could be found and accessed; a final event named "done" holds the number of results.
+     *
+     * @param sensorIds     The ids of the sensors whose value log stats are supposed to be retrieved
+     * @param actuatorIds   The ids of the actuators whose value log stats are supposed to be retrieved
+     * @param monitoringIds The ids of the monitoring components (monitoring adapter id and device id, separated by @)
+     * @param unit          A string specifying the desired unit of the value log stats
+     * @param from          The begin of the time window (ISO-8601, inclusive)
+     * @param to            The end of the time window (ISO-8601, exclusive)
+     * @param last          The duration of the time window before its end
+     * @return The emitter that streams the value log stats
+     */
+    @GetMapping(value = "/stats", produces = "text/event-stream")
+    @ApiOperation(value = "Retrieves the statistics for recorded value logs of several sensors, actuators and monitoring components in a certain unit, optionally within a time window, streamed as server-sent events", produces = "text/event-stream")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success, results per component are streamed"), @ApiResponse(code = 400, message = "Invalid unit or time window or too many components"), @ApiResponse(code = 401, message = "Not authenticated")})
+    public ResponseEntity<SseEmitter> getBatchValueLogStats(@RequestParam(value = "sensors", required = false) @ApiParam(value = "Comma-separated IDs of the sensors to retrieve value log statistics for", example = "5c97dc2583aeb6078c5ab672", required = false) List<String> sensorIds,
+                                                            @RequestParam(value = "actuators", required = false) @ApiParam(value = "Comma-separated IDs of the actuators to retrieve value log statistics for", example = "5c97dc2583aeb6078c5ab672", required = false) List<String> actuatorIds,
+                                                            @RequestParam(value = "monitoring", required = false) @ApiParam(value = "Comma-separated IDs of the monitoring components to retrieve value log statistics for, each consisting of the monitoring adapter ID and the device ID separated by @", example = "5c97dc2583aeb6078c5ab673@5c97dc2583aeb6078c5ab672", required = false) List<String> monitoringIds,
+                                                            @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the value log statistics", example = "°C", required = false) String unit,
+                                                            @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                            @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                            @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last) {
+        //Remove duplicates while keeping the order of the ids
+        Set<String> sensorIdSet = (sensorIds == null) ? new LinkedHashSet<>() : new LinkedHashSet<>(sensorIds);
+        Set<String> actuatorIdSet = (actuatorIds == null) ? new LinkedHashSet<>() : new LinkedHashSet<>(actuatorIds);
+        Set<String> monitoringIdSet = (monitoringIds == null) ? new LinkedHashSet<>() :
+                new LinkedHashSet<>(monitoringIds);
+
+        //Validity check
+        if (sensorIdSet.size() + actuatorIdSet.size() + monitoringIdSet.size() > MAX_BATCH_COMPONENTS) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        //Convert given unit to object (if possible)
+        Unit convertUnit = null;
+        if ((unit != null) && (!unit.isEmpty())) {
+            //Try to parse unit
+            try {
+                convertUnit = unitConverterService.getUnit(unit);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        //Parse time window
+        TimeWindow window;
+        try {
+            window = TimeWindow.parse(from, to, last);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        //Get current user once for all permission checks
+        User user = userService.getUserWithAuthorities();
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Collect the accessible components and the results of the other ones
+        List<Component> components = new ArrayList<>();
+        List<ValueLogStatsResult> unavailable = new ArrayList<>();
+        collectComponents(sensorRepository, sensorIdSet, "sensor", user, components, unavailable);
+        collectComponents(actuatorRepository, actuatorIdSet, "actuator", user, components, unavailable);
+        collectMonitoringComponents(monitoringIdSet, user, components, unavailable);
+
+        //Calculate stats concurrently and stream them
+        SseEmitter emitter = valueLogStatsBatchService.calculateValueLogStats(components, unavailable, convertUnit,
+                window.getFrom(), window.getTo());
+
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    /**
+     * Responds with the estimated value distribution for a certain actuator.
+     *
+     * @param actuatorId The id of the actuator whose value distribution is supposed to be retrieved
+     * @param unit       A string specifying the desired unit of the value distribution
+     * @param from       The begin of the time window (ISO-8601, inclusive)
+     * @param to         The end of the time window (ISO-8601, exclusive)
+     * @param last       The duration of the time window before its end
+     * @param quantiles  Comma-separated quantiles to estimate
+     * @param bins       The number of histogram bins
+     * @return The value distribution of the actuator
+     */
+    @GetMapping("/actuators/{id}/stats/distribution")
+    @ApiOperation(value = "Retrieves estimated quantiles and a histogram of recorded actuator values in a certain unit, optionally within a time window aligned to the sketch buckets", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit, time window, quantiles or number of bins"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this actuator"), @ApiResponse(code = 404, message = "Actuator not found or not authorized to access the actuator"), @ApiResponse(code = 503, message = "Value log sketches are not enabled")})
+    public ResponseEntity<ValueLogDistribution> getActuatorValueLogDistribution(@PathVariable(value = "id") @ApiParam(value = "ID of the actuator to retrieve the value distribution for", example = "5c97dc2583aeb6078c5ab672", required = true) String actuatorId,
+                                                                                @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the actuator value distribution", example = "°C", required = false) String unit,
+                                                                                @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                                                @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                                                @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last,
+                                                                                @RequestParam(value = "quantiles", required = false, defaultValue = "0.5,0.9,0.95,0.99") @ApiParam(value = "Comma-separated quantiles to estimate (between 0 and 1)", example = "0.5,0.95,0.99", required = false) String quantiles,
+                                                                                @RequestParam(value = "bins", required = false, defaultValue = "10") @ApiParam(value = "Number of histogram bins", example = "10", required = false) int bins) {
+        //Get actuator
+        Actuator actuator = (Actuator) userEntityService.getUserEntityFromRepository(actuatorRepository, actuatorId);
+
+        //Validity check
+        if (actuator == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(actuator, "deploy")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Retrieve value distribution
+        return calculateValueLogDistribution(actuator, unit, from, to, last, quantiles, bins);
+    }
+
+    /**
+     * Responds with the estimated value distribution for a certain sensor.
+     *
+     * @param sensorId  The id of the sensor whose value distribution is supposed to be retrieved
+     * @param unit      A string specifying the desired unit of the value distribution
+     * @param from      The begin of the time window (ISO-8601, inclusive)
+     * @param to        The end of the time window (ISO-8601, exclusive)
+     * @param last      The duration of the time window before its end
+     * @param quantiles Comma-separated quantiles to estimate
+     * @param bins      The number of histogram bins
+     * @return The value distribution of the sensor
+     */
+    @GetMapping("/sensors/{id}/stats/distribution")
+    @ApiOperation(value = "Retrieves estimated quantiles and a histogram of recorded sensor values in a certain unit, optionally within a time window aligned to the sketch buckets", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit, time window, quantiles or number of bins"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this sensor"), @ApiResponse(code = 404, message = "Sensor not found or not authorized to access the sensor"), @ApiResponse(code = 503, message = "Value log sketches are not enabled")})
+    public ResponseEntity<ValueLogDistribution> getSensorValueLogDistribution(@PathVariable(value = "id") @ApiParam(value = "ID of the sensor to retrieve the value distribution for", example = "5c97dc2583aeb6078c5ab672", required = true) String sensorId,
+                                                                              @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the sensor value distribution", example = "°C", required = false) String unit,
+                                                                              @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                                              @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                                              @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last,
+                                                                              @RequestParam(value = "quantiles", required = false, defaultValue = "0.5,0.9,0.95,0.99") @ApiParam(value = "Comma-separated quantiles to estimate (between 0 and 1)", example = "0.5,0.95,0.99", required = false) String quantiles,
+                                                                              @RequestParam(value = "bins", required = false, defaultValue = "10") @ApiParam(value = "Number of histogram bins", example = "10", required = false) int bins) {
+        //Get sensor object
+        Sensor sensor = (Sensor) userEntityService.getUserEntityFromRepository(sensorRepository, sensorId);
+
+        //Validity check
+        if (sensor == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(sensor, "deploy")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Retrieve value distribution
+        return calculateValueLogDistribution(sensor, unit, from, to, last, quantiles, bins);
+    }
+
+    /**
+     * Responds with the estimated value distribution for a certain monitoring component.
+     *
+     * @param deviceId            The id of the device for which the distribution is supposed to be retrieved
+     * @param monitoringAdapterId The id of the monitoring adapter for which the distribution is supposed to be retrieved
+     * @param unit                A string specifying the desired unit of the value distribution
+     * @param from                The begin of the time window (ISO-8601, inclusive)
+     * @param to                  The end of the time window (ISO-8601, exclusive)
+     * @param last                The duration of the time window before its end
+     * @param quantiles           Comma-separated quantiles to estimate
+     * @param bins                The number of histogram bins
+     * @return The value distribution of the monitoring component
+     */
+    @GetMapping("/monitoring/{deviceId}/stats/distribution")
+    @ApiOperation(value = "Retrieves estimated quantiles and a histogram of recorded monitoring values in a certain unit, optionally within a time window aligned to the sketch buckets", produces = "application/hal+json")
+    @ApiResponses({@ApiResponse(code = 200, message = "Success"), @ApiResponse(code = 400, message = "Invalid unit, time window, quantiles or number of bins"), @ApiResponse(code = 403, message = "Not authorized to access statistics for value logs of this monitoring"), @ApiResponse(code = 404, message = "Device or monitoring adapter not found or not authorized to access them"), @ApiResponse(code = 503, message = "Value log sketches are not enabled")})
+    public ResponseEntity<ValueLogDistribution> getMonitoringValueLogDistribution(@PathVariable(value = "deviceId") @ApiParam(value = "ID of the device to retrieve the value distribution for", example = "5c97dc2583aeb6078c5ab672", required = true) String deviceId,
+                                                                                  @RequestParam("adapter") @ApiParam(value = "ID of the monitoring adapter to retrieve the value distribution for", example = "5c97dc2583aeb6078c5ab672", required = true) String monitoringAdapterId,
+                                                                                  @RequestParam(value = "unit", required = false) @ApiParam(value = "The desired unit of the monitoring value distribution", example = "°C", required = false) String unit,
+                                                                                  @RequestParam(value = "from", required = false) @ApiParam(value = "Only value logs recorded at or after this time (ISO-8601)", example = "2019-06-01T12:00:00Z", required = false) String from,
+                                                                                  @RequestParam(value = "to", required = false) @ApiParam(value = "Only value logs recorded before this time (ISO-8601)", example = "2019-06-02T12:00:00Z", required = false) String to,
+                                                                                  @RequestParam(value = "last", required = false) @ApiParam(value = "Only value logs recorded within this duration before now or before the given end (e.g. 1h, 1d)", example = "1d", required = false) String last,
+                                                                                  @RequestParam(value = "quantiles", required = false, defaultValue = "0.5,0.9,0.95,0.99") @ApiParam(value = "Comma-separated quantiles to estimate (between 0 and 1)", example = "0.5,0.95,0.99", required = false) String quantiles,
+                                                                                  @RequestParam(value = "bins", required = false, defaultValue = "10") @ApiParam(value = "Number of histogram bins", example = "10", required = false) int bins) {
+        //Create new monitoring component from parameters
+        MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(deviceId, monitoringAdapterId);
+
+        //Validity check
+        if (monitoringComponent == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        //Check if user is permitted
+        if (!userEntityService.isUserPermitted(monitoringComponent.getDevice(), "monitor")) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        //Retrieve value distribution
+        return calculateValueLogDistribution(monitoringComponent, unit, from, to, last, quantiles, bins);
     }
 
     /**
-     * Calculates the stats from value logs of a certain component in order to satisfy a server request.
+     * Calculates the stats from value logs of a certain component in order to satisfy a server request. If a time
+     * window is specified, only the value logs recorded within this window are considered. The window may be given
+     * by its bounds or by its duration before its end, which defaults to now.
      *
      * @param component The component for which the value log stats should be retrieved
      * @param unit      A string specifying the unit to which the values are supposed to be converted
+     * @param from      The begin of the time window (ISO-8601, inclusive) or null
+     * @param to        The end of the time window (ISO-8601, exclusive) or null
+     * @param last      The duration of the time window before its end or null
      * @return The server response containing an object that holds the calculated data
      */
-    private ResponseEntity<ValueLogStats> calculateValueLogStats(Component component, String unit) {
+    private ResponseEntity<ValueLogStats> calculateValueLogStats(Component component, String unit, String from,
+                                                                 String to, String last) {
         //Convert given unit to object (if possible)
         Unit convertUnit = null;
         if ((unit != null) && (!unit.isEmpty())) {
             //Try to parse unit
             try {
-                convertUnit = Unit.valueOf(unit);
+                convertUnit = unitConverterService.getUnit(unit);
             } catch (Exception e) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
         }
 
+        //Parse time window
+        TimeWindow window;
+        try {
+            window = TimeWindow.parse(from, to, last);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
         //Calculate stats by using the corresponding service
-        ValueLogStats stats = valueLogStatsService.calculateValueLogStats(component, convertUnit);
+        ValueLogStats stats = valueLogStatsService.calculateValueLogStats(component, convertUnit, window.getFrom(),
+                window.getTo());
 
         return new ResponseEntity<>(stats, HttpStatus.OK);
     }
+
+    /**
+     * Estimates the distribution of the values of a certain component in order to satisfy a server request.
+     *
+     * @param component The component for which the value distribution should be retrieved
+     * @param unit      A string specifying the unit to which the values are supposed to be converted
+     * @param from      The begin of the time window (ISO-8601, inclusive) or null
+     * @param to        The end of the time window (ISO-8601, exclusive) or null
+     * @param last      The duration of the time window before its end or null
+     * @param quantiles Comma-separated quantiles to estimate
+     * @param bins      The number of histogram bins
+     * @return The server response containing an object that holds the estimated data
+     */
+    private ResponseEntity<ValueLogDistribution> calculateValueLogDistribution(Component component, String unit,
+                                                                               String from, String to, String last,
+                                                                               String quantiles, int bins) {
+        //Check whether sketches are available
+        if (!valueLogSketchService.isEnabled()) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        //Convert given unit to object (if possible)
+        Unit convertUnit = null;
+        if ((unit != null) && (!unit.isEmpty())) {
+            //Try to parse unit
+            try {
+                convertUnit = unitConverterService.getUnit(unit);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        //Parse time window and quantiles
+        TimeWindow window;
+        double[] quantileValues;
+        try {
+            window = TimeWindow.parse(from, to, last);
+            quantileValues = parseQuantiles(quantiles);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        //Validity check
+        if ((bins < 1) || (bins > MAX_HISTOGRAM_BINS)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        //Estimate distribution by using the corresponding service
+        ValueLogDistribution distribution = valueLogStatsService.calculateValueLogDistribution(component,
+                convertUnit, window.getFrom(), window.getTo(), quantileValues, bins);
+
+        return new ResponseEntity<>(distribution, HttpStatus.OK);
+    }
+
+    /**
+     * Parses a comma-separated list of quantiles.
+     *
+     * @param quantiles The quantiles to parse
+     * @return The parsed quantiles
+     * @throws IllegalArgumentException In case a quantile is invalid
+     */
+    private static double[] parseQuantiles(String quantiles) {
+        String[] parts = quantiles.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            //NumberFormatException is an IllegalArgumentException
+            values[i] = Double.parseDouble(parts[i].trim());
+            if (!(values[i] >= 0) || (values[i] > 1)) {
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1.");
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves the components with certain ids from a given repository at once and checks whether the user is
+     * permitted to access their value logs. Accessible components are added to a list of components, while results
+     * stating the reason are created for the other ones.
+     *
+     * @param repository  The repository to retrieve the components from
+     * @param ids         The ids of the components
+     * @param type        The type of the components
+     * @param user        The user for which the components are supposed to be retrieved
+     * @param components  The list to add the accessible components to
+     * @param unavailable The list to add the results of the other components to
+     */
+    private void collectComponents(UserEntityRepository repository, Set<String> ids, String type, User user,
+                                   List<Component> components, List<ValueLogStatsResult> unavailable) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        //Get all components at once
+        Map<String, Component> foundComponents = new HashMap<>();
+        for (UserEntity entity : userEntityService.getUserEntitiesFromRepository(repository, ids, user)) {
+            foundComponents.put(((Component) entity).getId(), (Component) entity);
+        }
+
+        for (String id : ids) {
+            Component component = foundComponents.get(id);
+
+            //Validity check
+            if (component == null) {
+                unavailable.add(new ValueLogStatsResult(type, id, HttpStatus.NOT_FOUND.value(), null));
+                continue;
+            }
+
+            //Check if user is permitted
+            if (!userEntityService.isUserPermitted(component, "deploy", user)) {
+                unavailable.add(new ValueLogStatsResult(type, id, HttpStatus.UNAUTHORIZED.value(), null));
+                continue;
+            }
+
+            components.add(component);
+        }
+    }
+
+    /**
+     * Retrieves the devices and monitoring adapters of the monitoring components with certain ids at once and checks
+     * whether the user is permitted to access their value logs. Accessible monitoring components are added to
+     * a list of components, while results stating the reason are created for the other ones.
+     *
+     * @param ids         The ids of the monitoring components
+     * @param user        The user for which the monitoring components are supposed to be retrieved
+     * @param components  The list to add the accessible monitoring components to
+     * @param unavailable The list to add the results of the other monitoring components to
+     */
+    private void collectMonitoringComponents(Set<String> ids, User user, List<Component> components,
+                                             List<ValueLogStatsResult> unavailable) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        //Split ids into monitoring adapter ids and device ids
+        Set<String> adapterIds = new HashSet<>();
+        Set<String> deviceIds = new HashSet<>();
+        for (String id : ids) {
+            String[] parts = id.split(MONITORING_ID_SEPARATOR, -1);
+            if (parts.length == 2) {
+                adapterIds.add(parts[0]);
+                deviceIds.add(parts[1]);
+            }
+        }
+
+        //Get all monitoring adapters and devices at once
+        Map<String, MonitoringAdapter> adapters = new HashMap<>();
+        for (UserEntity entity : userEntityService.getUserEntitiesFromRepository(monitoringAdapterRepository,
+                adapterIds, user)) {
+            adapters.put(((MonitoringAdapter) entity).getId(), (MonitoringAdapter) entity);
+        }
+        Map<String, Device> devices = new HashMap<>();
+        for (UserEntity entity : userEntityService.getUserEntitiesFromRepository(deviceRepository, deviceIds, user)) {
+            devices.put(((Device) entity).getId(), (Device) entity);
+        }
+
+        for (String id : ids) {
+            String[] parts = id.split(MONITORING_ID_SEPARATOR, -1);
+
+            //Validity checks
+            if (parts.length != 2) {
+                unavailable.add(new ValueLogStatsResult("monitoring", id, HttpStatus.BAD_REQUEST.value(), null));
+                continue;
+            }
+            MonitoringAdapter adapter = adapters.get(parts[0]);
+            Device device = devices.get(parts[1]);
+            if ((adapter == null) || (device == null)) {
+                unavailable.add(new ValueLogStatsResult("monitoring", id, HttpStatus.NOT_FOUND.value(), null));
+                continue;
+            }
+
+            //Create new monitoring component
+            MonitoringComponent monitoringComponent = monitoringHelper.createMonitoringComponent(device, adapter);
+
+            //Check if user is permitted
+            if (!userEntityService.isUserPermitted(device, "monitor", user)) {
+                unavailable.add(new ValueLogStatsResult("monitoring", id, HttpStatus.UNAUTHORIZED.value(), null));
+                continue;
+            }
+
+            components.add(monitoringComponent);
+        }
+    }
 }
@@ -60,6 +60,7 @@ public class ActuatorEventHandler {
      */
     @HandleAfterDelete
     public void afterActuatorDelete(Actuator actuator) {
-        //TODO Delete value logs with idref actuator.getId()
+        //Purge value logs of the actuator asynchronously
+        valueLogRepository.deleteByIdRef(actuator.getId());
     }
 }
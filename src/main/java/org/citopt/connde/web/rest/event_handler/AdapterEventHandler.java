@@ -14,6 +14,7 @@ import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,6 +45,9 @@ public class AdapterEventHandler {
     public void beforeAdapterDelete(Adapter adapter) throws IOException {
         String adapterId = adapter.getId();
 
+        //Collect ids of the deleted components in order to purge their value logs at once
+        List<String> componentIds = new ArrayList<>();
+
         //Find actuators that use this adapter and iterate over them
         List<ComponentExcerpt> affectedActuators = actuatorRepository.findAllByAdapterId(adapterId);
         for (ComponentExcerpt projection : affectedActuators) {
@@ -52,7 +56,7 @@ public class AdapterEventHandler {
             //Undeploy actuator if running
             sshDeployer.undeployIfRunning(actuator);
 
-            //TODO Delete value logs with idref actuator.getId()
+            componentIds.add(actuator.getId());
 
             //Delete actuator
             actuatorRepository.delete(projection.getId());
@@ -66,10 +70,13 @@ public class AdapterEventHandler {
             //Undeploy sensor if running
             sshDeployer.undeployIfRunning(sensor);
 
-            //TODO Delete value logs with idref sensor.getId()
+            componentIds.add(sensor.getId());
 
             //Delete sensor
             sensorRepository.delete(projection.getId());
         }
+
+        //Purge value logs of the deleted components asynchronously
+        valueLogRepository.deleteAllByIdRefs(componentIds);
     }
 }
@@ -20,6 +20,7 @@ import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -78,6 +79,9 @@ public class DeviceEventHandler {
         //Get device id
         String deviceId = device.getId();
 
+        //Collect ids of the deleted components in order to purge their value logs at once
+        List<String> componentIds = new ArrayList<>();
+
         //Find actuators that use this device and iterate over them
         List<ComponentExcerpt> affectedActuators = actuatorRepository.findAllByDeviceId(deviceId);
         for (ComponentExcerpt projection : affectedActuators) {
@@ -86,7 +90,7 @@ public class DeviceEventHandler {
             //Undeploy actuator if running
             sshDeployer.undeployIfRunning(actuator);
 
-            //TODO Delete value logs with idref monitoringComponent.getId()
+            componentIds.add(actuator.getId());
 
             //Delete actuator
             actuatorRepository.delete(projection.getId());
@@ -100,7 +104,7 @@ public class DeviceEventHandler {
             //Undeploy sensor if running
             sshDeployer.undeployIfRunning(sensor);
 
-            //TODO Delete value logs with idref sensor.getId()
+            componentIds.add(sensor.getId());
 
             //Delete sensor
             sensorRepository.delete(projection.getId());
@@ -117,7 +121,10 @@ public class DeviceEventHandler {
             //Undeploy monitoring component if necessary
             sshDeployer.undeployIfRunning(monitoringComponent);
 
-            //TODO Delete value logs with idref monitoringComponent.getId()
+            componentIds.add(monitoringComponent.getId());
         }
+
+        //Purge value logs of the deleted components asynchronously
+        valueLogRepository.deleteAllByIdRefs(componentIds);
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,6 +37,9 @@ public class MonitoringAdapterEventHandler {
     @Autowired
     private SSHDeployer sshDeployer;
 
+    @Autowired
+    private ValueLogRepository valueLogRepository;
+
     /**
      * Called in case a monitoring adapter was created. This method then takes care of registering corresponding
      * event types for monitoring components at the CEP engine.
@@ -65,6 +69,9 @@ public class MonitoringAdapterEventHandler {
         //Get all devices that are compatible to the monitoring adapter
         List<Device> compatibleDevices = monitoringHelper.getCompatibleDevices(adapter);
 
+        //Collect ids of the monitoring components in order to purge their value logs at once
+        List<String> componentIds = new ArrayList<>();
+
         //Iterate over all compatible devices
         for (Device device : compatibleDevices) {
             //Create monitoring component from monitoring adapter and device
@@ -73,7 +80,10 @@ public class MonitoringAdapterEventHandler {
             //Undeploy monitoring component if necessary
             sshDeployer.undeployIfRunning(monitoringComponent);
 
-            //TODO Delete value logs by idref monitoringComponent.getId()
+            componentIds.add(monitoringComponent.getId());
         }
+
+        //Purge value logs of the monitoring components asynchronously
+        valueLogRepository.deleteAllByIdRefs(componentIds);
     }
 }
\ No newline at end of file
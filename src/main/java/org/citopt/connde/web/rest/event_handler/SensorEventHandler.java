@@ -60,6 +60,7 @@ public class SensorEventHandler {
      */
     @HandleAfterDelete
     public void afterSensorDelete(Sensor sensor) {
-        //TODO Delete value logs with idref sensor.getId()
+        //Purge value logs of the sensor asynchronously
+        valueLogRepository.deleteByIdRef(sensor.getId());
     }
 }
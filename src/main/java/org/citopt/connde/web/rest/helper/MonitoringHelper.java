@@ -48,6 +48,22 @@ public class MonitoringHelper {
             return null;
         }
 
+        return createMonitoringComponent(device, monitoringAdapter);
+    }
+
+    /**
+     * Creates a deployable monitoring component which wraps a given device and a given monitoring adapter.
+     *
+     * @param device            The device to wrap
+     * @param monitoringAdapter The monitoring adapter to wrap
+     * @return The deployable monitoring component
+     */
+    public MonitoringComponent createMonitoringComponent(Device device, MonitoringAdapter monitoringAdapter) {
+        //Sanity check
+        if ((device == null) || (monitoringAdapter == null)) {
+            throw new IllegalArgumentException("Device and monitoring adapter must not be null.");
+        }
+
         //Create new monitoring component (wrapper)
         MonitoringComponent monitoringComponent = new MonitoringComponent(monitoringAdapter, device);
 
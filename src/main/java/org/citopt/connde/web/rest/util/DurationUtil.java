@@ -0,0 +1,56 @@
+package org.citopt.connde.web.rest.util;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Utility class for parsing durations that are passed as request parameters.
+ */
+public final class DurationUtil {
+    //Pattern of durations in InfluxQL-like notation
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d{1,9})(ms|s|m|h|d|w)");
+
+    private DurationUtil() {
+    }
+
+    /**
+     * Parses a duration, given either in InfluxQL-like notation (e.g. 30s, 5m, 1h, 1d) or in ISO-8601 format.
+     *
+     * @param duration The duration to parse
+     * @return The parsed duration
+     * @throws IllegalArgumentException In case the duration is invalid
+     */
+    public static Duration parse(String duration) {
+        //Sanity check
+        if ((duration == null) || duration.isEmpty()) {
+            throw new IllegalArgumentException("Duration must not be null or empty.");
+        }
+
+        Matcher matcher = DURATION_PATTERN.matcher(duration);
+        if (!matcher.matches()) {
+            try {
+                return Duration.parse(duration);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid duration: " + duration);
+            }
+        }
+
+        long amount = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                return Duration.ofDays(amount * 7);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.citopt.connde.web.rest.util;
+
+import java.time.Instant;
+import java.time.DateTimeException;
+
+/**
+ * Time window that is passed as request parameters, either by its bounds or by its duration before its end.
+ */
+public final class TimeWindow {
+    //Bounds of the time window (null if unbounded)
+    private final Instant from;
+    private final Instant to;
+
+    private TimeWindow(Instant from, Instant to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parses a time window from its request parameters. The window may be given by its bounds (ISO-8601) or by its
+     * duration before its end, which defaults to now. All parameters are optional.
+     *
+     * @param from The begin of the time window (ISO-8601, inclusive) or null
+     * @param to   The end of the time window (ISO-8601, exclusive) or null
+     * @param last The duration of the time window before its end (see {@link DurationUtil}) or null
+     * @return The parsed time window
+     * @throws IllegalArgumentException In case the parameters are invalid or the time window is empty
+     */
+    public static TimeWindow parse(String from, String to, String last) {
+        Instant fromTime = null;
+        Instant toTime = null;
+        try {
+            if ((to != null) && !to.isEmpty()) {
+                toTime = Instant.parse(to);
+            }
+            if ((last != null) && !last.isEmpty()) {
+                //Window of a certain duration before its end
+                if ((from != null) && !from.isEmpty()) {
+                    throw new IllegalArgumentException("Begin and duration must not be specified both.");
+                }
+                if (toTime == null) {
+                    toTime = Instant.now();
+                }
+                fromTime = toTime.minus(DurationUtil.parse(last));
+            } else if ((from != null) && !from.isEmpty()) {
+                fromTime = Instant.parse(from);
+            }
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid time window: " + e.getMessage());
+        }
+
+        //Validity check
+        if ((fromTime != null) && (toTime != null) && !toTime.isAfter(fromTime)) {
+            throw new IllegalArgumentException("End of the time window must be after its begin.");
+        }
+
+        return new TimeWindow(fromTime, toTime);
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+}